@@ -2,12 +2,17 @@ package accounts;
 
 import accounts.state.AccountStatus;
 import notifications.NotificationObserver;
+import util.Money;
 
 public interface Account {
 
     String getId();
     String getName();
     double getBalance();
+    // fixed-point balance in minor units (cents); concrete accounts return their cell value directly
+    default long getBalanceMinor() {
+        return Money.ofMajor(getBalance());
+    }
 
     // Public operations (delegated to state)
     void deposit(double amount);
@@ -17,6 +22,21 @@ public interface Account {
     void depositInternal(double amount);
     void withdrawInternal(double amount);
 
+    // Same operations in minor units (what TransactionService moves); accounts backed by a BalanceCell
+    // go through their state without a double, others fall back to the double API
+    default void depositMinor(long amountMinor) {
+        deposit(Money.toMajor(amountMinor));
+    }
+    default void withdrawMinor(long amountMinor) {
+        withdraw(Money.toMajor(amountMinor));
+    }
+    default void depositInternalMinor(long amountMinor) {
+        depositInternal(Money.toMajor(amountMinor));
+    }
+    default void withdrawInternalMinor(long amountMinor) {
+        withdrawInternal(Money.toMajor(amountMinor));
+    }
+
     // Observers
     void addObserver(NotificationObserver observer);
     void removeObserver(NotificationObserver observer);
@@ -35,4 +55,19 @@ public interface Account {
         return getBalance();
     }
 
+    // Holds (funds reservations): the amount leaves the spendable balance right away,
+    // then is either committed (money leaves the account) or released (money comes back)
+    default boolean holdMinor(long amountMinor) {
+        throw new UnsupportedOperationException("Holds not supported by " + getClass().getSimpleName());
+    }
+    default void commitHoldMinor(long amountMinor) {
+        throw new UnsupportedOperationException("Holds not supported by " + getClass().getSimpleName());
+    }
+    default void releaseHoldMinor(long amountMinor) {
+        throw new UnsupportedOperationException("Holds not supported by " + getClass().getSimpleName());
+    }
+    default long getHeldMinor() {
+        return 0L;
+    }
+
 }
@@ -0,0 +1,795 @@
+package accounts;
+
+import accounts.decorators.AccountDecorator;
+import notifications.NotificationObserver;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The bank's accounts by id, plus secondary lookups (owner, type, status) and sorted paging.
+ * Drop-in for the shared Map<String, Account>: it is a ConcurrentMap.
+ * - every account gets a dense int handle; the account itself sits in paged arrays indexed by handle
+ * - id and owner lookups: open-addressing tables of (hash, handle) longs, split into 64 shards with
+ *   their own StampedLock (id lookups are optimistic reads); no entry objects, ~12 bytes per account for ids; the owner table has one
+ *   slot per distinct owner and chains that owner's accounts through an int per handle
+ * - type and status: one bitset over handles per value, so listing the FROZEN accounts walks bits
+ * - status changes are picked up from the account's "status_change" notification (the registry
+ *   observes every account it holds); reindex(id) for changes made without one
+ * - sorted iteration: an array of handles ordered by id plus a small unsorted tail of recent inserts;
+ *   page(afterId, limit) binary-searches the array and merges the tail on the fly, nothing is copied;
+ *   a reader folds the tail and the removed handles into a new array once either passes 4096, a
+ *   writer once either outgrows the registry (bulk loads stay linear), compact() at once
+ * - a removed handle is reused only after that merge, so the current array never holds a handle that
+ *   now belongs to another account; views are weakly consistent like ConcurrentHashMap's
+ */
+public class AccountRegistry extends AbstractMap<String, Account> implements ConcurrentMap<String, Account>, NotificationObserver {
+    private static final int SHARD_BITS = 6;
+    private static final int SHARDS = 1 << SHARD_BITS;
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << 15;      // 2^31 handles
+    private static final int MERGE_AT = 4096;
+    private static final long EMPTY = 0, TOMBSTONE = 0xFFFF_FFFFL; // a live slot's low half is handle + 1 > 0
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Account>> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicReferenceArray<int[]> ownerNext = new AtomicReferenceArray<>(MAX_PAGES);
+    private final HandleIndex ids = new HandleIndex(false);
+    private final HandleIndex owners = new HandleIndex(true);
+    private final Map<String, Bits> byType = new ConcurrentHashMap<>();
+    private final Map<String, Bits> byStatus = new ConcurrentHashMap<>();
+    private final Bits dead = new Bits();               // removed handles; set until the handle is reused
+    private final AtomicInteger live = new AtomicInteger();
+
+    private final Object handleLock = new Object();
+    private volatile int highWater;                    // handles in use are < highWater
+    private int[] free = new int[16];                  // guarded by handleLock
+    private int freeCount;                             // guarded by handleLock
+
+    private final Object sortLock = new Object();
+    private volatile int[] sorted = new int[0];        // live handles ordered by id (replaced, never mutated)
+    private int[] tail = new int[64];                  // guarded by sortLock: inserted since the last merge
+    private int tailSize;
+    private int[] removed = new int[16];               // guarded by sortLock: removed since the last merge
+    private int removedCount;
+
+    // ------------------------ MAP ---------------------------- //
+
+    @Override
+    public int size() { return live.get(); }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Account get(Object key) {
+        if (!(key instanceof String)) return null;
+        int h = handleOf((String) key);
+        return h < 0 ? null : accountAt(h);
+    }
+
+    @Override
+    public Account put(String key, Account account) {
+        return put(key, account, false);
+    }
+
+    @Override
+    public Account putIfAbsent(String key, Account account) {
+        return put(key, account, true);
+    }
+
+    private Account put(String key, Account account, boolean onlyIfAbsent) {
+        checkKey(key, account);
+        int hash = mix(key.hashCode());
+        HandleIndex.Shard s = ids.shard(hash);
+        int added;
+        s.lock.asWriteLock().lock();
+        try {
+            int h = s.findHandle(key, hash);
+            if (h >= 0) {
+                Account old = accountAt(h);
+                if (!onlyIfAbsent && old != account) swap(h, old, account);
+                return old;
+            }
+            added = allocate(account);
+            s.insert(added, hash);
+            index(added, account);
+            live.incrementAndGet();
+        } finally {
+            s.lock.asWriteLock().unlock();
+        }
+        account.addObserver(this);
+        synchronized (sortLock) {
+            tail = append(tail, tailSize++, added);
+            mergeIfLargeLocked();
+        }
+        return null;
+    }
+
+    @Override
+    public Account remove(Object key) {
+        return remove(key, null, false);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value != null && remove(key, value, true) != null;
+    }
+
+    private Account remove(Object key, Object expected, boolean conditional) {
+        if (!(key instanceof String)) return null;
+        String id = (String) key;
+        int hash = mix(id.hashCode());
+        HandleIndex.Shard s = ids.shard(hash);
+        int h;
+        Account old;
+        s.lock.asWriteLock().lock();
+        try {
+            h = s.findHandle(id, hash);
+            if (h < 0) return null;
+            old = accountAt(h);
+            if (conditional && old != expected) return null;
+            s.delete(h, hash);
+            unindex(h, old);
+            dead.set(h);
+            live.decrementAndGet();
+        } finally {
+            s.lock.asWriteLock().unlock();
+        }
+        old.removeObserver(this);
+        synchronized (sortLock) {
+            removed = append(removed, removedCount++, h);
+            mergeIfLargeLocked();
+        }
+        return old;
+    }
+
+    @Override
+    public Account replace(String key, Account account) {
+        checkKey(key, account);
+        int hash = mix(key.hashCode());
+        HandleIndex.Shard s = ids.shard(hash);
+        s.lock.asWriteLock().lock();
+        try {
+            int h = s.findHandle(key, hash);
+            if (h < 0) return null;
+            Account old = accountAt(h);
+            if (old != account) swap(h, old, account);
+            return old;
+        } finally {
+            s.lock.asWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(String key, Account oldValue, Account newValue) {
+        checkKey(key, newValue);
+        int hash = mix(key.hashCode());
+        HandleIndex.Shard s = ids.shard(hash);
+        s.lock.asWriteLock().lock();
+        try {
+            int h = s.findHandle(key, hash);
+            if (h < 0 || accountAt(h) != oldValue) return false;
+            if (oldValue != newValue) swap(h, oldValue, newValue);
+            return true;
+        } finally {
+            s.lock.asWriteLock().unlock();
+        }
+    }
+
+    private static void checkKey(String key, Account account) {
+        if (account == null) throw new NullPointerException("account");
+        if (key == null || !key.equals(account.getId())) {
+            throw new IllegalArgumentException("Key must be the account id: " + key + " vs " + account.getId());
+        }
+    }
+
+    // caller holds the id shard's write lock: same id, new object (e.g. a decorator around the old one)
+    private void swap(int h, Account old, Account account) {
+        unindex(h, old);
+        pages.get(h >>> PAGE_BITS).set(h & (PAGE - 1), account);
+        index(h, account);
+        old.removeObserver(this);
+        account.addObserver(this);
+    }
+
+    private void index(int h, Account a) {
+        owners.insertOwner(h, a.getName());
+        bits(byType, typeOf(a)).set(h);
+        bits(byStatus, a.getStatusName()).set(h);
+    }
+
+    private void unindex(int h, Account a) {
+        owners.deleteOwner(h, a.getName());
+        for (Bits b : byType.values()) b.clear(h);
+        for (Bits b : byStatus.values()) b.clear(h);
+    }
+
+    private static Bits bits(Map<String, Bits> index, String value) {
+        return index.computeIfAbsent(value == null ? "" : value, v -> new Bits());
+    }
+
+    // ------------------------ HANDLES ---------------------------- //
+
+    private int allocate(Account account) {
+        int h;
+        synchronized (handleLock) {
+            if (freeCount > 0) {
+                h = free[--freeCount];
+            } else {
+                h = highWater;
+                if (h == Integer.MAX_VALUE) throw new IllegalStateException("Account registry full");
+                if (pages.get(h >>> PAGE_BITS) == null) {
+                    ownerNext.set(h >>> PAGE_BITS, new int[PAGE]);
+                    pages.set(h >>> PAGE_BITS, new AtomicReferenceArray<>(PAGE));
+                }
+            }
+            pages.get(h >>> PAGE_BITS).set(h & (PAGE - 1), account);
+            dead.clear(h);
+            if (h == highWater) highWater = h + 1;
+        }
+        return h;
+    }
+
+    private Account accountAt(int h) {
+        AtomicReferenceArray<Account> page = pages.get(h >>> PAGE_BITS);
+        return page == null ? null : page.get(h & (PAGE - 1));
+    }
+
+    /** dense handle of id, -1 if unknown (stable until the account is removed) */
+    public int handleOf(String id) {
+        int hash = mix(id.hashCode());
+        HandleIndex.Shard s = ids.shard(hash);
+        // optimistic read first: no lock traffic unless a writer got in the way
+        long stamp = s.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int h = s.findHandle(id, hash);
+            if (s.lock.validate(stamp)) return h;
+        }
+        Lock l = s.lock.asReadLock();
+        l.lock();
+        try {
+            return s.findHandle(id, hash);
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /** handles in use are below this bound; scans split [0, handleLimit()) and call byHandle */
+    public int handleLimit() { return highWater; }
+
+    /** account behind a handle, null if it was removed */
+    public Account byHandle(int handle) {
+        return handle < 0 || handle >= highWater || dead.get(handle) ? null : accountAt(handle);
+    }
+
+    // ------------------------ SECONDARY INDEXES ---------------------------- //
+
+    /** accounts whose owner name matches (trimmed, case-insensitive) */
+    public List<Account> byOwner(String owner) {
+        List<Account> out = new ArrayList<>(1);
+        int hash = mix(ownerHash(owner));
+        HandleIndex.Shard s = owners.shard(hash);
+        Lock l = s.lock.asReadLock();
+        l.lock();
+        try {
+            for (int h = s.findHandle(owner, hash); h >= 0; h = nextOfOwner(h)) {
+                Account a = accountAt(h);
+                if (a != null) out.add(a);
+            }
+        } finally {
+            l.unlock();
+        }
+        return out;
+    }
+
+    public boolean ownerExists(String owner) {
+        return !byOwner(owner).isEmpty();
+    }
+
+    /** type = simple class name of the innermost account (decorators unwrapped), e.g. "SavingsAccount" */
+    public static String typeOf(Account a) {
+        while (a instanceof AccountDecorator) a = ((AccountDecorator) a).getWrapped();
+        return a.getClass().getSimpleName();
+    }
+
+    public Set<String> types() { return Collections.unmodifiableSet(new TreeSet<>(byType.keySet())); }
+    public Set<String> statuses() { return Collections.unmodifiableSet(new TreeSet<>(byStatus.keySet())); }
+
+    public int countByType(String type) { return count(byType, type); }
+    public int countByStatus(String status) { return count(byStatus, status); }
+
+    /** accounts of a type in handle (registration) order, skipping the first offset */
+    public List<Account> byType(String type, int offset, int limit) { return select(byType, type, offset, limit); }
+    public List<Account> byStatus(String status, int offset, int limit) { return select(byStatus, status, offset, limit); }
+
+    private int count(Map<String, Bits> index, String value) {
+        Bits b = index.get(value);
+        return b == null ? 0 : b.count.get();
+    }
+
+    private List<Account> select(Map<String, Bits> index, String value, int offset, int limit) {
+        Bits b = index.get(value);
+        List<Account> out = new ArrayList<>(Math.min(limit, 64));
+        if (b == null) return out;
+        int end = highWater;
+        for (int h = b.nextSetBit(0, end); h >= 0 && out.size() < limit; h = b.nextSetBit(h + 1, end)) {
+            if (offset > 0) {
+                offset--;
+                continue;
+            }
+            Account a = accountAt(h);
+            if (a != null) out.add(a);
+        }
+        return out;
+    }
+
+    /** the status of id changed without a "status_change" notification: move it in the status index */
+    public void reindex(String id) {
+        int hash = mix(id.hashCode());
+        HandleIndex.Shard s = ids.shard(hash);
+        s.lock.asWriteLock().lock();
+        try {
+            int h = s.findHandle(id, hash);
+            if (h < 0) return;
+            for (Bits b : byStatus.values()) b.clear(h);
+            bits(byStatus, accountAt(h).getStatusName()).set(h);
+        } finally {
+            s.lock.asWriteLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(Account account, String event, String message) {
+        if ("status_change".equals(event) && account != null) reindex(account.getId());
+    }
+
+    // ------------------------ SORTED PAGING ---------------------------- //
+
+    /** up to limit accounts ordered by id, starting after afterId (null: from the first) */
+    public List<Account> page(String afterId, int limit) {
+        int[] main;
+        int[] recent;
+        synchronized (sortLock) {
+            if (tailSize > MERGE_AT || removedCount > MERGE_AT) mergeLocked();
+            main = sorted;
+            recent = Arrays.copyOf(tail, tailSize);
+        }
+        sortById(recent);
+        int i = afterId == null ? 0 : firstAfter(main, afterId);
+        int j = afterId == null ? 0 : firstAfter(recent, afterId);
+        List<Account> out = new ArrayList<>(Math.min(limit, 256));
+        while (out.size() < limit && (i < main.length || j < recent.length)) {
+            int h;
+            if (j >= recent.length || (i < main.length && idAt(main[i]).compareTo(idAt(recent[j])) <= 0)) h = main[i++];
+            else h = recent[j++];
+            if (dead.get(h)) continue;
+            Account a = accountAt(h);
+            if (a != null) out.add(a);
+        }
+        return out;
+    }
+
+    /** fold recent inserts and removals into the sorted array now (also frees removed handles) */
+    public void compact() {
+        synchronized (sortLock) {
+            mergeLocked();
+        }
+    }
+
+    // writers merge only when the tail or the removals outgrow the registry, so a bulk load merges
+    // geometrically; readers already merge past MERGE_AT
+    private void mergeIfLargeLocked() {
+        int limit = Math.max(MERGE_AT, live.get());
+        if (tailSize > limit || removedCount > limit) mergeLocked();
+    }
+
+    // caller holds sortLock
+    private void mergeLocked() {
+        if (tailSize == 0 && removedCount == 0) return;
+        int[] recent = Arrays.copyOf(tail, tailSize);
+        sortById(recent);
+        int[] main = sorted;
+        int[] out = new int[main.length + recent.length];
+        int i = 0, j = 0, n = 0;
+        while (i < main.length || j < recent.length) {
+            int h;
+            if (j >= recent.length || (i < main.length && idAt(main[i]).compareTo(idAt(recent[j])) <= 0)) h = main[i++];
+            else h = recent[j++];
+            if (!dead.get(h)) out[n++] = h;
+        }
+        sorted = n == out.length ? out : Arrays.copyOf(out, n);
+        tailSize = 0;
+        if (tail.length > 4 * MERGE_AT) tail = new int[64];
+        // nothing references the removed handles any more: they may be handed out again
+        synchronized (handleLock) {
+            for (int k = 0; k < removedCount; k++) free = append(free, freeCount++, removed[k]);
+        }
+        removedCount = 0;
+    }
+
+    private int firstAfter(int[] arr, String id) {
+        int lo = 0, hi = arr.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(arr[mid]).compareTo(id) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private String idAt(int h) {
+        Account a = accountAt(h);
+        return a == null ? "" : a.getId();
+    }
+
+    // sorts handles by account id; the ids are fetched once into a side array so comparisons do not
+    // chase handle -> page -> account each time
+    private void sortById(int[] a) {
+        String[] keys = new String[a.length];
+        for (int i = 0; i < a.length; i++) keys[i] = idAt(a[i]);
+        sortById(a, keys, 0, a.length - 1);
+    }
+
+    // quicksort of (handle, id) pairs, no boxing
+    private static void sortById(int[] a, String[] keys, int lo, int hi) {
+        while (hi - lo > 16) {
+            String pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i].compareTo(pivot) < 0) i++;
+                while (keys[j].compareTo(pivot) > 0) j--;
+                if (i <= j) {
+                    int t = a[i]; a[i] = a[j]; a[j] = t;
+                    String k = keys[i]; keys[i] = keys[j]; keys[j] = k;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller half, loop on the larger one
+            if (j - lo < hi - i) {
+                sortById(a, keys, lo, j);
+                lo = i;
+            } else {
+                sortById(a, keys, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int h = a[i];
+            String id = keys[i];
+            int k = i - 1;
+            while (k >= lo && keys[k].compareTo(id) > 0) {
+                a[k + 1] = a[k];
+                keys[k + 1] = keys[k];
+                k--;
+            }
+            a[k + 1] = h;
+            keys[k + 1] = id;
+        }
+    }
+
+    private static int[] append(int[] arr, int at, int value) {
+        if (at == arr.length) arr = Arrays.copyOf(arr, arr.length * 2);
+        arr[at] = value;
+        return arr;
+    }
+
+    // ------------------------ VIEWS ---------------------------- //
+
+    // handle order; weakly consistent
+    @Override
+    public Set<Map.Entry<String, Account>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Account>>() {
+            @Override
+            public int size() { return AccountRegistry.this.size(); }
+
+            @Override
+            public Iterator<Map.Entry<String, Account>> iterator() {
+                return new Iterator<Map.Entry<String, Account>>() {
+                    int next = advance(0);
+                    String last;
+
+                    private int advance(int from) {
+                        int end = highWater;
+                        for (int h = from; h < end; h++) {
+                            if (!dead.get(h) && accountAt(h) != null) return h;
+                        }
+                        return -1;
+                    }
+
+                    @Override
+                    public boolean hasNext() { return next >= 0; }
+
+                    @Override
+                    public Map.Entry<String, Account> next() {
+                        if (next < 0) throw new NoSuchElementException();
+                        Account a = accountAt(next);
+                        next = advance(next + 1);
+                        last = a.getId();
+                        return new AbstractMap.SimpleImmutableEntry<>(last, a);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) throw new IllegalStateException();
+                        AccountRegistry.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+        };
+    }
+
+    // ------------------------ INTERNALS ---------------------------- //
+
+    // murmur3 finalizer: String.hashCode of "acc1", "acc2", ... is nearly sequential, which clusters
+    // a linear-probing table; low bits pick the shard, the bits above them the slot
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    // hash of owner.trim() ignoring case, without building the lower-cased string
+    private static int ownerHash(String owner) {
+        if (owner == null) return 0;
+        int start = 0, end = owner.length();
+        while (start < end && owner.charAt(start) <= ' ') start++;
+        while (end > start && owner.charAt(end - 1) <= ' ') end--;
+        int h = 1;
+        for (int i = start; i < end; i++) h = 31 * h + Character.toLowerCase(Character.toUpperCase(owner.charAt(i)));
+        return h;
+    }
+
+    // a.trim().equalsIgnoreCase(b.trim()) without the copies
+    private static boolean sameOwner(String a, String b) {
+        if (a == null || b == null) return a == b;
+        int as = 0, ae = a.length(), bs = 0, be = b.length();
+        while (as < ae && a.charAt(as) <= ' ') as++;
+        while (ae > as && a.charAt(ae - 1) <= ' ') ae--;
+        while (bs < be && b.charAt(bs) <= ' ') bs++;
+        while (be > bs && b.charAt(be - 1) <= ' ') be--;
+        return ae - as == be - bs && a.regionMatches(true, as, b, bs, ae - as);
+    }
+
+    // open-addressing tables, one per shard; a slot packs the key's hash with handle + 1, so a probe
+    // compares hashes before touching an account and a rehash never does
+    private final class HandleIndex {
+        private final boolean byOwner;
+        private final Shard[] shards = new Shard[SHARDS];
+
+        HandleIndex(boolean byOwner) {
+            this.byOwner = byOwner;
+            for (int i = 0; i < SHARDS; i++) shards[i] = new Shard();
+        }
+
+        Shard shard(int hash) { return shards[hash & (SHARDS - 1)]; }
+
+        // owner table: one slot per distinct owner naming the newest of its accounts, the rest are
+        // chained through ownerNext
+        void insertOwner(int h, String owner) {
+            int hash = mix(ownerHash(owner));
+            Shard s = shard(hash);
+            s.lock.asWriteLock().lock();
+            try {
+                int i = s.find(owner, hash);
+                if (i < 0) {
+                    setNextOfOwner(h, -1);
+                    s.insert(h, hash);
+                } else {
+                    setNextOfOwner(h, handleIn(s.slots[i]));
+                    s.slots[i] = slot(hash, h);
+                }
+            } finally {
+                s.lock.asWriteLock().unlock();
+            }
+        }
+
+        void deleteOwner(int h, String owner) {
+            int hash = mix(ownerHash(owner));
+            Shard s = shard(hash);
+            s.lock.asWriteLock().lock();
+            try {
+                int i = s.find(owner, hash);
+                if (i < 0) return;
+                int head = handleIn(s.slots[i]);
+                if (head == h) {
+                    int next = nextOfOwner(h);
+                    if (next < 0) s.slots[i] = TOMBSTONE;
+                    else s.slots[i] = slot(hash, next);
+                } else {
+                    for (int p = head, n; (n = nextOfOwner(p)) >= 0; p = n) {
+                        if (n == h) {
+                            setNextOfOwner(p, nextOfOwner(h));
+                            break;
+                        }
+                    }
+                }
+                setNextOfOwner(h, -1);
+            } finally {
+                s.lock.asWriteLock().unlock();
+            }
+        }
+
+        final class Shard {
+            final StampedLock lock = new StampedLock();
+            long[] slots = new long[16];
+            int used;   // live + tombstones
+
+            private int start(int hash) { return (hash >>> SHARD_BITS) & (slots.length - 1); }
+
+            // slot index of key, -1 if absent
+            int find(String key, int hash) {
+                long[] slots = this.slots;
+                int mask = slots.length - 1;
+                for (int i = (hash >>> SHARD_BITS) & mask; ; i = (i + 1) & mask) {
+                    long v = slots[i];
+                    if (v == EMPTY) return -1;
+                    if (v != TOMBSTONE && (int) (v >>> 32) == hash && matches(handleIn(v), key)) return i;
+                }
+            }
+
+            int findHandle(String key, int hash) {
+                long[] slots = this.slots;
+                int mask = slots.length - 1;
+                for (int i = (hash >>> SHARD_BITS) & mask; ; i = (i + 1) & mask) {
+                    long v = slots[i];
+                    if (v == EMPTY) return -1;
+                    if (v != TOMBSTONE && (int) (v >>> 32) == hash && matches(handleIn(v), key)) return handleIn(v);
+                }
+            }
+
+            // tolerates the garbage an optimistic read may see (validated by the caller)
+            private boolean matches(int h, String key) {
+                Account a = h < 0 ? null : accountAt(h);
+                if (a == null) return false;
+                return byOwner ? sameOwner(a.getName(), key) : key.equals(a.getId());
+            }
+
+            void insert(int h, int hash) {
+                if ((used + 1) * 4 > slots.length * 3) rehash();
+                int mask = slots.length - 1;
+                int i = start(hash);
+                while (slots[i] != EMPTY && slots[i] != TOMBSTONE) i = (i + 1) & mask;
+                if (slots[i] == EMPTY) used++;
+                slots[i] = slot(hash, h);
+            }
+
+            void delete(int h, int hash) {
+                long want = slot(hash, h);
+                int mask = slots.length - 1;
+                for (int i = start(hash); slots[i] != EMPTY; i = (i + 1) & mask) {
+                    if (slots[i] == want) {
+                        slots[i] = TOMBSTONE;
+                        return;
+                    }
+                }
+            }
+
+            // grow when live slots fill half of the table; otherwise just drop the tombstones
+            private void rehash() {
+                int live = 0;
+                for (long v : slots) if (v != EMPTY && v != TOMBSTONE) live++;
+                long[] old = slots;
+                slots = new long[live * 2 >= old.length ? old.length * 2 : old.length];
+                used = 0;
+                int mask = slots.length - 1;
+                for (long v : old) {
+                    if (v == EMPTY || v == TOMBSTONE) continue;
+                    int i = start((int) (v >>> 32));
+                    while (slots[i] != EMPTY) i = (i + 1) & mask;
+                    slots[i] = v;
+                    used++;
+                }
+            }
+        }
+    }
+
+    private static long slot(int hash, int h) { return (long) hash << 32 | (h + 1); }
+    private static int handleIn(long slot) { return (int) slot - 1; }
+
+    // next account of the same owner, -1 at the end; guarded by the owner's shard lock
+    private int nextOfOwner(int h) {
+        return ownerNext.get(h >>> PAGE_BITS)[h & (PAGE - 1)] - 1;
+    }
+
+    private void setNextOfOwner(int h, int next) {
+        ownerNext.get(h >>> PAGE_BITS)[h & (PAGE - 1)] = next + 1;
+    }
+
+    // bitset over handles, paged like the accounts, safe for concurrent set/clear
+    private static final class Bits {
+        private static final int WORDS = PAGE / 64;
+        final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(MAX_PAGES);
+        final AtomicInteger count = new AtomicInteger();
+
+        private AtomicLongArray page(int h, boolean create) {
+            int p = h >>> PAGE_BITS;
+            AtomicLongArray page = pages.get(p);
+            if (page == null && create) {
+                pages.compareAndSet(p, null, new AtomicLongArray(WORDS));
+                page = pages.get(p);
+            }
+            return page;
+        }
+
+        void set(int h) {
+            AtomicLongArray page = page(h, true);
+            int w = (h & (PAGE - 1)) >>> 6;
+            long m = 1L << (h & 63);
+            for (;;) {
+                long v = page.get(w);
+                if ((v & m) != 0) return;
+                if (page.compareAndSet(w, v, v | m)) {
+                    count.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        void clear(int h) {
+            AtomicLongArray page = page(h, false);
+            if (page == null) return;
+            int w = (h & (PAGE - 1)) >>> 6;
+            long m = 1L << (h & 63);
+            for (;;) {
+                long v = page.get(w);
+                if ((v & m) == 0) return;
+                if (page.compareAndSet(w, v, v & ~m)) {
+                    count.decrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        boolean get(int h) {
+            AtomicLongArray page = page(h, false);
+            return page != null && (page.get((h & (PAGE - 1)) >>> 6) & (1L << (h & 63))) != 0;
+        }
+
+        // first set bit in [from, end), -1 if none
+        int nextSetBit(int from, int end) {
+            int h = from;
+            while (h < end) {
+                AtomicLongArray page = pages.get(h >>> PAGE_BITS);
+                if (page == null) {
+                    h = ((h >>> PAGE_BITS) + 1) << PAGE_BITS;
+                    continue;
+                }
+                int w = (h & (PAGE - 1)) >>> 6;
+                long word = page.get(w) & (-1L << (h & 63));
+                while (word == 0) {
+                    if (++w == WORDS) break;
+                    word = page.get(w);
+                }
+                if (word != 0) {
+                    int found = ((h >>> PAGE_BITS) << PAGE_BITS) + (w << 6) + Long.numberOfTrailingZeros(word);
+                    return found < end ? found : -1;
+                }
+                h = ((h >>> PAGE_BITS) + 1) << PAGE_BITS;
+            }
+            return -1;
+        }
+    }
+}
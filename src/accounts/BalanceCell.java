@@ -0,0 +1,104 @@
+package accounts;
+
+import util.Money;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free balance holder shared by the concrete accounts.
+ * - balance is kept as fixed-point minor units (cents) in an AtomicLong
+ * - every update is a CAS loop; invariants (floor / overdraft) are checked inside the loop,
+ *   so a debit can never push the balance below the floor even under heavy contention
+ * - floor = 0 means "no overdraft", floor = -limit means "overdraft up to limit"
+ * - holds (reservations): tryHold moves money out of the spendable balance into "held";
+ *   commitHold lets it leave for good, releaseHold puts it back. The balance reported by
+ *   getMinor()/get() is the spendable one (net of holds); getLedgerMinor() includes holds.
+ */
+public final class BalanceCell {
+    /** returned by tryDebit when the debit would break the floor */
+    public static final long REJECTED = Long.MIN_VALUE;
+
+    private final AtomicLong minor;
+    private final AtomicLong held = new AtomicLong();
+    private volatile long floorMinor;
+
+    public BalanceCell(double initial) {
+        this(Money.ofMajor(initial), 0L);
+    }
+
+    public BalanceCell(long initialMinor, long floorMinor) {
+        this.minor = new AtomicLong(initialMinor);
+        this.floorMinor = floorMinor;
+    }
+
+    public long getMinor() { return minor.get(); }
+    public double get() { return Money.toMajor(minor.get()); }
+
+    public long getFloorMinor() { return floorMinor; }
+    public void setFloorMinor(long floorMinor) { this.floorMinor = floorMinor; }
+
+    /** available = balance - floor (e.g. balance + overdraft limit) */
+    public long availableMinor() { return minor.get() - floorMinor; }
+
+    /** unconditional add (negative = subtract). Returns the old balance. */
+    public long add(long deltaMinor) {
+        return minor.getAndAdd(deltaMinor);
+    }
+
+    /** credit. Returns the old balance. */
+    public long credit(long amountMinor) {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount>0");
+        return minor.getAndAdd(amountMinor);
+    }
+
+    /**
+     * Debit only if the resulting balance stays >= floor.
+     * Returns the old balance, or REJECTED if funds (incl. overdraft) are insufficient.
+     */
+    public long tryDebit(long amountMinor) {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount>0");
+        while (true) {
+            long cur = minor.get();
+            long next = cur - amountMinor;
+            if (next < floorMinor) return REJECTED; // floor re-read on every attempt
+            if (minor.compareAndSet(cur, next)) return cur;
+        }
+    }
+
+    /** reserve amountMinor (same floor rule as tryDebit). False if funds are insufficient. */
+    public boolean tryHold(long amountMinor) {
+        if (tryDebit(amountMinor) == REJECTED) return false;
+        held.addAndGet(amountMinor);
+        return true;
+    }
+
+    /** held money leaves the account. Returns the old ledger balance (spendable + held). */
+    public long commitHold(long amountMinor) {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount>0");
+        long oldHeld = held.getAndAdd(-amountMinor);
+        if (oldHeld < amountMinor) {
+            held.addAndGet(amountMinor);
+            throw new IllegalStateException("No such held amount: " + Money.format(amountMinor));
+        }
+        return minor.get() + oldHeld;
+    }
+
+    /** held money goes back to the spendable balance */
+    public void releaseHold(long amountMinor) {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount>0");
+        long oldHeld = held.getAndAdd(-amountMinor);
+        if (oldHeld < amountMinor) {
+            held.addAndGet(amountMinor);
+            throw new IllegalStateException("No such held amount: " + Money.format(amountMinor));
+        }
+        minor.getAndAdd(amountMinor);
+    }
+
+    public long getHeldMinor() { return held.get(); }
+    public long getLedgerMinor() { return minor.get() + held.get(); }
+
+    @Override
+    public String toString() {
+        return "BalanceCell{" + Money.format(minor.get()) + "}";
+    }
+}
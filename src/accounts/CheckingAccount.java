@@ -2,6 +2,7 @@ package accounts;
 
 import accounts.state.*;
 import notifications.NotificationObserver;
+import util.Money;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,23 +11,24 @@ public class CheckingAccount implements Account {
 
     private final String id;
     private final String name;
-    private double balance;
+    private final BalanceCell balance;
     private final List<NotificationObserver> observers = new ArrayList<>();
 
-    // overdraft allowed (positive number) — default 500
-    private double overdraftLimit = 500.0;
+    // overdraft allowed (positive number) — default 500; stored in the cell as floor = -limit
+    private volatile double overdraftLimit = 500.0;
 
     private AccountStatus status = new ActiveState();
 
     public CheckingAccount(String id, String name, double initial) {
         this.id = id;
         this.name = name;
-        this.balance = initial;
+        this.balance = new BalanceCell(Money.ofMajor(initial), -Money.ofMajor(overdraftLimit));
     }
 
     @Override public String getId() { return id; }
     @Override public String getName() { return name; }
-    @Override public double getBalance() { return balance; }
+    @Override public double getBalance() { return balance.get(); }
+    @Override public long getBalanceMinor() { return balance.getMinor(); }
 
     // ------------------------ PUBLIC OPS ---------------------------- //
 
@@ -40,36 +42,77 @@ public class CheckingAccount implements Account {
         status.withdraw(this, amount);
     }
 
+    @Override
+    public void depositMinor(long amountMinor) {
+        status.depositMinor(this, amountMinor);
+    }
+
+    @Override
+    public void withdrawMinor(long amountMinor) {
+        status.withdrawMinor(this, amountMinor);
+    }
+
     // ------------------------ INTERNAL OPS --------------------------- //
 
     @Override
     public void depositInternal(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Amount>0");
+        depositInternalMinor(Money.ofMajor(amount));
+    }
 
-        double old = balance;
-        balance += amount;
+    @Override
+    public void depositInternalMinor(long delta) {
+        if (delta <= 0) throw new IllegalArgumentException("Amount>0");
+
+        long old = balance.credit(delta);
 
         notifyObservers("deposit",
-                String.format("Deposit %.2f (old: %.2f -> new: %.2f)",
-                        amount, old, balance));
+                Money.movement("Deposit", delta, old, old + delta));
     }
 
     @Override
     public void withdrawInternal(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Amount>0");
+        withdrawInternalMinor(Money.ofMajor(amount));
+    }
 
-        // compute available = balance + overdraftLimit
-        double available = getAvailableBalance();
-        if (amount > available) {
+    @Override
+    public void withdrawInternalMinor(long delta) {
+        if (delta <= 0) throw new IllegalArgumentException("Amount>0");
+
+        // available = balance + overdraftLimit; enforced inside the CAS loop (floor = -overdraftLimit)
+        long old = balance.tryDebit(delta);
+        if (old == BalanceCell.REJECTED) {
             throw new IllegalStateException("Overdraft limit exceeded");
         }
 
-        double old = balance;
-        balance -= amount;
+        notifyObservers("withdraw",
+                Money.movement("Withdraw", delta, old, old - delta));
+    }
+
 
+    // ------------------------ HOLDS ---------------------------------- //
+
+    @Override
+    public boolean holdMinor(long amountMinor) {
+        return balance.tryHold(amountMinor);
+    }
+
+    @Override
+    public void commitHoldMinor(long amountMinor) {
+        long oldLedger = balance.commitHold(amountMinor);
         notifyObservers("withdraw",
-                String.format("Withdraw %.2f (old: %.2f -> new: %.2f)",
-                        amount, old, balance));
+                Money.movement("Withdraw", amountMinor, oldLedger, oldLedger - amountMinor));
+    }
+
+    @Override
+    public void releaseHoldMinor(long amountMinor) {
+        balance.releaseHold(amountMinor);
+    }
+
+    @Override
+    public long getHeldMinor() {
+        return balance.getHeldMinor();
     }
 
     // ------------------------ OBSERVERS ------------------------------ //
@@ -133,6 +176,7 @@ public class CheckingAccount implements Account {
     public void setOverdraftLimit(double limit) {
         // accept only non-negative numbers (0 = no overdraft)
         this.overdraftLimit = Math.max(0.0, limit);
+        balance.setFloorMinor(-Money.ofMajor(this.overdraftLimit));
     }
 
     public double getOverdraftLimit() {
@@ -1,5 +1,7 @@
 package accounts;
 
+import util.Money;
+
 import java.util.*;
 
 public class EvenSplitDeposit implements DepositStrategy {
@@ -7,8 +9,11 @@ public class EvenSplitDeposit implements DepositStrategy {
     public Map<Account, Double> splitDeposit(List<Account> children, double amount) {
         Map<Account, Double> plan = new LinkedHashMap<>();
         if (children.isEmpty()) return plan;
-        double per = amount / children.size();
-        for (Account c : children) plan.put(c, per);
+        // split in cents; the remainder cents go to the first children so the parts add up exactly
+        long total = Money.ofMajor(amount);
+        int n = children.size();
+        int i = 0;
+        for (Account c : children) plan.put(c, Money.toMajor(Money.share(total, n, i++)));
         return plan;
     }
 }
@@ -2,39 +2,77 @@ package accounts;
 
 import accounts.state.*;
 import notifications.NotificationObserver;
+import util.Money;
 import java.util.ArrayList;
 import java.util.List;
 
 public class InvestmentAccount implements Account {
     private final String id;
     private final String name;
-    private double balance;
+    private final BalanceCell balance;
     private String portfolioType;
     private final List<NotificationObserver> observers = new ArrayList<>();
     private AccountStatus status = new ActiveState();
 
     public InvestmentAccount(String id, String name, double initial, String portfolioType) {
-        this.id = id; this.name = name; this.balance = initial; this.portfolioType = portfolioType;
+        this.id = id; this.name = name; this.balance = new BalanceCell(initial); this.portfolioType = portfolioType;
     }
 
     @Override public String getId(){ return id; }
     @Override public String getName(){ return name; }
-    @Override public double getBalance(){ return balance; }
+    @Override public double getBalance(){ return balance.get(); }
+    @Override public long getBalanceMinor(){ return balance.getMinor(); }
 
     @Override public void deposit(double amount){ status.deposit(this, amount); }
     @Override public void withdraw(double amount){ status.withdraw(this, amount); }
+    @Override public void depositMinor(long amountMinor){ status.depositMinor(this, amountMinor); }
+    @Override public void withdrawMinor(long amountMinor){ status.withdrawMinor(this, amountMinor); }
 
     @Override public void depositInternal(double amount){
         if(amount <= 0) throw new IllegalArgumentException();
-        double old = balance; balance += amount;
-        notifyObservers("investment_deposit", String.format("Deposit %.2f (old: %.2f -> new: %.2f)", amount, old, balance));
+        depositInternalMinor(Money.ofMajor(amount));
+    }
+
+    @Override public void depositInternalMinor(long delta){
+        if(delta <= 0) throw new IllegalArgumentException();
+        long old = balance.credit(delta);
+        notifyObservers("investment_deposit", Money.movement("Deposit", delta, old, old + delta));
     }
 
     @Override public void withdrawInternal(double amount){
         if(amount <= 0) throw new IllegalArgumentException();
-        if(amount > balance) throw new IllegalStateException("Insufficient funds");
-        double old = balance; balance -= amount;
-        notifyObservers("investment_withdraw", String.format("Withdraw %.2f (old: %.2f -> new: %.2f)", amount, old, balance));
+        withdrawInternalMinor(Money.ofMajor(amount));
+    }
+
+    @Override public void withdrawInternalMinor(long delta){
+        if(delta <= 0) throw new IllegalArgumentException();
+        long old = balance.tryDebit(delta);
+        if(old == BalanceCell.REJECTED) throw new IllegalStateException("Insufficient funds");
+        notifyObservers("investment_withdraw", Money.movement("Withdraw", delta, old, old - delta));
+    }
+
+    // ------------------------ HOLDS ---------------------------------- //
+
+    @Override
+    public boolean holdMinor(long amountMinor) {
+        return balance.tryHold(amountMinor);
+    }
+
+    @Override
+    public void commitHoldMinor(long amountMinor) {
+        long oldLedger = balance.commitHold(amountMinor);
+        notifyObservers("withdraw",
+                Money.movement("Withdraw", amountMinor, oldLedger, oldLedger - amountMinor));
+    }
+
+    @Override
+    public void releaseHoldMinor(long amountMinor) {
+        balance.releaseHold(amountMinor);
+    }
+
+    @Override
+    public long getHeldMinor() {
+        return balance.getHeldMinor();
     }
 
     @Override public void addObserver(NotificationObserver o){ if(!observers.contains(o)) observers.add(o); }
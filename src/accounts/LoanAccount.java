@@ -2,33 +2,42 @@ package accounts;
 
 import accounts.state.*;
 import notifications.NotificationObserver;
+import util.Money;
 import java.util.ArrayList;
 import java.util.List;
 
 public class LoanAccount implements Account {
     private final String id;
     private final String name;
-    private double balance; // negative for owed? we treat balance as outstanding principal
+    private final BalanceCell balance; // negative for owed? we treat balance as outstanding principal
     private double interestRate; // yearly
     private final List<NotificationObserver> observers = new ArrayList<>();
     private AccountStatus status = new ActiveState();
 
     public LoanAccount(String id, String name, double principal, double interestRate) {
-        this.id = id; this.name = name; this.balance = principal; this.interestRate = interestRate;
+        this.id = id; this.name = name; this.balance = new BalanceCell(principal); this.interestRate = interestRate;
     }
 
     @Override public String getId(){ return id; }
     @Override public String getName(){ return name; }
-    @Override public double getBalance(){ return balance; }
+    @Override public double getBalance(){ return balance.get(); }
+    @Override public long getBalanceMinor(){ return balance.getMinor(); }
 
     @Override public void deposit(double amount) { status.deposit(this, amount); } // payment reduces principal
     @Override public void withdraw(double amount) { throw new UnsupportedOperationException("Cannot withdraw from loan"); }
 
+    @Override public void depositMinor(long amountMinor) { status.depositMinor(this, amountMinor); }
+    @Override public void withdrawMinor(long amountMinor) { throw new UnsupportedOperationException("Cannot withdraw from loan"); }
+
     @Override public void depositInternal(double amount) {
         if(amount <= 0) throw new IllegalArgumentException("Amount>0");
-        double old = balance;
-        balance -= amount; // pay down
-        notifyObservers("loan_payment", String.format("Payment %.2f (old: %.2f -> new: %.2f)", amount, old, balance));
+        depositInternalMinor(Money.ofMajor(amount));
+    }
+
+    @Override public void depositInternalMinor(long delta) {
+        if(delta <= 0) throw new IllegalArgumentException("Amount>0");
+        long old = balance.add(-delta); // pay down (no floor: over-payment just goes negative)
+        notifyObservers("loan_payment", Money.movement("Payment", delta, old, old - delta));
     }
 
     @Override public void withdrawInternal(double amount) { throw new UnsupportedOperationException(); }
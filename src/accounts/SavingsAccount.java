@@ -2,6 +2,7 @@ package accounts;
 
 import accounts.state.*;
 import notifications.NotificationObserver;
+import util.Money;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,7 +11,7 @@ public class SavingsAccount implements Account {
 
     private final String id;
     private final String name;
-    private double balance;
+    private final BalanceCell balance;
     private final List<NotificationObserver> observers = new ArrayList<>();
 
     private AccountStatus status = new ActiveState(); // default active
@@ -18,12 +19,13 @@ public class SavingsAccount implements Account {
     public SavingsAccount(String id, String name, double initial) {
         this.id = id;
         this.name = name;
-        this.balance = initial;
+        this.balance = new BalanceCell(initial);
     }
 
     @Override public String getId() { return id; }
     @Override public String getName() { return name; }
-    @Override public double getBalance() { return balance; }
+    @Override public double getBalance() { return balance.get(); }
+    @Override public long getBalanceMinor() { return balance.getMinor(); }
 
     // ------------------------ PUBLIC OPS ---------------------------- //
 
@@ -37,32 +39,75 @@ public class SavingsAccount implements Account {
         status.withdraw(this, amount);
     }
 
+    @Override
+    public void depositMinor(long amountMinor) {
+        status.depositMinor(this, amountMinor);
+    }
+
+    @Override
+    public void withdrawMinor(long amountMinor) {
+        status.withdrawMinor(this, amountMinor);
+    }
+
     // ------------------------ INTERNAL OPS --------------------------- //
 
     @Override
     public void depositInternal(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Amount>0");
-        double old = balance;
-        balance += amount;
+        depositInternalMinor(Money.ofMajor(amount));
+    }
+
+    @Override
+    public void depositInternalMinor(long delta) {
+        if (delta <= 0) throw new IllegalArgumentException("Amount>0");
+        long old = balance.credit(delta);
 
         notifyObservers("deposit",
-                String.format("Deposit %.2f (old: %.2f -> new: %.2f)",
-                        amount, old, balance));
+                Money.movement("Deposit", delta, old, old + delta));
     }
 
     @Override
     public void withdrawInternal(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Amount>0");
+        withdrawInternalMinor(Money.ofMajor(amount));
+    }
 
-        if (amount > balance)
+    @Override
+    public void withdrawInternalMinor(long delta) {
+        if (delta <= 0) throw new IllegalArgumentException("Amount>0");
+
+        // floor = 0: the CAS loop refuses to go below zero
+        long old = balance.tryDebit(delta);
+        if (old == BalanceCell.REJECTED)
             throw new IllegalStateException("Insufficient funds");
 
-        double old = balance;
-        balance -= amount;
+        notifyObservers("withdraw",
+                Money.movement("Withdraw", delta, old, old - delta));
+    }
+
 
+    // ------------------------ HOLDS ---------------------------------- //
+
+    @Override
+    public boolean holdMinor(long amountMinor) {
+        return balance.tryHold(amountMinor);
+    }
+
+    @Override
+    public void commitHoldMinor(long amountMinor) {
+        long oldLedger = balance.commitHold(amountMinor);
         notifyObservers("withdraw",
-                String.format("Withdraw %.2f (old: %.2f -> new: %.2f)",
-                        amount, old, balance));
+                Money.movement("Withdraw", amountMinor, oldLedger, oldLedger - amountMinor));
+    }
+
+    @Override
+    public void releaseHoldMinor(long amountMinor) {
+        balance.releaseHold(amountMinor);
+    }
+
+    @Override
+    public long getHeldMinor() {
+        return balance.getHeldMinor();
     }
 
     // ------------------------ OBSERVERS ------------------------------ //
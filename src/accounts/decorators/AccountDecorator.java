@@ -13,10 +13,13 @@ public abstract class AccountDecorator implements Account {
         this.wrapped = wrapped;
     }
 
+    public Account getWrapped(){ return wrapped; }
+
     // Delegate all methods to wrapped by default
     @Override public String getId(){ return wrapped.getId(); }
     @Override public String getName(){ return wrapped.getName(); }
     @Override public double getBalance(){ return wrapped.getBalance(); }
+    @Override public long getBalanceMinor(){ return wrapped.getBalanceMinor(); }
 
     @Override public void deposit(double amount){ wrapped.deposit(amount); }
     @Override public void withdraw(double amount){ wrapped.withdraw(amount); }
@@ -24,6 +27,11 @@ public abstract class AccountDecorator implements Account {
     @Override public void depositInternal(double amount){ wrapped.depositInternal(amount); }
     @Override public void withdrawInternal(double amount){ wrapped.withdrawInternal(amount); }
 
+    @Override public void depositMinor(long amountMinor){ wrapped.depositMinor(amountMinor); }
+    @Override public void withdrawMinor(long amountMinor){ wrapped.withdrawMinor(amountMinor); }
+    @Override public void depositInternalMinor(long amountMinor){ wrapped.depositInternalMinor(amountMinor); }
+    @Override public void withdrawInternalMinor(long amountMinor){ wrapped.withdrawInternalMinor(amountMinor); }
+
     @Override public void addObserver(NotificationObserver observer){ wrapped.addObserver(observer); }
     @Override public void removeObserver(NotificationObserver observer){ wrapped.removeObserver(observer); }
     @Override public void notifyObservers(String event, String message){ wrapped.notifyObservers(event, message); }
@@ -32,6 +40,11 @@ public abstract class AccountDecorator implements Account {
     @Override public void setStatus(AccountStatus status){ wrapped.setStatus(status); }
     @Override public String getStatusName(){ return wrapped.getStatusName(); }
 
+    @Override public boolean holdMinor(long amountMinor){ return wrapped.holdMinor(amountMinor); }
+    @Override public void commitHoldMinor(long amountMinor){ wrapped.commitHoldMinor(amountMinor); }
+    @Override public void releaseHoldMinor(long amountMinor){ wrapped.releaseHoldMinor(amountMinor); }
+    @Override public long getHeldMinor(){ return wrapped.getHeldMinor(); }
+
     @Override public void freeze(){ wrapped.freeze(); }
     @Override public void suspend(){ wrapped.suspend(); }
     @Override public void close(){ wrapped.close(); }
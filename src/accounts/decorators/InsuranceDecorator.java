@@ -1,20 +1,26 @@
 package accounts.decorators;
 
 import accounts.Account;
+import util.Money;
 
 public class InsuranceDecorator extends AccountDecorator {
-    private final double coverAmount; // how much insurance can cover overall
-    private double usedCoverage = 0.0; // how much of the cover has been used so far
+    private final long coverMinor; // how much insurance can cover overall
+    private long usedMinor = 0;    // how much of the cover has been used so far
 
     public InsuranceDecorator(Account wrapped, double coverAmount) {
         super(wrapped);
-        this.coverAmount = coverAmount;
+        this.coverMinor = Money.ofMajor(coverAmount);
     }
 
     @Override
-    public synchronized void withdraw(double amount) {
+    public void withdraw(double amount) {
+        withdrawMinor(Money.ofMajor(amount));
+    }
+
+    @Override
+    public synchronized void withdrawMinor(long amountMinor) {
         try {
-            super.withdraw(amount);
+            super.withdrawMinor(amountMinor);
             return;
         } catch (RuntimeException ex) {
             // detect insufficient-funds error (best-effort: message check)
@@ -27,15 +33,13 @@ public class InsuranceDecorator extends AccountDecorator {
             }
 
             // compute actual deficit = amount - current available balance
-            double baseAvailable = wrapped.getAvailableBalance();
-            double deficit = amount - baseAvailable;
+            long deficit = amountMinor - Money.ofMajor(wrapped.getAvailableBalance());
             if (deficit <= 0) {
                 // nothing to cover (some races possible), retry or rethrow
                 throw ex;
             }
 
-            double remainingCoverage = Math.max(0.0, coverAmount - usedCoverage);
-            double toCover = Math.min(remainingCoverage, deficit);
+            long toCover = Math.min(Math.max(0, coverMinor - usedMinor), deficit);
 
             if (toCover <= 0) {
                 // no coverage left
@@ -43,21 +47,21 @@ public class InsuranceDecorator extends AccountDecorator {
             }
 
             // apply coverage (simulate by depositing) and record usage
-            wrapped.deposit(toCover);
-            usedCoverage += toCover;
+            wrapped.depositMinor(toCover);
+            usedMinor += toCover;
 
             notifyObservers("insurance_cover",
-                    String.format("Insurance covered %.2f for account %s", toCover, wrapped.getId()));
+                    String.format("Insurance covered %.2f for account %s", Money.toMajor(toCover), wrapped.getId()));
 
             // retry withdrawal (may still throw if something else fails)
-            super.withdraw(amount);
+            super.withdrawMinor(amountMinor);
         }
     }
 
     @Override
     public double getAvailableBalance() {
         double base = wrapped.getAvailableBalance();
-        double remainingCoverage = Math.max(0.0, coverAmount - usedCoverage);
-        return base + remainingCoverage;
+        long remainingCoverage = Math.max(0, coverMinor - usedMinor);
+        return base + Money.toMajor(remainingCoverage);
     }
 }
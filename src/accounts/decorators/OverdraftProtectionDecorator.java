@@ -31,6 +31,16 @@ public class OverdraftProtectionDecorator extends AccountDecorator {
             throw ex;
         }
     }
+
+    @Override
+    public void withdrawMinor(long amountMinor) {
+        try {
+            super.withdrawMinor(amountMinor);
+        } catch (RuntimeException ex) {
+            this.notifyObservers("overdraft_failed", "Overdraft protection failed: " + ex.getMessage());
+            throw ex;
+        }
+    }
     @Override
     public double getAvailableBalance() {
         double base = wrapped.getAvailableBalance();
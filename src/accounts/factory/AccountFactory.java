@@ -1,17 +1,24 @@
 package accounts.factory;
 
 import accounts.*;
+import accounts.decorators.InsuranceDecorator;
+import accounts.decorators.OverdraftProtectionDecorator;
 import util.InputValidator;
+import util.Money;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * AccountFactory with safe creation helpers and auto-id generation.
  * - if provided id is null/invalid, it generates a safe id.
  */
 public final class AccountFactory {
+    // keys of what the ledger keeps about an account besides type/owner/balance (Ledger.updateAccount)
+    public static final String STATUS = "status", RATE = "rate", PORTFOLIO = "portfolio", DECORATORS = "decorators";
+
     private static final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
 
     private static String nextSuffix(String prefix){
@@ -55,5 +62,63 @@ public final class AccountFactory {
         return new InvestmentAccount(safeId, safeName, initial, portfolioType == null ? "balanced" : InputValidator.sanitizeName(portfolioType));
     }
 
+    /**
+     * Rebuild an account from what the ledger kept (type = simple class name, balance in minor units).
+     * Without attributes the loan rate and portfolio type come back as 0% / "balanced" and the account ACTIVE.
+     * The id's counter is moved past it so generated ids do not collide with restored ones.
+     */
+    public static Account restore(String type, String id, String name, long balanceMinor){
+        return restore(type, id, name, balanceMinor, key -> null);
+    }
+
+    /**
+     * Same, with the attributes recorded for the account (STATUS, RATE, PORTFOLIO, DECORATORS):
+     * - DECORATORS is "overdraft:extra,insurance:cover,...", applied in that order around the account
+     * - an insurance decorator starts with its full cover again (used coverage is not kept)
+     */
+    public static Account restore(String type, String id, String name, long balanceMinor, Function<String, String> attribute){
+        double balance = Money.toMajor(balanceMinor);
+        String rate = attribute.apply(RATE);
+        Account a;
+        switch (type) {
+            case "SavingsAccount": a = createSavings(id, name, balance); break;
+            case "CheckingAccount": a = createChecking(id, name, balance); break;
+            case "LoanAccount": a = createLoan(id, name, balance, rate == null ? 0.0 : Double.parseDouble(rate)); break;
+            case "InvestmentAccount": a = createInvestment(id, name, balance, attribute.apply(PORTFOLIO)); break;
+            default: throw new IllegalArgumentException("Unknown account type: " + type);
+        }
+        reserve(a.getId());
+        String status = attribute.apply(STATUS);
+        if (status != null) {
+            switch (status) {
+                case "ACTIVE": break;
+                case "FROZEN": a.freeze(); break;
+                case "SUSPENDED": a.suspend(); break;
+                case "CLOSED": a.close(); break;
+                default: throw new IllegalArgumentException("Unknown account status: " + status);
+            }
+        }
+        String decorators = attribute.apply(DECORATORS);
+        if (decorators != null && !decorators.isEmpty()) {
+            for (String d : decorators.split(",")) {
+                String[] kv = d.split(":", 2);
+                double amount = Double.parseDouble(kv[1]);
+                switch (kv[0]) {
+                    case "overdraft": a = new OverdraftProtectionDecorator(a, amount); break;
+                    case "insurance": a = new InsuranceDecorator(a, amount); break;
+                    default: throw new IllegalArgumentException("Unknown decorator: " + kv[0]);
+                }
+            }
+        }
+        return a;
+    }
+
+    // generated ids are a one-letter prefix + counter: keep the counter at or past n
+    private static void reserve(String id){
+        if (id.length() < 2 || !id.substring(1).chars().allMatch(Character::isDigit) || id.length() > 10) return;
+        int n = Integer.parseInt(id.substring(1));
+        counters.computeIfAbsent(id.substring(0, 1), k -> new AtomicInteger()).accumulateAndGet(n, Math::max);
+    }
+
     private AccountFactory(){}
 }
@@ -5,6 +5,9 @@ import accounts.Account;
 public interface AccountStatus {
     void deposit(Account account, double amount);
     void withdraw(Account account, double amount);
+    // same rules in minor units (no double on the way to the balance)
+    void depositMinor(Account account, long amountMinor);
+    void withdrawMinor(Account account, long amountMinor);
     default boolean canBeSource() { return true; }
 
 
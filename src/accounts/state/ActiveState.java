@@ -14,6 +14,16 @@ public class ActiveState implements AccountStatus {
         account.withdrawInternal(amount);
     }
 
+    @Override
+    public void depositMinor(Account account, long amountMinor) {
+        account.depositInternalMinor(amountMinor);
+    }
+
+    @Override
+    public void withdrawMinor(Account account, long amountMinor) {
+        account.withdrawInternalMinor(amountMinor);
+    }
+
     @Override
     public String name() {
         return "ACTIVE";
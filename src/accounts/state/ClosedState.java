@@ -14,6 +14,16 @@ public class ClosedState implements AccountStatus {
         throw new IllegalStateException("Account is closed. No operations allowed.");
     }
 
+    @Override
+    public void depositMinor(Account account, long amountMinor) {
+        throw new IllegalStateException("Account is closed. No operations allowed.");
+    }
+
+    @Override
+    public void withdrawMinor(Account account, long amountMinor) {
+        throw new IllegalStateException("Account is closed. No operations allowed.");
+    }
+
     @Override
     public String name() {
         return "CLOSED";
@@ -14,6 +14,16 @@ public class FrozenState implements AccountStatus {
         // Block withdrawals
         throw new IllegalStateException("Account is frozen. Withdrawals not allowed.");
     }
+    @Override
+    public void depositMinor(Account a, long amountMinor) {
+        throw new IllegalStateException("Account is frozen. Deposits not allowed.");
+    }
+
+    @Override
+    public void withdrawMinor(Account a, long amountMinor) {
+        throw new IllegalStateException("Account is frozen. Withdrawals not allowed.");
+    }
+
     @Override
     public boolean canBeSource() {
         return false;
@@ -15,6 +15,16 @@ public class SuspendedState implements AccountStatus {
         // Block withdrawals/outgoing transfers while suspended
         throw new IllegalStateException("Account is suspended. Withdrawals and outgoing transfers are not allowed.");
     }
+    @Override
+    public void depositMinor(Account account, long amountMinor) {
+        account.depositInternalMinor(amountMinor);
+    }
+
+    @Override
+    public void withdrawMinor(Account account, long amountMinor) {
+        throw new IllegalStateException("Account is suspended. Withdrawals and outgoing transfers are not allowed.");
+    }
+
     @Override
     public boolean canBeSource() {
         return false; // لا يمكن أن يكون مصدراً لعمليات سحب/تحويل
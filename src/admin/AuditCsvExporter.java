@@ -0,0 +1,193 @@
+package admin;
+
+import transactions.AuditLog;
+import util.Money;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams AuditLog entries to CSV (timestamp,action,from,to,amount,note).
+ * - rows are built in one reusable StringBuilder and UTF-8 encoded into one reusable ByteBuffer,
+ *   which is written to a FileChannel when full: memory stays bounded whatever the log size
+ * - exportIncremental(name, gzip) appends only the entries after the last exported position
+ *   (kept in "<file>.watermark" next to the file); the header is written once
+ * - gzip: each export run appends one gzip member (concatenated members are a valid .gz file)
+ */
+public class AuditCsvExporter {
+    private static final String HEADER = "timestamp,action,from,to,amount,note\n";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final AuditLog audit;
+    private final Path dir;
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder row = new StringBuilder(256);
+
+    public static class Result {
+        private final Path file;
+        private final int rows;
+        private final int watermark;
+
+        Result(Path file, int rows, int watermark) {
+            this.file = file;
+            this.rows = rows;
+            this.watermark = watermark;
+        }
+
+        public Path getFile() { return file; }
+        public int getRows() { return rows; }
+        /** number of log entries exported to this file so far */
+        public int getWatermark() { return watermark; }
+    }
+
+    public AuditCsvExporter(AuditLog audit, Path dir) {
+        this.audit = audit;
+        this.dir = dir;
+    }
+
+    /** write every entry into a new file (replaces the file if it exists) */
+    public synchronized Result exportAll(String fileName, boolean gzip) {
+        Path out = dir.resolve(fileName + (gzip ? ".csv.gz" : ".csv"));
+        List<AuditLog.Entry> entries = audit.getEntries();
+        try {
+            Files.createDirectories(dir);
+            Files.deleteIfExists(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare " + out, e);
+        }
+        int rows = write(out, entries, 0, gzip, true);
+        return new Result(out, rows, entries.size());
+    }
+
+    /** append the entries recorded since the previous incremental export of the same name */
+    public synchronized Result exportIncremental(String name, boolean gzip) {
+        Path out = dir.resolve(name + (gzip ? ".csv.gz" : ".csv"));
+        Path mark = dir.resolve(name + (gzip ? ".csv.gz" : ".csv") + ".watermark");
+        List<AuditLog.Entry> entries = audit.getEntries();
+        try {
+            Files.createDirectories(dir);
+            int from = 0;
+            if (Files.exists(mark) && Files.exists(out)) from = Integer.parseInt(Files.readString(mark).trim());
+            if (from > entries.size()) {
+                throw new IllegalStateException("Watermark " + from + " is beyond the audit log (" + entries.size() + " entries)");
+            }
+            if (from == entries.size()) return new Result(out, 0, from);
+            boolean header = !Files.exists(out) || Files.size(out) == 0;
+            int rows = write(out, entries, from, gzip, header);
+            // watermark only after the rows are on disk: a crash re-exports, never skips
+            Files.writeString(mark, Integer.toString(entries.size()));
+            return new Result(out, rows, entries.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot export audit to " + out, e);
+        }
+    }
+
+    private int write(Path out, List<AuditLog.Entry> entries, int from, boolean gzip, boolean header) {
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            OutputStream gz = gzip ? new GZIPOutputStream(Channels.newOutputStream(ch), BUFFER_SIZE) : null;
+            buf.clear();
+            if (header) {
+                row.setLength(0);
+                row.append(HEADER);
+                put(row, ch, gz);
+            }
+            int n = entries.size();
+            for (int i = from; i < n; i++) {
+                appendRow(entries.get(i));
+                put(row, ch, gz);
+            }
+            drain(ch, gz);
+            if (gz != null) gz.close(); // writes the gzip trailer, closes the channel too
+            else ch.force(false);
+            return n - from;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + out, e);
+        }
+    }
+
+    private void appendRow(AuditLog.Entry e) {
+        StringBuilder sb = row;
+        sb.setLength(0);
+        if (e.getTimestamp() != null) DateTimeFormatter.ISO_INSTANT.formatTo(e.getTimestamp(), sb);
+        sb.append(',');
+        appendField(sb, e.getAction());
+        sb.append(',');
+        appendField(sb, e.getFrom());
+        sb.append(',');
+        appendField(sb, e.getTo());
+        sb.append(',');
+        Money.appendTo(sb, e.getAmountMinor());
+        sb.append(',');
+        appendField(sb, e.getNote());
+        sb.append('\n');
+    }
+
+    // quote only when needed; quotes inside are doubled
+    private static void appendField(StringBuilder sb, String s) {
+        if (s == null || s.isEmpty()) return;
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(s);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // UTF-8 encode chars into the buffer, draining it to the file whenever it is nearly full
+    private void put(CharSequence s, FileChannel ch, OutputStream gz) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            if (buf.remaining() < 4) drain(ch, gz);
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf.put((byte) (0xF0 | (cp >> 18)));
+                buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buf.put((byte) '?'); // unpaired surrogate, same as the JDK encoder's replacement
+            } else {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void drain(FileChannel ch, OutputStream gz) throws IOException {
+        buf.flip();
+        if (gz != null) {
+            gz.write(buf.array(), buf.arrayOffset(), buf.limit());
+        } else {
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    public Path getDirectory() { return dir; }
+}
@@ -1,16 +1,40 @@
 package admin;
 import transactions.AuditLog;
+import transactions.TransactionHistory;
+import util.Metrics;
+
+import java.util.ArrayList;
 import java.util.List;
-import transactions.Transaction;
-import transactions.AuditLog.Entry;
+import java.util.Map;
 
+/**
+ * Admin dashboard: totals, rates and latency percentiles from Metrics plus per-action audit counts.
+ * Every figure is read from a counter, a histogram or an index, so rendering costs the same with
+ * 10 transactions or 100M (no pass over the history or the audit entries).
+ */
 public class DashboardService {
-    private final List<Transaction> transactions;
+    private final Metrics metrics; // may be null: totals and audit counts only
+    private final TransactionHistory transactions;
     private final AuditLog auditLog;
-    public DashboardService(List<Transaction> txs, AuditLog auditLog){ this.transactions = txs; this.auditLog = auditLog; }
+    public DashboardService(Metrics metrics, TransactionHistory txs, AuditLog auditLog){ this.metrics = metrics; this.transactions = txs; this.auditLog = auditLog; }
+
+    public List<String> summary(){
+        List<String> out = new ArrayList<>();
+        out.add("=== DASHBOARD SUMMARY ===");
+        out.add("Transactions total: " + transactions.nextSeq() + " (" + transactions.size() + " in history)");
+        out.add("Audit entries: " + auditLog.entriesCount());
+        if (metrics != null) {
+            out.add("--- Metrics (total, rate over the last minute, latency) ---");
+            out.addAll(metrics.render());
+        }
+        out.add("--- Audit actions ---");
+        for (Map.Entry<String, Integer> e : auditLog.actionCounts().entrySet()) {
+            out.add(String.format("%-28s %,12d", e.getKey(), e.getValue()));
+        }
+        return out;
+    }
+
     public void printSummary(){
-        System.out.println("=== DASHBOARD SUMMARY ===");
-        System.out.println("Transactions total: " + transactions.size());
-        System.out.println("Audit entries: " + auditLog.getEntries().size());
+        for (String line : summary()) System.out.println(line);
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,12 @@
 package admin;
 
 import transactions.AuditLog;
+import transactions.AuditQuery;
+import util.Money;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 
 public class ReportingService {
     private final AuditLog audit;
@@ -12,15 +18,19 @@ public class ReportingService {
     public void dailyReport(){
         System.out.println("=== Daily Audit Log ===");
 
-        audit.getEntries().forEach(e -> {
+        // only today's entries: the time index skips everything older
+        ZoneId zone = ZoneId.systemDefault();
+        Instant start = LocalDate.now(zone).atStartOfDay(zone).toInstant();
+        Instant end = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant();
+        audit.query(new AuditQuery().from(start).to(end).limit(Integer.MAX_VALUE)).forEach(e -> {
             String ts = e.getTimestamp().toString();
             String action = e.getAction();
-            double amount = e.getAmount(); // <-- استخدم getter الصحيح
+            long amount = e.getAmountMinor(); // fixed-point cents
             String from = e.getFrom();
             String to = e.getTo();
             String note = e.getNote();
 
-            System.out.println(ts + " " + action + " " + from + " -> " + to + " : " + String.format("%.2f", amount) + (note == null ? "" : " - " + note));
+            System.out.println(ts + " " + action + " " + from + " -> " + to + " : " + Money.format(amount) + (note == null ? "" : " - " + note));
         });
     }
 }
@@ -1,31 +1,40 @@
 package banking_system;
 
 import accounts.*;
+import accounts.factory.AccountFactory;
 
 import notifications.EmailNotifier;
 import notifications.SMSNotifier;
+import payment.BoundedAsyncGateway;
 import payment.PayPalAdapter;
 import payment.PayPalApi;
-import payment.PaymentGateway;
 import payment.PaymentService;
+import payment.RoutingPaymentGateway;
+import payment.SWIFTAdapter;
+import payment.SWIFTApi;
+import payment.SWIFTBatchingGateway;
 import transactions.*;
 import security.AuthService;
 import security.Role;
 
 import customers.Ticket;
 import customers.TicketService;
-import admin.DashboardService;
 import admin.ReportingService;
+import recommendations.RecommendationRule;
 import recommendations.RecommendationService;
+import recommendations.SpendingAggregator;
 import util.LocalizationService;
+import util.Metrics;
+import util.VirtualThreads;
 
-import java.util.LinkedHashMap;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import customers.CardService;
 
 /**
@@ -45,26 +54,77 @@ public class BankApplication {
         EmailNotifier emailNotifier = new EmailNotifier("ops@bank.com");
         SMSNotifier smsNotifier = new SMSNotifier("+12345");
 
-        // ---------- Approval chain ----------
-        TransactionValidationHandler validation = new TransactionValidationHandler();
-        AutoApprovalHandler auto = new AutoApprovalHandler(500);
-        ManagerApprovalHandler manager = new ManagerApprovalHandler(2000);
-        validation.setSuccessor(auto);
-        auto.setSuccessor(manager);
+        // ---------- Approval pipeline (compiled rules; replaces the validation -> auto -> manager chain) ----------
+        CountingDecisionSink approvalDecisions = new CountingDecisionSink();
+        ApprovalPipeline approval = ApprovalPipeline.builder()
+                .requirePositiveAmount()
+                .requireSourceCanSend()
+                .requireDestinationCanReceive()
+                .requireAvailableBalance()
+                .autoApproveUpTo(500)
+                .escalateToManagerUpTo(10_000) // parked with funds held; settled from the admin dashboard
+                .sink(approvalDecisions)
+                .build();
+
+        // ---------- Audit journal (durable audit log, replayed on startup) ----------
+        AuditJournal auditJournal = new AuditJournal(Paths.get("data", "audit"));
+        AuditLog auditLog = new AuditLog(auditJournal);
+        // transaction threads only publish into the ring; overflow spills to disk instead of blocking
+        auditLog.enableRingBuffer(65_536, AuditRingBuffer.BackpressurePolicy.SPILL, Paths.get("data", "audit-spill"));
 
         // ---------- TransactionService ----------
-        TransactionService txService = new TransactionService(validation);
+        TransactionService txService = new TransactionService(approval, new AccountLockStripes(), auditLog);
+        // repeated requests (same idempotency key) get the first outcome for 24 h, also across restarts
+        IdempotencyCache idempotency = new IdempotencyCache(200_000, IdempotencyCache.DEFAULT_TTL_MILLIS, Paths.get("data", "idempotency.log"));
+        txService.enableIdempotency(idempotency);
+        // double-entry ledger: every executed transaction is posted; balances are rebuilt from it on startup
+        Ledger ledger = new Ledger(Paths.get("data", "ledger"));
+        txService.enableLedger(ledger);
+        System.out.println("Ledger: " + ledger.entries() + " entries, replayed " + ledger.replayedOnOpen()
+                + " after the snapshot in " + ledger.recoveryMillis() + " ms");
+        // rolling 1/30/90-day spending per account, fed by every executed transaction; the windows are
+        // memory only, so they are rebuilt from the ledger first
+        SpendingAggregator spending = new SpendingAggregator();
+        System.out.println("Spending windows: replayed " + spending.replay(ledger, System.currentTimeMillis()) + " ledger entries");
+        txService.addExecutionListener(spending);
+        // dashboard metrics: rates and latency percentiles, kept up to date on the hot path
+        Metrics metrics = new Metrics();
+        txService.enableMetrics(metrics);
+        for (ApprovalDecision d : ApprovalDecision.values()) {
+            metrics.gauge("approval." + d.name().toLowerCase(Locale.ROOT), () -> approvalDecisions.count(d));
+        }
+        metrics.gauge("tx.pending.queued", () -> txService.getPendingApprovals().size());
+        metrics.gauge("ledger.entries", ledger::entries);
+        metrics.gauge("history.retained", () -> txService.getHistory().size());
 
         // ---------- Payment (Adapter) ----------
         PayPalApi ppApi = new PayPalApi();
-        PaymentGateway ppGateway = new PayPalAdapter(ppApi);
-
-        // create a dedicated executor for gateway calls (tunable)
-        int cpus = Runtime.getRuntime().availableProcessors();
-        // use fixed pool size (example):  max(4, cpus*2) or tune as needed
-        ExecutorService gatewayExecutor = Executors.newFixedThreadPool(Math.max(4, cpus * 2));
-
-        PaymentService paymentService = new PaymentService(ppGateway, gatewayExecutor);
+        SWIFTApi swiftApi = new SWIFTApi();
+        // pain.001 files of up to 500 payments, sent at least every 2 s
+        SWIFTBatchingGateway swiftBatch = new SWIFTBatchingGateway(swiftApi, Paths.get("data", "swift-outbox"), 500, 2_000);
+        // each rail behind its own limits (calls at the provider, waiting, deadline); the router sends every
+        // payment to the fastest healthy rail that can carry it. No dedup group: the batch file numbers its
+        // end-to-end ids per file and the direct wire sends none, so the network could not drop a repeat;
+        // a payment that timed out on one rail is never hedged or retried on the other.
+        RoutingPaymentGateway router = RoutingPaymentGateway.builder()
+                .route("paypal", new BoundedAsyncGateway(new PayPalAdapter(ppApi), 1_000, 10_000, 30_000), null)
+                .route("swift-batch", new BoundedAsyncGateway(swiftBatch, 5_000, 20_000, 30_000),
+                        RoutingPaymentGateway::isIbanDestination)
+                .route("swift-direct", new BoundedAsyncGateway(new SWIFTAdapter(swiftApi), 200, 2_000, 30_000),
+                        RoutingPaymentGateway::isIbanDestination)
+                .build();
+
+        // execution mode: -Dpayment.mode=PLATFORM | ASYNC (default) | VIRTUAL
+        PaymentService.ExecutionMode paymentMode = PaymentService.ExecutionMode.valueOf(
+                System.getProperty("payment.mode", "ASYNC").trim().toUpperCase(Locale.ROOT));
+        PaymentService paymentService = new PaymentService(router, paymentMode);
+        paymentService.enableIdempotency(idempotency);
+        paymentService.enableMetrics(metrics);
+        for (RoutingPaymentGateway.Route route : router.getRoutes()) {
+            metrics.histogram("payment.route." + route.getName(), route.getLatency());
+        }
+        System.out.println("Payment execution mode: " + paymentMode
+                + (paymentMode == PaymentService.ExecutionMode.VIRTUAL && !VirtualThreads.isAvailable() ? " (no virtual threads on this JDK: platform thread per transfer)" : ""));
 
         // ---------- AuthService ----------
         AuthService auth = new AuthService();
@@ -75,22 +135,62 @@ public class BankApplication {
         BankingFacade facade = new BankingFacade(txService, auth, paymentService);
 
         // ---------- Ticket service ----------
-        Map<String, Account> accountsMap = new LinkedHashMap<>();   // <-- هنا تخلق الخريطة أولاً
+        AccountRegistry accountsMap = new AccountRegistry();   // <-- هنا تخلق الخريطة أولاً (sharded, indexed by owner/type/status)
 
         // ---------- Ticket/Card services (need accountsMap) ----------
         CardService cardService = new CardService();
         TicketService ticketService = new TicketService(accountsMap, cardService);
+
+        // ---------- Accounts back from the ledger (with their status, loan rate / portfolio and decorators) ----------
+        for (Ledger.AccountInfo info : ledger.accounts()) {
+            accountsMap.putIfAbsent(info.getId(), AccountFactory.restore(info.getType(), info.getId(), info.getOwner(),
+                    info.getBalanceMinor(), info::getAttribute));
+        }
+        if (!accountsMap.isEmpty()) System.out.println("Accounts restored from the ledger: " + accountsMap.size());
+
+        // ---------- Recurring store (standing orders survive restarts; missed runs are caught up) ----------
+        RecurringStore recurringStore = new RecurringStore(Paths.get("data", "recurring.dat"));
+        int resumed = txService.restoreRecurring(recurringStore, accountsMap::get);
+        metrics.gauge("recurring.scheduled", () -> txService.getRecurringScheduler().scheduledCount());
+        metrics.gauge("recurring.lag.max.ms", () -> txService.getRecurringScheduler().maxLagMillis());
+        System.out.println("Recurring transactions resumed: " + resumed + " of " + recurringStore.size()
+                + " (the rest wait for their accounts)");
         // ---------- Put accounts into a map for the InteractiveConsole ----------
 
 
+        // ---------- Recommendations: default rule set, bulk run every night at 02:00 (fork/join) ----------
+        RecommendationService recommendations = new RecommendationService(spending, auditLog, RecommendationRule.defaults());
+        ScheduledExecutorService nightly = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "recommendations-nightly");
+            t.setDaemon(true);
+            return t;
+        });
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime next = now.toLocalDate().atTime(2, 0).atZone(now.getZone());
+        if (!next.isAfter(now)) next = next.plusDays(1);
+        nightly.scheduleAtFixedRate(() -> {
+            try {
+                recommendations.runBulk(accountsMap);
+            } catch (RuntimeException e) {
+                auditLog.record("RECOMMENDATIONS_FAILED", null, null, 0, e.toString());
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+
         // ---------- Start Interactive CLI ----------
-        InteractiveConsole console = new InteractiveConsole(accountsMap, txService, facade, auth, ticketService, paymentService,loc,cardService);
+        InteractiveConsole console = new InteractiveConsole(accountsMap, txService, facade, auth, ticketService, paymentService,loc,cardService,
+                recommendations);
         console.start();
 
         // ---------- Shutdown ----------
         System.out.println("Shutting down services...");
+        nightly.shutdownNow();
         txService.shutdown();
         paymentService.shutdownExecutor();
+        router.close();
+        swiftBatch.close();
+        idempotency.close();
+        facade.holds().close();
+        ledger.close();
         System.out.println("Application stopped.");
     }
 }
\ No newline at end of file
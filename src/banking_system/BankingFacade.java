@@ -2,35 +2,56 @@ package banking_system;
 
 import accounts.Account;
 import payment.PaymentService;
+import payment.TransferOutcomeUnknownException;
+import payment.TransferScope;
 import transactions.Transaction;
 import transactions.TransactionService;
 import security.AuthService;
 import security.Role;
 import transactions.AuditLog;
+import transactions.HoldLedger;
+import transactions.Ledger;
+import transactions.PendingApproval;
+import transactions.TransactionHistory;
+import transactions.TransactionOutcome;
 
-import java.util.List;
+import java.util.function.BiConsumer;
 
 public class BankingFacade {
+    /** transfers above this amount go out through the payment service (demo rule) */
+    public static final double EXTERNAL_THRESHOLD = 10_000;
+
     private final TransactionService txService;
     private final AuthService auth;
     private final PaymentService paymentService;
+    private final HoldLedger holds;
 
     public BankingFacade(TransactionService txService, AuthService auth, PaymentService paymentService) {
+        this(txService, auth, paymentService, new HoldLedger(txService.getLocks()));
+    }
+
+    public BankingFacade(TransactionService txService, AuthService auth, PaymentService paymentService, HoldLedger holds) {
         this.txService = txService;
         this.auth = auth;
         this.paymentService = paymentService;
+        this.holds = holds;
     }
 
     /**
      * Simplified transfer that first authorizes caller and then processes the transaction.
      *
-     * For "large" transfers (demo threshold 10_000) we treat them as external:
-     *  - pre-withdraw from source account (fail if insufficient funds)
+     * For "large" transfers (above EXTERNAL_THRESHOLD) we treat them as external:
+     *  - hold the amount on the source account (fail if insufficient funds)
      *  - call external payment gateway (adapter)
-     *  - if gateway fails, roll back by re-depositing into source account
+     *  - commit the hold on success, release it on failure (no refund deposit)
      *
      * For local/small transfers we delegate to txService.process(...) which handles
-     * validation, approval chain, execution and auditing.
+     * validation, approval chain, execution and auditing. A transfer escalated to a manager is parked
+     * with its funds held and reads as false here although it may still execute: interactive callers
+     * use submit(...), which tells the two apart.
+     *
+     * A tx carrying an idempotency key that was already used is not executed again (both paths):
+     * the first request's result is returned.
      */
     public boolean transfer(String userId, Transaction tx) {
         if (!auth.authorize(userId, Role.CUSTOMER)) {
@@ -38,53 +59,115 @@ public class BankingFacade {
             return false;
         }
 
-        // Demo rule: treat transfers over 10_000 as external payments (use adapter)
-        if (tx.getAmount() > 10_000) {
-            // must have a source account for external transfers in this model
-            if (tx.getFrom() == null) {
-                System.out.println("[Facade] External transfer requires a source account");
-                txService.getAuditLog().record(tx, "REJECTED: no source account for external transfer");
-                return false;
-            }
+        // Demo rule: treat large transfers as external payments (use adapter)
+        if (tx.getAmount() > EXTERNAL_THRESHOLD) {
+            HoldLedger.Hold hold = holdForExternal(tx);
+            if (hold == null) return false;
 
-            // Attempt to pre-withdraw from source account (ensures funds reserved)
-            try {
-                tx.getFrom().withdraw(tx.getAmount());
-            } catch (Exception e) {
-                // withdrawal failed (insufficient funds or state); record and return
-                System.out.println("[Facade] External transfer aborted: " + e.getMessage());
-                txService.getAuditLog().record(tx, "REJECTED: " + e.getMessage());
-                return false;
-            }
-
-            // Call external payment gateway
             boolean externalOk;
             try {
-                externalOk = paymentService.processExternalTransfer(tx);
+                externalOk = paymentService.processExternalTransfer(tx, hold);
             } catch (Throwable t) {
-                externalOk = false;
-            }
-
-            if (externalOk) {
-                txService.getAuditLog().record(tx, "EXTERNAL_EXECUTED");
-                return true;
-            } else {
-                // rollback the reserved funds
-                try {
-                    tx.getFrom().deposit(tx.getAmount());
-                } catch (Exception depositEx) {
-                    // This would be very unusual; at minimum log
-                    System.out.println("[Facade] Failed to rollback funds after external failure: " + depositEx.getMessage());
-                }
-                txService.getAuditLog().record(tx, "EXTERNAL_FAILED_ROLLED_BACK");
-                return false;
+                return recordExternalResult(tx, hold, false, t);
             }
+            return recordExternalResult(tx, hold, externalOk, null);
         } else {
             // Local/small transfer - let TransactionService handle validation, approval and execution
             return txService.process(tx);
         }
     }
 
+    /**
+     * Asynchronous external transfer (tx.getTo() is the external destination):
+     * the funds are held right away and the transfer runs as a TransferScope in the payment service's
+     * execution mode; when the gateway answers the hold is committed or released, the result is audited
+     * and then onComplete(success, error) runs (may be null). Returns null if nothing could be held.
+     * An answer arriving after the transfer finished as outcome unknown is booked and audited the same way.
+     */
+    public TransferScope externalTransferAsync(String userId, Transaction tx, BiConsumer<Boolean, Throwable> onComplete) {
+        if (!auth.authorize(userId, Role.CUSTOMER)) {
+            System.out.println("[Facade] Unauthorized");
+            return null;
+        }
+        HoldLedger.Hold hold = holdForExternal(tx);
+        if (hold == null) return null;
+        txService.getAuditLog().record(tx, "EXTERNAL_SCHEDULED", hold.toString());
+        return paymentService.submitTransfer(tx, hold, (ok, ex) -> {
+            boolean done = recordExternalResult(tx, hold, ok, ex);
+            if (onComplete != null) onComplete.accept(done, ex);
+        }, late -> recordExternalResult(tx, hold, late, null));
+    }
+
+    // null (and audited) if the source is missing or the funds cannot be held
+    private HoldLedger.Hold holdForExternal(Transaction tx) {
+        if (tx.getFrom() == null) {
+            System.out.println("[Facade] External transfer requires a source account");
+            txService.getAuditLog().record(tx, "REJECTED: no source account for external transfer");
+            return null;
+        }
+        try {
+            return holds.place(tx.getFrom(), tx.getAmountMinor(), HoldLedger.DEFAULT_TTL_MILLIS);
+        } catch (RuntimeException e) {
+            System.out.println("[Facade] External transfer aborted: " + e.getMessage());
+            txService.getAuditLog().record(tx, "REJECTED: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean recordExternalResult(Transaction tx, HoldLedger.Hold hold, boolean gatewayOk, Throwable error) {
+        AuditLog audit = txService.getAuditLog();
+        if (gatewayOk && hold.getStatus() == HoldLedger.Status.COMMITTED) {
+            Ledger ledger = txService.getLedger();
+            if (ledger != null) ledger.post(tx.getFrom().getId(), Ledger.EXTERNAL, tx.getAmountMinor(), Ledger.Kind.EXTERNAL);
+            audit.record(tx, "EXTERNAL_EXECUTED");
+            return true;
+        }
+        if (gatewayOk && hold.getStatus() == HoldLedger.Status.RELEASED) {
+            // repeated idempotency key: the first request paid, this one's hold was given back untouched
+            audit.record(tx, "EXTERNAL_REPLAYED", tx.getIdempotencyKey());
+            return true;
+        }
+        if (gatewayOk) {
+            // paid out after the hold expired: the funds went back to the account, needs reconciliation
+            audit.record(tx, "EXTERNAL_EXECUTED_HOLD_" + hold.getStatus(), hold.toString());
+            return true;
+        }
+        if (error instanceof TransferOutcomeUnknownException) {
+            // cancelled, shut down or timed out at the provider: the hold stays until the answer or reconciliation
+            audit.record(tx, "EXTERNAL_OUTCOME_UNKNOWN", hold.toString());
+            return false;
+        }
+        audit.record(tx, "EXTERNAL_FAILED_RELEASED", error == null ? hold.toString() : error.getMessage());
+        return false;
+    }
+
+    /**
+     * Same routing as transfer(...), but escalated local transfers/withdrawals do not fail: they come
+     * back as a pending handle (funds held) that a manager settles from the admin dashboard.
+     * Returns null if the caller is not authorized.
+     */
+    public PendingApproval submit(String userId, Transaction tx) {
+        if (!auth.authorize(userId, Role.CUSTOMER)) {
+            System.out.println("[Facade] Unauthorized");
+            return null;
+        }
+        if (tx.getAmount() > EXTERNAL_THRESHOLD) {
+            boolean ok = transfer(userId, tx);
+            return PendingApproval.completed(tx, ok ? TransactionOutcome.EXECUTED : TransactionOutcome.FAILED);
+        }
+        return txService.submit(tx);
+    }
+
+    /** like deposit(...), but an escalated deposit comes back as a pending handle; null if not authorized */
+    public PendingApproval submitDeposit(String userId, Transaction tx) {
+        if (!auth.authorize(userId, Role.CUSTOMER)) {
+            System.out.println("[Facade] Unauthorized deposit");
+            return null;
+        }
+        return txService.submit(tx);
+    }
+
+    // false also while an escalated deposit waits for a manager (see submitDeposit)
     public boolean deposit(String userId, Transaction tx) {
         if (!auth.authorize(userId, Role.CUSTOMER)) {
             System.out.println("[Facade] Unauthorized deposit");
@@ -101,11 +184,15 @@ public class BankingFacade {
         txService.scheduleRecurring(rtx, initialDelay, period);
     }
 
-    public List<Transaction> history() {
+    public TransactionHistory history() {
         return txService.getHistory();
     }
 
     public AuditLog audit() {
         return txService.getAuditLog();
     }
+
+    public HoldLedger holds() {
+        return holds;
+    }
 }
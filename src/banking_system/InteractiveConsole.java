@@ -2,6 +2,8 @@ package banking_system;
 import customers.Card;
 import customers.CardService;
 import accounts.*;
+import admin.AuditCsvExporter;
+import admin.DashboardService;
 import accounts.decorators.InsuranceDecorator;
 import accounts.decorators.OverdraftProtectionDecorator;
 import accounts.factory.AccountFactory;
@@ -11,25 +13,28 @@ import customers.TicketService;
 import notifications.EmailNotifier;
 import notifications.SMSNotifier;
 import payment.*;
+import recommendations.RecommendationRule;
 import recommendations.RecommendationService;
+import recommendations.RecommendationStore;
+import recommendations.SpendingAggregator;
 import security.AuthService;
 import security.Role;
 import transactions.AuditLog;
+import transactions.AuditQuery;
+import transactions.Ledger;
+import transactions.PendingApproval;
+import transactions.PendingApprovalQueue;
 import transactions.RecurringTransaction;
 import transactions.Transaction;
+import transactions.TransactionHistory;
 import transactions.TransactionService;
 import util.LocalizationService;
+import util.Money;
 
-import java.io.BufferedWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -39,7 +44,7 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class InteractiveConsole {
     private final Scanner scanner = new Scanner(System.in);
-    private final Map<String, Account> accounts; // id -> Account
+    private final AccountRegistry accounts; // id -> Account, with owner/type/status indexes
     private final TransactionService txService;
     private final BankingFacade facade;
     private final AuthService auth;
@@ -57,15 +62,18 @@ public class InteractiveConsole {
     private final GroupService groupService;
     private final LocalizationService loc;
     private final CardService cardService;
+    private final AuditCsvExporter csvExporter;
+    private final RecommendationService recommendations;
 
-    public InteractiveConsole(Map<String, Account> accounts,
+    public InteractiveConsole(AccountRegistry accounts,
                               TransactionService txService,
                               BankingFacade facade,
                               AuthService auth,
                               TicketService ticketService,
                               PaymentService paymentService,
                               LocalizationService loc,
-                              CardService cardService ) {
+                              CardService cardService,
+                              RecommendationService recommendations) {
         this.accounts = accounts;
         this.txService = txService;
         this.facade = facade;
@@ -75,6 +83,8 @@ public class InteractiveConsole {
         this.groupService = new GroupService(accounts);
         this.loc = loc;
         this.cardService=cardService;
+        this.csvExporter = new AuditCsvExporter(txService.getAuditLog(), Paths.get("reports"));
+        this.recommendations = recommendations;
     }
 
     public void start() {
@@ -181,7 +191,6 @@ public class InteractiveConsole {
             System.out.println("Owner name is required.");
             return;
         }
-        String nameKey = name.toLowerCase().trim();
 
         System.out.print("Initial amount (number): ");
         double initial;
@@ -193,9 +202,7 @@ public class InteractiveConsole {
         }
 
         // check owner name uniqueness
-        boolean nameExists = accounts.values().stream()
-                .anyMatch(a -> a.getName() != null && a.getName().trim().toLowerCase().equals(nameKey));
-        if (nameExists) {
+        if (accounts.ownerExists(name)) {
             System.out.println("Cannot create account: owner name already exists: " + name);
             return;
         }
@@ -235,9 +242,7 @@ public class InteractiveConsole {
             return;
         }
 
-        boolean nameConflictAfter = accounts.values().stream()
-                .filter(acc -> !acc.getId().equals(a.getId()))
-                .anyMatch(acc -> acc.getName() != null && acc.getName().trim().toLowerCase().equals(nameKey));
+        boolean nameConflictAfter = accounts.byOwner(name).size() > 1;
         if (nameConflictAfter) {
             accounts.remove(a.getId(), a);
             System.out.println("Cannot create account: owner name was taken concurrently: " + name);
@@ -247,25 +252,57 @@ public class InteractiveConsole {
         a.addObserver(emailNotifier);
         a.addObserver(smsNotifier);
 
+        Ledger ledger = txService.getLedger();
+        if (ledger != null) ledger.openAccount(a.getId(), AccountRegistry.typeOf(a), a.getName(), a.getBalanceMinor());
+        if (a instanceof LoanAccount) remember(a, AccountFactory.RATE, String.valueOf(((LoanAccount) a).getInterestRate()));
+        if (a instanceof InvestmentAccount) remember(a, AccountFactory.PORTFOLIO, ((InvestmentAccount) a).getPortfolioType());
+
         System.out.println("Created account: " + a.getId() + " (" + a.getName() + ")");
+        int resumed = txService.onAccountRegistered(a.getId());
+        if (resumed > 0) System.out.println("Resumed " + resumed + " stored recurring transaction(s) for " + a.getId());
     }
 
+    private static final int LIST_PAGE = 20;
+
     private void cmdListAccounts() {
-        // accounts table
+        // accounts table: sorted by id, one page at a time (no full copy/sort per listing)
         if (accounts == null || accounts.isEmpty()) {
             System.out.println("No accounts.");
         } else {
-            System.out.println("Accounts:");
-            System.out.printf("%-8s %-20s %-12s %-10s%n", "ID", "Owner", "Balance", "Status");
-            accounts.values().stream()
-                    .sorted(Comparator.comparing(Account::getId))
-                    .forEach(a -> {
-                        System.out.printf("%-8s %-20s %-12.2f %-10s%n",
-                                a.getId(),
-                                a.getName(),
-                                a.getBalance(),
-                                a.getStatusName());
-                    });
+            System.out.print("Accounts: " + accounts.size());
+            for (String st : accounts.statuses()) {
+                int n = accounts.countByStatus(st);
+                if (n > 0) System.out.print("  " + st + "=" + n);
+            }
+            System.out.println();
+            System.out.print("Filter (Enter = all, owner:<name>, status:<STATUS>, type:<Type>): ");
+            String filter = scanner.nextLine().trim();
+            String lastId = null;
+            int offset = 0;
+            while (true) {
+                List<Account> page;
+                if (filter.startsWith("owner:")) page = accounts.byOwner(filter.substring(6));
+                else if (filter.startsWith("status:")) page = accounts.byStatus(filter.substring(7).trim().toUpperCase(), offset, LIST_PAGE);
+                else if (filter.startsWith("type:")) page = accounts.byType(filter.substring(5).trim(), offset, LIST_PAGE);
+                else page = accounts.page(lastId, LIST_PAGE);
+                if (page.isEmpty()) {
+                    if (lastId == null && offset == 0) System.out.println("No matching accounts.");
+                    break;
+                }
+                System.out.printf("%-8s %-20s %-12s %-10s%n", "ID", "Owner", "Balance", "Status");
+                for (Account a : page) {
+                    System.out.printf("%-8s %-20s %-12.2f %-10s%n",
+                            a.getId(),
+                            a.getName(),
+                            a.getBalance(),
+                            a.getStatusName());
+                }
+                lastId = page.get(page.size() - 1).getId();
+                offset += page.size();
+                if (page.size() < LIST_PAGE || filter.startsWith("owner:")) break;
+                System.out.print("Enter = next page, q = stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) break;
+            }
         }
 
         System.out.println(); // separator
@@ -304,8 +341,7 @@ public class InteractiveConsole {
             System.out.print("Amount: ");
             double amt = Double.parseDouble(scanner.nextLine().trim());
             Transaction tx = new Transaction(Transaction.Type.DEPOSIT, null, to, amt);
-            boolean ok = facade.deposit(userId, tx);
-            System.out.println(ok ? "Deposit processed." : "Deposit failed.");
+            printSubmitted(facade.submitDeposit(userId, tx), "Deposit");
         } catch (Exception e) {
             System.out.println("Deposit error: " + e.getMessage());
         }
@@ -317,8 +353,7 @@ public class InteractiveConsole {
             System.out.print("Amount: ");
             double amt = Double.parseDouble(scanner.nextLine().trim());
             Transaction tx = new Transaction(Transaction.Type.WITHDRAW, from, null, amt);
-            boolean ok = facade.transfer(userId, tx);
-            System.out.println(ok ? "Withdrawal processed." : "Withdrawal failed.");
+            printSubmitted(facade.submit(userId, tx), "Withdrawal");
         } catch (Exception e) {
             System.out.println("Withdraw error: " + e.getMessage());
         }
@@ -332,13 +367,18 @@ public class InteractiveConsole {
             System.out.print("Amount: ");
             double amt = Double.parseDouble(scanner.nextLine().trim());
             Transaction tx = new Transaction(Transaction.Type.TRANSFER, from, to, amt);
-            boolean ok = facade.transfer(userId, tx);
-            System.out.println(ok ? "Transfer processed." : "Transfer failed.");
+            printSubmitted(facade.submit(userId, tx), "Transfer");
         } catch (Exception e) {
             System.out.println("Transfer error: " + e.getMessage());
         }
     }
 
+    private static void printSubmitted(PendingApproval p, String what) {
+        if (p == null) System.out.println(what + " failed.");
+        else if (p.isPending()) System.out.println(what + " waiting for manager approval (#" + p.getId() + "), funds held.");
+        else System.out.println(p.getStatus() == PendingApproval.Status.EXECUTED ? what + " processed." : what + " failed.");
+    }
+
     private void cmdScheduleRecurring(String userId) {
         try {
             System.out.println("Schedule recurring - choose accounts");
@@ -350,8 +390,12 @@ public class InteractiveConsole {
             long initial = Long.parseLong(scanner.nextLine().trim());
             System.out.print("Period (seconds): ");
             long period = Long.parseLong(scanner.nextLine().trim());
+            System.out.print("Runs missed while the bank is down: 1) run all 2) run latest only 3) skip [2]: ");
+            String p = scanner.nextLine().trim();
+            RecurringTransaction.CatchUpPolicy policy = "1".equals(p) ? RecurringTransaction.CatchUpPolicy.RUN_ALL
+                    : "3".equals(p) ? RecurringTransaction.CatchUpPolicy.SKIP : RecurringTransaction.CatchUpPolicy.RUN_LATEST;
 
-            RecurringTransaction rtx = new RecurringTransaction(Transaction.Type.TRANSFER, from, to, amt);
+            RecurringTransaction rtx = new RecurringTransaction(Transaction.Type.TRANSFER, from, to, amt, policy);
             facade.scheduleRecurring(userId, rtx, initial, period);
             System.out.println("Scheduled recurring transaction.");
         } catch (Exception e) {
@@ -360,17 +404,33 @@ public class InteractiveConsole {
     }
 
     private void cmdViewHistory() {
-        System.out.println("Transaction history:");
-        List<Transaction> history = txService.getHistory();
-        if (history == null || history.isEmpty()) {
+        // newest first, one page at a time (optionally one account's chain only)
+        TransactionHistory history = txService.getHistory();
+        System.out.println("Transaction history: " + history.size() + " kept"
+                + (history.dropped() > 0 ? ", " + history.dropped() + " older ones dropped by retention" : ""));
+        if (history.isEmpty()) {
             System.out.println(" - none -");
             return;
         }
-        for (Transaction t : history) {
-            System.out.printf("- %s %s -> %s : %.2f%n", t.getType(),
-                    t.getFrom() != null ? t.getFrom().getId() : "external",
-                    t.getTo() != null ? t.getTo().getId() : "external",
-                    t.getAmount());
+        System.out.print("Account id (Enter = all accounts): ");
+        String accountId = scanner.nextLine().trim();
+        long cursor = Long.MAX_VALUE;
+        while (true) {
+            TransactionHistory.Page page = accountId.isEmpty()
+                    ? history.recent(cursor, LIST_PAGE)
+                    : history.byAccount(accountId, cursor, LIST_PAGE);
+            if (page.isEmpty() && cursor == Long.MAX_VALUE) System.out.println(" - none -");
+            for (int i = 0; i < page.size(); i++) {
+                Transaction t = page.getItems().get(i);
+                System.out.printf("- %s %s %s -> %s : %s%n", Instant.ofEpochMilli(page.getTimeMillis(i)), t.getType(),
+                        t.getFrom() != null ? t.getFrom().getId() : "external",
+                        t.getTo() != null ? t.getTo().getId() : "external",
+                        Money.format(t.getAmountMinor()));
+            }
+            if (!page.hasMore()) break;
+            cursor = page.getNextCursor();
+            System.out.print("Enter = next page, q = stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) break;
         }
     }
 
@@ -402,6 +462,7 @@ public class InteractiveConsole {
                     double extra = Double.parseDouble(scanner.nextLine().trim());
                     Account wrapped1 = new OverdraftProtectionDecorator(target, extra);
                     accounts.put(wrapped1.getId(), wrapped1);
+                    rememberDecorator(target, "overdraft:" + extra);
                     System.out.println("Applied OverdraftProtection to " + wrapped1.getId());
                     break;
                 case "2":
@@ -409,6 +470,7 @@ public class InteractiveConsole {
                     double cover = Double.parseDouble(scanner.nextLine().trim());
                     Account wrapped2 = new InsuranceDecorator(target, cover);
                     accounts.put(wrapped2.getId(), wrapped2);
+                    rememberDecorator(target, "insurance:" + cover);
                     System.out.println("Applied Insurance to " + wrapped2.getId());
                     break;
                 default:
@@ -505,7 +567,7 @@ public class InteractiveConsole {
             // الحساب يتم عبر الاستراتيجية داخل الـgroup — نحصل على الخطة
             Map<Account, Double> plan = ag.getDepositStrategy().splitDeposit(children, total);
 
-            int success = 0, skippedStatus = 0, failedFacade = 0;
+            int success = 0, pending = 0, skippedStatus = 0, failedFacade = 0;
             for (Map.Entry<Account, Double> e : plan.entrySet()) {
                 Account a = e.getKey();
                 double amt = e.getValue();
@@ -520,8 +582,13 @@ public class InteractiveConsole {
                 }
 
                 Transaction tx = new Transaction(Transaction.Type.DEPOSIT, null, a, amt);
-                boolean ok = facade.deposit(userId, tx); // facade سيؤدي الفحص والـaudit
-                if (!ok) {
+                PendingApproval p = facade.submitDeposit(userId, tx); // facade سيؤدي الفحص والـaudit
+                if (p != null && p.isPending()) {
+                    System.out.printf("Deposit of %.2f to %s waiting for manager approval (#%d)%n", amt, a.getId(), p.getId());
+                    pending++;
+                    continue;
+                }
+                if (p == null || p.getStatus() != PendingApproval.Status.EXECUTED) {
                     System.out.println("Deposit failed for " + a.getId() + " (facade rejected).");
                     failedFacade++;
                     continue;
@@ -530,8 +597,8 @@ public class InteractiveConsole {
                 System.out.printf("Deposited %.2f to %s%n", amt, a.getId());
             }
 
-            System.out.printf("Result: deposited to %d/%d members in group %s. Skipped-status=%d, failed-facade=%d%n",
-                    success, children.size(), gid, skippedStatus, failedFacade);
+            System.out.printf("Result: deposited to %d/%d members in group %s. Pending-approval=%d, skipped-status=%d, failed-facade=%d%n",
+                    success, children.size(), gid, pending, skippedStatus, failedFacade);
 
         } catch (NumberFormatException ex) {
             System.out.println("Invalid number format.");
@@ -566,7 +633,7 @@ public class InteractiveConsole {
                 return;
             }
 
-            int success = 0, skippedStatus = 0, failedFacade = 0;
+            int success = 0, pending = 0, skippedStatus = 0, failedFacade = 0;
             for (Map.Entry<Account, Double> e : plan.entrySet()) {
                 Account a = e.getKey();
                 double amt = e.getValue();
@@ -580,8 +647,13 @@ public class InteractiveConsole {
                 }
 
                 Transaction tx = new Transaction(Transaction.Type.WITHDRAW, a, null, amt);
-                boolean ok = facade.transfer(userId, tx); // facade = auth + validation + process
-                if (!ok) {
+                PendingApproval p = facade.submit(userId, tx); // facade = auth + validation + process
+                if (p != null && p.isPending()) {
+                    System.out.printf("Withdrawal of %.2f from %s waiting for manager approval (#%d), funds held%n", amt, a.getId(), p.getId());
+                    pending++;
+                    continue;
+                }
+                if (p == null || p.getStatus() != PendingApproval.Status.EXECUTED) {
                     System.out.println("Withdraw failed for " + a.getId() + " (facade rejected).");
                     failedFacade++;
                     continue;
@@ -590,8 +662,8 @@ public class InteractiveConsole {
                 System.out.printf("Withdrew %.2f from %s%n", amt, a.getId());
             }
 
-            System.out.printf("Result: withdrew from %d/%d members in group %s. Skipped-status=%d, failed-facade=%d%n",
-                    success, children.size(), gid, skippedStatus, failedFacade);
+            System.out.printf("Result: withdrew from %d/%d members in group %s. Pending-approval=%d, skipped-status=%d, failed-facade=%d%n",
+                    success, children.size(), gid, pending, skippedStatus, failedFacade);
 
         } catch (NumberFormatException ex) {
             System.out.println("Invalid number format.");
@@ -614,20 +686,25 @@ public class InteractiveConsole {
             double pct = Double.parseDouble(scanner.nextLine().trim());
             if (pct <= 0) { System.out.println("Percent must be > 0"); return; }
 
-            int applied = 0;
+            int applied = 0, pending = 0;
             for (Account a : ag.getChildren()) {
                 if (a == null) continue;
                 if (!"ACTIVE".equalsIgnoreCase(a.getStatusName())) continue;
                 double add = Math.round(a.getBalance() * (pct / 100.0) * 100.0) / 100.0;
                 if (add <= 0) continue;
                 Transaction tx = new Transaction(Transaction.Type.DEPOSIT, null, a, add);
-                boolean ok = facade.deposit(userId, tx);
-                if (ok) {
+                PendingApproval p = facade.submitDeposit(userId, tx);
+                if (p == null) continue;
+                if (p.isPending()) {
+                    pending++;
+                    System.out.printf("Interest %.2f to %s waiting for manager approval (#%d)%n", add, a.getId(), p.getId());
+                } else if (p.getStatus() == PendingApproval.Status.EXECUTED) {
                     applied++;
                     System.out.printf("Applied %.2f to %s%n", add, a.getId());
                 }
             }
-            System.out.println("Applied interest to " + applied + " children where applicable.");
+            System.out.println("Applied interest to " + applied + " children where applicable"
+                    + (pending > 0 ? ", " + pending + " waiting for manager approval." : "."));
         } catch (NumberFormatException ex) {
             System.out.println("Invalid number format.");
         } catch (Exception ex) {
@@ -654,6 +731,11 @@ public class InteractiveConsole {
             System.out.println("3) View audit (prints audit summary)");
             System.out.println("4) Export audit CSV");
             System.out.println("5) Card management (issue/block/unblock/cancel/list)");
+            System.out.println("6) Query audit (account / action / days)");
+            System.out.println("7) Pending approvals (" + txService.getPendingApprovals().size() + ")");
+            System.out.println("8) Payment gateways");
+            System.out.println("9) Ledger");
+            System.out.println("10) Recommendations (bulk run, by account / rule)");
             System.out.println("0) Back");
             System.out.print("> ");
             String choice = scanner.nextLine().trim();
@@ -672,6 +754,21 @@ public class InteractiveConsole {
                     break;
                 case "5":
                     cmdListTickets(); break;
+                case "6":
+                    cmdQueryAudit();
+                    break;
+                case "7":
+                    cmdPendingApprovals();
+                    break;
+                case "8":
+                    cmdPaymentGateways();
+                    break;
+                case "9":
+                    cmdLedger();
+                    break;
+                case "10":
+                    cmdRecommendations();
+                    break;
 
                 case "0":
                     back = true;
@@ -683,6 +780,92 @@ public class InteractiveConsole {
         }
     }
 
+    private void cmdPaymentGateways() {
+        PaymentGateway gateway = paymentService.getGateway();
+        System.out.println("Execution mode: " + paymentService.getMode() + ", open transfers: " + paymentService.openTransfers());
+        if (!(gateway instanceof RoutingPaymentGateway)) {
+            System.out.println("Single gateway: " + gateway.getClass().getSimpleName());
+            return;
+        }
+        RoutingPaymentGateway router = (RoutingPaymentGateway) gateway;
+        System.out.printf("Routed=%d retries=%d hedges=%d unroutable=%d%n",
+                router.routedCount(), router.retryCount(), router.hedgeCount(), router.unroutableCount());
+        for (RoutingPaymentGateway.Route r : router.getRoutes()) {
+            System.out.println("  " + r.summary());
+        }
+    }
+
+    // ledger state + accounts whose balance differs from the ledger's projection
+    private void cmdLedger() {
+        Ledger ledger = txService.getLedger();
+        if (ledger == null) {
+            System.out.println("No ledger attached: balances live on the account objects only.");
+            return;
+        }
+        System.out.printf("Entries=%d accounts=%d trial balance=%s snapshot at=%d%n",
+                ledger.entries(), ledger.accountCount(), Money.format(ledger.trialBalance()), ledger.snapshotEntries());
+        System.out.printf("Last open: replayed %d entries after the snapshot in %d ms%n",
+                ledger.replayedOnOpen(), ledger.recoveryMillis());
+        int drift = 0;
+        for (Account a : accounts.values()) {
+            long projected = ledger.balanceMinor(a.getId());
+            if (projected == a.getBalanceMinor()) continue;
+            if (drift++ < 10) {
+                System.out.println("  " + a.getId() + ": account " + Money.format(a.getBalanceMinor())
+                        + " vs ledger " + Money.format(projected));
+            }
+        }
+        System.out.println(drift == 0 ? "All account balances match the ledger." : drift + " account(s) differ from the ledger.");
+        System.out.print("Write a snapshot now? (y/N): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            ledger.snapshot();
+            System.out.println("Snapshot covers " + ledger.snapshotEntries() + " entries.");
+        }
+    }
+
+    private void cmdRecommendations() {
+        RecommendationStore store = recommendations.latest();
+        if (store == null) {
+            System.out.println("No bulk run yet (runs nightly at 02:00).");
+        } else {
+            System.out.printf("Last bulk run: %s, %d accounts in %d ms%n",
+                    Instant.ofEpochMilli(store.getStartedMillis()), store.accountsScanned(), store.getDurationMillis());
+            for (RecommendationRule r : store.getRules()) System.out.printf("  %-20s %d%n", r.getCode(), store.count(r.getCode()));
+        }
+        System.out.print("Account id, rule code to list its accounts, r = run now (Enter = back): ");
+        String in = scanner.nextLine().trim();
+        if (in.isEmpty()) return;
+        if (in.equalsIgnoreCase("r")) {
+            store = recommendations.runBulk(accounts);
+            System.out.printf("Scanned %d accounts in %d ms.%n", store.accountsScanned(), store.getDurationMillis());
+            return;
+        }
+        if (store != null && store.getRules().stream().anyMatch(r -> r.getCode().equalsIgnoreCase(in))) {
+            String code = in.toUpperCase();
+            int after = -1;
+            while (true) {
+                List<Account> page = store.accountsWith(code, after, LIST_PAGE);
+                for (Account a : page) System.out.printf("%-8s %-20s %s%n", a.getId(), a.getName(), Money.format(a.getBalanceMinor()));
+                if (page.size() < LIST_PAGE) break;
+                after = accounts.handleOf(page.get(page.size() - 1).getId());
+                System.out.print("Enter = next page, q = stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) break;
+            }
+            return;
+        }
+        Account a = accounts.get(in);
+        if (a == null) { System.out.println("No such account or rule."); return; }
+        SpendingAggregator.Spending s = recommendations.getSpending().spending(in, System.currentTimeMillis());
+        for (SpendingAggregator.Window w : SpendingAggregator.Window.values()) {
+            System.out.printf("%-3d day(s): out %s (recurring %s), in %s%n", w.getDays(),
+                    Money.format(s.outgoingMinor(w)), Money.format(s.recurringMinor(w)), Money.format(s.incomingMinor(w)));
+        }
+        if (store != null) System.out.println("Last bulk run: " + (store.forAccount(in).isEmpty() ? "no advice" : String.join(" | ", store.forAccount(in))));
+        List<String> recs = recommendations.analyze(a);
+        if (recs.isEmpty()) System.out.println("No recommendations now.");
+        recs.forEach(r -> System.out.println("- " + r));
+    }
+
     private void cmdChangeAccountStatus() {
         try {
             Account a = pickAccount("Account id");
@@ -707,6 +890,7 @@ public class InteractiveConsole {
                     System.out.println("Unknown option");
                     return;
             }
+            remember(a, AccountFactory.STATUS, a.getStatusName());
             // notify and audit-like print
             try {
                 a.notifyObservers("status_change", "Status changed to " + a.getStatusName());
@@ -718,13 +902,29 @@ public class InteractiveConsole {
         }
     }
 
+    // keep a change to an account in the ledger's dictionary so it survives a restart (groups are not in the ledger)
+    private void remember(Account a, String key, String value) {
+        Ledger ledger = txService.getLedger();
+        if (ledger != null && ledger.knows(a.getId())) ledger.updateAccount(a.getId(), key, value);
+    }
+
+    private void rememberDecorator(Account a, String decorator) {
+        Ledger ledger = txService.getLedger();
+        if (ledger == null || !ledger.knows(a.getId())) return;
+        String before = ledger.attribute(a.getId(), AccountFactory.DECORATORS);
+        ledger.updateAccount(a.getId(), AccountFactory.DECORATORS, before == null ? decorator : before + "," + decorator);
+    }
+
     private void cmdPrintAuditSummary() {
         try {
-            System.out.println("=== DASHBOARD SUMMARY ===");
-            System.out.println("Transactions total: " + txService.getHistory().size());
             AuditLog audit = txService.getAuditLog();
             if (audit == null) { System.out.println("Audit log not available."); return; }
-            System.out.println("Audit entries: " + audit.entriesCount());
+            audit.flush(); // include records still in the ring buffer
+            new DashboardService(txService.getMetrics(), txService.getHistory(), audit).printSummary();
+            var recurring = txService.getRecurringScheduler();
+            System.out.printf("Recurring: %d scheduled, %d runs, lag avg %.1f ms / max %d ms, wheel behind %d ms%n",
+                    recurring.scheduledCount(), recurring.firedCount(), recurring.averageLagMillis(),
+                    recurring.maxLagMillis(), recurring.currentLagMillis());
             System.out.println("=== Daily Audit Log ===");
             audit.printRecent(10);
         } catch (Exception e) {
@@ -734,6 +934,83 @@ public class InteractiveConsole {
 
 
 
+    // filters left empty are ignored; action ending with '*' is a prefix (e.g. SKIPPED_*)
+    private void cmdQueryAudit() {
+        try {
+            AuditLog audit = txService.getAuditLog();
+            if (audit == null) { System.out.println("Audit log not available."); return; }
+            audit.flush();
+            AuditQuery q = new AuditQuery().newestFirst().limit(20);
+            System.out.print("Account id (empty = any): ");
+            String acc = scanner.nextLine().trim();
+            if (!acc.isEmpty()) q.account(acc);
+            System.out.print("Action (e.g. EXECUTED or SKIPPED_*, empty = any): ");
+            String action = scanner.nextLine().trim();
+            if (action.endsWith("*")) q.actionPrefix(action.substring(0, action.length() - 1));
+            else if (!action.isEmpty()) q.action(action);
+            System.out.print("Last N days (empty = all): ");
+            String days = scanner.nextLine().trim();
+            if (!days.isEmpty()) q.from(java.time.Instant.now().minus(java.time.Duration.ofDays(Long.parseLong(days))));
+            int page = 0;
+            while (true) {
+                List<AuditLog.Entry> rows = audit.query(q.offset(page * 20));
+                if (rows.isEmpty()) { System.out.println(page == 0 ? "No matching entries." : "No more entries."); return; }
+                rows.forEach(System.out::println);
+                if (rows.size() < 20) return;
+                System.out.print("More? (y/N): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) return;
+                page++;
+            }
+        } catch (Exception e) {
+            System.out.println("Audit query error: " + e.getMessage());
+        }
+    }
+
+    // ids: space/comma separated, ranges allowed (e.g. "3 5 10-20"); "all" = every pending item
+    private void cmdPendingApprovals() {
+        try {
+            PendingApprovalQueue queue = txService.getPendingApprovals();
+            System.out.printf("%d pending, %s held%n", queue.size(), Money.format(queue.heldMinor()));
+            List<PendingApproval> page = queue.list(0, 20);
+            page.forEach(System.out::println);
+            if (queue.size() > page.size()) System.out.println("... " + (queue.size() - page.size()) + " more");
+            if (page.isEmpty()) return;
+            System.out.println("1) Approve  2) Reject  0) Back");
+            System.out.print("> ");
+            String choice = scanner.nextLine().trim();
+            if (!choice.equals("1") && !choice.equals("2")) return;
+            System.out.print("Ids (e.g. 3 5 10-20, or all): ");
+            String ids = scanner.nextLine().trim();
+            boolean all = ids.equalsIgnoreCase("all");
+            if (choice.equals("1")) {
+                int n = all ? txService.approveAllPending() : txService.approvePending(parseIds(ids));
+                System.out.println("Approved and executed: " + n);
+            } else {
+                System.out.print("Reason: ");
+                String reason = scanner.nextLine().trim();
+                int n = all ? txService.rejectAllPending(reason) : txService.rejectPending(parseIds(ids), reason);
+                System.out.println("Rejected: " + n);
+            }
+        } catch (Exception e) {
+            System.out.println("Pending approvals error: " + e.getMessage());
+        }
+    }
+
+    private static List<Long> parseIds(String s) {
+        List<Long> ids = new ArrayList<>();
+        for (String part : s.split("[,\\s]+")) {
+            if (part.isEmpty()) continue;
+            int dash = part.indexOf('-');
+            if (dash > 0) {
+                long lo = Long.parseLong(part.substring(0, dash)), hi = Long.parseLong(part.substring(dash + 1));
+                for (long id = lo; id <= hi; id++) ids.add(id);
+            } else {
+                ids.add(Long.parseLong(part));
+            }
+        }
+        return ids;
+    }
+
     /* -------------------------
        External transfer (demo)
        ------------------------- */
@@ -760,67 +1037,39 @@ public class InteractiveConsole {
                 return;
             }
 
-            System.out.println("Method: 1) PayPal  2) SWIFT");
-            System.out.print("Choose method (1/2): ");
-            String m = scanner.nextLine().trim();
+            // a repeated reference is not paid twice (the first transfer's result is reported)
+            System.out.print("Payment reference (optional): ");
+            String reference = scanner.nextLine().trim();
 
-            // 1) withdraw internally first (go through facade => auth + txService)
-            Transaction withdrawTx = new Transaction(Transaction.Type.WITHDRAW, from, null, amt);
-            boolean wOk = facade.transfer(userId, withdrawTx);
-            if (!wOk) {
-                System.out.println("Internal withdrawal failed. Aborting external transfer.");
-                return;
-            }
-
-            // 2) Build external transaction (from -> external wrapper) for audit and gateway
+            // 1) Build external transaction (from -> external wrapper) for audit and gateway
             ExternalAccount toWrapper = new ExternalAccount(toInput, toInput);
             Transaction externalTx = new Transaction(Transaction.Type.TRANSFER, from, toWrapper, amt);
+            if (!reference.isEmpty()) externalTx = externalTx.withIdempotencyKey(from.getId() + ":" + reference);
 
-            // 3) Record scheduled state in audit and notify owner
-            txService.getAuditLog().record(externalTx, "EXTERNAL_SCHEDULED");
-            try { from.notifyObservers("external", "External transfer scheduled to " + toInput + " amount " + amt); } catch (Exception ignored) {}
-
-            // 4) choose gateway adapter instance (you may want to centralize this)
-            PaymentGateway gateway = ("2".equals(m)) ? new SWIFTAdapter(new SWIFTApi()) : new PayPalAdapter(new PayPalApi());
-            // If paymentService was configured for a specific gateway at startup, you could route there.
-            // For demo we use existing paymentService which was created with a gateway. If you need per-method gateway,
-            // create a lightweight PaymentService wrapper or expose an API to select gateway. Here we'll call paymentService.async.
-
-            // call async transfer (paymentService built with a gateway earlier)
-            CompletableFuture<Boolean> fut = paymentService.processExternalTransferAsync(externalTx);
-
-            // 5) callback: on success mark EXTERNAL_EXECUTED; on failure try refund and mark EXTERNAL_FAILED
-            fut.whenComplete((success, ex) -> {
-                if (ex != null) {
-                    // gateway threw exception
-                    txService.getAuditLog().record(externalTx, "EXTERNAL_FAILED: " + ex.getMessage());
-                    System.out.println("[Async] External transfer error: " + ex.getMessage());
-                    // attempt refund
-                    try {
-                        Transaction refund = new Transaction(Transaction.Type.DEPOSIT, null, from, amt);
-                        txService.process(refund);
-                        txService.getAuditLog().record(externalTx, "REFUNDED_AFTER_FAILURE");
-                    } catch (Exception refundEx) {
-                        txService.getAuditLog().record(externalTx, "REFUND_FAILED: " + refundEx.getMessage());
-                    }
+            // 2) the payment gateway picks the rail; show which ones can carry this destination
+            if (paymentService.getGateway() instanceof RoutingPaymentGateway) {
+                List<String> rails = ((RoutingPaymentGateway) paymentService.getGateway()).eligibleRoutes(externalTx);
+                if (rails.isEmpty()) {
+                    System.out.println("No payment rail can reach " + toInput);
                     return;
                 }
+                System.out.println("Eligible rails (fastest first): " + String.join(", ", rails));
+            }
 
-                if (Boolean.TRUE.equals(success)) {
-                    txService.getAuditLog().record(externalTx, "EXTERNAL_EXECUTED");
+            // 3) hold the funds and start the transfer scope; the facade commits or releases the hold,
+            //    audits, then runs this handler (same thread as the gateway call in PLATFORM/VIRTUAL mode)
+            TransferScope scope = facade.externalTransferAsync(userId, externalTx, (success, ex) -> {
+                if (success) {
                     try { from.notifyObservers("external", "External transfer to " + toInput + " completed."); } catch (Exception ignored) {}
                 } else {
-                    txService.getAuditLog().record(externalTx, "EXTERNAL_FAILED");
-                    // refund
-                    try {
-                        Transaction refund = new Transaction(Transaction.Type.DEPOSIT, null, from, amt);
-                        txService.process(refund);
-                        txService.getAuditLog().record(externalTx, "REFUNDED_AFTER_FAILURE");
-                    } catch (Exception refundEx) {
-                        txService.getAuditLog().record(externalTx, "REFUND_FAILED: " + refundEx.getMessage());
-                    }
+                    System.out.println("[Async] External transfer to " + toInput + " failed; held funds released.");
                 }
             });
+            if (scope == null) {
+                System.out.println("External transfer failed (see audit).");
+                return;
+            }
+            try { from.notifyObservers("external", "External transfer scheduled to " + toInput + " amount " + amt); } catch (Exception ignored) {}
 
             System.out.println("External transfer scheduled (async). You'll be notified when it completes.");
         } catch (Exception e) {
@@ -835,55 +1084,26 @@ public class InteractiveConsole {
                 return;
             }
 
-            List<transactions.AuditLog.Entry> entries = audit.getEntries();
-            if (entries == null || entries.isEmpty()) {
+            audit.flush(); // include records still in the ring buffer
+            if (audit.entriesCount() == 0) {
                 System.out.println("No audit entries to export.");
                 return;
             }
+            System.out.print("Compress with gzip? (y/N): ");
+            boolean gzip = scanner.nextLine().trim().equalsIgnoreCase("y");
 
-            Path dir = Paths.get("reports");
-            Files.createDirectories(dir);
-
-            String fname = "audit-" + DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")
-                    .format(LocalDateTime.now()) + ".csv";
-            Path out = dir.resolve(fname);
-
-            try (BufferedWriter w = Files.newBufferedWriter(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                w.write("timestamp,action,from,to,amount,note");
-                w.newLine();
-                for (transactions.AuditLog.Entry e : entries) {
-                    String ts = e.getTimestamp() != null ? e.getTimestamp().toString() : "";
-                    String action = safe(e.getAction());
-                    String from = safe(e.getFrom());
-                    String to = safe(e.getTo());
-                    String amount = String.format("%.2f", e.getAmount());
-                    String note = safe(e.getNote());
-
-                    // escape quotes and wrap fields that may contain comma
-                    w.write(escapeCsv(ts) + "," + escapeCsv(action) + "," + escapeCsv(from) + "," + escapeCsv(to) + "," + amount + "," + escapeCsv(note));
-                    w.newLine();
-                }
+            // appends only the entries recorded since the previous export
+            AuditCsvExporter.Result r = csvExporter.exportIncremental("audit", gzip);
+            if (r.getRows() == 0) {
+                System.out.println("Nothing new since the last export (" + r.getFile().toAbsolutePath() + ").");
+                return;
             }
-
-            System.out.println("Exported audit CSV to: " + out.toAbsolutePath());
+            System.out.println("Exported " + r.getRows() + " new audit entries to: " + r.getFile().toAbsolutePath());
         } catch (Exception ex) {
             System.out.println("Export failed: " + ex.getMessage());
         }
     }
 
-    private static String safe(String s) {
-        return s == null ? "" : s;
-    }
-
-    private static String escapeCsv(String s) {
-        if (s == null) return "";
-        String out = s.replace("\"", "\"\"");
-        if (out.contains(",") || out.contains("\"") || out.contains("\n") || out.contains("\r")) {
-            return "\"" + out + "\"";
-        }
-        return out;
-    }
-
     private void cmdListTickets() {
         System.out.println("=== Card Requests (Tickets) ===");
         var list = ticketService.listOpen();
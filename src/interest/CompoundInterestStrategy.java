@@ -1,7 +1,7 @@
 package interest;
 
-import accounts.Account;
 import accounts.SavingsAccount;
+import util.Money;
 
 public class CompoundInterestStrategy implements InterestStrategy {
     private final double yearlyRate;
@@ -13,10 +13,18 @@ public class CompoundInterestStrategy implements InterestStrategy {
 
 
     @Override
-    public double computeInterest(SavingsAccount account, int months) {
-        double principal = account.getBalance();
-        double n = compoundsPerYear;
-        double t = months / 12.0;
-        return principal * (Math.pow(1 + yearlyRate/100.0 / n, n*t) - 1);
+    public long computeInterestMinor(SavingsAccount account, int months) {
+        // compound period by period in cents, rounding each credit like a real posting would
+        long principal = account.getBalanceMinor();
+        long balance = principal;
+        double periodRate = yearlyRate / compoundsPerYear;
+        long periods = (long) compoundsPerYear * months / 12;
+        for (long p = 0; p < periods; p++) {
+            balance += Money.percentOf(balance, periodRate);
+        }
+        // partial last period (e.g. 5 months with quarterly compounding) accrues simple interest
+        double fraction = compoundsPerYear * months / 12.0 - periods;
+        if (fraction > 0) balance += Money.percentOf(balance, periodRate * fraction);
+        return balance - principal;
     }
 }
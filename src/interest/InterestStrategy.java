@@ -1,8 +1,13 @@
 package interest;
 
 import accounts.SavingsAccount;
-import accounts.Account;
+import util.Money;
 
 public interface InterestStrategy {
-    double computeInterest(SavingsAccount account, int months);
+    // interest in minor units (cents), rounded by the strategy's own rules
+    long computeInterestMinor(SavingsAccount account, int months);
+
+    default double computeInterest(SavingsAccount account, int months) {
+        return Money.toMajor(computeInterestMinor(account, months));
+    }
 }
@@ -1,7 +1,7 @@
 package interest;
 
-import accounts.Account;
 import accounts.SavingsAccount;
+import util.Money;
 
 public class SimpleInterestStrategy implements InterestStrategy {
     private final double yearlyRate;
@@ -10,8 +10,8 @@ public class SimpleInterestStrategy implements InterestStrategy {
 
 
     @Override
-    public double computeInterest(SavingsAccount account, int months) {
-        double principal = account.getBalance();
-        return principal * (yearlyRate/100.0) * (months / 12.0);
+    public long computeInterestMinor(SavingsAccount account, int months) {
+        long principal = account.getBalanceMinor();
+        return Money.percentOf(principal, yearlyRate * (months / 12.0));
     }
 }
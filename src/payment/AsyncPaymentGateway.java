@@ -0,0 +1,16 @@
+package payment;
+
+import transactions.Transaction;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking gateway SPI: processAsync returns at once, the stage completes when the provider answers.
+ * - no caller thread is parked while the payment is in flight
+ * - cancel via toCompletableFuture().cancel(...): implementations should drop the pending call
+ * - in-flight limits and deadlines: wrap in BoundedAsyncGateway
+ */
+public interface AsyncPaymentGateway {
+    /** completes with true if the provider accepted the payment */
+    CompletionStage<Boolean> processAsync(Transaction tx);
+}
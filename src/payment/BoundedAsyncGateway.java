@@ -0,0 +1,184 @@
+package payment;
+
+import transactions.Transaction;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-gateway admission control around an AsyncPaymentGateway.
+ * - at most maxInFlight calls are outstanding at the provider; the next maxQueued wait in a FIFO
+ *   queue (no thread waits with them), anything beyond is rejected (RejectedExecutionException)
+ * - a permit is given back when the provider's stage completes, and the next queued call starts
+ * - deadline per call: a call still queued when it passes fails with RejectedExecutionException (it
+ *   never reached the provider); one already sent fails with TimeoutException (outcome unknown) and
+ *   the provider call is cancelled
+ * - cancelling the returned future drops a queued call or cancels the in-flight one
+ * - also a blocking PaymentGateway (process joins), so it can stand in for the old adapters; there a
+ *   timeout is thrown as TransferOutcomeUnknownException, never read as a decline
+ */
+public class BoundedAsyncGateway implements AsyncPaymentGateway, PaymentGateway {
+    private final AsyncPaymentGateway delegate;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final long timeoutMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Call> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainWip = new AtomicInteger(); // drain() runs on one thread at a time, no recursion
+
+    // metrics
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private static final int QUEUED = 0, SENT = 1, EXPIRED = 2;
+
+    private static final class Call {
+        final Transaction tx;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        volatile CompletableFuture<Boolean> upstream;
+
+        Call(Transaction tx) { this.tx = tx; }
+    }
+
+    /** timeoutMillis <= 0: no deadline */
+    public BoundedAsyncGateway(AsyncPaymentGateway delegate, int maxInFlight, int maxQueued, long timeoutMillis) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight>0");
+        if (maxQueued < 0) throw new IllegalArgumentException("maxQueued>=0");
+        this.delegate = delegate;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> processAsync(Transaction tx) {
+        return processAsync(tx, timeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> processAsync(Transaction tx, long deadlineMillis) {
+        Call c = new Call(tx);
+        if (deadlineMillis > 0) {
+            // a timer of its own, cancelled with the call: the error depends on whether it was sent
+            CompletableFuture<Void> deadline = new CompletableFuture<Void>().orTimeout(deadlineMillis, TimeUnit.MILLISECONDS);
+            deadline.whenComplete((v, ex) -> { if (ex != null) expire(c, deadlineMillis); });
+            c.result.whenComplete((ok, ex) -> deadline.complete(null));
+        }
+        c.result.whenComplete((ok, ex) -> {
+            // timed out / cancelled by the caller: stop the provider call too
+            CompletableFuture<Boolean> up = c.upstream;
+            if (ex != null && up != null && !up.isDone()) up.cancel(true);
+        });
+        if (tryAcquire()) {
+            start(c);
+        } else if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            c.result.completeExceptionally(new RejectedExecutionException("Gateway saturated: " + maxInFlight + " in flight, " + maxQueued + " queued"));
+        } else {
+            queue.add(c);
+            drain(); // a permit may have come back between tryAcquire and add
+        }
+        return c.result;
+    }
+
+    private void expire(Call c, long deadlineMillis) {
+        timedOut.increment();
+        if (c.state.compareAndSet(QUEUED, EXPIRED)) {
+            c.result.completeExceptionally(new RejectedExecutionException("Deadline of " + deadlineMillis + " ms passed while queued"));
+        } else {
+            c.result.completeExceptionally(new TimeoutException("No answer from the provider within " + deadlineMillis + " ms"));
+        }
+    }
+
+    @Override
+    public boolean process(Transaction tx) {
+        try {
+            return processAsync(tx).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new TransferOutcomeUnknownException("Payment timed out at the provider", e.getCause());
+            }
+            return false;
+        } catch (CancellationException e) {
+            return false;
+        }
+    }
+
+    private boolean tryAcquire() {
+        for (;;) {
+            int n = inFlight.get();
+            if (n >= maxInFlight) return false;
+            if (inFlight.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    // caller holds a permit
+    private void start(Call c) {
+        if (!c.state.compareAndSet(QUEUED, SENT) || c.result.isDone()) { // cancelled or timed out while queued
+            release();
+            return;
+        }
+        CompletableFuture<Boolean> up;
+        try {
+            up = delegate.processAsync(c.tx).toCompletableFuture();
+        } catch (RuntimeException e) {
+            up = CompletableFuture.failedFuture(e);
+        }
+        c.upstream = up;
+        if (c.result.isDone()) up.cancel(true); // lost a race with the deadline / caller
+        up.whenComplete((ok, ex) -> {
+            release();
+            if (ex != null) {
+                failed.increment();
+                c.result.completeExceptionally(ex);
+            } else {
+                if (Boolean.TRUE.equals(ok)) succeeded.increment(); else failed.increment();
+                c.result.complete(ok);
+            }
+        });
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    // start queued calls while permits are free; re-entrant calls (a provider that answers
+    // synchronously) only bump drainWip and let the outer loop continue
+    private void drain() {
+        if (drainWip.getAndIncrement() != 0) return;
+        do {
+            while (!queue.isEmpty() && tryAcquire()) {
+                Call next = queue.poll();
+                if (next == null) {
+                    inFlight.decrementAndGet();
+                    break;
+                }
+                queued.decrementAndGet();
+                start(next);
+            }
+        } while (drainWip.decrementAndGet() != 0);
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    public int inFlight() { return inFlight.get(); }
+    public int queued() { return queued.get(); }
+    public int maxInFlight() { return maxInFlight; }
+    public long succeededCount() { return succeeded.sum(); }
+    public long failedCount() { return failed.sum(); }
+    public long timedOutCount() { return timedOut.sum(); }
+    public long rejectedCount() { return rejected.sum(); }
+}
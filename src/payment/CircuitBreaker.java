@@ -0,0 +1,90 @@
+package payment;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-gateway circuit breaker.
+ * - CLOSED: calls flow; opens after failureThreshold consecutive failures, or when the recent error
+ *   rate (exponentially weighted, ~last 20 calls) exceeds maxErrorRate once minCalls were seen
+ * - OPEN: no calls for openMillis
+ * - HALF_OPEN: one probe call at a time; success closes the breaker, failure opens it again
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final double ALPHA = 0.05; // error-rate EWMA weight (~20-call memory)
+
+    private final int failureThreshold;
+    private final double maxErrorRate;
+    private final int minCalls;
+    private final long openMillis;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile double errorRate;
+
+    public CircuitBreaker(int failureThreshold, double maxErrorRate, int minCalls, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.maxErrorRate = maxErrorRate;
+        this.minCalls = minCalls;
+        this.openMillis = openMillis;
+    }
+
+    public CircuitBreaker() {
+        this(5, 0.5, 20, 5_000);
+    }
+
+    /** may a call go through now? In HALF_OPEN the caller that gets true owns the probe. */
+    public boolean tryAcquire(long nowMillis) {
+        State s = state;
+        if (s == State.CLOSED) return true;
+        if (s == State.OPEN) {
+            if (nowMillis - openedAt < openMillis) return false;
+            state = State.HALF_OPEN;
+        }
+        return probing.compareAndSet(false, true);
+    }
+
+    /** cheaper check for routing: would tryAcquire possibly say yes? */
+    public boolean isCallPermitted(long nowMillis) {
+        State s = state;
+        if (s == State.CLOSED) return true;
+        if (s == State.OPEN) return nowMillis - openedAt >= openMillis;
+        return !probing.get();
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures.set(0);
+        calls.incrementAndGet();
+        errorRate = errorRate * (1 - ALPHA);
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            errorRate = 0;
+            calls.set(0);
+        }
+        probing.set(false);
+    }
+
+    public synchronized void onFailure(long nowMillis) {
+        int failures = consecutiveFailures.incrementAndGet();
+        int n = calls.incrementAndGet();
+        errorRate = errorRate * (1 - ALPHA) + ALPHA;
+        if (state == State.HALF_OPEN || failures >= failureThreshold || (n >= minCalls && errorRate > maxErrorRate)) {
+            state = State.OPEN;
+            openedAt = nowMillis;
+        }
+        probing.set(false);
+    }
+
+    /** the probe call ended without an answer about the provider (cancelled, rejected locally) */
+    public void releaseProbe() {
+        probing.set(false);
+    }
+
+    public State getState() { return state; }
+    public double getErrorRate() { return errorRate; }
+}
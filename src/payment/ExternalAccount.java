@@ -1,9 +1,11 @@
 package payment;
 
 import accounts.Account;
+import accounts.BalanceCell;
 import accounts.state.AccountStatus;
 import accounts.state.ActiveState;
 import notifications.NotificationObserver;
+import util.Money;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,7 +13,7 @@ import java.util.List;
 public class ExternalAccount implements Account {
     private final String id;
     private final String name;
-    private double balance = 0.0;
+    private final BalanceCell balance = new BalanceCell(0L, Long.MIN_VALUE); // external side: no floor
     private final List<NotificationObserver> observers = new ArrayList<>();
     private AccountStatus status = new ActiveState();
 
@@ -23,23 +25,24 @@ public class ExternalAccount implements Account {
 
     @Override public String getId() { return id; }
     @Override public String getName() { return name; }
-    @Override public double getBalance() { return balance; }
+    @Override public double getBalance() { return balance.get(); }
+    @Override public long getBalanceMinor() { return balance.getMinor(); }
 
     @Override public void deposit(double amount) { depositInternal(amount); }
     @Override public void withdraw(double amount) { withdrawInternal(amount); }
 
     @Override public void depositInternal(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Amount>0");
-        double old = balance;
-        balance += amount;
-        notifyObservers("deposit", String.format("Deposit %.2f (old: %.2f -> new: %.2f)", amount, old, balance));
+        long delta = Money.ofMajor(amount);
+        long old = balance.credit(delta);
+        notifyObservers("deposit", Money.movement("Deposit", delta, old, old + delta));
     }
 
     @Override public void withdrawInternal(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Amount>0");
-        double old = balance;
-        balance -= amount;
-        notifyObservers("withdraw", String.format("Withdraw %.2f (old: %.2f -> new: %.2f)", amount, old, balance));
+        long delta = Money.ofMajor(amount);
+        long old = balance.add(-delta);
+        notifyObservers("withdraw", Money.movement("Withdraw", delta, old, old - delta));
     }
 
     @Override public void addObserver(NotificationObserver observer) { if (!observers.contains(observer)) observers.add(observer); }
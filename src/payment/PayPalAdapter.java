@@ -2,7 +2,9 @@ package payment;
 
 import transactions.Transaction;
 
-public class PayPalAdapter implements PaymentGateway {
+import java.util.concurrent.CompletionStage;
+
+public class PayPalAdapter implements PaymentGateway, AsyncPaymentGateway {
     private final PayPalApi api;
 
     public PayPalAdapter(PayPalApi api){
@@ -12,9 +14,20 @@ public class PayPalAdapter implements PaymentGateway {
     @Override
     public boolean process(Transaction tx) {
         // adapt Transaction to PayPal API
-        String from = tx.getFrom() != null ? tx.getFrom().getId() : "external";
-        String to = tx.getTo() != null ? tx.getTo().getId() : "external";
-        long cents = Math.round(tx.getAmount() * 100.0);
-        return api.sendPayment(from, to, cents);
+        // Transaction already carries fixed-point cents
+        return api.sendPayment(from(tx), to(tx), tx.getAmountMinor());
+    }
+
+    @Override
+    public CompletionStage<Boolean> processAsync(Transaction tx) {
+        return api.sendPaymentAsync(from(tx), to(tx), tx.getAmountMinor());
+    }
+
+    private static String from(Transaction tx) {
+        return tx.getFrom() != null ? tx.getFrom().getId() : "external";
+    }
+
+    private static String to(Transaction tx) {
+        return tx.getTo() != null ? tx.getTo().getId() : "external";
     }
 }
@@ -1,5 +1,7 @@
 package payment;
 
+import java.util.concurrent.CompletableFuture;
+
 public class PayPalApi {
 
     // هذا مجرد تمثيل لوظيفة خارجية (Legacy/External System)
@@ -8,4 +10,9 @@ public class PayPalApi {
                 + fromAccount + " to " + toAccount);
         return true; // دائماً ناجح لأغراض تجريب الـAdapter
     }
+
+    // non-blocking entry point; the demo endpoint answers immediately
+    public CompletableFuture<Boolean> sendPaymentAsync(String fromAccount, String toAccount, long amountCents) {
+        return CompletableFuture.completedFuture(sendPayment(fromAccount, toAccount, amountCents));
+    }
 }
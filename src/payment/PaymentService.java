@@ -1,38 +1,285 @@
 // file: payment/PaymentService.java
 package payment;
 
+import transactions.HoldLedger;
+import transactions.IdempotencyCache;
 import transactions.Transaction;
+import transactions.TransactionOutcome;
+import util.Metrics;
+import util.RateMeter;
+import util.VirtualThreads;
 
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * PaymentService supports both sync and async external transfers.
  * - processExternalTransfer(tx) -> blocking
  * - processExternalTransferAsync(tx) -> CompletableFuture<Boolean> (non-blocking)
+ * - the (tx, hold) variants are two-phase: the source's funds are already reserved (HoldLedger);
+ *   the hold is committed when the gateway succeeds and released when it declines or the call never
+ *   went out (no refund deposit); a deadline passed at the provider keeps it (TransferOutcomeUnknownException)
+ * - submitTransfer(...) returns a TransferScope: gateway call + hold settlement + completion handler
+ *   as one cancellable unit; shutdown stops taking new ones, waits for the open ones up to a deadline
+ *   and then cancels the rest (only transfers never sent release their holds, see TransferScope)
+ * - with an IdempotencyCache, a transaction whose idempotency key was seen before is not sent again:
+ *   the call returns the first one's result (waiting for it if still in flight); a repeated (tx, hold)
+ *   call releases its own hold, since the first call already moved the money
+ * - with Metrics (enableMetrics), every gateway call is timed ("payment.gateway") and declines or
+ *   errors are counted ("payment.failed"); replays are not gateway calls and are not measured
+ *
+ * ExecutionMode decides where gateway calls and their handlers run:
+ * - PLATFORM: blocking gateway.process on a bounded pool of platform threads (the original setup)
+ * - ASYNC: AsyncPaymentGateway stages, no thread held while the provider works
+ * - VIRTUAL: one virtual thread per transfer running the plain blocking code
+ *   (platform thread-per-task where the JDK has no virtual threads, see VirtualThreads)
  */
 public class PaymentService {
+    public enum ExecutionMode { PLATFORM, ASYNC, VIRTUAL }
+
     private final PaymentGateway gateway;
+    private final AsyncPaymentGateway asyncGateway; // gateway itself when it is async-native, else null
+    private final ExecutionMode mode;
     private final ExecutorService gatewayExecutor;
+    private final Set<TransferScope> open = ConcurrentHashMap.newKeySet();
+    private volatile IdempotencyCache idempotency; // null: no dedup
+    private volatile GatewayMeters meters; // null: not measured
+    private volatile boolean shuttingDown;
+    /** how long shutdownExecutor() waits for transfers already at the provider */
+    public static final long SHUTDOWN_GRACE_MILLIS = 10_000;
+
+    private static final class GatewayMeters {
+        final Metrics metrics;
+        final Metrics.Timer calls;
+        final RateMeter failed;
+
+        GatewayMeters(Metrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            calls = metrics.timer("payment.gateway");
+            failed = metrics.counter("payment.failed");
+        }
+    }
 
+    // ASYNC when the gateway supports it, else PLATFORM on the given executor
     public PaymentService(PaymentGateway gateway, ExecutorService gatewayExecutor){
+        this(gateway, gateway instanceof AsyncPaymentGateway ? ExecutionMode.ASYNC : ExecutionMode.PLATFORM, gatewayExecutor);
+    }
+
+    // executor owned by the service: fixed platform pool, or per-task virtual threads
+    public PaymentService(PaymentGateway gateway, ExecutionMode mode){
+        this(gateway, mode, mode == ExecutionMode.VIRTUAL
+                ? VirtualThreads.newPerTaskExecutor("payment")
+                : Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2)));
+    }
+
+    public PaymentService(PaymentGateway gateway, ExecutionMode mode, ExecutorService gatewayExecutor){
         this.gateway = Objects.requireNonNull(gateway);
+        this.asyncGateway = gateway instanceof AsyncPaymentGateway ? (AsyncPaymentGateway) gateway : null;
+        this.mode = Objects.requireNonNull(mode);
         this.gatewayExecutor = Objects.requireNonNull(gatewayExecutor);
+        if (mode == ExecutionMode.ASYNC && asyncGateway == null) {
+            throw new IllegalArgumentException("ASYNC mode needs an AsyncPaymentGateway: " + gateway.getClass().getSimpleName());
+        }
     }
 
     // blocking call (keeps previous behavior)
     public boolean processExternalTransfer(Transaction tx){
-        return gateway.process(tx);
+        IdempotencyCache.Claim claim = claim(tx);
+        if (claim == null) return send(tx);
+        if (claim.isReplay()) return replayed(claim).join();
+        boolean ok = false;
+        try {
+            ok = send(tx);
+        } finally {
+            claim.complete(ok ? TransactionOutcome.EXECUTED : TransactionOutcome.FAILED);
+        }
+        return ok;
     }
 
-    // async: non-blocking; returns CompletableFuture<Boolean>
+    // async: non-blocking; returns CompletableFuture<Boolean> (cancel it to drop the provider call in ASYNC mode)
     public CompletableFuture<Boolean> processExternalTransferAsync(Transaction tx){
-        return CompletableFuture.supplyAsync(() -> gateway.process(tx), gatewayExecutor);
+        IdempotencyCache.Claim claim = claim(tx);
+        if (claim != null && claim.isReplay()) return replayed(claim);
+        CompletableFuture<Boolean> call = callGateway(tx);
+        if (claim != null) call.whenComplete((ok, ex) -> claim.complete(recorded(ok, ex)));
+        return call;
+    }
+
+    private CompletableFuture<Boolean> callGateway(Transaction tx){
+        if (mode == ExecutionMode.ASYNC) {
+            GatewayMeters m = meters;
+            long start = System.nanoTime();
+            CompletableFuture<Boolean> call;
+            try {
+                call = asyncGateway.processAsync(tx).toCompletableFuture();
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            if (m != null) call.whenComplete((ok, ex) -> measured(m, start, ex == null && Boolean.TRUE.equals(ok)));
+            return call;
+        }
+        return CompletableFuture.supplyAsync(() -> send(tx), gatewayExecutor);
+    }
+
+    // blocking gateway call, timed when metrics are on
+    private boolean send(Transaction tx){
+        GatewayMeters m = meters;
+        if (m == null) return gateway.process(tx);
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ok = gateway.process(tx);
+            return ok;
+        } finally {
+            measured(m, start, ok);
+        }
+    }
+
+    private static void measured(GatewayMeters m, long start, boolean ok){
+        m.calls.stop(start);
+        if (!ok) m.failed.mark();
+    }
+
+    public boolean processExternalTransfer(Transaction tx, HoldLedger.Hold hold){
+        IdempotencyCache.Claim claim = claim(tx);
+        if (claim != null && claim.isReplay()) {
+            hold.release();
+            return replayed(claim).join();
+        }
+        boolean ok = false;
+        boolean unknown = false;
+        try {
+            ok = send(tx);
+        } catch (TransferOutcomeUnknownException e) {
+            unknown = true; // the provider may have paid: the hold stays for reconciliation
+            hold.keepForReconciliation();
+            throw e;
+        } finally {
+            if (ok) hold.commit();
+            else if (!unknown) hold.release();
+            if (claim != null) claim.complete(ok ? TransactionOutcome.EXECUTED : TransactionOutcome.FAILED);
+        }
+        return ok;
     }
 
-    // optional: shutdown executor if owned by this service
-    public void shutdownExecutor(){
+    // completes (with the gateway's result or error) after the hold is settled;
+    // a hold that expired before the gateway answered stays EXPIRED: check hold.getStatus()
+    public CompletableFuture<Boolean> processExternalTransferAsync(Transaction tx, HoldLedger.Hold hold){
+        return submitTransfer(tx, hold, null).result();
+    }
+
+    public TransferScope submitTransfer(Transaction tx, HoldLedger.Hold hold, BiConsumer<Boolean, Throwable> onComplete){
+        return submitTransfer(tx, hold, onComplete, null);
+    }
+
+    /**
+     * Start one external transfer as a scope: the gateway call, then (same thread in PLATFORM/VIRTUAL mode)
+     * the hold is committed/released and onComplete(success, error) runs. hold and the handlers may be null.
+     * onLateAnswer(accepted) runs if the provider answers after the scope finished as outcome unknown
+     * (the hold is settled by then). A replayed idempotency key releases the hold at once and finishes
+     * with the first transfer's result.
+     */
+    public TransferScope submitTransfer(Transaction tx, HoldLedger.Hold hold, BiConsumer<Boolean, Throwable> onComplete,
+                                        Consumer<Boolean> onLateAnswer){
+        if (shuttingDown) {
+            TransferScope refused = new TransferScope(tx, hold, onComplete, onLateAnswer, open);
+            refused.finish(false, new RejectedExecutionException("Payment service is shutting down")); // not sent: hold released
+            return refused;
+        }
+        IdempotencyCache.Claim claim = claim(tx);
+        TransferScope scope = new TransferScope(tx, hold, onComplete, onLateAnswer, open);
+        if (claim != null && claim.isReplay()) {
+            if (hold != null) hold.release(); // the first transfer moved the money; the scope's commit is then a no-op
+            CompletableFuture<Boolean> original = replayed(claim);
+            original.whenComplete((ok, ex) -> scope.finish(Boolean.TRUE.equals(ok), ex));
+            return scope;
+        }
+        if (claim != null) scope.result().whenComplete((ok, ex) -> claim.complete(recorded(ok, ex)));
+        if (mode == ExecutionMode.ASYNC) {
+            scope.beginSend(); // handed to the gateway right away
+            callGateway(tx).whenComplete((ok, ex) -> scope.finish(Boolean.TRUE.equals(ok), ex));
+        } else {
+            try {
+                scope.attach(gatewayExecutor.submit(() -> {
+                    if (!scope.beginSend()) return; // cancelled while waiting for a thread
+                    try {
+                        scope.finish(send(tx), null);
+                    } catch (Throwable t) {
+                        scope.finish(false, t);
+                    }
+                }));
+            } catch (RuntimeException rejected) {
+                scope.finish(false, rejected);
+            }
+        }
+        return scope;
+    }
+
+    // null when there is no cache or tx carries no key
+    private IdempotencyCache.Claim claim(Transaction tx){
+        IdempotencyCache cache = idempotency;
+        return cache == null || tx.getIdempotencyKey() == null ? null : cache.claim(tx.getIdempotencyKey());
+    }
+
+    // the first call's answer as the gateway's boolean; an error of the first call reads as "not paid"
+    private static CompletableFuture<Boolean> replayed(IdempotencyCache.Claim claim){
+        return claim.outcome().handle((o, ex) -> o == TransactionOutcome.EXECUTED);
+    }
+
+    // an error leaves the provider's side unknown: recorded as FAILED so a repeat is not sent again
+    private static TransactionOutcome recorded(Boolean ok, Throwable ex){
+        return ex == null && Boolean.TRUE.equals(ok) ? TransactionOutcome.EXECUTED : TransactionOutcome.FAILED;
+    }
+
+    /** dedup transactions carrying an idempotency key (shared with TransactionService is fine: keys are per request) */
+    public void enableIdempotency(IdempotencyCache cache){ this.idempotency = cache; }
+    public IdempotencyCache getIdempotency(){ return idempotency; }
+
+    /** time gateway calls and count their failures in metrics */
+    public void enableMetrics(Metrics metrics){ this.meters = new GatewayMeters(metrics); }
+    public Metrics getMetrics(){ GatewayMeters m = meters; return m == null ? null : m.metrics; }
+
+    public ExecutionMode getMode(){ return mode; }
+    public PaymentGateway getGateway(){ return gateway; }
+    /** transfers started and not finished yet */
+    public int openTransfers(){ return open.size(); }
+
+    public void shutdownExecutor(){ shutdownExecutor(SHUTDOWN_GRACE_MILLIS); }
+
+    /**
+     * Stop taking transfers, wait up to graceMillis for the open ones to get their answer, then cancel
+     * what is left: transfers not sent yet release their holds, the ones at the provider finish as
+     * outcome unknown and keep them (TransferScope). Running gateway calls are never interrupted.
+     */
+    public void shutdownExecutor(long graceMillis){
+        shuttingDown = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+        for (TransferScope s : open) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) break;
+            try {
+                s.result().get(left, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                break;
+            } catch (ExecutionException | CancellationException e) {
+                // finished with an error: settled by the scope
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (TransferScope s : open) s.cancel();
         try { gatewayExecutor.shutdown(); } catch (Exception ignored) {}
     }
 }
@@ -0,0 +1,382 @@
+package payment;
+
+import transactions.Transaction;
+import util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * One gateway in front of several providers ("routes"): each payment goes to the fastest healthy route
+ * that can carry it.
+ * - a route has a name, an async gateway, an eligibility test (e.g. SWIFT only for IBAN destinations),
+ *   its own CircuitBreaker, a LatencyHistogram and an EWMA of its latency
+ * - cost = ewma latency * (in flight + 1) * (1 + 4 * recent error rate); the cheapest eligible route
+ *   whose breaker lets calls through wins; a route with no samples yet costs 0, so it gets measured
+ * - a decline (false) is the provider's answer and is final; an exception means the payment did not
+ *   go out, so the next route is tried; a timeout is unknown outcome and only retried inside the same
+ *   dedup group
+ * - hedging: when a route of a dedup group has not answered after hedgeAfterMillis, the same payment
+ *   is also sent to another route of that group; the first acceptance wins, the other call is cancelled
+ * - dedup group = routes that end at the same provider and are deduplicated there by payment id
+ *   (e.g. SWIFT batch file and direct wire with the same end-to-end id); routes without one are never
+ *   hedged or retried after a timeout, so a slow call can never turn into a double payment
+ */
+public class RoutingPaymentGateway implements AsyncPaymentGateway, PaymentGateway, AutoCloseable {
+    private static final Pattern IBAN = Pattern.compile("[A-Z]{2}[0-9]{2}[A-Z0-9]{11,30}");
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final List<Route> routes;
+    private final long hedgeAfterMillis;
+    private final int maxAttempts;
+    private final ScheduledThreadPoolExecutor timer;
+
+    // metrics
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder unroutable = new LongAdder();
+
+    public static final class Route {
+        private final String name;
+        private final AsyncPaymentGateway gateway;
+        private final Predicate<Transaction> eligible;
+        private final String dedupGroup;
+        private final CircuitBreaker breaker;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private volatile double ewmaNanos = -1; // -1: no sample yet
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder declined = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+
+        Route(String name, AsyncPaymentGateway gateway, Predicate<Transaction> eligible, String dedupGroup, CircuitBreaker breaker) {
+            this.name = name;
+            this.gateway = gateway;
+            this.eligible = eligible;
+            this.dedupGroup = dedupGroup;
+            this.breaker = breaker;
+        }
+
+        double cost() {
+            double ewma = ewmaNanos;
+            if (ewma < 0) return 0;
+            return ewma * (inFlight.get() + 1) * (1 + 4 * breaker.getErrorRate());
+        }
+
+        void sample(long nanos) {
+            latency.record(nanos);
+            double e = ewmaNanos;
+            ewmaNanos = e < 0 ? nanos : e + EWMA_ALPHA * (nanos - e); // racy update is fine for a score
+        }
+
+        boolean hedgeableWith(Route other) {
+            return dedupGroup != null && other != this && dedupGroup.equals(other.dedupGroup);
+        }
+
+        public String getName() { return name; }
+        public AsyncPaymentGateway getGateway() { return gateway; }
+        public String getDedupGroup() { return dedupGroup; }
+        public CircuitBreaker.State getBreakerState() { return breaker.getState(); }
+        public double getErrorRate() { return breaker.getErrorRate(); }
+        public double getEwmaMillis() { return Math.max(0, ewmaNanos) / 1e6; }
+        public int inFlight() { return inFlight.get(); }
+        public long acceptedCount() { return accepted.sum(); }
+        public long declinedCount() { return declined.sum(); }
+        public long errorCount() { return errors.sum(); }
+        public long timeoutCount() { return timeouts.sum(); }
+        public LatencyHistogram getLatency() { return latency; }
+
+        public String summary() {
+            return String.format("%-14s %-9s ewma=%.1fms err=%.0f%% inFlight=%d ok=%d declined=%d errors=%d timeouts=%d %s",
+                    name, breaker.getState(), getEwmaMillis(), 100 * breaker.getErrorRate(), inFlight.get(),
+                    accepted.sum(), declined.sum(), errors.sum(), timeouts.sum(), latency.summary());
+        }
+    }
+
+    // one routed payment: the attempts made for it and the future handed to the caller
+    private static final class Call {
+        final Transaction tx;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final List<Route> tried = new ArrayList<>(2);                      // guarded by this
+        final List<CompletableFuture<Boolean>> outstanding = new ArrayList<>(2); // guarded by this
+        volatile ScheduledFuture<?> hedgeTimer;
+        volatile Route pinned;   // timed out here: later attempts must dedup with it
+        volatile boolean declined;
+
+        Call(Transaction tx) { this.tx = tx; }
+    }
+
+    private RoutingPaymentGateway(Builder b) {
+        this.routes = Collections.unmodifiableList(new ArrayList<>(b.routes));
+        this.hedgeAfterMillis = b.hedgeAfterMillis;
+        this.maxAttempts = b.maxAttempts;
+        ScheduledThreadPoolExecutor t = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread th = new Thread(r, "gateway-hedge");
+            th.setDaemon(true);
+            return th;
+        });
+        t.setRemoveOnCancelPolicy(true);
+        this.timer = t;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** destination id looks like an IBAN (SWIFT rails only carry those) */
+    public static boolean isIbanDestination(Transaction tx) {
+        if (tx.getTo() == null || tx.getTo().getId() == null) return false;
+        return IBAN.matcher(tx.getTo().getId().replace(" ", "").toUpperCase()).matches();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> processAsync(Transaction tx) {
+        Call c = new Call(tx);
+        c.result.whenComplete((ok, ex) -> finish(c));
+        routed.increment();
+        if (!attemptNext(c, null)) {
+            unroutable.increment();
+            boolean anyEligible = false;
+            for (Route r : routes) anyEligible |= r.eligible.test(tx);
+            c.result.completeExceptionally(anyEligible
+                    ? new RejectedExecutionException("All eligible gateways unavailable (circuit open)")
+                    : new IllegalArgumentException("No gateway can carry a payment to " + (tx.getTo() != null ? tx.getTo().getId() : "null")));
+        }
+        return c.result;
+    }
+
+    // a timeout may have been paid: thrown as TransferOutcomeUnknownException, not read as a decline
+    @Override
+    public boolean process(Transaction tx) {
+        try {
+            return processAsync(tx).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new TransferOutcomeUnknownException("Payment timed out at the provider", e.getCause());
+            }
+            return false;
+        } catch (CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * start the call on the cheapest route not tried yet; sameGroupAs (or the route the call timed out
+     * on) restricts the choice to routes of that dedup group. false if no route could take it.
+     */
+    private boolean attemptNext(Call c, Route sameGroupAs) {
+        if (sameGroupAs == null) sameGroupAs = c.pinned;
+        long now = System.currentTimeMillis();
+        for (;;) {
+            Route best = null;
+            double bestCost = Double.MAX_VALUE;
+            synchronized (c) {
+                if (c.result.isDone() || c.tried.size() >= maxAttempts) return false;
+                for (Route r : routes) {
+                    if (c.tried.contains(r) || !r.eligible.test(c.tx) || !r.breaker.isCallPermitted(now)) continue;
+                    if (sameGroupAs != null && !sameGroupAs.hedgeableWith(r)) continue;
+                    double cost = r.cost();
+                    if (cost < bestCost) {
+                        best = r;
+                        bestCost = cost;
+                    }
+                }
+                if (best == null) return false;
+                c.tried.add(best);
+            }
+            // lost the half-open probe to another call: look again without it
+            if (best.breaker.tryAcquire(now)) {
+                start(c, best);
+                return true;
+            }
+        }
+    }
+
+    private void start(Call c, Route r) {
+        r.inFlight.incrementAndGet();
+        long t0 = System.nanoTime();
+        CompletableFuture<Boolean> up;
+        try {
+            up = r.gateway.processAsync(c.tx).toCompletableFuture();
+        } catch (RuntimeException e) {
+            up = CompletableFuture.failedFuture(e);
+        }
+        synchronized (c) {
+            c.outstanding.add(up);
+        }
+        if (c.result.isDone()) up.cancel(true);
+        CompletableFuture<Boolean> call = up;
+        up.whenComplete((ok, ex) -> onAnswer(c, r, call, ok, ex, System.nanoTime() - t0));
+        if (hedgeAfterMillis > 0 && r.dedupGroup != null && c.hedgeTimer == null) {
+            ScheduledFuture<?> t = timer.schedule(() -> hedge(c, r), hedgeAfterMillis, TimeUnit.MILLISECONDS);
+            c.hedgeTimer = t;
+            if (c.result.isDone()) t.cancel(false);
+        }
+    }
+
+    private void hedge(Call c, Route slow) {
+        if (c.result.isDone()) return;
+        if (attemptNext(c, slow)) hedges.increment();
+    }
+
+    private void onAnswer(Call c, Route r, CompletableFuture<Boolean> call, Boolean ok, Throwable ex, long nanos) {
+        r.inFlight.decrementAndGet();
+        boolean last;
+        synchronized (c) {
+            c.outstanding.remove(call);
+            last = c.outstanding.isEmpty();
+        }
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+
+        if (cause == null) {
+            r.sample(nanos);
+            r.breaker.onSuccess(); // a decline is still a healthy provider
+            if (Boolean.TRUE.equals(ok)) {
+                r.accepted.increment();
+                c.result.complete(true);
+            } else {
+                r.declined.increment();
+                c.declined = true;
+                if (last) c.result.complete(false); // a hedge still in flight may accept
+            }
+            return;
+        }
+        if (cause instanceof CancellationException) { // we cancelled it: lost the hedge, or the caller gave up
+            r.breaker.releaseProbe();
+            if (last && !c.result.isDone()) c.result.completeExceptionally(cause);
+            return;
+        }
+        if (cause instanceof RejectedExecutionException) { // local admission limit: never reached the provider
+            r.breaker.releaseProbe();
+            retryOrFail(c, cause, last);
+            return;
+        }
+        r.sample(nanos);
+        r.breaker.onFailure(System.currentTimeMillis());
+        if (cause instanceof TimeoutException) {
+            r.timeouts.increment();
+            // outcome unknown: from now on only a route that dedups with this one may take it
+            if (c.pinned == null) c.pinned = r;
+        } else {
+            r.errors.increment();
+        }
+        retryOrFail(c, cause, last);
+    }
+
+    private void retryOrFail(Call c, Throwable cause, boolean last) {
+        if (!last || c.result.isDone()) return; // another attempt is still out: its answer decides
+        if (!c.declined && attemptNext(c, null)) {
+            retries.increment();
+            return;
+        }
+        if (c.declined) c.result.complete(false);
+        else c.result.completeExceptionally(cause);
+    }
+
+    // caller's future is done (answer, failure, cancel): stop the hedge timer and the other calls
+    private void finish(Call c) {
+        ScheduledFuture<?> t = c.hedgeTimer;
+        if (t != null) t.cancel(false);
+        List<CompletableFuture<Boolean>> others;
+        synchronized (c) {
+            others = new ArrayList<>(c.outstanding);
+        }
+        for (CompletableFuture<Boolean> f : others) {
+            if (!f.isDone()) f.cancel(true);
+        }
+    }
+
+    /** names of the routes that could carry this payment, cheapest first (breaker state ignored) */
+    public List<String> eligibleRoutes(Transaction tx) {
+        List<Route> eligible = new ArrayList<>();
+        for (Route r : routes) if (r.eligible.test(tx)) eligible.add(r);
+        eligible.sort((a, b) -> Double.compare(a.cost(), b.cost()));
+        List<String> names = new ArrayList<>(eligible.size());
+        for (Route r : eligible) names.add(r.name);
+        return names;
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    public List<Route> getRoutes() { return routes; }
+    public long routedCount() { return routed.sum(); }
+    public long retryCount() { return retries.sum(); }
+    public long hedgeCount() { return hedges.sum(); }
+    public long unroutableCount() { return unroutable.sum(); }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    public static final class Builder {
+        private final List<Route> routes = new ArrayList<>();
+        private long hedgeAfterMillis = 0;
+        private int maxAttempts = 3;
+        private int breakerFailures = 5;
+        private double breakerErrorRate = 0.5;
+        private int breakerMinCalls = 20;
+        private long breakerOpenMillis = 5_000;
+
+        /** route that is never hedged or retried after a timeout */
+        public Builder route(String name, AsyncPaymentGateway gateway, Predicate<Transaction> eligible) {
+            return route(name, gateway, eligible, null);
+        }
+
+        /** dedupGroup: routes sharing it reach the same provider, which drops a repeated payment */
+        public Builder route(String name, AsyncPaymentGateway gateway, Predicate<Transaction> eligible, String dedupGroup) {
+            Objects.requireNonNull(name, "name");
+            Objects.requireNonNull(gateway, "gateway");
+            for (Route r : routes) {
+                if (r.name.equals(name)) throw new IllegalArgumentException("Duplicate route " + name);
+            }
+            routes.add(new Route(name, gateway, eligible != null ? eligible : tx -> true, dedupGroup,
+                    new CircuitBreaker(breakerFailures, breakerErrorRate, breakerMinCalls, breakerOpenMillis)));
+            return this;
+        }
+
+        /** 0 (default): no hedging */
+        public Builder hedgeAfterMillis(long millis) {
+            if (millis < 0) throw new IllegalArgumentException("hedgeAfterMillis>=0");
+            this.hedgeAfterMillis = millis;
+            return this;
+        }
+
+        /** routes tried per payment, hedges included */
+        public Builder maxAttempts(int n) {
+            if (n <= 0) throw new IllegalArgumentException("maxAttempts>0");
+            this.maxAttempts = n;
+            return this;
+        }
+
+        /** breaker settings for the routes added after this call */
+        public Builder circuitBreaker(int consecutiveFailures, double maxErrorRate, int minCalls, long openMillis) {
+            this.breakerFailures = consecutiveFailures;
+            this.breakerErrorRate = maxErrorRate;
+            this.breakerMinCalls = minCalls;
+            this.breakerOpenMillis = openMillis;
+            return this;
+        }
+
+        public RoutingPaymentGateway build() {
+            if (routes.isEmpty()) throw new IllegalStateException("At least one route");
+            return new RoutingPaymentGateway(this);
+        }
+    }
+}
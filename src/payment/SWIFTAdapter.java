@@ -2,15 +2,28 @@ package payment;
 
 import transactions.Transaction;
 
-public class SWIFTAdapter implements PaymentGateway {
+import java.util.concurrent.CompletionStage;
+
+public class SWIFTAdapter implements PaymentGateway, AsyncPaymentGateway {
     private final SWIFTApi api;
     public SWIFTAdapter(SWIFTApi api){ this.api = api; }
 
     @Override
     public boolean process(Transaction tx) {
         // For demo use ids as IBANs and "USD"
-        String from = tx.getFrom() != null ? tx.getFrom().getId() : "EXTERNAL";
-        String to = tx.getTo() != null ? tx.getTo().getId() : "EXTERNAL";
-        return api.wireTransfer(from, to, tx.getAmount(), "USD");
+        return api.wireTransfer(from(tx), to(tx), tx.getAmountMinor(), "USD");
+    }
+
+    @Override
+    public CompletionStage<Boolean> processAsync(Transaction tx) {
+        return api.wireTransferAsync(from(tx), to(tx), tx.getAmountMinor(), "USD");
+    }
+
+    private static String from(Transaction tx) {
+        return tx.getFrom() != null ? tx.getFrom().getId() : "EXTERNAL";
+    }
+
+    private static String to(Transaction tx) {
+        return tx.getTo() != null ? tx.getTo().getId() : "EXTERNAL";
     }
 }
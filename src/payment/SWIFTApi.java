@@ -1,8 +1,30 @@
 package payment;
 
+import util.Money;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public class SWIFTApi {
-    public boolean wireTransfer(String fromIban, String toIban, double amount, String currency) {
-        System.out.printf("[SWIFTApi] wireTransfer from=%s to=%s %s %.2f%n", fromIban, toIban, currency, amount);
+    public boolean wireTransfer(String fromIban, String toIban, long amountMinor, String currency) {
+        System.out.println("[SWIFTApi] wireTransfer from=" + fromIban + " to=" + toIban + " " + currency + " " + Money.format(amountMinor));
         return true;
     }
-}
\ No newline at end of file
+
+    // non-blocking entry point; the demo endpoint answers immediately
+    public CompletableFuture<Boolean> wireTransferAsync(String fromIban, String toIban, long amountMinor, String currency) {
+        return CompletableFuture.completedFuture(wireTransfer(fromIban, toIban, amountMinor, currency));
+    }
+
+    /**
+     * Submit one payment-initiation file (pain.001) holding paymentCount payments.
+     * The acknowledgement lists one accepted/rejected flag per payment, in file order.
+     */
+    public CompletableFuture<List<Boolean>> submitBatch(Path file, String messageId, int paymentCount, long controlSumMinor) {
+        System.out.println("[SWIFTApi] submitBatch " + messageId + " file=" + file.getFileName() + " payments=" + paymentCount
+                + " total=" + Money.format(controlSumMinor));
+        return CompletableFuture.completedFuture(Collections.nCopies(paymentCount, Boolean.TRUE));
+    }
+}
@@ -0,0 +1,275 @@
+package payment;
+
+import accounts.Account;
+import transactions.Transaction;
+import util.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batching stage in front of the SWIFT rail: one file per batch instead of one wireTransfer per payment.
+ * - processAsync only appends to the open batch; it is sent when it reaches maxBatch payments or
+ *   when windowMillis have passed since its first payment, whichever comes first
+ * - a batch is written as a pain.001 (customer credit transfer initiation) XML file into the outbox
+ *   (temp file + atomic rename, so a reader never sees half a file), then SWIFTApi.submitBatch(...)
+ * - each payment's future completes from the batch acknowledgement (per-payment accepted flag);
+ *   a failed submission fails every payment of the batch
+ * - a payment cancelled before its batch is sent is left out of the file
+ * - sending runs on one "swift-batcher" thread, never on the caller's
+ */
+public class SWIFTBatchingGateway implements AsyncPaymentGateway, PaymentGateway, AutoCloseable {
+    private static final String CURRENCY = "USD";
+    private static final DateTimeFormatter MSG_ID_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private final SWIFTApi api;
+    private final Path outbox;
+    private final int maxBatch;
+    private final long windowMillis;
+    private final String initiatingParty;
+    private final ScheduledExecutorService sender;
+
+    private final Object lock = new Object();
+    private List<Pending> open = new ArrayList<>(); // guarded by lock
+    private long openSequence;                     // guarded by lock; bumps each time a batch is cut
+    private final AtomicLong batchIds = new AtomicLong();
+
+    // metrics
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder paymentsSent = new LongAdder();
+
+    private static final class Pending {
+        final Transaction tx;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Pending(Transaction tx) { this.tx = tx; }
+    }
+
+    public SWIFTBatchingGateway(SWIFTApi api, Path outbox, int maxBatch, long windowMillis) {
+        this(api, outbox, maxBatch, windowMillis, "BANKING SYSTEM");
+    }
+
+    public SWIFTBatchingGateway(SWIFTApi api, Path outbox, int maxBatch, long windowMillis, String initiatingParty) {
+        if (maxBatch <= 0) throw new IllegalArgumentException("maxBatch>0");
+        if (windowMillis <= 0) throw new IllegalArgumentException("windowMillis>0");
+        this.api = api;
+        this.outbox = outbox;
+        this.maxBatch = maxBatch;
+        this.windowMillis = windowMillis;
+        this.initiatingParty = initiatingParty;
+        try {
+            Files.createDirectories(outbox);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create SWIFT outbox " + outbox, e);
+        }
+        this.sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "swift-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> processAsync(Transaction tx) {
+        Pending p = new Pending(tx);
+        List<Pending> full = null;
+        synchronized (lock) {
+            if (sender.isShutdown()) throw new IllegalStateException("SWIFT batching gateway closed");
+            open.add(p);
+            if (open.size() == 1) {
+                long seq = openSequence;
+                sender.schedule(() -> flushIfStill(seq), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (open.size() >= maxBatch) full = cut();
+        }
+        if (full != null) {
+            List<Pending> batch = full;
+            sender.execute(() -> send(batch));
+        }
+        return p.result;
+    }
+
+    // blocking variant waits for the batch acknowledgement
+    @Override
+    public boolean process(Transaction tx) {
+        try {
+            return processAsync(tx).join();
+        } catch (CompletionException e) {
+            return false;
+        }
+    }
+
+    /** send the open batch now (e.g. end of day) */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = cut();
+        }
+        if (!batch.isEmpty()) sender.execute(() -> send(batch));
+    }
+
+    // window timer: only fires for the batch it was started for (a count-triggered cut bumps the sequence)
+    private void flushIfStill(long seq) {
+        List<Pending> batch;
+        synchronized (lock) {
+            if (seq != openSequence || open.isEmpty()) return;
+            batch = cut();
+        }
+        send(batch);
+    }
+
+    // caller holds lock
+    private List<Pending> cut() {
+        List<Pending> batch = open;
+        open = new ArrayList<>(Math.min(maxBatch, 1024));
+        openSequence++;
+        return batch;
+    }
+
+    // sender thread
+    private void send(List<Pending> batch) {
+        // one payment-information block per debtor account; live = file order (the ack's order)
+        Map<String, List<Pending>> byDebtor = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            if (p.result.isDone()) continue; // cancelled / timed out before sending
+            byDebtor.computeIfAbsent(accountId(p.tx.getFrom()), k -> new ArrayList<>()).add(p);
+        }
+        if (byDebtor.isEmpty()) return;
+        List<Pending> live = new ArrayList<>(batch.size());
+        for (List<Pending> group : byDebtor.values()) live.addAll(group);
+        String msgId = "B" + MSG_ID_TIME.format(Instant.now()) + "-" + batchIds.incrementAndGet();
+        long total = 0;
+        for (Pending p : live) total += p.tx.getAmountMinor();
+        CompletableFuture<List<Boolean>> ack;
+        try {
+            Path file = writeFile(msgId, byDebtor, live.size(), total);
+            ack = api.submitBatch(file, msgId, live.size(), total);
+        } catch (RuntimeException e) {
+            ack = CompletableFuture.failedFuture(e);
+        }
+        batchesSent.increment();
+        paymentsSent.add(live.size());
+        ack.whenComplete((flags, ex) -> {
+            for (int i = 0; i < live.size(); i++) {
+                Pending p = live.get(i);
+                if (ex != null) p.result.completeExceptionally(ex);
+                else if (flags == null || i >= flags.size()) p.result.completeExceptionally(new IllegalStateException("No acknowledgement for payment " + (i + 1) + " of " + msgId));
+                else p.result.complete(Boolean.TRUE.equals(flags.get(i)));
+            }
+        });
+    }
+
+    // ------------------------ pain.001 ---------------------------- //
+
+    private Path writeFile(String msgId, Map<String, List<Pending>> byDebtor, int count, long totalMinor) {
+        StringBuilder sb = new StringBuilder(512 + count * 400);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:pain.001.001.03\">\n<CstmrCdtTrfInitn>\n");
+        sb.append("<GrpHdr><MsgId>").append(msgId).append("</MsgId><CreDtTm>")
+                .append(DateTimeFormatter.ISO_INSTANT.format(Instant.now().truncatedTo(ChronoUnit.SECONDS)))
+                .append("</CreDtTm><NbOfTxs>").append(count).append("</NbOfTxs><CtrlSum>");
+        Money.appendTo(sb, totalMinor);
+        sb.append("</CtrlSum><InitgPty><Nm>");
+        escape(sb, initiatingParty);
+        sb.append("</Nm></InitgPty></GrpHdr>\n");
+
+        String execDate = LocalDate.now(ZoneOffset.UTC).toString();
+        int block = 0;
+        int seq = 0;
+        for (Map.Entry<String, List<Pending>> e : byDebtor.entrySet()) {
+            long sum = 0;
+            for (Pending p : e.getValue()) sum += p.tx.getAmountMinor();
+            sb.append("<PmtInf><PmtInfId>").append(msgId).append('-').append(++block)
+                    .append("</PmtInfId><PmtMtd>TRF</PmtMtd><NbOfTxs>").append(e.getValue().size()).append("</NbOfTxs><CtrlSum>");
+            Money.appendTo(sb, sum);
+            sb.append("</CtrlSum><ReqdExctnDt>").append(execDate).append("</ReqdExctnDt><Dbtr><Nm>");
+            escape(sb, e.getKey());
+            sb.append("</Nm></Dbtr><DbtrAcct><Id><IBAN>");
+            escape(sb, e.getKey());
+            sb.append("</IBAN></Id></DbtrAcct>\n");
+            for (Pending p : e.getValue()) {
+                String creditor = accountId(p.tx.getTo());
+                sb.append("<CdtTrfTxInf><PmtId><EndToEndId>").append(msgId).append('-').append(++seq)
+                        .append("</EndToEndId></PmtId><Amt><InstdAmt Ccy=\"").append(CURRENCY).append("\">");
+                Money.appendTo(sb, p.tx.getAmountMinor());
+                sb.append("</InstdAmt></Amt><Cdtr><Nm>");
+                escape(sb, p.tx.getTo() != null ? p.tx.getTo().getName() : creditor);
+                sb.append("</Nm></Cdtr><CdtrAcct><Id><IBAN>");
+                escape(sb, creditor);
+                sb.append("</IBAN></Id></CdtrAcct></CdtTrfTxInf>\n");
+            }
+            sb.append("</PmtInf>\n");
+        }
+        sb.append("</CstmrCdtTrfInitn>\n</Document>\n");
+
+        Path file = outbox.resolve(msgId + ".xml");
+        Path tmp = outbox.resolve(msgId + ".xml.tmp");
+        try {
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write SWIFT batch " + file, e);
+        }
+        return file;
+    }
+
+    private static String accountId(Account a) {
+        return a != null ? a.getId() : "EXTERNAL";
+    }
+
+    private static void escape(StringBuilder sb, String s) {
+        if (s == null) return;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&apos;"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    public long batchesSent() { return batchesSent.sum(); }
+    public long paymentsSent() { return paymentsSent.sum(); }
+    public int openBatchSize() {
+        synchronized (lock) { return open.size(); }
+    }
+    public Path getOutbox() { return outbox; }
+
+    /** sends what is still open, then stops the batcher thread */
+    @Override
+    public void close() {
+        flush();
+        sender.shutdown();
+        try {
+            sender.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
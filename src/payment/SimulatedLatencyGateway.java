@@ -0,0 +1,84 @@
+package payment;
+
+import transactions.Transaction;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a slow provider (tests, load runs, demo without network).
+ * - every call completes after latency +/- jitter milliseconds; failureRate of them answer false
+ * - one timer thread serves all pending calls: 10k payments in flight cost 10k timer entries, not threads
+ * - cancelling the returned stage removes its timer entry
+ * - degrade(...) changes latency and error rate at runtime (an outage drill): errors complete the
+ *   stage exceptionally, like a provider that cannot be reached
+ */
+public class SimulatedLatencyGateway implements AsyncPaymentGateway, PaymentGateway, AutoCloseable {
+    private final String name;
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private final double failureRate;
+    private volatile double errorRate;
+    private final ScheduledExecutorService timer;
+
+    public SimulatedLatencyGateway(String name, long latencyMillis, long jitterMillis, double failureRate) {
+        if (latencyMillis < 0 || jitterMillis < 0) throw new IllegalArgumentException("latency>=0");
+        if (failureRate < 0 || failureRate > 1) throw new IllegalArgumentException("failureRate in [0,1]");
+        this.name = name;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+        ScheduledThreadPoolExecutor t = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread th = new Thread(r, "gateway-sim-" + name);
+            th.setDaemon(true);
+            return th;
+        });
+        t.setRemoveOnCancelPolicy(true);
+        this.timer = t;
+    }
+
+    @Override
+    public CompletionStage<Boolean> processAsync(Transaction tx) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long latency = latencyMillis, jitter = jitterMillis;
+        long delay = Math.max(0, latency + (jitter == 0 ? 0 : rnd.nextLong(-jitter, jitter + 1)));
+        boolean error = rnd.nextDouble() < errorRate;
+        boolean ok = rnd.nextDouble() >= failureRate;
+        CompletableFuture<Boolean> f = new CompletableFuture<>();
+        ScheduledFuture<?> pending = timer.schedule(() -> {
+            if (error) f.completeExceptionally(new IllegalStateException(name + " unavailable"));
+            else f.complete(ok);
+        }, delay, TimeUnit.MILLISECONDS);
+        f.whenComplete((r, ex) -> {
+            if (f.isCancelled()) pending.cancel(false);
+        });
+        return f;
+    }
+
+    // blocking: parks the caller for the simulated latency (this is what the async path avoids)
+    @Override
+    public boolean process(Transaction tx) {
+        return processAsync(tx).toCompletableFuture().join();
+    }
+
+    /** new latency and share of calls that fail with an exception, for the calls made from now on */
+    public void degrade(long latencyMillis, long jitterMillis, double errorRate) {
+        if (latencyMillis < 0 || jitterMillis < 0) throw new IllegalArgumentException("latency>=0");
+        if (errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("errorRate in [0,1]");
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+    }
+
+    public String getName() { return name; }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
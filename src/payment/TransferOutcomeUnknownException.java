@@ -0,0 +1,19 @@
+package payment;
+
+/**
+ * A transfer stopped being waited for after it was handed to the provider (cancel, shutdown deadline,
+ * call deadline):
+ * the provider may or may not have paid. The hold is kept, not released; a late answer still settles it
+ * (accepted: committed, declined: released), otherwise it needs reconciliation.
+ */
+public class TransferOutcomeUnknownException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TransferOutcomeUnknownException(String message) {
+        super(message);
+    }
+
+    public TransferOutcomeUnknownException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,137 @@
+package payment;
+
+import transactions.HoldLedger;
+import transactions.Transaction;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Lifecycle of one external transfer started by PaymentService.submitTransfer(...).
+ * - gateway call, hold settlement and the completion handler belong to the scope and run once:
+ *   in thread modes all three run on the transfer's own (virtual) thread, in ASYNC mode on the
+ *   thread that completes the gateway's stage
+ * - cancel() before the call was handed to the provider (still waiting for a thread) withdraws it,
+ *   releases the hold and hands the handler a CancellationException
+ * - cancel() after that never interrupts the call: the money may already be gone. The scope finishes
+ *   with TransferOutcomeUnknownException and keeps the hold; the provider's late answer still settles
+ *   it (accepted: commit, declined: release, error: left for reconciliation; the hold never expires
+ *   meanwhile, see HoldLedger.Hold.keepForReconciliation) and is handed to
+ *   onLateAnswer, so the caller can book it like an answer in time
+ * - a deadline that passes after the call was sent (TimeoutException from the gateway) is the same
+ *   unknown outcome: the hold is kept, never released as if the provider had declined
+ * - the service keeps every open scope; shutting it down waits for them up to a deadline, then cancels
+ */
+public final class TransferScope {
+    private static final int QUEUED = 0, SENT = 1, WITHDRAWN = 2;
+
+    private final Transaction transaction;
+    private final HoldLedger.Hold hold;
+    private final BiConsumer<Boolean, Throwable> onComplete;
+    private final Consumer<Boolean> onLateAnswer;           // may be null
+    private final Set<TransferScope> openScopes;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final AtomicInteger phase = new AtomicInteger(QUEUED);
+    private volatile boolean unknown;                      // finished before the provider answered
+    private volatile Future<?> task;                       // thread modes
+
+    TransferScope(Transaction transaction, HoldLedger.Hold hold, BiConsumer<Boolean, Throwable> onComplete,
+                  Consumer<Boolean> onLateAnswer, Set<TransferScope> openScopes) {
+        this.transaction = transaction;
+        this.hold = hold;
+        this.onComplete = onComplete;
+        this.onLateAnswer = onLateAnswer;
+        this.openScopes = openScopes;
+        openScopes.add(this);
+    }
+
+    void attach(Future<?> task) {
+        this.task = task;
+        if (phase.get() == WITHDRAWN) task.cancel(false);
+    }
+
+    // right before the gateway call; false if the transfer was withdrawn first (then do not send)
+    boolean beginSend() {
+        return phase.compareAndSet(QUEUED, SENT);
+    }
+
+    // the gateway's answer (or error); first caller wins, a late answer after an unknown finish settles the hold
+    void finish(boolean ok, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            cause = new TransferOutcomeUnknownException("No answer from the provider before the deadline; hold kept", cause);
+        }
+        if (cause instanceof TransferOutcomeUnknownException) {
+            unknown = true;
+            if (hold != null) hold.keepForReconciliation();
+            if (finished.compareAndSet(false, true)) complete(false, false, cause);
+            return;
+        }
+        if (finished.compareAndSet(false, true)) complete(true, ok, error);
+        else if (unknown) settleLate(ok, error);
+    }
+
+    private void complete(boolean settle, boolean ok, Throwable error) {
+        boolean success = ok && error == null;
+        try {
+            if (settle && hold != null) {
+                if (success) hold.commit();
+                else hold.release();
+            }
+            if (onComplete != null) onComplete.accept(success, error);
+        } catch (RuntimeException e) {
+            System.err.println("[TransferScope] completion handler failed: " + e.getMessage());
+        } finally {
+            openScopes.remove(this);
+            if (error != null) result.completeExceptionally(error);
+            else result.complete(ok);
+        }
+    }
+
+    private void settleLate(boolean ok, Throwable error) {
+        if (error != null) return; // still unknown: reconciliation
+        try {
+            if (hold != null) {
+                if (ok) hold.commit();
+                else hold.release(); // the provider declined: nothing was paid
+            }
+            if (onLateAnswer != null) onLateAnswer.accept(ok);
+        } catch (RuntimeException e) {
+            System.err.println("[TransferScope] late answer handler failed: " + e.getMessage());
+        }
+    }
+
+    /** false if the transfer had already completed */
+    public boolean cancel() {
+        if (finished.get()) return false;
+        if (phase.compareAndSet(QUEUED, WITHDRAWN)) {
+            Future<?> t = task;
+            if (t != null) t.cancel(false);
+            if (!finished.compareAndSet(false, true)) return false;
+            complete(true, false, new CancellationException("Transfer cancelled before it was sent"));
+            return true;
+        }
+        unknown = true; // before the CAS: an answer arriving after it settles the hold
+        if (!finished.compareAndSet(false, true)) return false;
+        if (hold != null) hold.keepForReconciliation();
+        complete(false, false, new TransferOutcomeUnknownException("Transfer cancelled while at the provider; hold kept"));
+        return true;
+    }
+
+    public Transaction getTransaction() { return transaction; }
+    public HoldLedger.Hold getHold() { return hold; }
+    public boolean isDone() { return result.isDone(); }
+    /** true once the call was handed to the gateway */
+    public boolean isSent() { return phase.get() == SENT; }
+    /** the gateway's answer, completed after the hold is settled and the handler has run */
+    public CompletableFuture<Boolean> result() { return result; }
+}
@@ -0,0 +1,28 @@
+package recommendations;
+
+import accounts.Account;
+
+/**
+ * What a RecommendationRule looks at for one account: the account itself, its spending windows and
+ * the audit counts of the last 30 days.
+ * A bulk run reuses one instance per worker: rules must not keep a reference to it.
+ */
+public final class AccountSignals {
+    private Account account;
+    private final SpendingAggregator.Spending spending = new SpendingAggregator.Spending();
+    private int skippedRecurring;
+    private int fundsShortfalls;
+
+    public Account getAccount() { return account; }
+    public SpendingAggregator.Spending getSpending() { return spending; }
+    /** SKIPPED_* audit entries (recurring runs not executed) with this account as source */
+    public int getSkippedRecurring() { return skippedRecurring; }
+    /** SKIPPED_INSUFFICIENT_FUNDS and FAILED audit entries with this account as source */
+    public int getFundsShortfalls() { return fundsShortfalls; }
+
+    void reset(Account account, int skippedRecurring, int fundsShortfalls) {
+        this.account = account;
+        this.skippedRecurring = skippedRecurring;
+        this.fundsShortfalls = fundsShortfalls;
+    }
+}
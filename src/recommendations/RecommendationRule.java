@@ -0,0 +1,72 @@
+package recommendations;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import static recommendations.SpendingAggregator.Window.MONTH;
+import static recommendations.SpendingAggregator.Window.QUARTER;
+
+/**
+ * One recommendation: a stable code (stored with bulk results), the text shown to the customer and
+ * the condition on an account's signals. Conditions run on fork/join workers: keep them cheap,
+ * side-effect free and non-blocking.
+ */
+public final class RecommendationRule {
+    private final String code;
+    private final String message;
+    private final Predicate<AccountSignals> condition;
+
+    public RecommendationRule(String code, String message, Predicate<AccountSignals> condition) {
+        if (code == null || code.isEmpty()) throw new IllegalArgumentException("Rule code required");
+        this.code = code;
+        this.message = Objects.requireNonNull(message);
+        this.condition = Objects.requireNonNull(condition);
+    }
+
+    public String getCode() { return code; }
+    public String getMessage() { return message; }
+    public boolean appliesTo(AccountSignals s) { return condition.test(s); }
+
+    /** more than limitMinor out in the last 30 days */
+    public static RecommendationRule highSpending(long limitMinor) {
+        return new RecommendationRule("HIGH_SPENDING",
+                "High spending detected. Consider opening a Savings plan or reducing recurring subscriptions.",
+                s -> s.getSpending().outgoingMinor(MONTH) > limitMinor);
+    }
+
+    /** at least minBalanceMinor that did not move in or out for 90 days */
+    public static RecommendationRule idleBalance(long minBalanceMinor) {
+        return new RecommendationRule("IDLE_BALANCE",
+                "Your balance has not moved for 90 days. Consider a term deposit or a savings plan.",
+                s -> s.getAccount().getBalanceMinor() >= minBalanceMinor
+                        && s.getSpending().outgoingMinor(QUARTER) == 0 && s.getSpending().incomingMinor(QUARTER) == 0);
+    }
+
+    /** in overdraft now, or short of funds at least minShortfalls times in 30 days */
+    public static RecommendationRule frequentOverdraft(int minShortfalls) {
+        return new RecommendationRule("FREQUENT_OVERDRAFT",
+                "Payments often exceed your funds. Consider overdraft protection or a lower spending limit.",
+                s -> s.getAccount().getBalanceMinor() < 0 || s.getFundsShortfalls() >= minShortfalls);
+    }
+
+    /** at least minSkips recurring runs skipped in 30 days */
+    public static RecommendationRule skippedRecurring(int minSkips) {
+        return new RecommendationRule("SKIPPED_RECURRING",
+                "Recurring payments were skipped recently. Review your standing orders or keep more funds available.",
+                s -> s.getSkippedRecurring() >= minSkips);
+    }
+
+    /** balance above minBalanceMinor */
+    public static RecommendationRule investment(long minBalanceMinor) {
+        return new RecommendationRule("INVESTMENT",
+                "Consider Investment account for higher returns.",
+                s -> s.getAccount().getBalanceMinor() > minBalanceMinor);
+    }
+
+    /** the bank's rule set: 5000.00 a month, 1000.00 idle, 3 shortfalls, 2 skips, 10000.00 to invest */
+    public static List<RecommendationRule> defaults() {
+        return List.of(highSpending(500_000), idleBalance(100_000), frequentOverdraft(3), skippedRecurring(2),
+                investment(1_000_000));
+    }
+}
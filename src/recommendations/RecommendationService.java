@@ -1,19 +1,161 @@
 package recommendations;
 
-import transactions.Transaction;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
 import accounts.Account;
+import accounts.AccountRegistry;
+import transactions.AuditLog;
+import transactions.AuditQuery;
+import transactions.SkipReason;
 
+/**
+ * Recommendations from a rule set (RecommendationRule.defaults() unless one is given).
+ * - signals: rolling spending windows (SpendingAggregator) plus audit counts of the last 30 days
+ *   (SKIPPED_* recurring runs, SKIPPED_INSUFFICIENT_FUNDS / FAILED shortfalls)
+ * - analyze(account) evaluates one account; its audit counts come from two account-indexed queries
+ * - runBulk(...) evaluates every account of a registry: the audit window is counted once per run,
+ *   then a fork/join task splits the handle range into shards of 4096 accounts; results land in a
+ *   RecommendationStore that replaces the previous one (latest())
+ */
 public class RecommendationService {
-    // very simple rules: if monthly outgoing > threshold -> suggest savings
-    public List<String> analyze(List<Transaction> history, Account account){
-        double out = 0;
-        for(Transaction tx: history){
-            if(tx.getFrom() != null && tx.getFrom().getId().equals(account.getId())) out += tx.getAmount();
+    private static final long AUDIT_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private static final int SHARD = 4096; // accounts per fork/join leaf
+    private static final String INSUFFICIENT = "SKIPPED_" + SkipReason.INSUFFICIENT_FUNDS.name();
+    private final SpendingAggregator spending;
+    private final AuditLog audit; // null = no audit signals
+    private final List<RecommendationRule> rules;
+    private volatile RecommendationStore latest;
+
+    public RecommendationService(SpendingAggregator spending){
+        this(spending, null, RecommendationRule.defaults());
+    }
+
+    public RecommendationService(SpendingAggregator spending, AuditLog audit, List<RecommendationRule> rules){
+        if (rules.size() > Integer.SIZE) throw new IllegalArgumentException("At most " + Integer.SIZE + " rules");
+        this.spending = spending;
+        this.audit = audit;
+        this.rules = List.copyOf(rules);
+    }
+
+    public List<String> analyze(Account account){
+        long now = System.currentTimeMillis();
+        return messages(evaluate(account, auditCounts(now, account.getId()), now, new AccountSignals()));
+    }
+
+    /** every account in one sequential pass; accounts without advice are skipped */
+    public void analyzeAll(Iterable<Account> accounts, BiConsumer<Account, List<String>> out){
+        long now = System.currentTimeMillis();
+        Map<String, int[]> counts = auditCounts(now, null);
+        AccountSignals s = new AccountSignals();
+        for (Account a : accounts) {
+            int bits = evaluate(a, counts, now, s);
+            if (bits != 0) out.accept(a, messages(bits));
         }
-        List<String> recs = new ArrayList<>();
-        if(out > 5000) recs.add("High spending detected. Consider opening a Savings plan or reducing recurring subscriptions.");
-        if(account.getBalance() > 10000) recs.add("Consider Investment account for higher returns.");
-        return recs;
     }
+
+    // ------------------------ BULK RUN ---------------------------- //
+
+    /** every account of the registry on the common fork/join pool */
+    public RecommendationStore runBulk(AccountRegistry accounts){
+        return runBulk(accounts, ForkJoinPool.commonPool());
+    }
+
+    public RecommendationStore runBulk(AccountRegistry accounts, ForkJoinPool pool){
+        long started = System.currentTimeMillis();
+        Map<String, int[]> counts = auditCounts(started, null);
+        int[] bits = new int[accounts.handleLimit()];
+        String[] ids = new String[bits.length]; // who got the advice: a removed account's handle is reused
+        AtomicLongArray perRule = new AtomicLongArray(rules.size() + 1); // last slot: accounts scanned
+        pool.invoke(new Shard(accounts, counts, started, bits, ids, perRule, 0, bits.length));
+        long[] totals = new long[rules.size()];
+        for (int i = 0; i < totals.length; i++) totals[i] = perRule.get(i);
+        RecommendationStore store = new RecommendationStore(accounts, rules, bits, ids, totals, perRule.get(rules.size()),
+                started, System.currentTimeMillis() - started);
+        latest = store;
+        return store;
+    }
+
+    /** result of the last bulk run, null before the first */
+    public RecommendationStore latest(){ return latest; }
+
+    // splits [lo, hi) of the handle range until a leaf holds SHARD handles
+    private final class Shard extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final AccountRegistry accounts;
+        private final Map<String, int[]> counts;
+        private final long now;
+        private final int[] bits;
+        private final String[] ids;
+        private final AtomicLongArray perRule;
+        private final int lo, hi;
+
+        Shard(AccountRegistry accounts, Map<String, int[]> counts, long now, int[] bits, String[] ids, AtomicLongArray perRule, int lo, int hi){
+            this.accounts = accounts; this.counts = counts; this.now = now;
+            this.bits = bits; this.ids = ids; this.perRule = perRule; this.lo = lo; this.hi = hi;
+        }
+
+        @Override
+        protected void compute(){
+            if (hi - lo > SHARD) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Shard(accounts, counts, now, bits, ids, perRule, lo, mid),
+                        new Shard(accounts, counts, now, bits, ids, perRule, mid, hi));
+                return;
+            }
+            AccountSignals s = new AccountSignals();
+            long[] local = new long[rules.size() + 1];
+            for (int h = lo; h < hi; h++) {
+                Account a = accounts.byHandle(h);
+                if (a == null) continue;
+                local[rules.size()]++;
+                int b = evaluate(a, counts, now, s);
+                bits[h] = b; // each leaf owns its slice; invoke() publishes them
+                if (b != 0) ids[h] = a.getId();
+                for (; b != 0; b &= b - 1) local[Integer.numberOfTrailingZeros(b)]++;
+            }
+            for (int i = 0; i < local.length; i++) if (local[i] != 0) perRule.addAndGet(i, local[i]);
+        }
+    }
+
+    // bit i set when rule i applies
+    private int evaluate(Account a, Map<String, int[]> counts, long now, AccountSignals s){
+        int[] c = counts.get(a.getId());
+        s.reset(a, c == null ? 0 : c[0], c == null ? 0 : c[1]);
+        spending.spending(a.getId(), now, s.getSpending());
+        int bits = 0;
+        for (int i = 0; i < rules.size(); i++) if (rules.get(i).appliesTo(s)) bits |= 1 << i;
+        return bits;
+    }
+
+    private List<String> messages(int bits){
+        List<String> out = new ArrayList<>(Integer.bitCount(bits));
+        for (int i = 0; i < rules.size(); i++) if ((bits & (1 << i)) != 0) out.add(rules.get(i).getMessage());
+        return out;
+    }
+
+    // source account id -> {skipped recurring, funds shortfalls} over the audit window (accountId null = all accounts)
+    private Map<String, int[]> auditCounts(long now, String accountId){
+        Map<String, int[]> counts = new HashMap<>();
+        if (audit == null) return counts;
+        audit.flush(); // include records still in the ring buffer
+        Instant since = Instant.ofEpochMilli(now - AUDIT_WINDOW_MILLIS);
+        for (AuditLog.Entry e : audit.query(new AuditQuery().account(accountId).actionPrefix("SKIPPED_").from(since).limit(Integer.MAX_VALUE))) {
+            if (e.getFrom() == null) continue;
+            int[] c = counts.computeIfAbsent(e.getFrom(), k -> new int[2]);
+            c[0]++;
+            if (AuditQuery.kindOf(e.getAction()).equals(INSUFFICIENT)) c[1]++;
+        }
+        for (AuditLog.Entry e : audit.query(new AuditQuery().account(accountId).action("FAILED").from(since).limit(Integer.MAX_VALUE))) {
+            if (e.getFrom() != null) counts.computeIfAbsent(e.getFrom(), k -> new int[2])[1]++;
+        }
+        return counts;
+    }
+
+    public SpendingAggregator getSpending(){ return spending; }
+    public List<RecommendationRule> getRules(){ return rules; }
 }
@@ -0,0 +1,80 @@
+package recommendations;
+
+import accounts.Account;
+import accounts.AccountRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of one bulk recommendation run: one int per account handle, bit i set when rule i applied,
+ * so 5M accounts take 20 MB whatever the advice. Immutable once the run has finished.
+ * - lookups go through the registry's handles; advice is as of the run (an account created since
+ *   has none, one removed since is skipped)
+ * - the id of each advised account is kept next to its bits: the registry hands a removed account's
+ *   handle to a new one once it compacts, which must not inherit the old account's advice
+ */
+public final class RecommendationStore {
+    private final AccountRegistry accounts;
+    private final List<RecommendationRule> rules;
+    private final int[] bits;
+    private final String[] ids; // account the bits of a handle belong to; null where no rule applied
+    private final long[] counts;
+    private final long accountsScanned;
+    private final long startedMillis;
+    private final long durationMillis;
+
+    RecommendationStore(AccountRegistry accounts, List<RecommendationRule> rules, int[] bits, String[] ids, long[] counts,
+                        long accountsScanned, long startedMillis, long durationMillis) {
+        this.accounts = accounts;
+        this.rules = rules;
+        this.bits = bits;
+        this.ids = ids;
+        this.counts = counts;
+        this.accountsScanned = accountsScanned;
+        this.startedMillis = startedMillis;
+        this.durationMillis = durationMillis;
+    }
+
+    /** messages of the rules that applied to the account; empty if none or unknown */
+    public List<String> forAccount(String accountId) {
+        int h = accounts.handleOf(accountId);
+        if (h < 0 || h >= bits.length || bits[h] == 0 || !accountId.equals(ids[h])) return Collections.emptyList();
+        List<String> out = new ArrayList<>(Integer.bitCount(bits[h]));
+        for (int i = 0; i < rules.size(); i++) {
+            if ((bits[h] & (1 << i)) != 0) out.add(rules.get(i).getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * Accounts the rule applied to, in handle order, starting after handle afterHandle (-1 = first page).
+     * The next page starts after accounts.handleOf(last account's id).
+     */
+    public List<Account> accountsWith(String ruleCode, int afterHandle, int limit) {
+        int mask = 1 << ruleIndex(ruleCode);
+        List<Account> out = new ArrayList<>(Math.min(limit, 64));
+        for (int h = Math.max(0, afterHandle + 1); h < bits.length && out.size() < limit; h++) {
+            if ((bits[h] & mask) == 0) continue;
+            Account a = accounts.byHandle(h);
+            if (a != null && a.getId().equals(ids[h])) out.add(a);
+        }
+        return out;
+    }
+
+    /** accounts the rule applied to */
+    public long count(String ruleCode) { return counts[ruleIndex(ruleCode)]; }
+
+    private int ruleIndex(String code) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).getCode().equals(code)) return i;
+        }
+        throw new IllegalArgumentException("Unknown rule: " + code);
+    }
+
+    public List<RecommendationRule> getRules() { return rules; }
+    public long accountsScanned() { return accountsScanned; }
+    public long getStartedMillis() { return startedMillis; }
+    public long getDurationMillis() { return durationMillis; }
+}
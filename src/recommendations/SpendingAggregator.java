@@ -0,0 +1,178 @@
+package recommendations;
+
+import transactions.ExecutionListener;
+import transactions.Ledger;
+import transactions.Transaction;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling per-account totals of executed transactions, updated as they execute (ExecutionListener),
+ * so recommendations never scan the transaction history.
+ * - per account: outgoing, incoming and recurring-outgoing cents in 90 daily buckets (UTC days),
+ *   kept in one long[] block; windows of 1, 30 and 90 days are sums of the newest buckets
+ * - buckets roll lazily: the first amount of a new day clears the days skipped since the last one;
+ *   amounts older than 90 days are ignored
+ * - accounts get an int code on first sight; blocks live in pages of 256 accounts, and a page's
+ *   monitor guards its blocks (so executions on different pages do not contend)
+ * - about 2.2 KB per account that ever moved money
+ * - memory only: on startup replay(ledger, now) rebuilds the windows from the ledger's last 90 days,
+ *   otherwise every account would look idle until 90 days of traffic went through
+ */
+public class SpendingAggregator implements ExecutionListener {
+    public enum Window {
+        DAY(1), MONTH(30), QUARTER(90);
+
+        private final int days;
+        Window(int days) { this.days = days; }
+        public int getDays() { return days; }
+    }
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int DAYS = 90;
+    private static final int OUT = 0, IN = 1, RECURRING = 2;
+    private static final int LAST_DAY = 3 * DAYS; // newest bucketed day + 1 (0 = no amount yet)
+    private static final int STRIDE = LAST_DAY + 1;
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE = 1 << PAGE_SHIFT;
+    private static final Window[] WINDOWS = Window.values();
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile long[][] pages = new long[16][];
+    private int nextCode; // guarded by this
+
+    /** one account's windows; values are cents */
+    public static final class Spending {
+        private final long[] out = new long[WINDOWS.length];
+        private final long[] in = new long[WINDOWS.length];
+        private final long[] recurring = new long[WINDOWS.length];
+
+        public long outgoingMinor(Window w) { return out[w.ordinal()]; }
+        public long incomingMinor(Window w) { return in[w.ordinal()]; }
+        /** outgoing of standing orders (Transaction.isRecurring), part of outgoingMinor */
+        public long recurringMinor(Window w) { return recurring[w.ordinal()]; }
+
+        private void clear() {
+            Arrays.fill(out, 0);
+            Arrays.fill(in, 0);
+            Arrays.fill(recurring, 0);
+        }
+    }
+
+    @Override
+    public void onExecuted(Transaction tx) {
+        record(tx, System.currentTimeMillis());
+    }
+
+    /** add an executed transaction at an explicit time (replays, tests) */
+    public void record(Transaction tx, long epochMillis) {
+        record(tx.getFrom() != null ? tx.getFrom().getId() : null, tx.getTo() != null ? tx.getTo().getId() : null,
+                tx.getAmountMinor(), epochMillis, tx.isRecurring());
+    }
+
+    /**
+     * Rebuild the windows from the ledger entries of the last 90 days; call before transactions run,
+     * or they are counted twice. Deposits, withdrawals and transfers are replayed as onExecuted saw
+     * them (opening balances and external payments never went through it). The ledger has no
+     * recurring flag: replayed amounts count as outgoing, not as recurring. Returns the entries replayed.
+     */
+    public long replay(Ledger ledger, long nowMillis) {
+        long since = (Math.floorDiv(nowMillis, DAY_MILLIS) - DAYS + 1) * DAY_MILLIS;
+        long[] replayed = new long[1];
+        ledger.forEachSince(since, (debit, credit, kind, amountMinor, at) -> {
+            switch (kind) {
+                case DEPOSIT: record(null, credit, amountMinor, at, false); break;
+                case WITHDRAW: record(debit, null, amountMinor, at, false); break;
+                case TRANSFER: record(debit, credit, amountMinor, at, false); break;
+                default: return;
+            }
+            replayed[0]++;
+        });
+        return replayed[0];
+    }
+
+    private void record(String fromId, String toId, long amountMinor, long epochMillis, boolean recurring) {
+        long day = Math.floorDiv(epochMillis, DAY_MILLIS);
+        if (fromId != null) add(code(fromId), day, amountMinor, OUT, recurring);
+        if (toId != null) add(code(toId), day, amountMinor, IN, false);
+    }
+
+    // column: OUT or IN; recurring also adds an outgoing amount to the RECURRING column
+    private void add(int code, long day, long amountMinor, int column, boolean recurring) {
+        long[] page = pages[code >>> PAGE_SHIFT];
+        int base = (code & (PAGE - 1)) * STRIDE;
+        synchronized (page) {
+            long last = page[base + LAST_DAY] - 1;
+            if (day > last) {
+                // clear the buckets of the days between the last amount and this one
+                for (long d = Math.max(last + 1, day - DAYS + 1); d <= day; d++) {
+                    int b = Math.floorMod(d, DAYS);
+                    page[base + OUT * DAYS + b] = 0;
+                    page[base + IN * DAYS + b] = 0;
+                    page[base + RECURRING * DAYS + b] = 0;
+                }
+                page[base + LAST_DAY] = day + 1;
+            } else if (day <= last - DAYS) {
+                return; // older than every window
+            }
+            int b = Math.floorMod(day, DAYS);
+            page[base + column * DAYS + b] += amountMinor;
+            if (recurring) page[base + RECURRING * DAYS + b] += amountMinor;
+        }
+    }
+
+    private int code(String accountId) {
+        Integer c = codes.get(accountId);
+        return c != null ? c : codes.computeIfAbsent(accountId, id -> allocate());
+    }
+
+    private synchronized int allocate() {
+        int c = nextCode++;
+        int p = c >>> PAGE_SHIFT;
+        long[][] cur = pages;
+        if (p == cur.length) cur = Arrays.copyOf(cur, cur.length * 2);
+        if (cur[p] == null) cur[p] = new long[PAGE * STRIDE];
+        pages = cur; // publish the page before the code is visible in the map
+        return c;
+    }
+
+    /** the account's windows as of nowMillis (all zero for an account never seen) */
+    public Spending spending(String accountId, long nowMillis) {
+        return spending(accountId, nowMillis, new Spending());
+    }
+
+    /** same, filling a caller's instance (one pass over many accounts without garbage) */
+    public Spending spending(String accountId, long nowMillis, Spending into) {
+        into.clear();
+        Integer code = codes.get(accountId);
+        if (code == null) return into;
+        long today = Math.floorDiv(nowMillis, DAY_MILLIS);
+        long[] page = pages[code >>> PAGE_SHIFT];
+        int base = (code & (PAGE - 1)) * STRIDE;
+        synchronized (page) {
+            long last = page[base + LAST_DAY] - 1;
+            // bucket of day d is valid while last - DAYS < d <= last; windows are nested, so one running sum
+            long out = 0, in = 0, rec = 0;
+            int k = 0;
+            for (Window w : WINDOWS) {
+                for (; k < w.days; k++) {
+                    long d = today - k;
+                    if (d > last || d <= last - DAYS) continue;
+                    int b = Math.floorMod(d, DAYS);
+                    out += page[base + OUT * DAYS + b];
+                    in += page[base + IN * DAYS + b];
+                    rec += page[base + RECURRING * DAYS + b];
+                }
+                into.out[w.ordinal()] = out;
+                into.in[w.ordinal()] = in;
+                into.recurring[w.ordinal()] = rec;
+            }
+        }
+        return into;
+    }
+
+    /** accounts that ever moved money through this aggregator */
+    public int accountCount() { return codes.size(); }
+}
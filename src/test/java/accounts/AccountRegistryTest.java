@@ -0,0 +1,161 @@
+package test.java.accounts;
+
+import accounts.Account;
+import accounts.AccountRegistry;
+import accounts.decorators.InsuranceDecorator;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountRegistryTest {
+
+    private static Account savings(String id, String owner) {
+        return AccountFactory.createSavings(id, owner, 10.0);
+    }
+
+    @Test
+    void behavesLikeAMap() {
+        AccountRegistry reg = new AccountRegistry();
+        Account a = savings("a1", "Alice");
+        assertNull(reg.putIfAbsent("a1", a));
+        assertSame(a, reg.putIfAbsent("a1", savings("a1", "Other")));
+        assertSame(a, reg.get("a1"));
+        assertTrue(reg.containsKey("a1"));
+        assertEquals(1, reg.size());
+        assertThrows(IllegalArgumentException.class, () -> reg.put("x", a));
+
+        assertFalse(reg.remove("a1", savings("a1", "Alice")), "other object");
+        assertTrue(reg.remove("a1", a));
+        assertNull(reg.get("a1"));
+        assertTrue(reg.isEmpty());
+        assertEquals(-1, reg.handleOf("a1"));
+    }
+
+    @Test
+    void ownerTypeAndStatusIndexes() {
+        AccountRegistry reg = new AccountRegistry();
+        Account alice = savings("s1", "Alice");
+        reg.put("s1", alice);
+        reg.put("c1", AccountFactory.createChecking("c1", "Bob", 5.0));
+        reg.put("c2", AccountFactory.createChecking("c2", "bob ", 5.0));
+
+        assertEquals(List.of(alice), reg.byOwner("  alice"));
+        assertEquals(2, reg.byOwner("BOB").size());
+        assertTrue(reg.byOwner("carol").isEmpty());
+
+        assertEquals(1, reg.countByType("SavingsAccount"));
+        assertEquals(2, reg.countByType("CheckingAccount"));
+        // a decorator keeps the account's type and handle
+        int handle = reg.handleOf("s1");
+        reg.put("s1", new InsuranceDecorator(alice, 1000.0));
+        assertEquals(handle, reg.handleOf("s1"));
+        assertEquals(1, reg.countByType("SavingsAccount"));
+        assertEquals(1, reg.byOwner("alice").size());
+
+        assertEquals(3, reg.countByStatus("ACTIVE"));
+        alice.freeze();
+        alice.notifyObservers("status_change", "frozen");
+        assertEquals(1, reg.countByStatus("FROZEN"));
+        assertEquals("s1", reg.byStatus("FROZEN", 0, 10).get(0).getId());
+        reg.get("c1").suspend();
+        reg.reindex("c1");
+        assertEquals(1, reg.countByStatus("ACTIVE"));
+        assertEquals(List.of("c2"), ids(reg.byStatus("ACTIVE", 0, 10)));
+
+        reg.remove("c2");
+        assertEquals(0, reg.countByStatus("ACTIVE"));
+        assertEquals(1, reg.byOwner("bob").size());
+    }
+
+    @Test
+    void sortedPagingAcrossMergedAndRecentAccounts() {
+        AccountRegistry reg = new AccountRegistry();
+        for (int i = 0; i < 10_000; i++) reg.put(String.format("id%05d", 9_999 - i), savings(String.format("id%05d", 9_999 - i), "o" + i));
+        for (int i = 0; i < 10_000; i += 3) reg.remove(String.format("id%05d", i));
+
+        List<String> all = new ArrayList<>();
+        String after = null;
+        for (List<Account> page = reg.page(null, 500); !page.isEmpty(); page = reg.page(after, 500)) {
+            for (Account a : page) all.add(a.getId());
+            after = page.get(page.size() - 1).getId();
+        }
+        assertEquals(reg.size(), all.size());
+        for (int i = 1; i < all.size(); i++) assertTrue(all.get(i - 1).compareTo(all.get(i)) < 0);
+        assertEquals("id00001", all.get(0));
+
+        // inserts after the merge come from the unsorted tail, still in order
+        reg.put("id00000", savings("id00000", "zero"));
+        reg.put("id99999", savings("id99999", "last"));
+        assertEquals(List.of("id00000", "id00001", "id00002"), ids(reg.page(null, 3)));
+        assertEquals(List.of("id99999"), ids(reg.page("id09999", 10)));
+    }
+
+    @Test
+    void removedHandlesAreReusedAfterCompaction() {
+        AccountRegistry reg = new AccountRegistry();
+        for (int i = 0; i < 100; i++) reg.put("k" + i, savings("k" + i, "o" + i));
+        int h = reg.handleOf("k7");
+        reg.remove("k7");
+        assertNull(reg.byHandle(h));
+        reg.compact();
+        reg.put("fresh", savings("fresh", "f"));
+        assertEquals(h, reg.handleOf("fresh"));
+        assertEquals(100, reg.page(null, 1000).size());
+        int entries = 0;
+        for (Map.Entry<String, Account> e : reg.entrySet()) {
+            assertEquals(e.getKey(), e.getValue().getId());
+            entries++;
+        }
+        assertEquals(100, entries);
+    }
+
+    @Test
+    void concurrentWritersKeepIndexesConsistent() throws Exception {
+        AccountRegistry reg = new AccountRegistry();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> all = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int base = t * 20_000;
+            all.add(pool.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    String id = "t" + (base + i);
+                    reg.put(id, savings(id, "owner" + (base + i)));
+                    if (i % 4 == 0) assertNotNull(reg.remove(id));
+                }
+            }));
+        }
+        for (Future<?> f : all) f.get();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(120_000, reg.size());
+        assertEquals(120_000, reg.countByType("SavingsAccount"));
+        assertEquals(120_000, reg.countByStatus("ACTIVE"));
+        assertEquals(1, reg.byOwner("owner1").size());
+        assertTrue(reg.byOwner("owner4").isEmpty());
+        Set<String> seen = new HashSet<>();
+        String after = null;
+        for (List<Account> page = reg.page(null, 10_000); !page.isEmpty(); page = reg.page(after, 10_000)) {
+            for (Account a : page) assertTrue(seen.add(a.getId()));
+            after = page.get(page.size() - 1).getId();
+        }
+        assertEquals(120_000, seen.size());
+    }
+
+    private static List<String> ids(List<Account> accounts) {
+        List<String> out = new ArrayList<>();
+        for (Account a : accounts) out.add(a.getId());
+        return out;
+    }
+}
@@ -0,0 +1,97 @@
+package test.java.accounts;
+
+import accounts.Account;
+import accounts.CheckingAccount;
+import accounts.SavingsAccount;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceCellStressTest {
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentDepositsAreNotLost() throws Exception {
+        Account payroll = new SavingsAccount("p1", "payroll", 0.0);
+        runConcurrently(() -> {
+            for (int i = 0; i < OPS_PER_THREAD; i++) payroll.depositInternal(0.01);
+        });
+        assertEquals(THREADS * OPS_PER_THREAD, payroll.getBalanceMinor());
+    }
+
+    @Test
+    void concurrentWithdrawalsNeverPassTheFloor() throws Exception {
+        Account a = new SavingsAccount("s1", "saver", 1000.0);
+        AtomicInteger ok = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                try {
+                    a.withdrawInternal(1.0);
+                    ok.incrementAndGet();
+                } catch (IllegalStateException insufficient) {
+                    // expected once the balance reaches zero
+                }
+            }
+        });
+        assertEquals(1000, ok.get(), "exactly the available funds can be withdrawn");
+        assertEquals(0.0, a.getBalance(), 0.0001);
+    }
+
+    @Test
+    void checkingOverdraftLimitHoldsUnderContention() throws Exception {
+        CheckingAccount c = new CheckingAccount("c1", "checker", 100.0);
+        c.setOverdraftLimit(50.0);
+        AtomicInteger ok = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                try {
+                    c.withdrawInternal(1.0);
+                    ok.incrementAndGet();
+                } catch (IllegalStateException overdraft) {
+                    // expected once the overdraft is used up
+                }
+            }
+        });
+        assertEquals(150, ok.get());
+        assertEquals(-50.0, c.getBalance(), 0.0001);
+    }
+
+    @Test
+    void mixedCreditsAndDebitsBalanceOut() throws Exception {
+        Account a = new SavingsAccount("m1", "mixed", 500.0);
+        runConcurrently(() -> {
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                a.depositInternal(2.5);
+                a.withdrawInternal(2.5);
+            }
+        });
+        assertEquals(500.0, a.getBalance(), 0.0001);
+    }
+
+    private static void runConcurrently(Runnable body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run();
+                } catch (Throwable e) {
+                    synchronized (errors) { errors.add(e); }
+                }
+            });
+            threads.add(th);
+            th.start();
+        }
+        start.countDown();
+        for (Thread th : threads) th.join();
+        assertTrue(errors.isEmpty(), () -> "worker failed: " + errors.get(0));
+    }
+}
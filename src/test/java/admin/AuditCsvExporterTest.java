@@ -0,0 +1,62 @@
+package test.java.admin;
+
+import admin.AuditCsvExporter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.AuditLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditCsvExporterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void incrementalExportAppendsOnlyNewRows() throws Exception {
+        AuditLog log = new AuditLog();
+        log.recordMinor("EXECUTED", "c1", "s1", 1050, null);
+        log.recordMinor("FAILED: Insufficient funds", "c1", null, 5, "say \"hi\", ok");
+        AuditCsvExporter exporter = new AuditCsvExporter(log, dir);
+
+        assertEquals(2, exporter.exportIncremental("audit", false).getRows());
+        assertEquals(0, exporter.exportIncremental("audit", false).getRows());
+        log.recordMinor("REJECTED", "c2", "c1", -250, null);
+        AuditCsvExporter.Result r = exporter.exportIncremental("audit", false);
+        assertEquals(1, r.getRows());
+        assertEquals(3, r.getWatermark());
+
+        List<String> lines = Files.readAllLines(r.getFile());
+        assertEquals(4, lines.size());
+        assertEquals("timestamp,action,from,to,amount,note", lines.get(0));
+        assertTrue(lines.get(1).endsWith(",EXECUTED,c1,s1,10.50,"));
+        assertTrue(lines.get(2).endsWith(",FAILED: Insufficient funds,c1,,0.05,\"say \"\"hi\"\", ok\""));
+        assertTrue(lines.get(3).endsWith(",REJECTED,c2,c1,-2.50,"));
+    }
+
+    @Test
+    void gzipRunsAppendReadableMembers() throws Exception {
+        AuditLog log = new AuditLog();
+        log.recordMinor("EXECUTED", "c1", "s1", 100, "naïve €");
+        AuditCsvExporter exporter = new AuditCsvExporter(log, dir);
+        exporter.exportIncremental("audit", true);
+        log.recordMinor("EXECUTED", "c2", "s1", 200, null);
+        Path gz = exporter.exportIncremental("audit", true).getFile();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gz))) {
+            in.transferTo(bytes);
+        }
+        String[] lines = bytes.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].endsWith(",1.00,naïve €"));
+        assertTrue(lines[2].contains(",c2,s1,2.00,"));
+    }
+}
@@ -0,0 +1,93 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.AccountRegistry;
+import accounts.factory.AccountFactory;
+import notifications.NotificationObserver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry footprint and listing cost: AccountRegistry vs the LinkedHashMap + sort-per-listing
+ * the console used before.
+ * - bytes/account is the heap growth of the index alone: the Account objects are built first and
+ *   already carry an observer, as the console's do, so the registry's own observer is not charged
+ *   for growing their observer lists
+ * - a listing walks every account in id order, 20 per page
+ *
+ * Plain main() harness (the project has no JMH dependency): warm-up, then best of several rounds.
+ * For 10M accounts give it a large heap, e.g. -Xmx8g.
+ *
+ * Run: java test.java.bench.AccountRegistryBenchmark [accounts]
+ */
+public class AccountRegistryBenchmark {
+    private static final int ROUNDS = 3;
+    private static final int PAGE = 20;
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        NotificationObserver notifier = (a, event, message) -> { };
+        Account[] accounts = new Account[n];
+        for (int i = 0; i < n; i++) {
+            accounts[i] = i % 2 == 0
+                    ? AccountFactory.createSavings("acc" + i, "owner" + (i % 100_000), 10.0)
+                    : AccountFactory.createChecking("acc" + i, "owner" + (i % 100_000), 10.0);
+            accounts[i].addObserver(notifier);
+        }
+
+        long before = usedHeap();
+        Map<String, Account> plain = new LinkedHashMap<>();
+        for (Account a : accounts) plain.put(a.getId(), a);
+        long plainBytes = usedHeap() - before;
+
+        before = usedHeap();
+        long t0 = System.nanoTime();
+        AccountRegistry reg = new AccountRegistry();
+        for (Account a : accounts) reg.put(a.getId(), a);
+        reg.compact();
+        long loadNanos = System.nanoTime() - t0;
+        long regBytes = usedHeap() - before;
+        sink = plain.size() + reg.size();
+
+        long bestSort = Long.MAX_VALUE, bestPage = Long.MAX_VALUE, bestOwner = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS + 1; r++) {
+            long s0 = System.nanoTime();
+            List<Account> sorted = new ArrayList<>(plain.values());
+            sorted.sort((x, y) -> x.getId().compareTo(y.getId()));
+            int seen = 0;
+            for (int i = 0; i < sorted.size(); i += PAGE) seen += Math.min(PAGE, sorted.size() - i);
+            long s1 = System.nanoTime();
+            String after = null;
+            for (List<Account> page = reg.page(null, PAGE); !page.isEmpty(); page = reg.page(after, PAGE)) {
+                seen += page.size();
+                after = page.get(page.size() - 1).getId();
+            }
+            long s2 = System.nanoTime();
+            for (int i = 0; i < 100_000; i++) seen += reg.byOwner("owner" + i).size();
+            long s3 = System.nanoTime();
+            sink = seen;
+            if (r >= 1) { // first round is warm-up
+                bestSort = Math.min(bestSort, s1 - s0);
+                bestPage = Math.min(bestPage, s2 - s1);
+                bestOwner = Math.min(bestOwner, s3 - s2);
+            }
+        }
+        System.out.printf("accounts          : %,d%n", n);
+        System.out.printf("LinkedHashMap     : %.1f bytes/account%n", plainBytes / (double) n);
+        System.out.printf("AccountRegistry   : %.1f bytes/account, load %.0f ns/account%n",
+                regBytes / (double) n, loadNanos / (double) n);
+        System.out.printf("list (sort+page)  : %.1f ms%n", bestSort / 1e6);
+        System.out.printf("list (registry)   : %.1f ms%n", bestPage / 1e6);
+        System.out.printf("owner lookup      : %.0f ns%n", bestOwner / 100_000.0);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,64 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import transactions.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Decision throughput: hand-linked validation -> auto -> manager chain vs the compiled ApprovalPipeline.
+ * stdout is redirected to a discarding stream while timing, so the chain pays for building and
+ * synchronizing its messages but not for the terminal.
+ *
+ * Plain main() harness (the project has no JMH dependency): warm-up, then best of several rounds.
+ *
+ * Run: java test.java.bench.ApprovalPipelineBenchmark [decisions]
+ */
+public class ApprovalPipelineBenchmark {
+    private static final int ROUNDS = 5;
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Account a = AccountFactory.createSavings(null, "a", 1_000_000.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+        Transaction[] txs = new Transaction[64];
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = new Transaction(Transaction.Type.TRANSFER, a, b, (i * 47) % 2600 + 1);
+        }
+
+        TransactionValidationHandler chain = new TransactionValidationHandler();
+        AutoApprovalHandler auto = new AutoApprovalHandler(500);
+        chain.setSuccessor(auto);
+        auto.setSuccessor(new ManagerApprovalHandler(2000));
+        ApprovalPipeline pipeline = ApprovalPipeline.builder()
+                .requirePositiveAmount().requireSourceCanSend().requireDestinationCanReceive()
+                .requireAvailableBalance().autoApproveUpTo(500).managerApproveUpTo(2000)
+                .sink(new CountingDecisionSink()).build();
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long bestChain = Long.MAX_VALUE, bestPipeline = Long.MAX_VALUE;
+        try {
+            for (int r = 0; r < ROUNDS + 2; r++) {
+                long t0 = System.nanoTime();
+                int ok = 0;
+                for (int i = 0; i < n; i++) if (chain.handle(txs[i & 63])) ok++;
+                long t1 = System.nanoTime();
+                for (int i = 0; i < n; i++) if (pipeline.handle(txs[i & 63])) ok++;
+                long t2 = System.nanoTime();
+                sink = ok;
+                if (r >= 2) { // first two rounds are warm-up
+                    bestChain = Math.min(bestChain, t1 - t0);
+                    bestPipeline = Math.min(bestPipeline, t2 - t1);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+        System.out.printf("chain   : %.1f ns/decision%n", bestChain / (double) n);
+        System.out.printf("pipeline: %.1f ns/decision%n", bestPipeline / (double) n);
+    }
+}
@@ -0,0 +1,46 @@
+package test.java.bench;
+
+import admin.AuditCsvExporter;
+import transactions.AuditLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Full and incremental CSV export throughput through AuditCsvExporter.
+ * Heap use is printed after the export: it should not grow with the number of rows.
+ *
+ * Run: java test.java.bench.AuditCsvExportBenchmark [entries] [gzip]
+ */
+public class AuditCsvExportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        boolean gzip = args.length > 1 && Boolean.parseBoolean(args[1]);
+        Path dir = Files.createTempDirectory("audit-csv-bench");
+
+        AuditLog log = new AuditLog();
+        for (int i = 0; i < entries; i++) {
+            log.recordMinor(i % 17 == 0 ? "FAILED: Insufficient funds" : "EXECUTED", "c" + (i & 1023), "s" + (i & 511), i, null);
+        }
+        AuditCsvExporter exporter = new AuditCsvExporter(log, dir);
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long before = rt.totalMemory() - rt.freeMemory();
+
+        long t0 = System.nanoTime();
+        AuditCsvExporter.Result full = exporter.exportIncremental("audit", gzip);
+        long t1 = System.nanoTime();
+        System.gc();
+        long after = rt.totalMemory() - rt.freeMemory();
+        System.out.printf("full export : %d rows in %.1f ms -> %.0f rows/s, %.1f MB on disk, heap delta %+.1f MB%n",
+                full.getRows(), (t1 - t0) / 1e6, full.getRows() / ((t1 - t0) / 1e9),
+                Files.size(full.getFile()) / 1e6, (after - before) / 1e6);
+
+        for (int i = 0; i < 10_000; i++) log.recordMinor("EXECUTED", "c1", "s1", i, null);
+        long t2 = System.nanoTime();
+        AuditCsvExporter.Result inc = exporter.exportIncremental("audit", gzip);
+        long t3 = System.nanoTime();
+        System.out.printf("incremental : %d rows in %.1f ms%n", inc.getRows(), (t3 - t2) / 1e6);
+    }
+}
@@ -0,0 +1,36 @@
+package test.java.bench;
+
+import transactions.AuditJournal;
+import transactions.AuditLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Append throughput of a journaled AuditLog (memory-mapped segments, group commit).
+ *
+ * Run: java test.java.bench.AuditJournalBenchmark [entries] [flushIntervalMillis]
+ */
+public class AuditJournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long flushMs = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        Path dir = Files.createTempDirectory("audit-bench");
+
+        AuditLog log = new AuditLog(new AuditJournal(dir, 262_144, flushMs));
+        long t0 = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+            log.recordMinor("EXECUTED", "c" + (i & 1023), "s" + (i & 511), i, null);
+        }
+        long t1 = System.nanoTime();
+        log.close();
+        System.out.printf("appends: %d in %.1f ms -> %.0f appends/s%n", entries, (t1 - t0) / 1e6, entries / ((t1 - t0) / 1e9));
+
+        long t2 = System.nanoTime();
+        AuditLog replayed = new AuditLog(new AuditJournal(dir, 262_144, flushMs));
+        long t3 = System.nanoTime();
+        System.out.printf("replay : %d entries in %.1f ms%n", replayed.entriesCount(), (t3 - t2) / 1e6);
+        replayed.close();
+    }
+}
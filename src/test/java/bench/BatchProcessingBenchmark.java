@@ -0,0 +1,86 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.SavingsAccount;
+import transactions.AutoApprovalHandler;
+import transactions.ManagerApprovalHandler;
+import transactions.Transaction;
+import transactions.TransactionService;
+import transactions.TransactionValidationHandler;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares a loop of TransactionService.process(...) with processBatch(...) for a payroll-style
+ * file: one employer account paying many employees.
+ * Console output of the chain is discarded during the runs so only the processing cost is measured.
+ *
+ * Run: java test.java.bench.BatchProcessingBenchmark [payments] [batchSize]
+ */
+public class BatchProcessingBenchmark {
+
+    public static void main(String[] args) {
+        int payments = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        for (int round = 0; round < 3; round++) {
+            long loopNs = runLoop(payments);
+            long batchNs = runBatch(payments, batchSize);
+            System.out.printf("round %d: loop %.0f tx/s, batch(%d) %.0f tx/s, speed-up x%.1f%n",
+                    round, payments / (loopNs / 1e9), batchSize, payments / (batchNs / 1e9), loopNs / (double) batchNs);
+        }
+    }
+
+    private static TransactionService newService() {
+        TransactionValidationHandler validation = new TransactionValidationHandler();
+        AutoApprovalHandler auto = new AutoApprovalHandler(500);
+        ManagerApprovalHandler manager = new ManagerApprovalHandler(2000);
+        validation.setSuccessor(auto);
+        auto.setSuccessor(manager);
+        return new TransactionService(validation);
+    }
+
+    private static List<Transaction> payroll(int payments) {
+        Account employer = new SavingsAccount("emp", "employer", payments * 1_000.0);
+        List<Transaction> txs = new ArrayList<>(payments);
+        for (int i = 0; i < payments; i++) {
+            Account employee = new SavingsAccount("e" + i, "employee" + i, 0.0);
+            txs.add(new Transaction(Transaction.Type.TRANSFER, employer, employee, 100.0 + (i % 900)));
+        }
+        return txs;
+    }
+
+    private static long runLoop(int payments) {
+        TransactionService svc = newService();
+        List<Transaction> txs = payroll(payments);
+        return quietly(() -> {
+            for (Transaction tx : txs) svc.process(tx);
+        }, svc);
+    }
+
+    private static long runBatch(int payments, int batchSize) {
+        TransactionService svc = newService();
+        List<Transaction> txs = payroll(payments);
+        return quietly(() -> {
+            for (int i = 0; i < txs.size(); i += batchSize) {
+                svc.processBatch(txs.subList(i, Math.min(txs.size(), i + batchSize)));
+            }
+        }, svc);
+    }
+
+    private static long quietly(Runnable body, TransactionService svc) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long t0 = System.nanoTime();
+            body.run();
+            return System.nanoTime() - t0;
+        } finally {
+            System.setOut(out);
+            svc.shutdown();
+        }
+    }
+}
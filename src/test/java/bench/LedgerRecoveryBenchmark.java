@@ -0,0 +1,57 @@
+package test.java.bench;
+
+import transactions.Ledger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Ledger startup cost: full log replay (no snapshot) vs snapshot + empty tail.
+ * - writes n transfer entries between 100k accounts with group commit (50 ms), then closes
+ * - "log only" deletes snapshot.bin before reopening, so every entry is replayed
+ * - the files stay in the OS page cache, so this is replay CPU cost, not a cold disk read
+ *
+ * Plain main() harness (the project has no JMH dependency). 100M entries need ~3.2 GB of disk.
+ *
+ * Run: java test.java.bench.LedgerRecoveryBenchmark [entries]
+ */
+public class LedgerRecoveryBenchmark {
+    private static final int ACCOUNTS = 100_000;
+
+    public static void main(String[] args) throws IOException {
+        long n = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        Path dir = Files.createTempDirectory("ledger-bench");
+        try {
+            String[] ids = new String[ACCOUNTS];
+            long t0 = System.nanoTime();
+            try (Ledger ledger = new Ledger(dir, 1 << 20, 50, Long.MAX_VALUE)) {
+                for (int i = 0; i < ACCOUNTS; i++) {
+                    ids[i] = "a" + i;
+                    ledger.openAccount(ids[i], "SavingsAccount", "owner" + i, 1_000_000);
+                }
+                for (long i = ACCOUNTS; i < n; i++) {
+                    int from = (int) (i % ACCOUNTS), to = (int) ((from + 1 + i % 9973) % ACCOUNTS);
+                    ledger.post(ids[from], ids[to], 1 + i % 100, Ledger.Kind.TRANSFER);
+                }
+            }
+            long t1 = System.nanoTime();
+            System.out.printf("write           : %,d entries, %.0f ns/entry%n", n, (t1 - t0) / (double) n);
+
+            Files.delete(dir.resolve("snapshot.bin"));
+            try (Ledger replayed = new Ledger(dir, 1 << 20, 50, Long.MAX_VALUE)) {
+                System.out.printf("open (log only) : %,d entries replayed in %d ms, trial balance %d%n",
+                        replayed.replayedOnOpen(), replayed.recoveryMillis(), replayed.trialBalance());
+            } // close() writes the snapshot again
+            try (Ledger snap = new Ledger(dir, 1 << 20, 50, Long.MAX_VALUE)) {
+                System.out.printf("open (snapshot) : %,d entries replayed in %d ms%n", snap.replayedOnOpen(), snap.recoveryMillis());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package test.java.bench;
+
+import util.Money;
+
+/**
+ * Compares the old double arithmetic with fixed-point long minor units.
+ * - throughput: accumulate many small amounts and split them N ways
+ * - drift: how far each representation ends up from the exact result
+ *
+ * Plain main() harness (the project has no JMH dependency); it warms up first and
+ * prints the best of several rounds.
+ *
+ * Run: java test.java.bench.MoneyArithmeticBenchmark
+ */
+public class MoneyArithmeticBenchmark {
+    private static final int N = 20_000_000;
+    private static final int ROUNDS = 5;
+
+    private static volatile long sinkLong;
+    private static volatile double sinkDouble;
+
+    public static void main(String[] args) {
+        // warm-up
+        for (int i = 0; i < 3; i++) { doubleLoop(); longLoop(); }
+
+        long bestDouble = Long.MAX_VALUE, bestLong = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long t0 = System.nanoTime();
+            doubleLoop();
+            long t1 = System.nanoTime();
+            longLoop();
+            long t2 = System.nanoTime();
+            bestDouble = Math.min(bestDouble, t1 - t0);
+            bestLong = Math.min(bestLong, t2 - t1);
+        }
+        System.out.printf("double: %.2f ns/op%n", bestDouble / (double) N);
+        System.out.printf("long  : %.2f ns/op%n", bestLong / (double) N);
+
+        // drift: add 0.10 ten million times (exact answer 1,000,000.00)
+        double d = 0;
+        long m = 0;
+        long tenCents = Money.ofMajor(0.10);
+        for (int i = 0; i < 10_000_000; i++) { d += 0.10; m += tenCents; }
+        System.out.println("drift double: " + (d - 1_000_000.0));
+        System.out.println("drift long  : " + Money.toMajor(m - Money.ofMajor(1_000_000.0)));
+    }
+
+    // deposit 0.07..0.10 then split across 3 children (old EvenSplitDeposit style)
+    private static void doubleLoop() {
+        double balance = 0, children = 0;
+        for (int i = 0; i < N; i++) {
+            double amt = (7 + (i & 3)) / 100.0;
+            balance += amt;
+            double per = amt / 3;
+            children += per + per + per;
+        }
+        sinkDouble = balance + children;
+    }
+
+    private static void longLoop() {
+        long balance = 0, children = 0;
+        for (int i = 0; i < N; i++) {
+            long amt = 7 + (i & 3);
+            balance += amt;
+            children += Money.share(amt, 3, 0) + Money.share(amt, 3, 1) + Money.share(amt, 3, 2);
+        }
+        sinkLong = balance + children;
+    }
+}
@@ -0,0 +1,66 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import payment.PaymentService;
+import payment.SimulatedLatencyGateway;
+import payment.TransferScope;
+import transactions.AccountLockStripes;
+import transactions.HoldLedger;
+import transactions.Transaction;
+import util.VirtualThreads;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load harness for PaymentService execution modes under simulated gateway latency.
+ * Every transfer holds funds, calls the gateway, settles the hold and runs a completion handler.
+ * - PLATFORM-64: blocking calls on a fixed pool of 64 platform threads (the original setup)
+ * - ASYNC: AsyncPaymentGateway stages, no thread per call
+ * - VIRTUAL: one virtual thread per transfer (platform thread per transfer if the JDK has none:
+ *   run on 21+, or 19/20 with --enable-preview, to see real virtual threads)
+ * Reports wall time, throughput and the peak live thread count of the JVM.
+ *
+ * Run: java test.java.bench.PaymentExecutionModeBenchmark [transfers] [latencyMillis]
+ */
+public class PaymentExecutionModeBenchmark {
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        System.out.println("virtual threads available: " + VirtualThreads.isAvailable());
+        try (SimulatedLatencyGateway gateway = new SimulatedLatencyGateway("bench", latency, latency / 5, 0.01)) {
+            run("PLATFORM-64", new PaymentService(gateway, PaymentService.ExecutionMode.PLATFORM, Executors.newFixedThreadPool(64)), n);
+            run("ASYNC", new PaymentService(gateway, PaymentService.ExecutionMode.ASYNC), n);
+            run("VIRTUAL", new PaymentService(gateway, PaymentService.ExecutionMode.VIRTUAL), n);
+        }
+    }
+
+    private static void run(String label, PaymentService payments, int n) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        Account src = AccountFactory.createSavings(null, "src", n * 10.0);
+        Account dst = AccountFactory.createSavings(null, "dst", 0.0);
+        HoldLedger holds = new HoldLedger(new AccountLockStripes(), 60_000, 0);
+        LongAdder handled = new LongAdder();
+
+        long t0 = System.nanoTime();
+        CompletableFuture<?>[] all = new CompletableFuture<?>[n];
+        for (int i = 0; i < n; i++) {
+            Transaction tx = new Transaction(Transaction.Type.TRANSFER, src, dst, 1.0);
+            TransferScope scope = payments.submitTransfer(tx, holds.place(src, 1.0), (ok, ex) -> handled.increment());
+            all[i] = scope.result().exceptionally(ex -> false);
+        }
+        CompletableFuture.allOf(all).join();
+        long elapsed = System.nanoTime() - t0;
+        payments.shutdownExecutor();
+
+        System.out.printf("%-12s %6d transfers in %6.0f ms  %8.0f/s  peak threads %5d  committed %d released %d handled %d%n",
+                label, n, elapsed / 1e6, n / (elapsed / 1e9), threads.getPeakThreadCount(),
+                holds.committedCount(), holds.releasedCount(), handled.sum());
+        holds.close();
+    }
+}
@@ -0,0 +1,66 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.AccountRegistry;
+import accounts.factory.AccountFactory;
+import recommendations.RecommendationRule;
+import recommendations.RecommendationService;
+import recommendations.RecommendationStore;
+import recommendations.SpendingAggregator;
+import transactions.AuditLog;
+import transactions.Transaction;
+
+/**
+ * Nightly recommendation run: sequential analyzeAll vs the fork/join runBulk, default rule set.
+ * - n accounts; half of them moved money today (SpendingAggregator), 1% have SKIPPED_* audit entries
+ * - the audit window is counted once per run in both modes, so the difference is the account pass
+ *
+ * Plain main() harness (the project has no JMH dependency): warm-up, then best of several rounds.
+ * 5M accounts need a large heap, e.g. -Xmx12g.
+ *
+ * Run: java test.java.bench.RecommendationBenchmark [accounts]
+ */
+public class RecommendationBenchmark {
+    private static final int ROUNDS = 3;
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        AccountRegistry accounts = new AccountRegistry();
+        SpendingAggregator spending = new SpendingAggregator();
+        AuditLog audit = new AuditLog();
+        long now = System.currentTimeMillis();
+        Account previous = null;
+        for (int i = 0; i < n; i++) {
+            Account a = AccountFactory.createSavings("acc" + i, "owner" + i, i % 3 == 0 ? 15_000.0 : 500.0);
+            accounts.put(a.getId(), a);
+            if (i % 2 == 1) spending.record(Transaction.ofMinor(Transaction.Type.TRANSFER, a, previous, 1 + i % 900_000), now);
+            if (i % 100 == 0) audit.record(new Transaction(Transaction.Type.TRANSFER, a, previous, 5.0).asRecurring(), "SKIPPED_INSUFFICIENT_FUNDS");
+            previous = a;
+        }
+        accounts.compact();
+        RecommendationService service = new RecommendationService(spending, audit, RecommendationRule.defaults());
+
+        long bestSeq = Long.MAX_VALUE, bestBulk = Long.MAX_VALUE;
+        RecommendationStore store = null;
+        for (int r = 0; r < ROUNDS + 1; r++) {
+            long[] advised = {0};
+            long t0 = System.nanoTime();
+            service.analyzeAll(accounts.values(), (a, recs) -> advised[0] += recs.size());
+            long t1 = System.nanoTime();
+            store = service.runBulk(accounts);
+            long t2 = System.nanoTime();
+            sink = advised[0] + store.accountsScanned();
+            if (r >= 1) { // first round is warm-up
+                bestSeq = Math.min(bestSeq, t1 - t0);
+                bestBulk = Math.min(bestBulk, t2 - t1);
+            }
+        }
+        System.out.printf("accounts          : %,d (%d fork/join workers)%n", n, java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("analyzeAll        : %.0f ms (%.0f ns/account)%n", bestSeq / 1e6, bestSeq / (double) n);
+        System.out.printf("runBulk           : %.0f ms (%.0f ns/account)%n", bestBulk / 1e6, bestBulk / (double) n);
+        for (RecommendationRule rule : store.getRules()) {
+            System.out.printf("  %-20s %,d%n", rule.getCode(), store.count(rule.getCode()));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package test.java.bench;
+
+import transactions.RecurringScheduler;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Schedules N standing orders (random 1..60 s offsets, 60 s period) on the old
+ * ScheduledThreadPoolExecutor and on the sharded timing wheel, then lets both run for a while.
+ * Prints scheduling cost, fired count and the wheel's lag metrics.
+ *
+ * Run: java test.java.bench.RecurringSchedulerBenchmark [tasks] [runSeconds]
+ */
+public class RecurringSchedulerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        LongAdder poolRuns = new LongAdder();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(2);
+        long t0 = System.nanoTime();
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[tasks];
+        for (int i = 0; i < tasks; i++) {
+            futures[i] = pool.scheduleAtFixedRate(poolRuns::increment, 1 + (i % 60), 60, TimeUnit.SECONDS);
+        }
+        long t1 = System.nanoTime();
+        Thread.sleep(runSeconds * 1000L);
+        pool.shutdownNow();
+        System.out.printf("executor: schedule %.1f ms, fired %d in %d s%n", (t1 - t0) / 1e6, poolRuns.sum(), runSeconds);
+
+        LongAdder wheelRuns = new LongAdder();
+        RecurringScheduler<Integer> wheel = new RecurringScheduler<>(4, 100, due -> wheelRuns.add(due.size()));
+        long t2 = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            wheel.schedule(i, "c" + (i & 4095), 1000L * (1 + (i % 60)), 60_000);
+        }
+        long t3 = System.nanoTime();
+        Thread.sleep(runSeconds * 1000L);
+        System.out.printf("wheel   : schedule %.1f ms, fired %d in %d s, lag avg %.1f ms max %d ms now %d ms%n",
+                (t3 - t2) / 1e6, wheelRuns.sum(), runSeconds,
+                wheel.averageLagMillis(), wheel.maxLagMillis(), wheel.currentLagMillis());
+        wheel.shutdown();
+    }
+}
@@ -0,0 +1,48 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import transactions.RecurringStore;
+import transactions.RecurringTransaction;
+import transactions.Transaction;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes N recurring definitions, then times reopening the store (the startup scan)
+ * and the catch-up evaluation (missed runs per definition).
+ *
+ * Run: java test.java.bench.RecurringStoreBenchmark [definitions]
+ */
+public class RecurringStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path file = Files.createTempDirectory("recurring-bench").resolve("recurring.dat");
+        Account from = AccountFactory.createSavings(null, "from", 0.0);
+        Account to = AccountFactory.createSavings(null, "to", 0.0);
+        long now = System.currentTimeMillis();
+
+        long t0 = System.nanoTime();
+        try (RecurringStore store = new RecurringStore(file)) {
+            for (int i = 0; i < n; i++) {
+                store.add(new RecurringTransaction("rtx-" + i, Transaction.Type.TRANSFER, from, to, 5.0,
+                        RecurringTransaction.CatchUpPolicy.values()[i % 3]), now - 86_400_000L - i, 3_600_000L);
+                if ((i & 1023) == 0) store.markRun("rtx-" + i, now - 7_200_000L);
+            }
+        }
+        long t1 = System.nanoTime();
+        System.out.printf("write  : %d definitions in %.1f ms (%.1f MB)%n", n, (t1 - t0) / 1e6, Files.size(file) / 1e6);
+
+        long t2 = System.nanoTime();
+        long missed = 0;
+        try (RecurringStore store = new RecurringStore(file)) {
+            long t3 = System.nanoTime();
+            for (RecurringStore.Definition d : store.definitions()) missed += d.missedRuns(now);
+            long t4 = System.nanoTime();
+            System.out.printf("open   : %d definitions in %.1f ms%n", store.definitions().size(), (t3 - t2) / 1e6);
+            System.out.printf("catchup: %d missed runs evaluated in %.1f ms%n", missed, (t4 - t3) / 1e6);
+        }
+    }
+}
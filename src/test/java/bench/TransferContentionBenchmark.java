@@ -0,0 +1,80 @@
+package test.java.bench;
+
+import accounts.Account;
+import accounts.SavingsAccount;
+import transactions.Transaction;
+import transactions.TransactionHandler;
+import transactions.TransactionService;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark for TransactionService.process (striped account locks).
+ * Runs random transfers between a pool of accounts with 1..N threads and prints throughput.
+ * Also checks that the total money in the system is unchanged (no lost updates).
+ *
+ * Run: java test.java.bench.TransferContentionBenchmark [accounts] [secondsPerRun]
+ */
+public class TransferContentionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        System.out.printf("accounts=%d, seconds/run=%d%n", accountCount, seconds);
+        System.out.printf("%-8s %-14s %-10s%n", "threads", "ops/sec", "balanced");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(accountCount, threads, seconds);
+        }
+    }
+
+    private static void run(int accountCount, int threads, int seconds) throws InterruptedException {
+        TransactionHandler approveAll = new TransactionHandler() {
+            @Override public boolean handle(Transaction tx) { return true; }
+        };
+        TransactionService svc = new TransactionService(approveAll);
+        Account[] accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) accounts[i] = new SavingsAccount("b" + i, "bench" + i, 1_000_000.0);
+        double before = total(accounts);
+
+        AtomicLong ops = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    long local = 0;
+                    while (System.nanoTime() < deadline) {
+                        Account from = accounts[rnd.nextInt(accountCount)];
+                        Account to = accounts[rnd.nextInt(accountCount)];
+                        if (from == to) continue;
+                        svc.process(new Transaction(Transaction.Type.TRANSFER, from, to, 1.0));
+                        local++;
+                    }
+                    ops.addAndGet(local);
+                } catch (InterruptedException ignored) {
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        svc.shutdown();
+
+        boolean balanced = Math.abs(before - total(accounts)) < 0.001;
+        System.out.printf("%-8d %-14.0f %-10s%n", threads, ops.get() / (double) seconds, balanced);
+    }
+
+    private static double total(Account[] accounts) {
+        double sum = 0;
+        for (Account a : accounts) sum += a.getBalance();
+        return sum;
+    }
+}
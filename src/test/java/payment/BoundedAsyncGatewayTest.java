@@ -0,0 +1,112 @@
+package test.java.payment;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import payment.AsyncPaymentGateway;
+import payment.BoundedAsyncGateway;
+import payment.SimulatedLatencyGateway;
+import payment.TransferOutcomeUnknownException;
+import transactions.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedAsyncGatewayTest {
+    private static final Account FROM = AccountFactory.createChecking("s1", "from", 0.0);
+    private static final Account TO = AccountFactory.createChecking("s2", "to", 0.0);
+
+    private static Transaction tx() {
+        return new Transaction(Transaction.Type.TRANSFER, FROM, TO, 1.0);
+    }
+
+    @Test
+    void tenThousandConcurrentPaymentsWithoutThreadPerPayment() {
+        try (SimulatedLatencyGateway sim = new SimulatedLatencyGateway("sim", 200, 50, 0.0)) {
+            BoundedAsyncGateway gw = new BoundedAsyncGateway(sim, 10_000, 0, 5_000);
+            int threadsBefore = Thread.activeCount();
+            List<CompletableFuture<Boolean>> all = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) all.add(gw.processAsync(tx()));
+            assertTrue(gw.inFlight() > 5_000, "calls are outstanding, not serialized");
+            assertTrue(Thread.activeCount() - threadsBefore < 10, "no thread per payment");
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+            assertEquals(10_000, gw.succeededCount());
+            assertEquals(0, gw.inFlight());
+        }
+    }
+
+    @Test
+    void inFlightLimitQueuesThenRejects() {
+        List<CompletableFuture<Boolean>> provider = new ArrayList<>();
+        AsyncPaymentGateway manual = t -> {
+            CompletableFuture<Boolean> f = new CompletableFuture<>();
+            provider.add(f);
+            return f;
+        };
+        BoundedAsyncGateway gw = new BoundedAsyncGateway(manual, 2, 1, 0);
+        CompletableFuture<Boolean> a = gw.processAsync(tx());
+        CompletableFuture<Boolean> b = gw.processAsync(tx());
+        CompletableFuture<Boolean> c = gw.processAsync(tx());
+        CompletableFuture<Boolean> d = gw.processAsync(tx());
+        assertEquals(2, provider.size());
+        assertEquals(1, gw.queued());
+        CompletionException rejected = assertThrows(CompletionException.class, d::join);
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+        provider.get(0).complete(true);
+        assertTrue(a.join());
+        assertEquals(3, provider.size(), "queued call started when a permit came back");
+        provider.get(1).complete(false);
+        provider.get(2).complete(true);
+        assertFalse(b.join());
+        assertTrue(c.join());
+        assertEquals(0, gw.inFlight());
+    }
+
+    @Test
+    void deadlineAndCancellationReachTheProvider() {
+        AtomicInteger cancelled = new AtomicInteger();
+        AsyncPaymentGateway never = t -> {
+            CompletableFuture<Boolean> f = new CompletableFuture<>();
+            f.whenComplete((r, ex) -> { if (f.isCancelled()) cancelled.incrementAndGet(); });
+            return f;
+        };
+        BoundedAsyncGateway gw = new BoundedAsyncGateway(never, 1, 10, 0);
+        CompletableFuture<Boolean> slow = gw.processAsync(tx(), 50);
+        CompletableFuture<Boolean> waiting = gw.processAsync(tx());
+        CompletionException timeout = assertThrows(CompletionException.class, slow::join);
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        awaitCount(cancelled, 1); // the provider call is cancelled right after the caller sees the timeout
+        assertEquals(1, gw.timedOutCount());
+
+        // the freed permit went to the queued call; cancelling it cancels the provider call
+        assertEquals(1, gw.inFlight());
+        waiting.cancel(true);
+        assertEquals(2, cancelled.get());
+        assertEquals(0, gw.inFlight());
+
+        // a deadline passed in the queue: never sent, so not an unknown outcome
+        CompletableFuture<Boolean> busy = gw.processAsync(tx());
+        CompletableFuture<Boolean> expired = gw.processAsync(tx(), 50);
+        assertInstanceOf(RejectedExecutionException.class, assertThrows(CompletionException.class, expired::join).getCause());
+        assertEquals(2, cancelled.get(), "the expired call never reached the provider");
+        busy.cancel(true);
+
+        // blocking callers get the unknown outcome as an exception, not as a decline
+        BoundedAsyncGateway timed = new BoundedAsyncGateway(never, 1, 10, 50);
+        assertThrows(TransferOutcomeUnknownException.class, () -> timed.process(tx()));
+    }
+
+    private static void awaitCount(AtomicInteger n, int expected) {
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (n.get() < expected && System.nanoTime() < deadline) Thread.onSpinWait();
+        assertEquals(expected, n.get());
+    }
+}
@@ -0,0 +1,145 @@
+package test.java.payment;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import payment.BoundedAsyncGateway;
+import payment.PaymentService;
+import payment.SimulatedLatencyGateway;
+import payment.TransferOutcomeUnknownException;
+import payment.TransferScope;
+import transactions.HoldLedger;
+import transactions.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentServiceModeTest {
+
+    @Test
+    void everyModeSettlesHoldsAndRunsHandlers() {
+        try (SimulatedLatencyGateway gw = new SimulatedLatencyGateway("t", 5, 2, 0.0)) {
+            for (PaymentService.ExecutionMode mode : PaymentService.ExecutionMode.values()) {
+                PaymentService payments = new PaymentService(gw, mode);
+                HoldLedger holds = new HoldLedger(null, 60_000, 0);
+                Account a = AccountFactory.createSavings(null, "a", 100.0);
+                Account b = AccountFactory.createSavings(null, "b", 0.0);
+                List<Boolean> seen = new CopyOnWriteArrayList<>();
+                List<TransferScope> scopes = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    Transaction tx = new Transaction(Transaction.Type.TRANSFER, a, b, 1.0);
+                    scopes.add(payments.submitTransfer(tx, holds.place(a, 1.0), (ok, ex) -> seen.add(ok)));
+                }
+                for (TransferScope s : scopes) assertTrue(s.result().join(), mode.name());
+                assertEquals(50, seen.size(), mode.name());
+                assertEquals(50, holds.committedCount(), mode.name());
+                assertEquals(50.0, a.getBalance(), 1e-9, mode.name());
+                assertEquals(0, payments.openTransfers(), mode.name());
+                payments.shutdownExecutor();
+            }
+        }
+    }
+
+    @Test
+    void cancelReleasesOnlyTransfersNotSentYet() throws Exception {
+        try (SimulatedLatencyGateway gw = new SimulatedLatencyGateway("gw", 300, 0, 0.0)) {
+            PaymentService payments = new PaymentService(gw, PaymentService.ExecutionMode.PLATFORM, Executors.newSingleThreadExecutor());
+            HoldLedger holds = new HoldLedger(null, 60_000, 0);
+            Account a = AccountFactory.createSavings(null, "a", 10.0);
+            Transaction tx = new Transaction(Transaction.Type.WITHDRAW, a, null, 4.0);
+            List<Throwable> errors = new CopyOnWriteArrayList<>();
+            List<Boolean> late = new CopyOnWriteArrayList<>();
+            TransferScope sent = payments.submitTransfer(tx, holds.place(a, 4.0), (ok, ex) -> errors.add(ex), late::add);
+            TransferScope queued = payments.submitTransfer(tx, holds.place(a, 4.0), null); // waits for the only thread
+            await(sent::isSent);
+            assertEquals(2.0, a.getBalance(), 1e-9);
+
+            assertTrue(queued.cancel());
+            assertFalse(queued.cancel());
+            assertThrows(CancellationException.class, () -> queued.result().join());
+            assertEquals(HoldLedger.Status.RELEASED, queued.getHold().getStatus());
+
+            assertTrue(sent.cancel());
+            CompletionException unknown = assertThrows(CompletionException.class, () -> sent.result().join());
+            assertInstanceOf(TransferOutcomeUnknownException.class, unknown.getCause());
+            assertInstanceOf(TransferOutcomeUnknownException.class, errors.get(0));
+            assertEquals(HoldLedger.Status.HELD, sent.getHold().getStatus(), "the provider may have paid");
+
+            // the provider's late answer still settles the hold
+            await(() -> sent.getHold().getStatus() == HoldLedger.Status.COMMITTED);
+            await(() -> !late.isEmpty());
+            assertEquals(List.of(true), late, "handed to the caller to book");
+            assertEquals(6.0, a.getBalance(), 1e-9);
+            payments.shutdownExecutor();
+        }
+    }
+
+    @Test
+    void answerAfterTheDeadlineKeepsTheHold() throws Exception {
+        try (SimulatedLatencyGateway slow = new SimulatedLatencyGateway("slow", 300, 0, 0.0)) {
+            for (PaymentService.ExecutionMode mode : PaymentService.ExecutionMode.values()) {
+                PaymentService payments = new PaymentService(new BoundedAsyncGateway(slow, 1, 0, 50), mode);
+                HoldLedger holds = new HoldLedger(null, 60_000, 0);
+                Account a = AccountFactory.createSavings(null, "a", 10.0);
+                TransferScope scope = payments.submitTransfer(new Transaction(Transaction.Type.WITHDRAW, a, null, 4.0), holds.place(a, 4.0), null);
+                CompletionException unknown = assertThrows(CompletionException.class, () -> scope.result().join());
+                assertInstanceOf(TransferOutcomeUnknownException.class, unknown.getCause(), mode.name());
+
+                Thread.sleep(400); // the provider has answered by now
+                assertEquals(HoldLedger.Status.HELD, scope.getHold().getStatus(), mode.name() + ": may have been paid");
+                assertEquals(6.0, a.getBalance(), 1e-9, mode.name());
+                assertEquals(0, holds.releasedCount(), mode.name());
+                assertEquals(0, holds.expireDue(Long.MAX_VALUE), mode.name() + ": kept for reconciliation");
+                assertTrue(scope.getHold().isReconciling(), mode.name());
+                payments.shutdownExecutor();
+            }
+        }
+    }
+
+    @Test
+    void shutdownWaitsForOpenTransfersThenKeepsUnansweredHolds() {
+        try (SimulatedLatencyGateway gw = new SimulatedLatencyGateway("gw", 100, 0, 0.0);
+             SimulatedLatencyGateway stuck = new SimulatedLatencyGateway("stuck", 60_000, 0, 0.0)) {
+            for (PaymentService.ExecutionMode mode : PaymentService.ExecutionMode.values()) {
+                PaymentService payments = new PaymentService(gw, mode);
+                HoldLedger holds = new HoldLedger(null, 60_000, 0);
+                Account a = AccountFactory.createSavings(null, "a", 10.0);
+                Transaction tx = new Transaction(Transaction.Type.WITHDRAW, a, null, 4.0);
+                TransferScope open = payments.submitTransfer(tx, holds.place(a, 4.0), null);
+
+                payments.shutdownExecutor(5_000);
+                assertTrue(open.result().join(), mode.name());
+                assertEquals(HoldLedger.Status.COMMITTED, open.getHold().getStatus(), mode.name());
+
+                TransferScope refused = payments.submitTransfer(tx, holds.place(a, 4.0), null);
+                assertThrows(CompletionException.class, () -> refused.result().join());
+                assertEquals(HoldLedger.Status.RELEASED, refused.getHold().getStatus(), mode.name());
+                assertEquals(6.0, a.getBalance(), 1e-9, mode.name());
+            }
+
+            PaymentService payments = new PaymentService(stuck, PaymentService.ExecutionMode.ASYNC);
+            HoldLedger holds = new HoldLedger(null, 60_000, 0);
+            Account a = AccountFactory.createSavings(null, "a", 10.0);
+            TransferScope unanswered = payments.submitTransfer(new Transaction(Transaction.Type.WITHDRAW, a, null, 4.0), holds.place(a, 4.0), null);
+            payments.shutdownExecutor(50);
+            assertTrue(unanswered.isDone());
+            assertEquals(HoldLedger.Status.HELD, unanswered.getHold().getStatus());
+            assertEquals(6.0, a.getBalance(), 1e-9);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package test.java.payment;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import payment.AsyncPaymentGateway;
+import payment.CircuitBreaker;
+import payment.ExternalAccount;
+import payment.RoutingPaymentGateway;
+import payment.SimulatedLatencyGateway;
+import transactions.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingPaymentGatewayTest {
+    private static final Account FROM = AccountFactory.createChecking("r1", "from", 0.0);
+
+    private static Transaction tx(String to) {
+        return new Transaction(Transaction.Type.TRANSFER, FROM, new ExternalAccount(to, to), 1.0);
+    }
+
+    private static Transaction tx() {
+        return tx("DE89370400440532013000");
+    }
+
+    // counts calls and answers with the given stage
+    private static final class Stub implements AsyncPaymentGateway {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        volatile CompletableFuture<Boolean> answer; // null: leave pending
+
+        Stub(CompletableFuture<Boolean> answer) { this.answer = answer; }
+
+        @Override
+        public synchronized CompletableFuture<Boolean> processAsync(Transaction tx) {
+            calls.incrementAndGet();
+            if (answer != null) return answer;
+            CompletableFuture<Boolean> f = new CompletableFuture<>();
+            pending.add(f);
+            return f;
+        }
+    }
+
+    @Test
+    void ibanOnlyRoutesAreSkippedForOtherDestinations() {
+        Stub paypal = new Stub(CompletableFuture.completedFuture(true));
+        Stub swift = new Stub(CompletableFuture.completedFuture(true));
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("swift", swift, RoutingPaymentGateway::isIbanDestination)
+                .route("paypal", paypal, null)
+                .build()) {
+            assertTrue(gw.processAsync(tx("alice@example.com")).join());
+            assertEquals(0, swift.calls.get());
+            assertEquals(List.of("paypal"), gw.eligibleRoutes(tx("alice@example.com")));
+            assertEquals(2, gw.eligibleRoutes(tx()).size());
+        }
+    }
+
+    @Test
+    void noEligibleRouteFails() {
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("swift", new Stub(CompletableFuture.completedFuture(true)), RoutingPaymentGateway::isIbanDestination)
+                .build()) {
+            CompletionException e = assertThrows(CompletionException.class, () -> gw.processAsync(tx("bob")).join());
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            assertEquals(1, gw.unroutableCount());
+        }
+    }
+
+    @Test
+    void prefersTheFasterRoute() {
+        try (SimulatedLatencyGateway fast = new SimulatedLatencyGateway("fast", 2, 0, 0.0);
+             SimulatedLatencyGateway slow = new SimulatedLatencyGateway("slow", 40, 0, 0.0);
+             RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                     .route("slow", slow, null)
+                     .route("fast", fast, null)
+                     .build()) {
+            for (int i = 0; i < 50; i++) assertTrue(gw.processAsync(tx()).join()); // one at a time: cost = latency
+            RoutingPaymentGateway.Route slowRoute = gw.getRoutes().get(0);
+            RoutingPaymentGateway.Route fastRoute = gw.getRoutes().get(1);
+            assertEquals(1, slowRoute.acceptedCount(), "only the first, unmeasured call");
+            assertEquals(49, fastRoute.acceptedCount());
+        }
+    }
+
+    @Test
+    void errorMovesToNextRoute() {
+        Stub broken = new Stub(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        Stub healthy = new Stub(CompletableFuture.completedFuture(true));
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("broken", broken, null)
+                .route("healthy", healthy, null)
+                .build()) {
+            for (int i = 0; i < 10; i++) assertTrue(gw.processAsync(tx()).join());
+            assertEquals(10, healthy.calls.get());
+            assertTrue(broken.calls.get() <= 2, "error rate makes the broken route expensive: " + broken.calls.get());
+            assertEquals(broken.calls.get(), gw.retryCount());
+        }
+    }
+
+    @Test
+    void openBreakerStopsCallsUntilCooldown() {
+        Stub broken = new Stub(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .circuitBreaker(3, 0.5, 20, 60_000)
+                .route("broken", broken, null)
+                .build()) {
+            for (int i = 0; i < 3; i++) assertThrows(CompletionException.class, () -> gw.processAsync(tx()).join());
+            assertEquals(CircuitBreaker.State.OPEN, gw.getRoutes().get(0).getBreakerState());
+            CompletionException e = assertThrows(CompletionException.class, () -> gw.processAsync(tx()).join());
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            assertEquals(3, broken.calls.get());
+        }
+    }
+
+    @Test
+    void halfOpenProbeClosesTheBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0.5, 20, 10);
+        breaker.onFailure(1_000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(1_005));
+        assertTrue(breaker.tryAcquire(1_010));
+        assertFalse(breaker.tryAcquire(1_010), "one probe at a time");
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void declineIsFinal() {
+        Stub declines = new Stub(CompletableFuture.completedFuture(false));
+        Stub other = new Stub(CompletableFuture.completedFuture(true));
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("a", declines, null, "g")
+                .route("b", other, null, "g")
+                .build()) {
+            assertFalse(gw.processAsync(tx()).join());
+            assertEquals(0, other.calls.get());
+        }
+    }
+
+    @Test
+    void timeoutIsNotRetriedOutsideTheDedupGroup() {
+        Stub timesOut = new Stub(CompletableFuture.failedFuture(new TimeoutException()));
+        Stub other = new Stub(CompletableFuture.completedFuture(true));
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("a", timesOut, null)
+                .route("b", other, null)
+                .build()) {
+            CompletionException e = assertThrows(CompletionException.class, () -> gw.processAsync(tx()).join());
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            assertEquals(0, other.calls.get(), "outcome unknown: a second provider could pay twice");
+        }
+    }
+
+    @Test
+    void timeoutIsRetriedInsideTheDedupGroup() {
+        Stub timesOut = new Stub(CompletableFuture.failedFuture(new TimeoutException()));
+        Stub sameNetwork = new Stub(CompletableFuture.completedFuture(true));
+        Stub otherNetwork = new Stub(CompletableFuture.completedFuture(true));
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("a", timesOut, null, "swift")
+                .route("other", otherNetwork, null)
+                .route("b", sameNetwork, null, "swift")
+                .build()) {
+            assertTrue(gw.processAsync(tx()).join());
+            assertEquals(1, sameNetwork.calls.get());
+            assertEquals(0, otherNetwork.calls.get());
+            assertEquals(1, gw.retryCount());
+        }
+    }
+
+    @Test
+    void hedgeWinsAndCancelsTheSlowCall() {
+        Stub stuck = new Stub(null);
+        Stub quick = new Stub(null);
+        try (RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                .route("stuck", stuck, null, "swift")
+                .route("quick", quick, null, "swift")
+                .hedgeAfterMillis(20)
+                .build()) {
+            CompletableFuture<Boolean> r = gw.processAsync(tx());
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (quick.calls.get() == 0 && System.currentTimeMillis() < deadline) Thread.onSpinWait();
+            assertEquals(1, quick.calls.get(), "hedge sent");
+            assertFalse(r.isDone());
+            synchronized (quick) { quick.pending.get(0).complete(true); }
+            assertTrue(r.join());
+            assertTrue(stuck.pending.get(0).isCancelled());
+            assertEquals(1, gw.hedgeCount());
+        }
+    }
+
+    @Test
+    void keepsThroughputWhenOneProviderDegrades() {
+        try (SimulatedLatencyGateway a = new SimulatedLatencyGateway("a", 5, 2, 0.0);
+             SimulatedLatencyGateway b = new SimulatedLatencyGateway("b", 5, 2, 0.0);
+             RoutingPaymentGateway gw = RoutingPaymentGateway.builder()
+                     .circuitBreaker(5, 0.5, 20, 60_000)
+                     .route("a", a, null)
+                     .route("b", b, null)
+                     .build()) {
+            List<CompletableFuture<Boolean>> all = new ArrayList<>();
+            for (int i = 0; i < 500; i++) all.add(gw.processAsync(tx()));
+            a.degrade(50, 0, 1.0);
+            for (int i = 0; i < 1_500; i++) all.add(gw.processAsync(tx()));
+            int ok = 0;
+            for (CompletableFuture<Boolean> f : all) if (f.join()) ok++;
+            assertEquals(2_000, ok);
+            assertEquals(CircuitBreaker.State.OPEN, gw.getRoutes().get(0).getBreakerState());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package test.java.payment;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import payment.ExternalAccount;
+import payment.SWIFTApi;
+import payment.SWIFTBatchingGateway;
+import transactions.Transaction;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SWIFTBatchingGatewayTest {
+    @TempDir
+    Path outbox;
+
+    private static Transaction wire(Account from, String iban, double amount) {
+        return new Transaction(Transaction.Type.TRANSFER, from, new ExternalAccount(iban, "Payee <" + iban + ">"), amount);
+    }
+
+    @Test
+    void countTriggerWritesOnePain001FileAndAckResolvesEachPayment() throws Exception {
+        SWIFTApi api = mock(SWIFTApi.class);
+        // second payment in FILE order (DE03) is rejected by the bank
+        when(api.submitBatch(any(), anyString(), anyInt(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(Arrays.asList(true, false, true, true)));
+        Account a = AccountFactory.createChecking("a1", "a", 0.0);
+        Account b = AccountFactory.createChecking("b1", "b", 0.0);
+        try (SWIFTBatchingGateway gw = new SWIFTBatchingGateway(api, outbox, 4, 60_000)) {
+            List<CompletableFuture<Boolean>> f = new ArrayList<>();
+            f.add(gw.processAsync(wire(a, "DE01", 10.0)));
+            f.add(gw.processAsync(wire(b, "DE02", 20.0)));
+            f.add(gw.processAsync(wire(a, "DE03", 30.5)));
+            assertFalse(f.get(0).isDone(), "waits for the batch");
+            f.add(gw.processAsync(wire(b, "DE04", 40.0)));
+            CompletableFuture.allOf(f.toArray(new CompletableFuture<?>[0])).join();
+
+            // file order groups by debtor: a(DE01), a(DE03), b(DE02), b(DE04)
+            assertEquals(List.of(true, false, true, true), List.of(f.get(0).join(), f.get(2).join(), f.get(1).join(), f.get(3).join()));
+            verify(api, times(1)).submitBatch(any(), anyString(), eq(4), eq(10_050L));
+            verify(api, never()).wireTransfer(anyString(), anyString(), anyLong(), anyString());
+
+            List<Path> files;
+            try (Stream<Path> s = Files.list(outbox)) { files = s.toList(); }
+            assertEquals(1, files.size());
+            String xml = Files.readString(files.get(0));
+            assertTrue(xml.contains("<NbOfTxs>4</NbOfTxs><CtrlSum>100.50</CtrlSum>"));
+            assertEquals(2, xml.split("<PmtInf>", -1).length - 1);
+            assertTrue(xml.contains("<Nm>Payee &lt;DE02&gt;</Nm>"));
+            assertTrue(xml.indexOf("DE03") < xml.indexOf("DE02"));
+        }
+    }
+
+    @Test
+    void windowFlushesPartialBatchAndSkipsCancelled() {
+        SWIFTApi api = spy(new SWIFTApi());
+        Account a = AccountFactory.createChecking("a1", "a", 0.0);
+        try (SWIFTBatchingGateway gw = new SWIFTBatchingGateway(api, outbox, 1000, 50)) {
+            CompletableFuture<Boolean> kept = gw.processAsync(wire(a, "DE01", 5.0));
+            CompletableFuture<Boolean> dropped = gw.processAsync(wire(a, "DE02", 7.0));
+            dropped.cancel(true);
+            assertTrue(kept.join());
+            verify(api, times(1)).submitBatch(any(), anyString(), eq(1), eq(500L));
+            assertEquals(1, gw.batchesSent());
+            assertEquals(1, gw.paymentsSent());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package test.java.recommendations;
+
+import accounts.Account;
+import accounts.AccountRegistry;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import recommendations.RecommendationRule;
+import recommendations.RecommendationService;
+import recommendations.RecommendationStore;
+import recommendations.SpendingAggregator;
+import transactions.AuditLog;
+import transactions.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationServiceTest {
+
+    @Test
+    void bulkRunAppliesEveryRuleAcrossShards() {
+        AccountRegistry accounts = new AccountRegistry();
+        for (int i = 0; i < 20_000; i++) {
+            double balance = i == 9 ? 20_000.0 : i % 4 == 0 ? 2_000.0 : 10.0;
+            accounts.put("b" + i, AccountFactory.createSavings("b" + i, "o" + i, balance));
+        }
+        SpendingAggregator spending = new SpendingAggregator();
+        long now = System.currentTimeMillis();
+        for (int i = 1; i < 20_000; i += 1_000) {
+            spending.record(Transaction.ofMinor(Transaction.Type.TRANSFER, accounts.get("b" + i), accounts.get("b0"), 600_000), now);
+        }
+        AuditLog audit = new AuditLog();
+        for (int i = 3; i < 20_000; i += 5_000) {
+            for (int k = 0; k < 3; k++) audit.record(new Transaction(Transaction.Type.WITHDRAW, accounts.get("b" + i), null, 5.0), "FAILED: Insufficient funds");
+        }
+        Transaction standing = new Transaction(Transaction.Type.TRANSFER, accounts.get("b7"), accounts.get("b8"), 5.0).asRecurring();
+        audit.record(standing, "SKIPPED_SRC_FROZEN");
+        audit.record(standing, "SKIPPED_INSUFFICIENT_FUNDS");
+        audit.record(new Transaction(Transaction.Type.TRANSFER, accounts.get("b8"), null, 5.0), "SKIPPED_SRC_FROZEN");
+
+        RecommendationService service = new RecommendationService(spending, audit, RecommendationRule.defaults());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        RecommendationStore store;
+        try {
+            store = service.runBulk(accounts, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertSame(store, service.latest());
+        assertEquals(20_000, store.accountsScanned());
+        assertEquals(20, store.count("HIGH_SPENDING"));
+        assertEquals(5_000, store.count("IDLE_BALANCE"), "every 4th account + b9, minus b0 which received money");
+        assertEquals(4, store.count("FREQUENT_OVERDRAFT"));
+        assertEquals(1, store.count("SKIPPED_RECURRING"));
+        assertEquals(1, store.count("INVESTMENT"));
+        assertThrows(IllegalArgumentException.class, () -> store.count("NOPE"));
+
+        assertEquals(2, store.forAccount("b9").size());
+        assertTrue(store.forAccount("b2").isEmpty());
+        assertTrue(store.forAccount("unknown").isEmpty());
+        for (String id : List.of("b0", "b1", "b3", "b7", "b8", "b9", "b12")) {
+            assertEquals(service.analyze(accounts.get(id)), store.forAccount(id), id);
+        }
+
+        List<String> spenders = new ArrayList<>();
+        int after = -1;
+        for (List<Account> page = store.accountsWith("HIGH_SPENDING", after, 6); !page.isEmpty();
+             page = store.accountsWith("HIGH_SPENDING", after, 6)) {
+            for (Account a : page) spenders.add(a.getId());
+            after = accounts.handleOf(page.get(page.size() - 1).getId());
+        }
+        assertEquals(20, spenders.size());
+        assertEquals("b1", spenders.get(0));
+        assertEquals("b19001", spenders.get(19));
+    }
+
+    @Test
+    void rulesArePluggable() {
+        SpendingAggregator spending = new SpendingAggregator();
+        RecommendationRule closed = new RecommendationRule("CLOSED", "Account is closed.",
+                s -> "CLOSED".equals(s.getAccount().getStatusName()));
+        RecommendationService service = new RecommendationService(spending, null, List.of(closed));
+        AccountRegistry accounts = new AccountRegistry();
+        Account a = AccountFactory.createChecking("p1", "a", 0.0);
+        accounts.put("p1", a);
+        accounts.put("p2", AccountFactory.createChecking("p2", "b", 0.0));
+        a.close();
+
+        assertEquals(List.of("Account is closed."), service.analyze(a));
+        RecommendationStore store = service.runBulk(accounts);
+        assertEquals(1, store.count("CLOSED"));
+
+        // p1's handle goes to p3 once the registry compacts: p3 must not inherit p1's advice
+        int handle = accounts.handleOf("p1");
+        accounts.remove("p1");
+        accounts.compact();
+        accounts.put("p3", AccountFactory.createChecking("p3", "c", 0.0));
+        assertEquals(handle, accounts.handleOf("p3"));
+        assertTrue(store.forAccount("p3").isEmpty());
+        assertTrue(store.accountsWith("CLOSED", -1, 10).isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> new RecommendationService(spending, null, Collections.nCopies(33, closed)));
+    }
+}
@@ -0,0 +1,134 @@
+package test.java.recommendations;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import recommendations.RecommendationRule;
+import recommendations.RecommendationService;
+import recommendations.SpendingAggregator;
+import recommendations.SpendingAggregator.Window;
+import transactions.AutoApprovalHandler;
+import transactions.Ledger;
+import transactions.RecurringTransaction;
+import transactions.Transaction;
+import transactions.TransactionService;
+import transactions.TransactionValidationHandler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpendingAggregatorTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long T0 = 20_000 * DAY; // a UTC midnight
+
+    private static Transaction transfer(Account from, Account to, long minor) {
+        return Transaction.ofMinor(Transaction.Type.TRANSFER, from, to, minor);
+    }
+
+    @Test
+    void windowsCoverTheLastDayMonthAndQuarter() {
+        SpendingAggregator agg = new SpendingAggregator();
+        Account a = AccountFactory.createSavings("w1", "a", 10.0);
+        Account b = AccountFactory.createSavings("w2", "b", 10.0);
+        agg.record(transfer(a, b, 1_000), T0 - 100 * DAY); // too old for any window
+        agg.record(transfer(a, b, 100), T0 - 60 * DAY);
+        agg.record(transfer(a, b, 10), T0 - 10 * DAY);
+        agg.record(transfer(a, b, 1).asRecurring(), T0 + 5);
+        agg.record(transfer(b, a, 7), T0 + 6);
+        agg.record(Transaction.ofMinor(Transaction.Type.WITHDRAW, a, null, 2), T0 + 7);
+
+        SpendingAggregator.Spending s = agg.spending("w1", T0 + DAY - 1);
+        assertEquals(3, s.outgoingMinor(Window.DAY));
+        assertEquals(13, s.outgoingMinor(Window.MONTH));
+        assertEquals(113, s.outgoingMinor(Window.QUARTER));
+        assertEquals(1, s.recurringMinor(Window.QUARTER));
+        assertEquals(7, s.incomingMinor(Window.DAY));
+        assertEquals(111, agg.spending("w2", T0).incomingMinor(Window.QUARTER));
+
+        // read later: the windows move on without any new amount
+        assertEquals(0, agg.spending("w1", T0 + DAY).outgoingMinor(Window.DAY));
+        assertEquals(13, agg.spending("w1", T0 + 30 * DAY).outgoingMinor(Window.QUARTER));
+        assertEquals(0, agg.spending("nobody", T0).outgoingMinor(Window.QUARTER));
+    }
+
+    @Test
+    void aNewDayClearsTheBucketsItSkipped() {
+        SpendingAggregator agg = new SpendingAggregator();
+        Account a = AccountFactory.createSavings("r1", "a", 10.0);
+        for (int d = 0; d < 90; d++) agg.record(Transaction.ofMinor(Transaction.Type.WITHDRAW, a, null, 1), T0 + d * DAY);
+        assertEquals(90, agg.spending("r1", T0 + 89 * DAY).outgoingMinor(Window.QUARTER));
+
+        // 45 quiet days: half of the buckets are reused for the new days
+        agg.record(Transaction.ofMinor(Transaction.Type.WITHDRAW, a, null, 50), T0 + 134 * DAY);
+        SpendingAggregator.Spending s = agg.spending("r1", T0 + 134 * DAY);
+        assertEquals(45 + 50, s.outgoingMinor(Window.QUARTER));
+        assertEquals(50, s.outgoingMinor(Window.MONTH));
+        // a late amount inside the horizon still lands on its day
+        agg.record(Transaction.ofMinor(Transaction.Type.WITHDRAW, a, null, 1_000), T0 + 120 * DAY);
+        assertEquals(1_050, agg.spending("r1", T0 + 134 * DAY).outgoingMinor(Window.MONTH));
+    }
+
+    @Test
+    void fedByExecutedTransactionsAndUsedForEveryAccountInOnePass() {
+        TransactionValidationHandler validation = new TransactionValidationHandler();
+        validation.setSuccessor(new AutoApprovalHandler(1_000_000));
+        TransactionService svc = new TransactionService(validation);
+        SpendingAggregator agg = new SpendingAggregator();
+        svc.addExecutionListener(agg);
+        Account spender = AccountFactory.createSavings("sp1", "s", 20_000.0);
+        Account saver = AccountFactory.createSavings("sv1", "v", 0.0);
+        Account quiet = AccountFactory.createSavings("q1", "q", 5.0);
+
+        assertTrue(svc.process(new Transaction(Transaction.Type.TRANSFER, spender, saver, 6_000.0)));
+        assertFalse(svc.process(new Transaction(Transaction.Type.TRANSFER, quiet, saver, 50.0)), "not executed: not counted");
+        svc.processBatch(List.of(new RecurringTransaction(Transaction.Type.TRANSFER, spender, saver, 100.0).toTransaction()));
+        SpendingAggregator.Spending s = agg.spending("sp1", System.currentTimeMillis());
+        assertEquals(610_000, s.outgoingMinor(Window.MONTH));
+        assertEquals(10_000, s.recurringMinor(Window.MONTH));
+        assertEquals(0, agg.spending("q1", System.currentTimeMillis()).outgoingMinor(Window.MONTH));
+        assertTrue(svc.getHistory().recent(Long.MAX_VALUE, 1).getItems().get(0).isRecurring());
+
+        RecommendationService recs = new RecommendationService(agg);
+        Map<String, List<String>> advice = new LinkedHashMap<>();
+        recs.analyzeAll(List.of(spender, saver, quiet), (a, r) -> advice.put(a.getId(), r));
+        assertEquals(List.of("sp1"), new ArrayList<>(advice.keySet()));
+        assertEquals(2, advice.get("sp1").size(), "high spending + investment (13,900 left)");
+        assertEquals(advice.get("sp1"), recs.analyze(spender));
+    }
+
+    @Test
+    void replayRebuildsTheWindowsFromTheLedger(@TempDir Path dir) {
+        Ledger ledger = new Ledger(dir, 4, 0, 1_000); // 4 entries per segment -> the scan crosses segments
+        ledger.openAccount("r1", "SavingsAccount", "a", 200_000);
+        ledger.openAccount("r2", "SavingsAccount", "b", 200_000);
+        ledger.post("r1", "r2", 1_000, Ledger.Kind.TRANSFER);
+        ledger.post(Ledger.CASH, "r1", 300, Ledger.Kind.DEPOSIT);
+        ledger.post("r2", Ledger.CASH, 50, Ledger.Kind.WITHDRAW);
+        ledger.post("r1", Ledger.EXTERNAL, 7, Ledger.Kind.EXTERNAL);
+        ledger.close();
+
+        // a restart: the aggregator starts empty, the ledger still has everything
+        Ledger reopened = new Ledger(dir, 4, 0, 1_000);
+        SpendingAggregator agg = new SpendingAggregator();
+        long now = System.currentTimeMillis();
+        assertEquals(3, agg.replay(reopened, now), "openings and external payments never reached the aggregator");
+        SpendingAggregator.Spending r1 = agg.spending("r1", now);
+        assertEquals(1_000, r1.outgoingMinor(Window.DAY));
+        assertEquals(300, r1.incomingMinor(Window.QUARTER));
+        assertEquals(50, agg.spending("r2", now).outgoingMinor(Window.MONTH));
+        assertEquals(0, agg.replay(reopened, now + 91 * DAY), "older than every window");
+
+        Account moved = AccountFactory.createSavings("r1", "a", 2_000.0);
+        Account idle = AccountFactory.createSavings("r3", "c", 2_000.0);
+        RecommendationService recs = new RecommendationService(agg);
+        assertFalse(recs.analyze(moved).contains(RecommendationRule.idleBalance(100_000).getMessage()));
+        assertTrue(recs.analyze(idle).contains(RecommendationRule.idleBalance(100_000).getMessage()));
+        reopened.close();
+    }
+}
@@ -0,0 +1,70 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import transactions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApprovalPipelineTest {
+
+    private static ApprovalPipeline pipeline(DecisionSink sink) {
+        return ApprovalPipeline.builder()
+                .requirePositiveAmount().requireSourceCanSend().requireDestinationCanReceive()
+                .requireAvailableBalance().autoApproveUpTo(500).managerApproveUpTo(2000)
+                .sink(sink).build();
+    }
+
+    @Test
+    void decisionCodesMatchTheHandlerChain() {
+        Account rich = AccountFactory.createSavings(null, "rich", 10_000.0);
+        Account poor = AccountFactory.createSavings(null, "poor", 10.0);
+        Account frozen = AccountFactory.createSavings(null, "frozen", 1_000.0);
+        frozen.freeze();
+        List<Transaction> txs = List.of(
+                new Transaction(Transaction.Type.TRANSFER, rich, poor, 100.0),
+                new Transaction(Transaction.Type.TRANSFER, rich, poor, 1500.0),
+                new Transaction(Transaction.Type.TRANSFER, rich, poor, 5000.0),
+                new Transaction(Transaction.Type.TRANSFER, poor, rich, 50.0),
+                new Transaction(Transaction.Type.TRANSFER, frozen, rich, 5.0),
+                new Transaction(Transaction.Type.DEPOSIT, null, frozen, 5.0),
+                new Transaction(Transaction.Type.WITHDRAW, null, null, 5.0),
+                new Transaction(Transaction.Type.DEPOSIT, null, rich, 0.0));
+        List<ApprovalDecision> expected = List.of(
+                ApprovalDecision.APPROVED_AUTO, ApprovalDecision.APPROVED_MANAGER, ApprovalDecision.REJECTED_OVER_LIMIT,
+                ApprovalDecision.REJECTED_INSUFFICIENT_FUNDS, ApprovalDecision.REJECTED_SOURCE_STATUS,
+                ApprovalDecision.REJECTED_DESTINATION_STATUS, ApprovalDecision.REJECTED_NO_SOURCE,
+                ApprovalDecision.REJECTED_INVALID_AMOUNT);
+
+        TransactionValidationHandler chain = new TransactionValidationHandler();
+        AutoApprovalHandler auto = new AutoApprovalHandler(500);
+        chain.setSuccessor(auto);
+        auto.setSuccessor(new ManagerApprovalHandler(2000));
+
+        List<ApprovalDecision> seen = new ArrayList<>();
+        ApprovalPipeline p = pipeline((tx, d) -> seen.add(d));
+        for (int i = 0; i < txs.size(); i++) {
+            assertEquals(expected.get(i), p.decide(txs.get(i)), "tx " + i);
+            assertEquals(chain.handle(txs.get(i)), expected.get(i).isApproved(), "chain agrees on tx " + i);
+        }
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void batchProjectsAvailableBalance() {
+        CountingDecisionSink sink = new CountingDecisionSink();
+        TransactionService svc = new TransactionService(pipeline(sink));
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+        List<TransactionOutcome> out = svc.processBatch(List.of(
+                new Transaction(Transaction.Type.TRANSFER, a, b, 60.0),
+                new Transaction(Transaction.Type.TRANSFER, a, b, 60.0)));
+        assertEquals(List.of(TransactionOutcome.EXECUTED, TransactionOutcome.REJECTED), out);
+        assertEquals(1, sink.count(ApprovalDecision.APPROVED_AUTO));
+        assertEquals(1, sink.count(ApprovalDecision.REJECTED_INSUFFICIENT_FUNDS));
+    }
+}
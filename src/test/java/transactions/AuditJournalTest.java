@@ -0,0 +1,52 @@
+package test.java.transactions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.AuditJournal;
+import transactions.AuditLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesSurviveRestartAcrossSegments() throws Exception {
+        AuditLog log = new AuditLog(new AuditJournal(dir, 4, 0)); // 4 records per segment -> rolls
+        for (int i = 0; i < 10; i++) log.recordMinor("EXECUTED", "a" + i, null, i * 100L, i % 2 == 0 ? null : "note " + i);
+        log.close();
+
+        assertEquals(3, Files.list(dir).count(), "10 records / 4 per segment = 3 segments");
+
+        AuditLog reopened = new AuditLog(new AuditJournal(dir, 4, 0));
+        List<AuditLog.Entry> entries = reopened.getEntries();
+        assertEquals(10, entries.size());
+        assertEquals("a7", entries.get(7).getFrom());
+        assertNull(entries.get(7).getTo());
+        assertEquals(700L, entries.get(7).getAmountMinor());
+        assertEquals("note 7", entries.get(7).getNote());
+
+        // appends continue after the last replayed record
+        reopened.recordMinor("REJECTED", "b", "c", 1L, null);
+        reopened.close();
+        assertEquals(11, new AuditLog(new AuditJournal(dir, 4, 0)).entriesCount());
+    }
+
+    @Test
+    void longTextIsTruncatedToTheRecordSlot() {
+        AuditLog log = new AuditLog(new AuditJournal(dir, 8, 0));
+        log.recordMinor("FAILED: " + "x".repeat(500), "from", "to", 5L, "n".repeat(500));
+        log.close();
+
+        AuditLog.Entry e = new AuditLog(new AuditJournal(dir, 8, 0)).getEntries().get(0);
+        assertTrue(e.getAction().startsWith("FAILED: xxx"));
+        assertTrue(e.getAction().length() < 500);
+        assertEquals("from", e.getFrom());
+        assertEquals(5L, e.getAmountMinor());
+    }
+}
@@ -0,0 +1,85 @@
+package test.java.transactions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.AuditJournal;
+import transactions.AuditLog;
+import transactions.AuditQuery;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditQueryTest {
+    @TempDir
+    Path dir;
+
+    private static final Instant T0 = Instant.parse("2024-03-04T00:00:00Z");
+
+    // journal lets us seed entries with chosen timestamps; the log indexes them on replay
+    private AuditLog seeded() {
+        AuditJournal j = new AuditJournal(dir, 1024, 0);
+        for (int i = 0; i < 200; i++) {
+            Instant ts = T0.plus(Duration.ofHours(i));
+            String action = i % 10 == 0 ? "SKIPPED_INSUFFICIENT_FUNDS" : (i % 3 == 0 ? "FAILED: Insufficient funds" : "EXECUTED");
+            j.append(ts, action, "c" + (i % 4), i % 5 == 0 ? null : "s1", i, null);
+        }
+        // a late (spilled) entry: old timestamp, appended last
+        j.append(T0.plus(Duration.ofHours(1)), "SKIPPED_FROZEN", "c0", null, 999, "late");
+        return new AuditLog(j);
+    }
+
+    @Test
+    void combinesAccountActionPrefixAndTimeRange() {
+        AuditLog log = seeded();
+        Instant weekStart = T0.plus(Duration.ofDays(2));
+        List<AuditLog.Entry> rows = log.query(new AuditQuery().account("c0").actionPrefix("SKIPPED_")
+                .from(weekStart).to(weekStart.plus(Duration.ofDays(7))).limit(1000));
+
+        List<AuditLog.Entry> expected = log.getEntries().stream()
+                .filter(e -> "c0".equals(e.getFrom()) || "c0".equals(e.getTo()))
+                .filter(e -> e.getAction().startsWith("SKIPPED_"))
+                .filter(e -> !e.getTimestamp().isBefore(weekStart) && e.getTimestamp().isBefore(weekStart.plus(Duration.ofDays(7))))
+                .toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows);
+        log.close();
+    }
+
+    @Test
+    void prefixWithASmallAccountWalksTheAccountList() {
+        AuditLog log = new AuditLog();
+        for (int i = 0; i < 1_000; i++) log.recordMinor(i % 2 == 0 ? "SKIPPED_SRC_FROZEN" : "SKIPPED_INSUFFICIENT_FUNDS", "busy" + (i % 7), null, i, null);
+        log.recordMinor("EXECUTED", "quiet", null, 1, null);
+        log.recordMinor("SKIPPED_DEST_CLOSED: dest", null, "quiet", 2, null);
+        List<AuditLog.Entry> rows = log.query(new AuditQuery().account("quiet").actionPrefix("SKIPPED_"));
+        assertEquals(1, rows.size());
+        assertEquals(2, rows.get(0).getAmountMinor());
+        assertEquals(500, log.query(new AuditQuery().actionPrefix("SKIPPED_SRC").limit(1_000)).size());
+    }
+
+    @Test
+    void actionKindIgnoresReasonAndPagesNewestFirst() {
+        AuditLog log = seeded();
+        List<AuditLog.Entry> all = log.query(new AuditQuery().action("FAILED").limit(1000));
+        assertTrue(all.stream().allMatch(e -> e.getAction().startsWith("FAILED:")));
+
+        List<AuditLog.Entry> page2 = log.query(new AuditQuery().action("FAILED").newestFirst().offset(5).limit(5));
+        assertEquals(5, page2.size());
+        for (int i = 0; i < 5; i++) assertSame(all.get(all.size() - 6 - i), page2.get(i));
+        log.close();
+    }
+
+    @Test
+    void lateEntriesAreFoundByTimeQueries() {
+        AuditLog log = seeded();
+        List<AuditLog.Entry> rows = log.query(new AuditQuery().from(T0.plus(Duration.ofHours(1)))
+                .to(T0.plus(Duration.ofHours(2))));
+        assertEquals(2, rows.size());
+        assertEquals("late", rows.get(1).getNote());
+        log.close();
+    }
+}
@@ -0,0 +1,119 @@
+package test.java.transactions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.AuditLog;
+import transactions.AuditRingBuffer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditRingBufferTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void blockPolicyDeliversEveryRecordFromManyProducers() throws Exception {
+        AuditLog log = new AuditLog();
+        log.enableRingBuffer(64, AuditRingBuffer.BackpressurePolicy.BLOCK, null);
+        int producers = 4, perProducer = 5_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String from = "p" + p;
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) log.recordMinor("EXECUTED", from, null, i, null);
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        log.flush();
+
+        assertEquals(producers * perProducer, log.entriesCount());
+        // per producer, records arrive in publish order
+        long[] last = new long[producers];
+        Arrays.fill(last, -1);
+        for (AuditLog.Entry e : log.getEntries()) {
+            int p = e.getFrom().charAt(1) - '0';
+            assertTrue(e.getAmountMinor() > last[p]);
+            last[p] = e.getAmountMinor();
+        }
+        log.close();
+    }
+
+    @Test
+    void dropPolicyCountsWhatDidNotFit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> stored = new ArrayList<>();
+        AuditRingBuffer ring = new AuditRingBuffer(8, AuditRingBuffer.BackpressurePolicy.DROP, null,
+                (ts, action, from, to, amount, note) -> {
+                    awaitQuietly(release); // slow sink
+                    synchronized (stored) { stored.add(amount); }
+                });
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) if (ring.publish("EXECUTED", "a", "b", i, null)) accepted++;
+        release.countDown();
+        ring.flush();
+
+        assertEquals(100 - accepted, ring.droppedCount());
+        assertEquals(accepted, stored.size());
+        ring.close();
+    }
+
+    @Test
+    void spillPolicyLosesNothingWhenTheSinkStalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> stored = new ArrayList<>();
+        AuditRingBuffer ring = new AuditRingBuffer(8, AuditRingBuffer.BackpressurePolicy.SPILL, dir,
+                (ts, action, from, to, amount, note) -> {
+                    awaitQuietly(release);
+                    synchronized (stored) { stored.add(amount); }
+                });
+        for (int i = 0; i < 100; i++) assertTrue(ring.publish("EXECUTED", "a", "b", i, null));
+        assertTrue(ring.spilledCount() > 0);
+        release.countDown();
+        ring.flush();
+
+        assertEquals(100, stored.size());
+        assertEquals(0, ring.droppedCount());
+        ring.close();
+    }
+
+    @Test
+    void producersKeepSpillingWhileTheSpillIsReplayed() throws Exception {
+        CountDownLatch start = new CountDownLatch(1), replaying = new CountDownLatch(1), release = new CountDownLatch(1);
+        List<Long> stored = new ArrayList<>();
+        AuditRingBuffer ring = new AuditRingBuffer(8, AuditRingBuffer.BackpressurePolicy.SPILL, dir,
+                (ts, action, from, to, amount, note) -> {
+                    if (amount == 0) awaitQuietly(start);
+                    if (amount == 50) { // spilled: the replay stalls here
+                        replaying.countDown();
+                        awaitQuietly(release);
+                    }
+                    synchronized (stored) { stored.add(amount); }
+                });
+        for (int i = 0; i < 100; i++) ring.publish("EXECUTED", "a", "b", i, null);
+        start.countDown();
+        assertTrue(replaying.await(5, TimeUnit.SECONDS));
+        // ring fills again and these spill into the next generation without waiting for the replay
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 100; i < 120; i++) assertTrue(ring.publish("EXECUTED", "a", "b", i, null));
+        });
+        release.countDown();
+        ring.flush();
+
+        assertEquals(120, stored.size());
+        ring.close();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try { latch.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
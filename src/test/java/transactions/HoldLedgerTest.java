@@ -0,0 +1,110 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import payment.PaymentGateway;
+import payment.PaymentService;
+import transactions.AccountLockStripes;
+import transactions.HoldLedger;
+import transactions.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldLedgerTest {
+
+    @Test
+    void holdReducesAvailableAndResolvesOnce() {
+        HoldLedger ledger = new HoldLedger(new AccountLockStripes(), 60_000, 0);
+        Account a = AccountFactory.createSavings(null, "a", 1000.0);
+        List<String> events = new ArrayList<>();
+        a.addObserver((acc, type, msg) -> events.add(type));
+
+        HoldLedger.Hold h = ledger.place(a, 400.0);
+        assertEquals(600.0, a.getBalance(), 1e-9);
+        assertThrows(IllegalStateException.class, () -> ledger.place(a, 700.0));
+
+        assertTrue(h.release());
+        assertFalse(h.commit(), "already released");
+        assertEquals(1000.0, a.getBalance(), 1e-9);
+        assertTrue(events.isEmpty(), "a released hold is not a movement");
+
+        HoldLedger.Hold h2 = ledger.place(a, 250.0);
+        assertTrue(h2.commit());
+        assertEquals(750.0, a.getBalance(), 1e-9);
+        assertEquals(List.of("withdraw"), events);
+        assertEquals(0, ledger.activeCount());
+        assertEquals(0, ledger.heldMinor());
+    }
+
+    @Test
+    void unresolvedHoldsExpire() {
+        HoldLedger ledger = new HoldLedger(null, 60_000, 0);
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        HoldLedger.Hold h = ledger.place(a, 3000, 10);
+        assertEquals(0, ledger.expireDue(System.currentTimeMillis()));
+        assertEquals(1, ledger.expireDue(h.getExpiresAtMillis()));
+        assertEquals(HoldLedger.Status.EXPIRED, h.getStatus());
+        assertFalse(h.commit());
+        assertEquals(100.0, a.getBalance(), 1e-9);
+    }
+
+    @Test
+    void holdsKeptForReconciliationNeverExpire() {
+        HoldLedger ledger = new HoldLedger(null, 60_000, 0);
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        HoldLedger.Hold unknown = ledger.place(a, 3000, 10);
+        HoldLedger.Hold plain = ledger.place(a, 1000, 10);
+        assertTrue(unknown.keepForReconciliation());
+        assertEquals(1, ledger.expireDue(Long.MAX_VALUE));
+        assertEquals(HoldLedger.Status.HELD, unknown.getStatus());
+        assertEquals(List.of(unknown), ledger.reconciling());
+        assertEquals(70.0, a.getBalance(), 1e-9);
+
+        // the provider's answer (or an operator) settles it
+        assertTrue(unknown.commit());
+        assertTrue(ledger.reconciling().isEmpty());
+        assertFalse(plain.keepForReconciliation(), "already expired");
+    }
+
+    @Test
+    void concurrentExternalPaymentsNeverOverspend() throws Exception {
+        HoldLedger ledger = new HoldLedger(new AccountLockStripes(), 60_000, 0);
+        Account a = AccountFactory.createSavings(null, "a", 1000.0);
+        Account ext = AccountFactory.createSavings(null, "ext", 0.0);
+        AtomicInteger calls = new AtomicInteger();
+        PaymentGateway flaky = tx -> calls.incrementAndGet() % 2 == 0; // every other payment fails
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        PaymentService payments = new PaymentService(flaky, pool);
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        int rejected = 0;
+        for (int i = 0; i < 2000; i++) {
+            Transaction tx = new Transaction(Transaction.Type.TRANSFER, a, ext, 1.0);
+            try {
+                futures.add(payments.processExternalTransferAsync(tx, ledger.place(a, 1.0)));
+            } catch (IllegalStateException insufficient) {
+                rejected++;
+            }
+            // concurrent plain withdrawals compete for the same balance
+            if (i % 10 == 0) pool.submit(() -> { try { a.withdraw(1.0); } catch (RuntimeException ignored) {} });
+        }
+        long paid = 0;
+        for (CompletableFuture<Boolean> f : futures) if (f.join()) paid++;
+        pool.shutdown();
+        pool.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertTrue(rejected > 0);
+        assertEquals(0, ledger.activeCount());
+        assertTrue(a.getBalance() >= 0);
+        assertEquals(paid, ledger.committedCount());
+        assertEquals(futures.size() - paid, ledger.releasedCount());
+    }
+}
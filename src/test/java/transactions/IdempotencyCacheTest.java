@@ -0,0 +1,192 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import payment.PaymentGateway;
+import payment.PaymentService;
+import transactions.AccountLockStripes;
+import transactions.ApprovalPipeline;
+import transactions.AutoApprovalHandler;
+import transactions.HoldLedger;
+import transactions.IdempotencyCache;
+import transactions.PendingApproval;
+import transactions.Transaction;
+import transactions.TransactionOutcome;
+import transactions.TransactionService;
+import transactions.TransactionValidationHandler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    @Test
+    void firstClaimOwnsTheKeyRepeatsReplay() {
+        IdempotencyCache cache = new IdempotencyCache(100, 60_000);
+        IdempotencyCache.Claim first = cache.claim("k1");
+        IdempotencyCache.Claim again = cache.claim("k1");
+        assertFalse(first.isReplay());
+        assertTrue(again.isReplay());
+        assertFalse(again.outcome().isDone(), "first request still running");
+        first.complete(TransactionOutcome.EXECUTED);
+        assertEquals(TransactionOutcome.EXECUTED, again.outcome().join());
+        assertThrows(IllegalStateException.class, () -> again.complete(TransactionOutcome.FAILED));
+        assertEquals(1, cache.replayCount());
+    }
+
+    @Test
+    void abandonedKeyCanBeUsedAgain() {
+        IdempotencyCache cache = new IdempotencyCache(100, 60_000);
+        cache.claim("k").abandon(new IllegalStateException("lock timeout"));
+        assertFalse(cache.claim("k").isReplay());
+    }
+
+    @Test
+    void boundedAndTimeEvicted() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(10, 60_000);
+        for (int i = 0; i < 100; i++) cache.claim("k" + i).complete(TransactionOutcome.EXECUTED);
+        assertTrue(cache.size() <= 11, "size " + cache.size());
+        assertTrue(cache.claim("k99").isReplay(), "recent keys stay");
+        assertFalse(cache.claim("k0").isReplay(), "oldest keys are gone");
+
+        IdempotencyCache shortLived = new IdempotencyCache(10, 20);
+        shortLived.claim("x").complete(TransactionOutcome.EXECUTED);
+        Thread.sleep(40);
+        assertNull(shortLived.lookup("x"));
+        assertFalse(shortLived.claim("x").isReplay());
+    }
+
+    @Test
+    void runningKeyDoesNotHoldUpEviction() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(10, 60_000);
+        IdempotencyCache.Claim running = cache.claim("running");
+        for (int i = 0; i < 100; i++) cache.claim("k" + i).complete(TransactionOutcome.EXECUTED);
+        assertTrue(cache.size() <= 12, "size " + cache.size());
+        assertTrue(cache.claim("running").isReplay(), "a running key is never evicted");
+        running.complete(TransactionOutcome.EXECUTED);
+
+        IdempotencyCache shortLived = new IdempotencyCache(100, 20);
+        shortLived.claim("slow");
+        shortLived.claim("x").complete(TransactionOutcome.EXECUTED);
+        Thread.sleep(40);
+        shortLived.claim("y");
+        assertEquals(2, shortLived.size(), "x expired behind the running key");
+        assertEquals(1, shortLived.evictionCount());
+    }
+
+    @Test
+    void diskTierSurvivesRestart(@TempDir Path dir) {
+        Path log = dir.resolve("idem.log");
+        try (IdempotencyCache cache = new IdempotencyCache(100, 60_000, log)) {
+            cache.claim("paid").complete(TransactionOutcome.EXECUTED);
+            cache.claim("declined").complete(TransactionOutcome.FAILED);
+            cache.claim("running"); // never recorded: not persisted
+        }
+        try (IdempotencyCache reopened = new IdempotencyCache(100, 60_000, log)) {
+            assertEquals(2, reopened.size());
+            assertEquals(TransactionOutcome.EXECUTED, reopened.claim("paid").outcome().join());
+            assertEquals(TransactionOutcome.FAILED, reopened.claim("declined").outcome().join());
+            assertFalse(reopened.claim("running").isReplay());
+        }
+    }
+
+    @Test
+    void transactionServiceExecutesAKeyOnce() {
+        TransactionValidationHandler validation = new TransactionValidationHandler();
+        validation.setSuccessor(new AutoApprovalHandler(500));
+        TransactionService svc = new TransactionService(validation);
+        svc.enableIdempotency(new IdempotencyCache(100, 60_000));
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+
+        Transaction tx = new Transaction(Transaction.Type.TRANSFER, a, b, 30.0).withIdempotencyKey("req-1");
+        assertTrue(svc.process(tx));
+        assertTrue(svc.process(tx), "replay reports the first outcome");
+        assertTrue(svc.process(new Transaction(Transaction.Type.TRANSFER, a, b, 30.0).withIdempotencyKey("req-1")));
+        assertEquals(70.0, a.getBalance(), 1e-9);
+        assertEquals(30.0, b.getBalance(), 1e-9);
+        assertEquals(1, svc.getHistory().size());
+
+        assertTrue(svc.process(new Transaction(Transaction.Type.TRANSFER, a, b, 30.0)), "no key: executes");
+        assertEquals(40.0, a.getBalance(), 1e-9);
+    }
+
+    @Test
+    void submitExecutesAKeyOnceAlsoWhenParked() {
+        TransactionService svc = new TransactionService(ApprovalPipeline.builder()
+                .requirePositiveAmount().requireSourceCanSend().requireDestinationCanReceive()
+                .requireAvailableBalance().autoApproveUpTo(500).escalateToManagerUpTo(5000)
+                .build());
+        svc.enableIdempotency(new IdempotencyCache(100, 60_000));
+        Account a = AccountFactory.createSavings(null, "a", 3000.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+
+        Transaction small = new Transaction(Transaction.Type.TRANSFER, a, b, 100.0).withIdempotencyKey("s-1");
+        assertEquals(PendingApproval.Status.EXECUTED, svc.submit(small).getStatus());
+        assertEquals(PendingApproval.Status.EXECUTED, svc.submit(small).getStatus(), "replay reports the first outcome");
+        assertEquals(100.0, b.getBalance(), 1e-9);
+
+        // escalated: a repeat gets the parked handle, nothing is held twice
+        Transaction big = new Transaction(Transaction.Type.TRANSFER, a, b, 1000.0).withIdempotencyKey("s-2");
+        PendingApproval parked = svc.submit(big);
+        assertTrue(parked.isPending());
+        assertSame(parked, svc.submit(big));
+        assertFalse(svc.process(big), "still waiting for the manager");
+        assertEquals(1, svc.getPendingApprovals().size());
+        assertEquals(1900.0, a.getBalance(), 1e-9);
+
+        assertEquals(1, svc.approvePending(List.of(parked.getId())));
+        PendingApproval after = svc.submit(big);
+        assertEquals(PendingApproval.Status.EXECUTED, after.getStatus(), "the recorded outcome once decided");
+        assertTrue(svc.process(big));
+        assertEquals(1900.0, a.getBalance(), 1e-9);
+        assertEquals(1100.0, b.getBalance(), 1e-9);
+    }
+
+    @Test
+    void concurrentRetriesPayOnce() throws Exception {
+        AtomicInteger gatewayCalls = new AtomicInteger();
+        PaymentGateway slow = t -> {
+            gatewayCalls.incrementAndGet();
+            try { Thread.sleep(50); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            return true;
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        PaymentService payments = new PaymentService(slow, PaymentService.ExecutionMode.PLATFORM, pool);
+        payments.enableIdempotency(new IdempotencyCache(100, 60_000));
+        HoldLedger holds = new HoldLedger(new AccountLockStripes(), 60_000, 0);
+        Account src = AccountFactory.createSavings(null, "src", 1000.0);
+        Transaction tx = new Transaction(Transaction.Type.TRANSFER, src, null, 100.0).withIdempotencyKey("pay-7");
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) results.add(payments.processExternalTransferAsync(tx, holds.place(src, 100.0)));
+        for (CompletableFuture<Boolean> r : results) assertTrue(r.join());
+
+        assertEquals(1, gatewayCalls.get());
+        assertEquals(900.0, src.getBalance(), 1e-9, "one hold committed, the repeats released");
+        assertEquals(1, holds.committedCount());
+        assertEquals(7, holds.releasedCount());
+        assertTrue(payments.processExternalTransfer(tx));
+        assertEquals(1, gatewayCalls.get());
+        payments.shutdownExecutor();
+    }
+
+    @Test
+    void keysAreValidated() {
+        Account a = AccountFactory.createSavings(null, "a", 1.0);
+        Transaction tx = new Transaction(Transaction.Type.DEPOSIT, null, a, 1.0);
+        assertThrows(IllegalArgumentException.class, () -> tx.withIdempotencyKey(""));
+        assertThrows(IllegalArgumentException.class, () -> tx.withIdempotencyKey("a\tb"));
+        assertNull(tx.getIdempotencyKey());
+        assertEquals("ok", tx.withIdempotencyKey("ok").getIdempotencyKey());
+    }
+}
@@ -0,0 +1,168 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.LoanAccount;
+import accounts.decorators.OverdraftProtectionDecorator;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.AutoApprovalHandler;
+import transactions.Ledger;
+import transactions.Transaction;
+import transactions.TransactionOutcome;
+import transactions.TransactionService;
+import transactions.TransactionValidationHandler;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void balancesAreRebuiltFromTheLogAfterACrash() {
+        Ledger ledger = new Ledger(dir, 4, 0, 1_000); // 4 entries per segment -> rolls
+        ledger.openAccount("s1", "SavingsAccount", "Alice", 10_000);
+        ledger.openAccount("c1", "CheckingAccount", "Bob", 0);
+        for (int i = 0; i < 9; i++) ledger.post("s1", "c1", 100, Ledger.Kind.TRANSFER);
+        ledger.post(Ledger.CASH, "c1", 50, Ledger.Kind.DEPOSIT);
+        // no close(): no snapshot, everything comes back from the segments
+
+        Ledger reopened = new Ledger(dir, 4, 0, 1_000);
+        assertEquals(11, reopened.entries());
+        assertEquals(11, reopened.replayedOnOpen());
+        assertEquals(9_100, reopened.balanceMinor("s1"));
+        assertEquals(950, reopened.balanceMinor("c1"));
+        assertEquals(0, reopened.trialBalance());
+        List<Ledger.AccountInfo> accounts = reopened.accounts();
+        assertEquals(2, accounts.size());
+        assertEquals("Alice", accounts.get(0).getOwner());
+        assertEquals("CheckingAccount", accounts.get(1).getType());
+
+        // appends continue after the replayed end
+        reopened.post("c1", Ledger.CASH, 950, Ledger.Kind.WITHDRAW);
+        reopened.close();
+        assertEquals(0, new Ledger(dir, 4, 0, 1_000).balanceMinor("c1"));
+    }
+
+    @Test
+    void snapshotLimitsTheReplayToTheTail() {
+        Ledger ledger = new Ledger(dir, 8, 0, 10);
+        ledger.openAccount("a1", "SavingsAccount", "A", 1_000_000);
+        for (int i = 0; i < 24; i++) ledger.post("a1", Ledger.EXTERNAL, 1, Ledger.Kind.EXTERNAL);
+        long covered = ledger.snapshotEntries();
+        assertTrue(covered >= 20, "snapshot every 10 entries: " + covered);
+
+        Ledger reopened = new Ledger(dir, 8, 0, 10);
+        assertEquals(25, reopened.entries());
+        assertEquals(25 - covered, reopened.replayedOnOpen());
+        assertEquals(1_000_000 - 24, reopened.balanceMinor("a1"));
+        assertEquals(24, reopened.balanceMinor(Ledger.EXTERNAL));
+
+        reopened.close(); // snapshot covering everything
+        assertEquals(0, new Ledger(dir, 8, 0, 10).replayedOnOpen());
+    }
+
+    @Test
+    void entriesWhoseAccountNeverReachedTheDictionaryAreDropped() throws Exception {
+        Ledger ledger = new Ledger(dir, 16, 0, 1_000);
+        ledger.openAccount("a1", "SavingsAccount", "A", 500);
+        ledger.post("a1", "zz", 100, Ledger.Kind.TRANSFER); // "zz" interned by this entry
+        ledger.post("a1", Ledger.CASH, 100, Ledger.Kind.WITHDRAW);
+
+        // crash lost half of the last dictionary line ("zz\t\t\n")
+        Path dict = dir.resolve("accounts.dict");
+        try (FileChannel ch = FileChannel.open(dict, StandardOpenOption.WRITE)) {
+            ch.truncate(Files.size(dict) - 2);
+        }
+        Ledger reopened = new Ledger(dir, 16, 0, 1_000);
+        assertFalse(reopened.knows("zz"));
+        assertEquals(1, reopened.entries(), "the opening; the log ends at the entry with the lost code");
+        assertEquals(500, reopened.balanceMinor("a1"));
+        assertEquals(0, reopened.trialBalance());
+
+        reopened.post("a1", "zz", 40, Ledger.Kind.TRANSFER);
+        reopened.close();
+        Ledger again = new Ledger(dir, 16, 0, 1_000);
+        assertEquals(460, again.balanceMinor("a1"));
+        assertEquals(40, again.balanceMinor("zz"));
+        assertEquals(2, again.entries());
+    }
+
+    @Test
+    void rejectsEntriesThatCannotBalance() {
+        Ledger ledger = new Ledger(dir, 16, 0, 1_000);
+        assertThrows(IllegalArgumentException.class, () -> ledger.post("a", "a", 1, Ledger.Kind.TRANSFER));
+        assertThrows(IllegalArgumentException.class, () -> ledger.post("a", "b", 0, Ledger.Kind.TRANSFER));
+        ledger.openAccount("a1", "SavingsAccount", "A", 1);
+        assertThrows(IllegalArgumentException.class, () -> ledger.openAccount("a1", "SavingsAccount", "A", 1));
+        ledger.close();
+        assertThrows(IllegalStateException.class, () -> ledger.post("a1", "b", 1, Ledger.Kind.TRANSFER));
+    }
+
+    @Test
+    void transactionServicePostsWhatItExecutes() {
+        TransactionValidationHandler validation = new TransactionValidationHandler();
+        validation.setSuccessor(new AutoApprovalHandler(500));
+        TransactionService svc = new TransactionService(validation);
+        Ledger ledger = new Ledger(dir, 64, 0, 1_000);
+        svc.enableLedger(ledger);
+        Account a = AccountFactory.createSavings("la1", "a", 100.0);
+        Account b = AccountFactory.createSavings("lb1", "b", 0.0);
+        ledger.openAccount(a.getId(), "SavingsAccount", "a", a.getBalanceMinor());
+        ledger.openAccount(b.getId(), "SavingsAccount", "b", b.getBalanceMinor());
+
+        assertTrue(svc.process(new Transaction(Transaction.Type.TRANSFER, a, b, 30.0)));
+        assertTrue(svc.process(new Transaction(Transaction.Type.DEPOSIT, null, a, 5.0)));
+        assertFalse(svc.process(new Transaction(Transaction.Type.TRANSFER, a, b, 400.0)), "insufficient funds: not posted");
+        List<TransactionOutcome> batch = svc.processBatch(List.of(
+                new Transaction(Transaction.Type.WITHDRAW, a, null, 10.0),
+                new Transaction(Transaction.Type.TRANSFER, b, a, 20.0)));
+        assertEquals(List.of(TransactionOutcome.EXECUTED, TransactionOutcome.EXECUTED), batch);
+
+        assertEquals(5, ledger.entries(), "one opening (b starts at 0) + 4 executed");
+        assertEquals(a.getBalanceMinor(), ledger.balanceMinor("la1"));
+        assertEquals(b.getBalanceMinor(), ledger.balanceMinor("lb1"));
+        assertEquals(0, ledger.trialBalance());
+        ledger.close();
+
+        Account restored = AccountFactory.restore("SavingsAccount", "la1", "a", new Ledger(dir, 64, 0, 1_000).balanceMinor("la1"));
+        assertEquals(a.getBalance(), restored.getBalance(), 1e-9);
+    }
+
+    @Test
+    void accountChangesComeBackAfterARestart() {
+        Ledger ledger = new Ledger(dir, 16, 0, 1_000);
+        ledger.openAccount("l1", "LoanAccount", "A", 50_000);
+        ledger.openAccount("c1", "CheckingAccount", "B", 0);
+        ledger.updateAccount("l1", AccountFactory.RATE, "0.045");
+        ledger.updateAccount("c1", AccountFactory.STATUS, "FROZEN");
+        ledger.updateAccount("c1", AccountFactory.STATUS, "CLOSED"); // last one wins
+        ledger.updateAccount("c1", AccountFactory.DECORATORS, "overdraft:100.0");
+        ledger.post(Ledger.CASH, "c1", 700, Ledger.Kind.DEPOSIT);
+        assertThrows(IllegalArgumentException.class, () -> ledger.updateAccount("nope", AccountFactory.STATUS, "FROZEN"));
+        // no close(): the update lines were forced with the dictionary
+
+        List<Ledger.AccountInfo> infos = new Ledger(dir, 16, 0, 1_000).accounts();
+        Ledger.AccountInfo loan = infos.get(0), checking = infos.get(1);
+        assertEquals("0.045", loan.getAttribute(AccountFactory.RATE));
+        assertNull(loan.getAttribute(AccountFactory.STATUS));
+        assertEquals("CLOSED", checking.getAttribute(AccountFactory.STATUS));
+
+        Account l = AccountFactory.restore(loan.getType(), loan.getId(), loan.getOwner(), loan.getBalanceMinor(), loan::getAttribute);
+        assertEquals(0.045, ((LoanAccount) l).getInterestRate(), 1e-12);
+        assertEquals("ACTIVE", l.getStatusName());
+        Account c = AccountFactory.restore(checking.getType(), checking.getId(), checking.getOwner(),
+                checking.getBalanceMinor(), checking::getAttribute);
+        assertInstanceOf(OverdraftProtectionDecorator.class, c);
+        assertEquals("CLOSED", c.getStatusName());
+        assertEquals(7.0, c.getBalance(), 1e-9);
+        assertThrows(RuntimeException.class, () -> c.deposit(1.0), "a closed account stays closed");
+    }
+}
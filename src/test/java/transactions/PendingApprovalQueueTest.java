@@ -0,0 +1,92 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import transactions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PendingApprovalQueueTest {
+
+    private static TransactionService service() {
+        return new TransactionService(ApprovalPipeline.builder()
+                .requirePositiveAmount().requireSourceCanSend().requireDestinationCanReceive()
+                .requireAvailableBalance().autoApproveUpTo(500).escalateToManagerUpTo(5000)
+                .build());
+    }
+
+    @Test
+    void escalatedTransferIsParkedWithFundsHeld() {
+        TransactionService svc = service();
+        Account from = AccountFactory.createSavings(null, "from", 3000.0);
+        Account to = AccountFactory.createSavings(null, "to", 0.0);
+
+        PendingApproval small = svc.submit(new Transaction(Transaction.Type.TRANSFER, from, to, 100.0));
+        assertEquals(PendingApproval.Status.EXECUTED, small.getStatus());
+
+        PendingApproval big = svc.submit(new Transaction(Transaction.Type.TRANSFER, from, to, 2000.0));
+        assertTrue(big.isPending());
+        assertFalse(big.getResult().isDone());
+        assertEquals(900.0, from.getBalance(), 1e-9);
+        assertEquals(200_000, from.getHeldMinor());
+        assertEquals(100.0, to.getBalance(), 1e-9);
+        assertEquals(1, svc.getPendingApprovals().size());
+
+        // held funds are not spendable
+        assertFalse(svc.process(new Transaction(Transaction.Type.WITHDRAW, from, null, 1000.0)));
+
+        assertEquals(1, svc.approvePending(List.of(big.getId())));
+        assertEquals(TransactionOutcome.EXECUTED, big.getResult().join());
+        assertEquals(900.0, from.getBalance(), 1e-9);
+        assertEquals(0, from.getHeldMinor());
+        assertEquals(2100.0, to.getBalance(), 1e-9);
+        assertTrue(svc.getPendingApprovals().isEmpty());
+        assertEquals(0, svc.approvePending(List.of(big.getId())), "decided once only");
+    }
+
+    @Test
+    void rejectReleasesHoldAndFreezeFailsApproval() {
+        TransactionService svc = service();
+        Account from = AccountFactory.createSavings(null, "from", 5000.0);
+        Account to = AccountFactory.createSavings(null, "to", 0.0);
+        PendingApproval a = svc.submit(new Transaction(Transaction.Type.TRANSFER, from, to, 1000.0));
+        PendingApproval b = svc.submit(new Transaction(Transaction.Type.WITHDRAW, from, null, 1500.0));
+        assertEquals(2500.0, from.getBalance(), 1e-9);
+
+        assertEquals(1, svc.rejectPending(List.of(a.getId()), "not today"));
+        assertEquals(TransactionOutcome.REJECTED, a.getResult().join());
+        assertEquals(3500.0, from.getBalance(), 1e-9);
+
+        from.freeze();
+        assertEquals(0, svc.approveAllPending());
+        assertEquals(TransactionOutcome.FAILED, b.getResult().join());
+        assertEquals(0, from.getHeldMinor());
+        from.reopen();
+        assertEquals(5000.0, from.getBalance(), 1e-9);
+        assertEquals(0.0, to.getBalance(), 1e-9);
+    }
+
+    @Test
+    void bulkApprovalOfManyPendingItems() {
+        TransactionService svc = service();
+        Account from = AccountFactory.createSavings(null, "from", 100_000_000.0);
+        Account to = AccountFactory.createSavings(null, "to", 0.0);
+        int n = 100_000;
+        List<Transaction> batch = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) batch.add(new Transaction(Transaction.Type.TRANSFER, from, to, 600.0));
+        List<TransactionOutcome> outcomes = svc.processBatch(batch);
+        assertTrue(outcomes.stream().allMatch(o -> o == TransactionOutcome.PENDING));
+        assertEquals(n, svc.getPendingApprovals().size());
+        assertEquals(n * 60_000L, svc.getPendingApprovals().heldMinor());
+        assertEquals(20, svc.getPendingApprovals().list(n - 20, 100).size());
+
+        assertEquals(n, svc.approveAllPending());
+        assertEquals(n * 600.0, to.getBalance(), 1e-6);
+        assertEquals(100_000_000.0 - n * 600.0, from.getBalance(), 1e-6);
+        assertEquals(0, svc.getPendingApprovals().heldMinor());
+    }
+}
@@ -0,0 +1,71 @@
+package test.java.transactions;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.RecurringCooldowns;
+import transactions.SkipReason;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecurringCooldownsTest {
+    @TempDir
+    Path dir;
+
+    private static final long DAY = 86_400_000L;
+
+    @Test
+    void logsOncePerReasonPerWindowAndClearRearmsAll() {
+        RecurringCooldowns c = new RecurringCooldowns();
+        assertTrue(c.shouldLog("r1", SkipReason.INSUFFICIENT_FUNDS, 1_000, DAY));
+        assertFalse(c.shouldLog("r1", SkipReason.INSUFFICIENT_FUNDS, 2_000, DAY));
+        assertTrue(c.shouldLog("r1", SkipReason.SRC_FROZEN, 2_000, DAY), "reasons are independent");
+        assertTrue(c.shouldLog("r2", SkipReason.INSUFFICIENT_FUNDS, 2_000, DAY), "rtxs are independent");
+        assertTrue(c.shouldLog("r1", SkipReason.INSUFFICIENT_FUNDS, 1_000 + DAY + 1, DAY), "window passed");
+
+        c.clear("r1");
+        assertFalse(c.isCoolingDown("r1", SkipReason.SRC_FROZEN));
+        assertTrue(c.shouldLog("r1", SkipReason.SRC_FROZEN, 3_000, DAY));
+        assertTrue(c.isCoolingDown("r2", SkipReason.INSUFFICIENT_FUNDS));
+    }
+
+    @Test
+    void cooldownsSurviveSaveAndLoad() {
+        RecurringCooldowns c = new RecurringCooldowns();
+        c.shouldLog("r1", SkipReason.DEST_FROZEN, 5_000, DAY);
+        c.shouldLog("r1", SkipReason.REJECTED_BY_CHAIN, 7_000, DAY);
+        c.shouldLog("r2", SkipReason.SRC_SUSPENDED, 9_000, DAY);
+        c.clear("r2");
+        Path f = dir.resolve("recurring.dat.cooldowns");
+        c.save(f);
+
+        RecurringCooldowns loaded = new RecurringCooldowns();
+        loaded.load(f);
+        assertEquals(1, loaded.size(), "cleared states are not saved");
+        assertEquals(5_000, loaded.lastLoggedMillis("r1", SkipReason.DEST_FROZEN));
+        assertEquals(7_000, loaded.lastLoggedMillis("r1", SkipReason.REJECTED_BY_CHAIN));
+        assertEquals(-1, loaded.lastLoggedMillis("r1", SkipReason.SRC_FROZEN));
+        assertFalse(loaded.shouldLog("r1", SkipReason.DEST_FROZEN, 6_000, DAY));
+    }
+
+    @Test
+    void saveIfChangedWritesOnlyAfterAChange() {
+        RecurringCooldowns c = new RecurringCooldowns();
+        Path f = dir.resolve("recurring.dat.cooldowns");
+        assertFalse(c.saveIfChanged(f));
+        c.shouldLog("r1", SkipReason.SRC_FROZEN, 1_000, DAY);
+        assertTrue(c.saveIfChanged(f));
+        assertFalse(c.saveIfChanged(f));
+        assertFalse(c.shouldLog("r1", SkipReason.SRC_FROZEN, 2_000, DAY));
+        assertFalse(c.saveIfChanged(f), "a skip inside the window changes nothing");
+        c.clear("r2");
+        assertFalse(c.saveIfChanged(f), "nothing to clear");
+        c.clear("r1");
+        assertTrue(c.saveIfChanged(f));
+
+        RecurringCooldowns loaded = new RecurringCooldowns();
+        loaded.load(f);
+        assertEquals(0, loaded.size());
+    }
+}
@@ -0,0 +1,54 @@
+package test.java.transactions;
+
+import org.junit.jupiter.api.Test;
+import transactions.RecurringScheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecurringSchedulerTest {
+
+    @Test
+    void firesPeriodicallyInBatchesAndStopsAfterCancel() throws Exception {
+        Map<String, AtomicInteger> runs = new ConcurrentHashMap<>();
+        AtomicInteger largestBatch = new AtomicInteger();
+        RecurringScheduler<String> s = new RecurringScheduler<>(2, 5, due -> {
+            largestBatch.accumulateAndGet(due.size(), Math::max);
+            due.forEach(h -> runs.computeIfAbsent(h.getTask(), k -> new AtomicInteger()).incrementAndGet());
+        });
+        try {
+            for (int i = 0; i < 100; i++) s.schedule("t" + i, "acc1", 20, 20); // same shard, same deadlines
+            RecurringScheduler.Handle<String> cancelled = s.schedule("x", "acc2", 20, 20);
+            assertTrue(cancelled.cancel());
+
+            Thread.sleep(300);
+            assertEquals(100, runs.size());
+            assertTrue(runs.values().stream().allMatch(c -> c.get() >= 3), runs.toString());
+            assertNull(runs.get("x"));
+            assertTrue(largestBatch.get() > 1, "tasks due on the same tick come as one batch");
+            assertTrue(s.firedCount() >= 300);
+        } finally {
+            s.shutdown();
+        }
+    }
+
+    @Test
+    void longDelaysCascadeThroughCoarserWheels() throws Exception {
+        AtomicInteger fired = new AtomicInteger();
+        // 1 ms ticks: 600 ms delay lands on the second wheel (> 256 ticks) and must cascade down
+        RecurringScheduler<String> s = new RecurringScheduler<>(1, 1, due -> fired.addAndGet(due.size()));
+        try {
+            s.schedule("late", "k", 600, 100_000);
+            Thread.sleep(400);
+            assertEquals(0, fired.get());
+            Thread.sleep(600);
+            assertEquals(1, fired.get());
+            assertTrue(s.maxLagMillis() < 200, "lag " + s.maxLagMillis());
+        } finally {
+            s.shutdown();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import transactions.*;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecurringStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void definitionsAndWatermarksSurviveReopenAndSlotsAreReused() {
+        Path file = dir.resolve("recurring.dat");
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+        RecurringTransaction keep = new RecurringTransaction(Transaction.Type.TRANSFER, a, b, 12.34, RecurringTransaction.CatchUpPolicy.RUN_ALL);
+        RecurringTransaction drop = new RecurringTransaction(Transaction.Type.DEPOSIT, null, b, 1.0);
+
+        RecurringStore store = new RecurringStore(file);
+        store.add(keep, 1_000, 60_000);
+        store.add(drop, 2_000, 60_000);
+        store.markRun(keep.getId(), 61_500);
+        store.remove(drop.getId());
+        store.close();
+
+        RecurringStore reopened = new RecurringStore(file);
+        assertEquals(1, reopened.definitions().size());
+        RecurringStore.Definition d = reopened.definitions().get(0);
+        assertEquals(keep.getId(), d.getId());
+        assertEquals(a.getId(), d.getFromId());
+        assertEquals(1234, d.getAmountMinor());
+        assertEquals(61_500, d.getLastRunMillis());
+        assertEquals(RecurringTransaction.CatchUpPolicy.RUN_ALL, d.getPolicy());
+        // runs due at 1000, 61000, 121000, ...: after the 61000 run only 121000 is missed by 150000
+        assertEquals(1, d.missedRuns(150_000));
+        assertEquals(181_000, d.nextRunAfter(150_000));
+
+        // the removed definition's slot is reused: the file does not grow
+        long before = file.toFile().length();
+        reopened.add(new RecurringTransaction(Transaction.Type.DEPOSIT, null, a, 2.0), 0, 1_000);
+        reopened.close();
+        assertEquals(before, file.toFile().length());
+        assertEquals(2, new RecurringStore(file).definitions().size());
+    }
+
+    @Test
+    void restoreCatchesUpMissedRunsPerPolicy() {
+        Path file = dir.resolve("recurring.dat");
+        Account src = AccountFactory.createSavings(null, "src", 1000.0);
+        Account all = AccountFactory.createSavings(null, "all", 0.0);
+        Account latest = AccountFactory.createSavings(null, "latest", 0.0);
+        Account skip = AccountFactory.createSavings(null, "skip", 0.0);
+        long now = System.currentTimeMillis();
+        long period = 3_600_000;
+
+        RecurringStore store = new RecurringStore(file);
+        // anchored 5 periods ago (+ a bit): 6 runs due, none ran
+        long anchor = now - 5 * period - 1_000;
+        store.add(new RecurringTransaction(Transaction.Type.TRANSFER, src, all, 10.0, RecurringTransaction.CatchUpPolicy.RUN_ALL), anchor, period);
+        store.add(new RecurringTransaction(Transaction.Type.TRANSFER, src, latest, 10.0, RecurringTransaction.CatchUpPolicy.RUN_LATEST), anchor, period);
+        store.add(new RecurringTransaction(Transaction.Type.TRANSFER, src, skip, 10.0, RecurringTransaction.CatchUpPolicy.SKIP), anchor, period);
+        store.close();
+
+        Map<String, Account> accounts = new HashMap<>();
+        for (Account acc : new Account[]{src, all, latest}) accounts.put(acc.getId(), acc);
+
+        TransactionValidationHandler chain = new TransactionValidationHandler();
+        chain.setSuccessor(new AutoApprovalHandler(500));
+        TransactionService svc = new TransactionService(chain);
+        try {
+            assertEquals(2, svc.restoreRecurring(new RecurringStore(file), accounts::get));
+            assertEquals(60.0, all.getBalance(), 0.001);
+            assertEquals(10.0, latest.getBalance(), 0.001);
+
+            // "skip" was parked until its account shows up
+            accounts.put(skip.getId(), skip);
+            assertEquals(1, svc.onAccountRegistered(skip.getId()));
+            assertEquals(0.0, skip.getBalance(), 0.001);
+            assertEquals(930.0, src.getBalance(), 0.001);
+            assertEquals(1, svc.getAuditLog().query(new AuditQuery().action("SKIPPED_CATCH_UP").account(skip.getId())).size());
+        } finally {
+            svc.shutdown();
+        }
+
+        // watermarks were written: a second restart has nothing to catch up
+        TransactionService again = new TransactionService(chain);
+        try {
+            again.restoreRecurring(new RecurringStore(file), accounts::get);
+            assertEquals(930.0, src.getBalance(), 0.001);
+        } finally {
+            again.shutdown();
+        }
+    }
+
+    @Test
+    void catchUpRunsArePreCheckedLikeScheduledRuns() {
+        Path file = dir.resolve("recurring.dat");
+        Account frozen = AccountFactory.createSavings(null, "frozen", 1000.0);
+        Account closed = AccountFactory.createSavings(null, "closed", 1000.0);
+        Account dest = AccountFactory.createSavings(null, "dest", 0.0);
+        long period = 3_600_000;
+        long anchor = System.currentTimeMillis() - 5 * period - 1_000;
+
+        RecurringStore store = new RecurringStore(file);
+        store.add(new RecurringTransaction(Transaction.Type.TRANSFER, frozen, dest, 10.0, RecurringTransaction.CatchUpPolicy.RUN_ALL), anchor, period);
+        store.add(new RecurringTransaction(Transaction.Type.TRANSFER, closed, dest, 10.0, RecurringTransaction.CatchUpPolicy.RUN_ALL), anchor, period);
+        store.close();
+        frozen.freeze();
+        closed.close();
+
+        Map<String, Account> accounts = new HashMap<>();
+        for (Account acc : new Account[]{frozen, closed, dest}) accounts.put(acc.getId(), acc);
+        TransactionValidationHandler chain = new TransactionValidationHandler();
+        chain.setSuccessor(new AutoApprovalHandler(500));
+        TransactionService svc = new TransactionService(chain);
+        try {
+            assertEquals(1, svc.restoreRecurring(new RecurringStore(file), accounts::get), "the closed source's definition is cancelled");
+            assertEquals(0.0, dest.getBalance(), 0.001);
+            assertEquals(1, svc.getRecurringStore().size());
+            assertEquals(1, svc.getAuditLog().query(new AuditQuery().action("SKIPPED_SRC_FROZEN")).size());
+            assertEquals(1, svc.getAuditLog().query(new AuditQuery().action("CANCELLED")).size());
+            assertTrue(svc.getAuditLog().query(new AuditQuery().action("REJECTED")).isEmpty());
+
+            // the skip's cooldown is on disk with the watermarks, not only after a clean shutdown
+            RecurringCooldowns saved = new RecurringCooldowns();
+            saved.load(dir.resolve("recurring.dat.cooldowns"));
+            assertEquals(1, saved.size());
+        } finally {
+            svc.shutdown();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package test.java.transactions;
+
+import accounts.Account;
+import accounts.factory.AccountFactory;
+import org.junit.jupiter.api.Test;
+import transactions.Transaction;
+import transactions.TransactionHistory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionHistoryTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static Transaction transfer(Account from, Account to, long minor) {
+        return Transaction.ofMinor(Transaction.Type.TRANSFER, from, to, minor);
+    }
+
+    @Test
+    void pagesForwardAndBackwardWithoutGaps() {
+        TransactionHistory h = new TransactionHistory(4, 1_000, DAY);
+        Account a = AccountFactory.createSavings("h1", "a", 10.0);
+        for (int i = 1; i <= 10; i++) h.append(transfer(a, null, i), 1_000 + i);
+        Transaction deposit = Transaction.ofMinor(Transaction.Type.DEPOSIT, null, a, 500);
+        h.append(deposit, 2_000);
+
+        TransactionHistory.Page first = h.page(0, 4);
+        assertEquals(List.of(1L, 2L, 3L, 4L), amounts(first));
+        assertEquals(1_001, first.getTimeMillis(0));
+        assertSame(a, first.getItems().get(0).getFrom());
+        List<Long> all = new ArrayList<>();
+        for (long c = 0; c >= 0; ) {
+            TransactionHistory.Page p = h.page(c, 3);
+            all.addAll(amounts(p));
+            c = p.getNextCursor();
+        }
+        assertEquals(11, all.size());
+
+        TransactionHistory.Page newest = h.recent(Long.MAX_VALUE, 2);
+        assertEquals(List.of(500L, 10L), amounts(newest));
+        assertEquals(Transaction.Type.DEPOSIT, newest.getItems().get(0).getType());
+        assertNull(newest.getItems().get(0).getFrom());
+        assertEquals(List.of(9L, 8L), amounts(h.recent(newest.getNextCursor(), 2)));
+        assertFalse(h.recent(1, 5).hasMore());
+    }
+
+    @Test
+    void accountCursorsFollowOnlyThatAccount() {
+        TransactionHistory h = new TransactionHistory(8, 1_000, DAY);
+        Account a = AccountFactory.createSavings("ca", "a", 10.0);
+        Account b = AccountFactory.createSavings("cb", "b", 10.0);
+        Account c = AccountFactory.createSavings("cc", "c", 10.0);
+        for (int i = 1; i <= 30; i++) {
+            h.append(transfer(i % 3 == 0 ? a : b, i % 2 == 0 ? c : a, i), i);
+        }
+        // a sends when i % 3 == 0 and receives when i is odd
+        List<Long> expected = new ArrayList<>();
+        for (int i = 30; i >= 1; i--) if (i % 3 == 0 || i % 2 == 1) expected.add((long) i);
+
+        List<Long> got = new ArrayList<>();
+        long cursor = Long.MAX_VALUE;
+        do {
+            TransactionHistory.Page p = h.byAccount("ca", cursor, 4);
+            for (Transaction t : p.getItems()) {
+                assertTrue(t.getFrom() == a || t.getTo() == a);
+                got.add(t.getAmountMinor());
+            }
+            cursor = p.getNextCursor();
+        } while (cursor >= 0);
+        assertEquals(expected, got);
+
+        long sent = 0;
+        for (int i = 21; i <= 30; i++) if (i % 3 == 0) sent += i;
+        assertEquals(sent, h.outgoingMinor("ca", 21));
+        assertTrue(h.byAccount("nobody", Long.MAX_VALUE, 10).isEmpty());
+    }
+
+    @Test
+    void retentionIsBoundedByCountAndAge() {
+        TransactionHistory h = new TransactionHistory(100, 1_000, DAY);
+        Account a = AccountFactory.createSavings("r1", "a", 10.0);
+        Account b = AccountFactory.createSavings("r2", "b", 10.0);
+        h.append(transfer(b, a, 7), 0); // b's only entry, dropped below
+        for (int i = 1; i < 100_000; i++) h.append(transfer(a, null, 1), 0);
+        assertTrue(h.size() <= h.maxRetainedEntries() + 100, "bounded: " + h.size());
+        assertEquals(100_000, h.size() + h.dropped());
+        assertEquals(h.firstSeq(), h.page(0, 1).getSeq(0));
+        assertTrue(h.byAccount("r2", Long.MAX_VALUE, 10).isEmpty(), "its chunk was dropped");
+
+        // a chunk started more than a day after a chunk's newest entry drops that chunk
+        for (int i = 0; i < 100; i++) h.append(transfer(a, null, 2), 2 * DAY);
+        assertEquals(100, h.size());
+        h.append(transfer(a, b, 3), 3 * DAY + 1);
+        assertEquals(1, h.size());
+        assertEquals(List.of(3L), amounts(h.byAccount("r1", Long.MAX_VALUE, 10)));
+        assertEquals(3, h.outgoingMinor("r1", 0));
+    }
+
+    private static List<Long> amounts(TransactionHistory.Page p) {
+        List<Long> out = new ArrayList<>();
+        for (Transaction t : p.getItems()) out.add(t.getAmountMinor());
+        return out;
+    }
+}
@@ -3,9 +3,16 @@ package test.java.transactions;
 import accounts.Account;
 import accounts.factory.AccountFactory;
 import org.junit.jupiter.api.Test;
+import transactions.AutoApprovalHandler;
 import transactions.Transaction;
 import transactions.TransactionHandler;
+import transactions.TransactionOutcome;
 import transactions.TransactionService;
+import transactions.TransactionValidationHandler;
+import util.Metrics;
+
+import java.util.List;
+import java.util.Map;
 
 
 
@@ -30,4 +37,85 @@ class TransactionServiceTest {
         assertEquals(1, svc.getHistory().size(), "history should contain the executed tx");
         assertEquals(1, svc.getAuditLog().entriesCount(), "audit should have one entry");
     }
+
+    @Test
+    void executionMovesMinorUnits() {
+        TransactionHandler chain = mock(TransactionHandler.class);
+        when(chain.handle(any())).thenReturn(true);
+        TransactionService svc = new TransactionService(chain);
+        Account from = spy(AccountFactory.createSavings(null, "f", 100.0));
+        Account to = spy(AccountFactory.createChecking(null, "t", 0.0));
+
+        assertTrue(svc.process(new Transaction(Transaction.Type.TRANSFER, from, to, 12.34)));
+        verify(from).withdrawMinor(1234);
+        verify(to).depositMinor(1234);
+        verify(from, never()).withdraw(anyDouble());
+        verify(to, never()).deposit(anyDouble());
+        assertEquals(8766, from.getBalanceMinor());
+        assertEquals(1234, to.getBalanceMinor());
+
+        // a destination that refuses gets nothing and the source is refunded in minor units
+        to.freeze();
+        assertFalse(svc.process(new Transaction(Transaction.Type.TRANSFER, from, to, 0.66)));
+        verify(from).depositInternalMinor(66);
+        assertEquals(8766, from.getBalanceMinor());
+    }
+
+    @Test
+    void processBatchReturnsPerItemOutcomes() {
+        TransactionValidationHandler validation = new TransactionValidationHandler();
+        validation.setSuccessor(new AutoApprovalHandler(500));
+        TransactionService svc = new TransactionService(validation);
+
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+        List<TransactionOutcome> out = svc.processBatch(List.of(
+                new Transaction(Transaction.Type.TRANSFER, a, b, 60.0),
+                new Transaction(Transaction.Type.TRANSFER, a, b, 60.0),   // only 40 left after the first
+                new Transaction(Transaction.Type.DEPOSIT, null, b, 1000.0) // over auto-approval limit
+        ));
+
+        assertEquals(List.of(TransactionOutcome.EXECUTED, TransactionOutcome.REJECTED, TransactionOutcome.REJECTED), out);
+        assertEquals(40.0, a.getBalance(), 0.001);
+        assertEquals(60.0, b.getBalance(), 0.001);
+        assertEquals(1, svc.getHistory().size());
+        assertEquals(3, svc.getAuditLog().entriesCount());
+
+        // an item rejected by a later stage must not use up the projected balance
+        Account c = AccountFactory.createSavings(null, "c", 1000.0);
+        assertEquals(List.of(TransactionOutcome.REJECTED, TransactionOutcome.EXECUTED), svc.processBatch(List.of(
+                new Transaction(Transaction.Type.TRANSFER, c, b, 600.0),   // over auto-approval limit
+                new Transaction(Transaction.Type.TRANSFER, c, b, 500.0))));
+        assertEquals(500.0, c.getBalance(), 0.001);
+    }
+
+    @Test
+    void metricsCountOutcomesAndTimeProcessing() {
+        TransactionValidationHandler validation = new TransactionValidationHandler();
+        validation.setSuccessor(new AutoApprovalHandler(500));
+        TransactionService svc = new TransactionService(validation);
+        Metrics metrics = new Metrics();
+        svc.enableMetrics(metrics);
+        assertSame(metrics, svc.getMetrics());
+
+        Account a = AccountFactory.createSavings(null, "a", 100.0);
+        Account b = AccountFactory.createSavings(null, "b", 0.0);
+        assertTrue(svc.process(new Transaction(Transaction.Type.TRANSFER, a, b, 30.0)));
+        assertFalse(svc.process(new Transaction(Transaction.Type.DEPOSIT, null, b, 1000.0)));
+        svc.processBatch(List.of(new Transaction(Transaction.Type.TRANSFER, a, b, 10.0),
+                new Transaction(Transaction.Type.TRANSFER, a, b, 500.0)));
+
+        assertEquals(2, metrics.counter("tx.executed").count());
+        assertEquals(2, metrics.counter("tx.rejected").count());
+        assertEquals(2, metrics.timer("tx.process").getLatency().count());
+        assertEquals(2, metrics.timer("tx.approve").getLatency().count(), "single decisions only");
+        assertEquals(1, metrics.timer("tx.batch").getLatency().count());
+        assertEquals(Map.of("EXECUTED", 2, "REJECTED", 2), svc.getAuditLog().actionCounts());
+
+        // submit(...) is timed like process(...)
+        assertEquals(TransactionOutcome.EXECUTED,
+                svc.submit(new Transaction(Transaction.Type.TRANSFER, a, b, 5.0)).getResult().join());
+        assertEquals(3, metrics.timer("tx.process").getLatency().count());
+        assertEquals(3, metrics.timer("tx.approve").getLatency().count());
+    }
 }
@@ -0,0 +1,30 @@
+package test.java.util;
+
+import org.junit.jupiter.api.Test;
+import util.LatencyHistogram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    @Test
+    void percentilesWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) h.record(ms * 1_000_000L);
+        assertEquals(1000, h.count());
+        assertEquals(1_000_000_000L, h.maxNanos());
+        assertEquals(500e6, h.percentile(0.50), 500e6 * 0.07);
+        assertEquals(990e6, h.percentile(0.99), 990e6 * 0.07);
+        assertEquals(1_000_000_000L, h.percentile(1.0), "capped at the recorded max");
+        assertEquals(500.5e6, h.meanNanos(), 1);
+    }
+
+    @Test
+    void emptyAndTinyValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(0.5));
+        h.record(-5);
+        h.record(300);
+        assertEquals(300, h.percentile(1.0));
+        assertTrue(h.summary().startsWith("n=2 "));
+    }
+}
@@ -0,0 +1,51 @@
+package test.java.util;
+
+import org.junit.jupiter.api.Test;
+import util.LatencyHistogram;
+import util.Metrics;
+import util.RateMeter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    @Test
+    void sameNameSameInstanceAndSortedRender() {
+        Metrics m = new Metrics();
+        RateMeter c = m.counter("b.count");
+        assertSame(c, m.counter("b.count"));
+        c.mark();
+        c.mark(4);
+        assertEquals(5, c.count());
+        assertTrue(c.ratePerSecond() > 0);
+
+        Metrics.Timer t = m.timer("a.timer");
+        for (int ms = 1; ms <= 100; ms++) t.record(ms * 1_000_000L);
+        LatencyHistogram existing = new LatencyHistogram();
+        existing.record(2_000_000L);
+        m.histogram("c.route", existing);
+        m.gauge("d.gauge", () -> 42);
+
+        List<String> lines = m.render();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("a.timer") && lines.get(0).contains("/s") && lines.get(0).contains("p99="), lines.get(0));
+        assertTrue(lines.get(1).startsWith("b.count") && lines.get(1).contains(" 5 "), lines.get(1));
+        assertTrue(lines.get(2).startsWith("c.route") && !lines.get(2).contains("/s"), lines.get(2));
+        assertTrue(lines.get(3).startsWith("d.gauge") && lines.get(3).endsWith("42"), lines.get(3));
+        assertEquals(100, t.getRate().count());
+        assertThrows(IllegalArgumentException.class, () -> m.counter("a.timer"));
+    }
+
+    @Test
+    void concurrentMarksAreNotLost() throws InterruptedException {
+        RateMeter r = new RateMeter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> { for (int k = 0; k < 50_000; k++) r.mark(); });
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(200_000, r.count());
+    }
+}
@@ -0,0 +1,37 @@
+package test.java.util;
+
+import accounts.SavingsAccount;
+import interest.CompoundInterestStrategy;
+import org.junit.jupiter.api.Test;
+import util.Money;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+    @Test
+    void shareSplitsWithoutLosingCents() {
+        long total = Money.ofMajor(100.0);
+        long sum = 0;
+        for (int i = 0; i < 3; i++) sum += Money.share(total, 3, i);
+        assertEquals(total, sum);
+        assertEquals(3334, Money.share(total, 3, 0));
+        assertEquals(3333, Money.share(total, 3, 2));
+    }
+
+    @Test
+    void parseAndFormatRoundTrip() {
+        assertEquals(1234, Money.parse("12.34"));
+        assertEquals(1230, Money.parse("12.3"));
+        assertEquals(-5, Money.parse("-0.05"));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("12.30", Money.format(1230));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.234"));
+    }
+
+    @Test
+    void compoundInterestIsRoundedPerPeriod() {
+        SavingsAccount s = new SavingsAccount("s1", "saver", 1000.0);
+        // 12% yearly, monthly compounding, 2 months: 10.00 then 10.10
+        assertEquals(2010, new CompoundInterestStrategy(12.0, 12).computeInterestMinor(s, 2));
+    }
+}
@@ -0,0 +1,111 @@
+package transactions;
+
+import accounts.Account;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lock-striping engine keyed by account id.
+ * - every account id hashes to one of N stripes (N = power of two)
+ * - multi-account operations acquire their stripes in ascending stripe order,
+ *   so two transfers A->B and B->A can never deadlock
+ * - unrelated accounts land on different stripes and run in parallel (no global lock)
+ */
+public class AccountLockStripes {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public AccountLockStripes() {
+        this(defaultStripeCount());
+    }
+
+    public AccountLockStripes(int stripeCount) {
+        if (stripeCount <= 0) throw new IllegalArgumentException("stripeCount>0");
+        int n = Integer.highestOneBit(stripeCount - 1) << 1;
+        if (n <= 0) n = 1;
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+        this.mask = n - 1;
+    }
+
+    // 16 stripes per core keeps collisions between unrelated accounts rare
+    private static int defaultStripeCount() {
+        return Math.max(16, Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    public int stripeCount() { return stripes.length; }
+
+    public int stripeOf(String accountId) {
+        if (accountId == null) return 0;
+        int h = accountId.hashCode();
+        h ^= (h >>> 16); // spread high bits like HashMap does
+        return h & mask;
+    }
+
+    private int stripeOf(Account a) {
+        return a == null ? -1 : stripeOf(a.getId());
+    }
+
+    /**
+     * Run action while holding the stripes of both accounts (either may be null).
+     * Stripes are taken lowest index first; a shared stripe is taken only once.
+     */
+    public <T> T withLocks(Account first, Account second, Supplier<T> action) {
+        int s1 = stripeOf(first);
+        int s2 = stripeOf(second);
+        int lo = Math.min(s1, s2);
+        int hi = Math.max(s1, s2);
+        if (lo == hi || lo < 0) {
+            // single stripe (same stripe, or one side is null)
+            if (hi < 0) return action.get();
+            ReentrantLock l = stripes[hi];
+            l.lock();
+            try {
+                return action.get();
+            } finally {
+                l.unlock();
+            }
+        }
+        ReentrantLock a = stripes[lo];
+        ReentrantLock b = stripes[hi];
+        a.lock();
+        try {
+            b.lock();
+            try {
+                return action.get();
+            } finally {
+                b.unlock();
+            }
+        } finally {
+            a.unlock();
+        }
+    }
+
+    /**
+     * Run action while holding the stripes of every given account.
+     * Used for grouped work (one lock acquisition per stripe, ascending order).
+     */
+    public <T> T withLocks(Collection<? extends Account> accounts, Supplier<T> action) {
+        int[] order = new int[accounts.size()];
+        int n = 0;
+        for (Account a : accounts) {
+            if (a != null) order[n++] = stripeOf(a.getId());
+        }
+        Arrays.sort(order, 0, n);
+        // de-duplicate in place
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || order[distinct - 1] != order[i]) order[distinct++] = order[i];
+        }
+        int locked = 0;
+        try {
+            for (; locked < distinct; locked++) stripes[order[locked]].lock();
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) stripes[order[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package transactions;
+
+/** Outcome code of ApprovalPipeline.decide(...) (enum constants: deciding allocates nothing). */
+public enum ApprovalDecision {
+    APPROVED,                    // passed every stage, no approval limit configured
+    APPROVED_AUTO,               // within the auto-approval limit
+    APPROVED_MANAGER,            // within the manager limit
+    PENDING_MANAGER,             // within the escalation limit: parked for a manager (PendingApprovalQueue)
+    REJECTED_INVALID_AMOUNT,
+    REJECTED_NO_SOURCE,
+    REJECTED_SOURCE_STATUS,
+    REJECTED_DESTINATION_STATUS,
+    REJECTED_INSUFFICIENT_FUNDS,
+    REJECTED_OVER_LIMIT;
+
+    public boolean isApproved() {
+        return this == APPROVED || this == APPROVED_AUTO || this == APPROVED_MANAGER;
+    }
+
+    public boolean isPending() {
+        return this == PENDING_MANAGER;
+    }
+}
@@ -0,0 +1,218 @@
+package transactions;
+
+import accounts.Account;
+import util.Money;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled replacement for the validation -> auto -> manager handler chain.
+ * - built from declarative rules (Builder) into flat arrays: one opcode + one operand + one decision per stage
+ * - decide(tx) walks the arrays in a single loop: no per-stage virtual call, no allocation, no console I/O
+ * - every decision goes to the DecisionSink (logging / metrics are the sink's business)
+ * - still a TransactionHandler, so TransactionService (process / processBatch) uses it unchanged
+ * - escalateToManagerUpTo(limit): amounts above the auto limit are not decided inline but come out
+ *   as PENDING_MANAGER; TransactionService parks them (funds held) in its PendingApprovalQueue
+ *
+ * Example (same policy as the old chain):
+ *   ApprovalPipeline.builder()
+ *       .requirePositiveAmount().requireSourceCanSend().requireDestinationCanReceive()
+ *       .requireAvailableBalance().autoApproveUpTo(500).managerApproveUpTo(2000)
+ *       .build();
+ */
+public class ApprovalPipeline extends TransactionHandler {
+    // stage opcodes
+    private static final int POSITIVE_AMOUNT = 0;
+    private static final int SOURCE_CAN_SEND = 1;
+    private static final int DEST_CAN_RECEIVE = 2;
+    private static final int AVAILABLE_BALANCE = 3;
+    private static final int APPROVE_UP_TO = 4;   // approve with the stage's decision if amount <= operand
+
+    private final int[] ops;
+    private final long[] operands;
+    private final ApprovalDecision[] decisions;
+    private final int balanceStage;               // index of the AVAILABLE_BALANCE stage, -1 if none
+    private final ApprovalDecision otherwise;     // when no stage decided
+    private final DecisionSink sink;
+
+    private ApprovalPipeline(Builder b, DecisionSink sink) {
+        this.ops = Arrays.copyOf(b.ops, b.size);
+        this.operands = Arrays.copyOf(b.operands, b.size);
+        this.decisions = Arrays.copyOf(b.decisions, b.size);
+        int bal = -1;
+        boolean limits = false;
+        for (int i = 0; i < b.size; i++) {
+            if (ops[i] == AVAILABLE_BALANCE) bal = i;
+            if (ops[i] == APPROVE_UP_TO) limits = true;
+        }
+        this.balanceStage = bal;
+        this.otherwise = limits ? ApprovalDecision.REJECTED_OVER_LIMIT : ApprovalDecision.APPROVED;
+        this.sink = sink;
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    /** evaluate all stages for one transaction */
+    public ApprovalDecision decide(Transaction tx) {
+        ApprovalDecision d = evaluate(tx, false, 0);
+        sink.onDecision(tx, d);
+        return d;
+    }
+
+    @Override
+    public boolean handle(Transaction tx) {
+        boolean ok = decide(tx).isApproved();
+        if (ok && successor != null) return successor.handle(tx);
+        return ok;
+    }
+
+    /**
+     * Batch: same stages, with each source's available balance read once and projected down by the
+     * debits approved (or parked with a hold) so far, like TransactionValidationHandler's batch mode.
+     * Returns one decision per transaction.
+     */
+    public ApprovalDecision[] decideBatch(List<Transaction> batch) {
+        int[] all = new int[batch.size()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        ApprovalDecision[] out = new ApprovalDecision[all.length];
+        decideBatch(batch, all, all.length, out);
+        return out;
+    }
+
+    private void decideBatch(List<Transaction> batch, int[] pending, int count, ApprovalDecision[] out) {
+        Map<Account, long[]> projected = balanceStage < 0 ? null : new IdentityHashMap<>();
+        for (int k = 0; k < count; k++) {
+            int i = pending[k];
+            Transaction tx = batch.get(i);
+            long[] slot = null;
+            if (projected != null && isDebit(tx) && tx.getFrom() != null) {
+                slot = projected.get(tx.getFrom());
+                if (slot == null) {
+                    slot = new long[]{ availableMinor(tx.getFrom()) };
+                    projected.put(tx.getFrom(), slot);
+                }
+            }
+            ApprovalDecision d = evaluate(tx, slot != null, slot != null ? slot[0] : 0);
+            sink.onDecision(tx, d);
+            if (slot != null && (d.isApproved() || d.isPending())) slot[0] -= tx.getAmountMinor();
+            out[i] = d;
+        }
+    }
+
+    @Override
+    protected void handleBatch(List<Transaction> batch, int[] pending, int count, boolean[] approved) {
+        ApprovalDecision[] decisions = new ApprovalDecision[batch.size()];
+        decideBatch(batch, pending, count, decisions);
+        int passed = 0;
+        for (int k = 0; k < count; k++) {
+            int i = pending[k];
+            if (decisions[i].isApproved()) pending[passed++] = i;
+            else approved[i] = false;
+        }
+        if (successor != null) {
+            escalateBatch(batch, pending, passed, approved, true);
+        } else {
+            for (int k = 0; k < passed; k++) approved[pending[k]] = true;
+        }
+    }
+
+    // projected: use projectedAvailable instead of reading the account (batch mode)
+    private ApprovalDecision evaluate(Transaction tx, boolean projected, long projectedAvailable) {
+        if (tx == null) return ApprovalDecision.REJECTED_INVALID_AMOUNT;
+        long amount = tx.getAmountMinor();
+        Account from = tx.getFrom();
+        Account to = tx.getTo();
+        for (int s = 0; s < ops.length; s++) {
+            switch (ops[s]) {
+                case POSITIVE_AMOUNT:
+                    if (amount <= 0) return ApprovalDecision.REJECTED_INVALID_AMOUNT;
+                    break;
+                case SOURCE_CAN_SEND:
+                    if (from != null && !from.getStatus().canBeSource()) return ApprovalDecision.REJECTED_SOURCE_STATUS;
+                    break;
+                case DEST_CAN_RECEIVE:
+                    if (to != null && !to.getStatus().canReceive()) return ApprovalDecision.REJECTED_DESTINATION_STATUS;
+                    break;
+                case AVAILABLE_BALANCE:
+                    if (isDebit(tx)) {
+                        if (from == null) return ApprovalDecision.REJECTED_NO_SOURCE;
+                        long available = projected ? projectedAvailable : availableMinor(from);
+                        if (available < amount) return ApprovalDecision.REJECTED_INSUFFICIENT_FUNDS;
+                    }
+                    break;
+                case APPROVE_UP_TO:
+                    if (amount <= operands[s]) return decisions[s];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown stage " + ops[s]);
+            }
+        }
+        return otherwise;
+    }
+
+    private static boolean isDebit(Transaction tx) {
+        return tx.getType() == Transaction.Type.WITHDRAW || tx.getType() == Transaction.Type.TRANSFER;
+    }
+
+    // available balance in cents; a failing read counts as nothing available
+    private static long availableMinor(Account a) {
+        try {
+            return Money.ofMajor(a.getAvailableBalance());
+        } catch (RuntimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    public int stageCount() { return ops.length; }
+
+    /* -----------------------
+       Declarative rules
+       ----------------------- */
+    public static class Builder {
+        private int[] ops = new int[8];
+        private long[] operands = new long[8];
+        private ApprovalDecision[] decisions = new ApprovalDecision[8];
+        private int size;
+        private DecisionSink sink = DecisionSink.NONE;
+
+        private Builder add(int op, long operand, ApprovalDecision decision) {
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                operands = Arrays.copyOf(operands, size * 2);
+                decisions = Arrays.copyOf(decisions, size * 2);
+            }
+            ops[size] = op;
+            operands[size] = operand;
+            decisions[size] = decision;
+            size++;
+            return this;
+        }
+
+        /** reject amounts <= 0 */
+        public Builder requirePositiveAmount() { return add(POSITIVE_AMOUNT, 0, null); }
+        /** reject if the source's status cannot send (frozen, suspended, closed) */
+        public Builder requireSourceCanSend() { return add(SOURCE_CAN_SEND, 0, null); }
+        /** reject if the destination's status cannot receive */
+        public Builder requireDestinationCanReceive() { return add(DEST_CAN_RECEIVE, 0, null); }
+        /** withdraw/transfer: reject without a source or when its available balance is short */
+        public Builder requireAvailableBalance() { return add(AVAILABLE_BALANCE, 0, null); }
+        /** approve (APPROVED_AUTO) amounts up to limit */
+        public Builder autoApproveUpTo(double limit) { return add(APPROVE_UP_TO, Money.ofMajor(limit), ApprovalDecision.APPROVED_AUTO); }
+        /** approve (APPROVED_MANAGER) amounts up to limit; anything larger is REJECTED_OVER_LIMIT */
+        public Builder managerApproveUpTo(double limit) { return add(APPROVE_UP_TO, Money.ofMajor(limit), ApprovalDecision.APPROVED_MANAGER); }
+        /** park (PENDING_MANAGER) amounts up to limit for a manager's decision; anything larger is REJECTED_OVER_LIMIT */
+        public Builder escalateToManagerUpTo(double limit) { return add(APPROVE_UP_TO, Money.ofMajor(limit), ApprovalDecision.PENDING_MANAGER); }
+
+        public Builder sink(DecisionSink sink) {
+            this.sink = sink == null ? DecisionSink.NONE : sink;
+            return this;
+        }
+
+        public ApprovalPipeline build() {
+            return new ApprovalPipeline(this, sink);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package transactions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead journal for AuditLog entries.
+ * - fixed 256-byte binary records written into memory-mapped segment files (audit-00000001.seg, ...)
+ * - a segment holds segmentRecords records; when full, it is forced to disk and the next one is mapped
+ * - group commit: a background thread forces the active segment every flushIntervalMillis
+ *   (0 = force on every append)
+ * - replay(...) reads all segments in order; an all-zero slot marks the end of written data
+ *
+ * Record layout (big-endian):
+ *   int magic | long epochSecond | int nanos | long amountMinor |
+ *   action, from, to, note as (short length, UTF-8 bytes); length -1 = null
+ * Text that does not fit its slot budget is truncated.
+ */
+public class AuditJournal implements AutoCloseable {
+    public static final int RECORD_SIZE = 256;
+    private static final int MAGIC = 0x41554431; // "AUD1"
+    private static final int HEADER = 4 + 8 + 4 + 8;
+    // byte budgets per text field (+2 length bytes each); note gets whatever is left
+    private static final int ACTION_MAX = 48, FROM_MAX = 40, TO_MAX = 64;
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService flusher;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private int slot;            // next free slot in the active segment
+    private boolean dirty;
+    private boolean closed;
+
+    public AuditJournal(Path dir) {
+        this(dir, 65_536, 50);
+    }
+
+    public AuditJournal(Path dir, int segmentRecords, long flushIntervalMillis) {
+        if (segmentRecords <= 0) throw new IllegalArgumentException("segmentRecords>0");
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.flushIntervalMillis = flushIntervalMillis;
+        try {
+            Files.createDirectories(dir);
+            List<Path> existing = segments();
+            if (existing.isEmpty()) {
+                openSegment(1, 0);
+            } else {
+                Path last = existing.get(existing.size() - 1);
+                openSegment(indexOf(last), -1); // -1: find first free slot
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open audit journal in " + dir, e);
+        }
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "audit-journal-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    // ------------------------ WRITE ------------------------------ //
+
+    public synchronized void append(Instant ts, String action, String from, String to, long amountMinor, String note) {
+        if (closed) throw new IllegalStateException("Audit journal closed");
+        if (slot >= segmentRecords) roll();
+        int base = slot * RECORD_SIZE;
+        int p = base + 4;
+        segment.putLong(p, ts.getEpochSecond()); p += 8;
+        segment.putInt(p, ts.getNano()); p += 4;
+        segment.putLong(p, amountMinor); p += 8;
+        int end = base + RECORD_SIZE;
+        p = putText(p, action, ACTION_MAX);
+        p = putText(p, from, FROM_MAX);
+        p = putText(p, to, TO_MAX);
+        putText(p, note, end - p - 2);
+        // magic last: a torn record (crash mid-write) is never seen as valid on replay
+        segment.putInt(base, MAGIC);
+        slot++;
+        dirty = true;
+        if (flushIntervalMillis <= 0) segment.force();
+    }
+
+    private int putText(int p, String s, int max) {
+        if (s == null) {
+            segment.putShort(p, (short) -1);
+            return p + 2;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(b.length, Math.max(0, max));
+        // do not cut a multi-byte character in half
+        while (len > 0 && len < b.length && (b[len] & 0xC0) == 0x80) len--;
+        segment.putShort(p, (short) len);
+        segment.put(p + 2, b, 0, len);
+        return p + 2 + len;
+    }
+
+    private void roll() {
+        try {
+            segment.force();
+            channel.close();
+            openSegment(segmentIndex + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot roll audit journal segment", e);
+        }
+    }
+
+    /** group commit: force the active segment if anything was written since the last flush */
+    public synchronized void flush() {
+        if (closed || !dirty) return;
+        segment.force();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        if (flusher != null) flusher.shutdown();
+        try {
+            segment.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            closed = true;
+        }
+    }
+
+    /** close and remove every segment file (used for the ring buffer's spill journal once drained) */
+    public synchronized void deleteSegments() {
+        close();
+        try {
+            for (Path p : segments()) Files.deleteIfExists(p);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete audit journal segments in " + dir, e);
+        }
+    }
+
+    // ------------------------ REPLAY ----------------------------- //
+
+    /** Read every record in write order and hand it to sink (used by AuditLog on startup). */
+    public synchronized void replay(Consumer<AuditLog.Entry> sink) {
+        try {
+            for (Path p : segments()) {
+                try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    int records = (int) (ch.size() / RECORD_SIZE);
+                    for (int i = 0; i < records; i++) {
+                        AuditLog.Entry e = read(buf, i * RECORD_SIZE);
+                        if (e == null) break;
+                        sink.accept(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replay audit journal " + dir, e);
+        }
+    }
+
+    private static AuditLog.Entry read(MappedByteBuffer buf, int base) {
+        if (buf.getInt(base) != MAGIC) return null;
+        int p = base + 4;
+        long sec = buf.getLong(p); p += 8;
+        int nanos = buf.getInt(p); p += 4;
+        long amount = buf.getLong(p); p += 8;
+        String[] text = new String[4];
+        for (int f = 0; f < 4; f++) {
+            short len = buf.getShort(p);
+            p += 2;
+            if (len < 0) continue;
+            byte[] b = new byte[len];
+            buf.get(p, b, 0, len);
+            text[f] = new String(b, StandardCharsets.UTF_8);
+            p += len;
+        }
+        return new AuditLog.Entry(Instant.ofEpochSecond(sec, nanos), text[0], text[1], text[2], amount, text[3]);
+    }
+
+    // ------------------------ SEGMENTS --------------------------- //
+
+    private void openSegment(int index, int startSlot) throws IOException {
+        Path p = dir.resolve(String.format("audit-%08d.seg", index));
+        channel = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        segmentIndex = index;
+        if (startSlot >= 0) {
+            slot = startSlot;
+        } else {
+            slot = 0;
+            while (slot < segmentRecords && segment.getInt(slot * RECORD_SIZE) == MAGIC) slot++;
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            s.filter(p -> p.getFileName().toString().matches("audit-\\d{8}\\.seg")).sorted().forEach(out::add);
+        }
+        return out;
+    }
+
+    private static int indexOf(Path segmentFile) {
+        String n = segmentFile.getFileName().toString();
+        return Integer.parseInt(n.substring(6, 14));
+    }
+
+    public Path getDirectory() { return dir; }
+}
@@ -1,36 +1,60 @@
 package transactions;
 
+import util.IntList;
+import util.Money;
+
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple AuditLog implementation:
- * - thread-safe collection of Entry
+ * - thread-safe, append-only store of Entry (chunked arrays: O(1) append, readers never copy)
+ * - optional AuditJournal: every entry is also written to the memory-mapped journal,
+ *   and the journal is replayed into memory when the log is created
+ * - optional AuditRingBuffer (enableRingBuffer): record(...) only publishes into the ring and
+ *   returns; a consumer thread stores the entries (call flush() before reading if you need them all)
  * - record(tx, note) stores timestamp + tx summary + note
  * - entriesCount(), getEntries(), printRecent(int)
+ * - secondary indexes (account id from/to, action kind, hour bucket) maintained on append;
+ *   query(AuditQuery) answers combined filters + paging from the smallest index instead of a full scan
  * - Entry.toString() is human-friendly
  */
 public class AuditLog {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // appends are serialized by appendLock; readers see a prefix [0, size) without locking
+    private final Object appendLock = new Object();
+    private volatile Entry[][] chunks = new Entry[16][];
+    private volatile int size;
+    private final AuditJournal journal; // may be null (memory only)
+    private volatile AuditRingBuffer ring; // may be null (synchronous recording)
 
-    // thread-safe list for reads/writes by multiple threads
-    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    // secondary indexes: ascending entry positions, written under appendLock before size is published
+    private final Map<String, IntList> byAccount = new ConcurrentHashMap<>();
+    private final Map<String, IntList> byAction = new ConcurrentHashMap<>(); // key = AuditQuery.kindOf(action)
+    private final IntList bucketHours = new IntList();   // hour (epochSecond / 3600) of each bucket, ascending
+    private final IntList bucketStarts = new IntList();  // first position of each bucket
+    private final IntList outOfOrder = new IntList();    // entries older than the current bucket (e.g. spilled)
 
     public static class Entry {
         private final Instant timestamp;
         private final String action; // e.g., "EXECUTED", "REJECTED", "SKIPPED_INSUFFICIENT_FUNDS"
         private final String fromId;
         private final String toId;
-        private final double amount;
+        private final long amountMinor; // fixed-point cents
         private final String note;
 
-        public Entry(Instant timestamp, String action, String fromId, String toId, double amount, String note) {
+        public Entry(Instant timestamp, String action, String fromId, String toId, long amountMinor, String note) {
             this.timestamp = timestamp;
             this.action = action;
             this.fromId = fromId;
             this.toId = toId;
-            this.amount = amount;
+            this.amountMinor = amountMinor;
             this.note = note;
         }
 
@@ -38,29 +62,39 @@ public class AuditLog {
         public String getAction() { return action; }
         public String getFrom() { return fromId; }
         public String getTo() { return toId; }
-        public double getAmount() { return amount; }
+        public double getAmount() { return Money.toMajor(amountMinor); }
+        public long getAmountMinor() { return amountMinor; }
         public String getNote() { return note; }
 
         @Override
         public String toString() {
-            String ts = DateTimeFormatter.ISO_INSTANT.format(timestamp);
-            String amt = String.format("%.2f", amount);
-            String from = (fromId == null) ? "external" : fromId;
-            String to = (toId == null) ? "external" : toId;
-            String n = (note == null || note.isEmpty()) ? "" : " - " + note;
-            return String.format("[%s] %s - %s -> %s : %s%s", ts, action, from, to, amt, n);
+            StringBuilder sb = new StringBuilder(96);
+            sb.append('[').append(DateTimeFormatter.ISO_INSTANT.format(timestamp)).append("] ")
+              .append(action).append(" - ")
+              .append(fromId == null ? "external" : fromId).append(" -> ")
+              .append(toId == null ? "external" : toId).append(" : ");
+            Money.appendTo(sb, amountMinor);
+            if (note != null && !note.isEmpty()) sb.append(" - ").append(note);
+            return sb.toString();
         }
     }
 
-    public AuditLog(){}
+    public AuditLog(){
+        this.journal = null;
+    }
+
+    /** durable log: replays the journal into memory, then journals every new entry */
+    public AuditLog(AuditJournal journal){
+        this.journal = journal;
+        if (journal != null) journal.replay(this::appendInMemory);
+    }
 
     // record with Transaction object (you used auditLog.record(tx, "...") elsewhere)
     public void record(Transaction tx, String action) {
         if (tx == null) return;
         String from = tx.getFrom() != null ? tx.getFrom().getId() : null;
         String to = tx.getTo() != null ? tx.getTo().getId() : null;
-        double amt = tx.getAmount();
-        record(action, from, to, amt, null);
+        recordMinor(action, from, to, tx.getAmountMinor(), null);
     }
 
     // overload with note
@@ -68,14 +102,74 @@ public class AuditLog {
         if (tx == null) return;
         String from = tx.getFrom() != null ? tx.getFrom().getId() : null;
         String to = tx.getTo() != null ? tx.getTo().getId() : null;
-        double amt = tx.getAmount();
-        record(action, from, to, amt, note);
+        recordMinor(action, from, to, tx.getAmountMinor(), note);
     }
 
     // low-level record
     public void record(String action, String fromId, String toId, double amount, String note) {
-        Entry e = new Entry(Instant.now(), action, fromId, toId, amount, note);
-        entries.add(e);
+        recordMinor(action, fromId, toId, Money.ofMajor(amount), note);
+    }
+
+    // low-level record in minor units (cents)
+    public void recordMinor(String action, String fromId, String toId, long amountMinor, String note) {
+        AuditRingBuffer r = ring;
+        if (r != null) {
+            r.publish(action, fromId, toId, amountMinor, note); // no allocation on the caller thread
+            return;
+        }
+        store(new Entry(Instant.now(), action, fromId, toId, amountMinor, note));
+    }
+
+    // ring consumer -> storage
+    private void storeFromRing(long epochNanos, String action, String fromId, String toId, long amountMinor, String note) {
+        Instant ts = Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L), Math.floorMod(epochNanos, 1_000_000_000L));
+        store(new Entry(ts, action, fromId, toId, amountMinor, note));
+    }
+
+    private void store(Entry e) {
+        synchronized (appendLock) {
+            // journal first, under the same lock, so memory order == journal order
+            if (journal != null) journal.append(e.timestamp, e.action, e.fromId, e.toId, e.amountMinor, e.note);
+            appendInMemory(e);
+        }
+    }
+
+    private void appendInMemory(Entry e) {
+        synchronized (appendLock) {
+            int n = size;
+            int c = n >>> CHUNK_BITS;
+            Entry[][] cs = chunks;
+            if (c == cs.length) {
+                cs = Arrays.copyOf(cs, cs.length * 2); // copies chunk references only
+                chunks = cs;
+            }
+            if (cs[c] == null) cs[c] = new Entry[CHUNK_SIZE];
+            cs[c][n & CHUNK_MASK] = e;
+            index(e, n);
+            size = n + 1; // volatile write publishes the entry and its index positions
+        }
+    }
+
+    private void index(Entry e, int pos) {
+        if (e.fromId != null) byAccount.computeIfAbsent(e.fromId, k -> new IntList()).add(pos);
+        if (e.toId != null && !e.toId.equals(e.fromId)) byAccount.computeIfAbsent(e.toId, k -> new IntList()).add(pos);
+        byAction.computeIfAbsent(AuditQuery.kindOf(e.action), k -> new IntList()).add(pos);
+
+        int hour = hourOf(e.timestamp);
+        if (bucketHours.isEmpty() || hour > bucketHours.last()) {
+            bucketStarts.add(pos); // starts first: readers size by bucketHours
+            bucketHours.add(hour);
+        } else if (hour < bucketHours.last()) {
+            outOfOrder.add(pos);
+        }
+    }
+
+    private static int hourOf(Instant t) {
+        return (int) Math.floorDiv(t.getEpochSecond(), 3600L);
+    }
+
+    private Entry get(int i) {
+        return chunks[i >>> CHUNK_BITS][i & CHUNK_MASK];
     }
 
     // convenience when code calls auditLog.record(tx, "SOME_NOTE")
@@ -86,28 +180,201 @@ public class AuditLog {
 
     // count and accessors
     public int entriesCount() {
-        return entries.size();
+        return size;
     }
 
+    /**
+     * Entries per action kind (AuditQuery.kindOf), sorted by kind. Read from the action index:
+     * one binary search per kind, no scan of the entries.
+     */
+    public Map<String, Integer> actionCounts() {
+        final int n = size;
+        Map<String, Integer> out = new TreeMap<>();
+        for (Map.Entry<String, IntList> me : byAction.entrySet()) {
+            IntList list = me.getValue();
+            int count = list.lowerBound(n, list.size());
+            if (count > 0) out.put(me.getKey(), count);
+        }
+        return out;
+    }
+
+    /** read-only view of the entries present now (no copy; later appends are not visible in it) */
     public List<Entry> getEntries() {
-        return Collections.unmodifiableList(entries);
+        final int snapshot = size;
+        return new AbstractList<Entry>() {
+            @Override public Entry get(int index) {
+                Objects.checkIndex(index, snapshot);
+                return AuditLog.this.get(index);
+            }
+            @Override public int size() { return snapshot; }
+        };
+    }
+
+    /**
+     * Entries matching all filters of q, in log order (or newest first), after q.offset, at most q.limit.
+     * Candidates come from the most selective index; the time range narrows them by binary search.
+     */
+    public List<Entry> query(AuditQuery q) {
+        final int n = size;
+        List<Entry> out = new ArrayList<>(Math.min(q.getLimit(), 256));
+        if (n == 0 || q.getLimit() == 0) return out;
+
+        // position range covered by the time filter (hour granularity; exact times are checked per entry)
+        int lo = 0, hi = n;
+        boolean timed = q.getFrom() != null || q.getTo() != null;
+        if (timed) {
+            int buckets = bucketHours.size();
+            if (q.getFrom() != null) lo = bucketPosition(bucketHours.lowerBound(hourOf(q.getFrom()), buckets), buckets, n);
+            if (q.getTo() != null) hi = bucketPosition(bucketHours.lowerBound(hourOf(q.getTo()) + 1, buckets), buckets, n);
+        }
+
+        // candidate positions: smallest index list, or every position in [lo, hi)
+        IntList candidates = null;
+        if (q.getAccountId() != null) candidates = smaller(candidates, byAccount.getOrDefault(q.getAccountId(), EMPTY));
+        if (q.getAction() != null) candidates = smaller(candidates, byAction.getOrDefault(q.getAction(), EMPTY));
+        if (q.getActionPrefix() != null && q.getAction() == null) {
+            // the union costs as much as its size: build it only when it is smaller than what it would
+            // replace; otherwise walk that list / range and let q.matches test the prefix per entry
+            long walk = candidates != null ? candidates.size() : Math.max(0, hi - lo);
+            if (prefixCount(q.getActionPrefix()) < walk) candidates = positionsForPrefix(q.getActionPrefix(), n);
+        }
+
+        int from, to;
+        if (candidates == null) {
+            from = lo; to = Math.max(lo, hi);
+        } else {
+            int count = candidates.lowerBound(n, candidates.size());
+            from = candidates.lowerBound(lo, count);
+            to = Math.max(from, candidates.lowerBound(hi, count));
+        }
+
+        // entries indexed outside [lo, hi) because they arrived late; usually none
+        int[] late = timed ? lateMatches(q, lo, hi, n) : new int[0];
+
+        int skip = q.getOffset();
+        int limit = q.getLimit();
+        boolean desc = q.isNewestFirst();
+        int k = desc ? to - 1 : from;
+        int l = desc ? late.length - 1 : 0;
+        while (out.size() < limit) {
+            boolean hasMain = desc ? k >= from : k < to;
+            boolean hasLate = desc ? l >= 0 : l < late.length;
+            if (!hasMain && !hasLate) break;
+            int pos;
+            boolean fromMain;
+            if (hasMain && hasLate) {
+                int mp = candidates == null ? k : candidates.get(k);
+                fromMain = desc ? mp > late[l] : mp < late[l];
+                pos = fromMain ? mp : late[l];
+            } else {
+                fromMain = hasMain;
+                pos = fromMain ? (candidates == null ? k : candidates.get(k)) : late[l];
+            }
+            if (fromMain) k += desc ? -1 : 1; else l += desc ? -1 : 1;
+
+            Entry e = get(pos);
+            if (fromMain && !q.matches(e)) continue; // late ones are already filtered
+            if (skip > 0) { skip--; continue; }
+            out.add(e);
+        }
+        return out;
+    }
+
+    private static final IntList EMPTY = new IntList(1);
+
+    private static IntList smaller(IntList current, IntList other) {
+        return current == null || other.size() < current.size() ? other : current;
+    }
+
+    private int bucketPosition(int bucket, int buckets, int n) {
+        return bucket >= buckets ? n : Math.min(bucketStarts.get(bucket), n);
+    }
+
+    // entries (any size) indexed under an action kind starting with prefix
+    private long prefixCount(String prefix) {
+        long c = 0;
+        for (Map.Entry<String, IntList> me : byAction.entrySet()) {
+            if (me.getKey().startsWith(prefix)) c += me.getValue().size();
+        }
+        return c;
+    }
+
+    // union of the action lists whose kind starts with prefix, ascending
+    private IntList positionsForPrefix(String prefix, int n) {
+        List<IntList> lists = new ArrayList<>();
+        for (Map.Entry<String, IntList> me : byAction.entrySet()) {
+            if (me.getKey().startsWith(prefix)) lists.add(me.getValue());
+        }
+        if (lists.isEmpty()) return EMPTY;
+        if (lists.size() == 1) return lists.get(0);
+        int[] merged = new int[0];
+        for (IntList list : lists) {
+            int[] add = list.toArray();
+            int[] m = new int[merged.length + add.length];
+            int i = 0, j = 0, w = 0;
+            while (i < merged.length || j < add.length) {
+                if (j >= add.length || (i < merged.length && merged[i] < add[j])) m[w++] = merged[i++];
+                else m[w++] = add[j++];
+            }
+            merged = m;
+        }
+        IntList out = new IntList(merged.length);
+        for (int p : merged) if (p < n) out.add(p);
+        return out;
+    }
+
+    // out-of-order entries outside [lo, hi) that match q, ascending
+    private int[] lateMatches(AuditQuery q, int lo, int hi, int n) {
+        int count = outOfOrder.lowerBound(n, outOfOrder.size());
+        if (count == 0) return new int[0];
+        IntList hits = new IntList();
+        for (int i = 0; i < count; i++) {
+            int pos = outOfOrder.get(i);
+            if (pos >= lo && pos < hi) continue; // scanned through the main range already
+            if (q.matches(get(pos))) hits.add(pos);
+        }
+        return hits.toArray();
     }
 
     // print last N entries (most recent first)
     public void printRecent(int n) {
         if (n <= 0) n = 10;
-        List<Entry> copy = new ArrayList<>(entries);
-        int start = Math.max(0, copy.size() - n);
-        for (int i = copy.size() - 1; i >= start; i--) {
-            System.out.println(copy.get(i).toString());
+        int count = size;
+        int start = Math.max(0, count - n);
+        for (int i = count - 1; i >= start; i--) {
+            System.out.println(get(i).toString());
         }
     }
 
+    /**
+     * Put a ring buffer in front of the storage: callers of record(...) no longer wait for
+     * storage/journal I/O. spillDir is only used by the SPILL policy.
+     */
+    public synchronized void enableRingBuffer(int capacity, AuditRingBuffer.BackpressurePolicy policy, Path spillDir) {
+        if (ring != null) throw new IllegalStateException("Ring buffer already enabled");
+        ring = new AuditRingBuffer(capacity, policy, spillDir, this::storeFromRing);
+    }
+
+    public AuditRingBuffer getRingBuffer() { return ring; }
+
+    /** wait until everything recorded so far is stored (no-op without a ring buffer) */
+    public void flush() {
+        AuditRingBuffer r = ring;
+        if (r != null) r.flush();
+    }
+
+    /** drain the ring, then flush + close the journal */
+    public void close() {
+        AuditRingBuffer r = ring;
+        if (r != null) r.close();
+        if (journal != null) journal.close();
+    }
+
     // backward compatible no-arg printRecent
     public void printRecent() { printRecent(10); }
 
     @Override
     public String toString() {
-        return "AuditLog{entries=" + entries.size() + "}";
+        return "AuditLog{entries=" + size + "}";
     }
 }
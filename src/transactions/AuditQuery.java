@@ -0,0 +1,58 @@
+package transactions;
+
+import java.time.Instant;
+
+/**
+ * Filter + page for AuditLog.query(...). All filters are optional and combined with AND.
+ * Example: all SKIPPED_* entries for account c1 this week, newest first:
+ *   new AuditQuery().account("c1").actionPrefix("SKIPPED_").from(weekStart).newestFirst().limit(50)
+ *
+ * Actions are indexed by their kind = text before ':' ("FAILED: Insufficient funds" -> "FAILED").
+ */
+public class AuditQuery {
+    private String accountId;      // matches from OR to
+    private String action;         // exact action kind
+    private String actionPrefix;   // kind starts with
+    private Instant from;          // inclusive
+    private Instant to;            // exclusive
+    private int offset = 0;
+    private int limit = 100;
+    private boolean newestFirst = false;
+
+    public AuditQuery account(String accountId) { this.accountId = accountId; return this; }
+    public AuditQuery action(String action) { this.action = action; return this; }
+    public AuditQuery actionPrefix(String prefix) { this.actionPrefix = prefix; return this; }
+    public AuditQuery from(Instant from) { this.from = from; return this; }
+    public AuditQuery to(Instant to) { this.to = to; return this; }
+    public AuditQuery offset(int offset) { this.offset = Math.max(0, offset); return this; }
+    public AuditQuery limit(int limit) { this.limit = Math.max(0, limit); return this; }
+    public AuditQuery newestFirst() { this.newestFirst = true; return this; }
+
+    public String getAccountId() { return accountId; }
+    public String getAction() { return action; }
+    public String getActionPrefix() { return actionPrefix; }
+    public Instant getFrom() { return from; }
+    public Instant getTo() { return to; }
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+    public boolean isNewestFirst() { return newestFirst; }
+
+    /** kind of an action string: text before ':' (trimmed) */
+    public static String kindOf(String action) {
+        if (action == null) return "";
+        int c = action.indexOf(':');
+        return c < 0 ? action : action.substring(0, c).trim();
+    }
+
+    boolean matches(AuditLog.Entry e) {
+        if (accountId != null && !accountId.equals(e.getFrom()) && !accountId.equals(e.getTo())) return false;
+        if (action != null || actionPrefix != null) {
+            String kind = kindOf(e.getAction());
+            if (action != null && !action.equals(kind)) return false;
+            if (actionPrefix != null && !kind.startsWith(actionPrefix)) return false;
+        }
+        if (from != null && e.getTimestamp().isBefore(from)) return false;
+        if (to != null && !e.getTimestamp().isBefore(to)) return false;
+        return true;
+    }
+}
@@ -0,0 +1,307 @@
+package transactions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-producer / single-consumer ring buffer in front of the audit storage.
+ * - producers claim a preallocated slot (one CAS / getAndIncrement) and copy the fields in:
+ *   primitives + references to existing strings, no Entry/Instant allocation on the caller thread
+ * - one daemon consumer thread drains published slots in order into the Sink (AuditLog storage + journal)
+ * - when the ring is full the BackpressurePolicy decides:
+ *     BLOCK - producer waits for a free slot (nothing lost, latency follows the sink)
+ *     DROP  - record is discarded and counted (latency stays flat)
+ *     SPILL - record is appended to a spill journal on disk and re-ingested once the ring drains
+ *             (spilled entries keep their timestamps but land after entries already in the ring)
+ * - re-ingest swaps in a fresh spill journal (next "gen-N" directory) under the spill lock and replays
+ *   the old one after releasing it, so producers keep spilling while the backlog is re-ingested
+ */
+public class AuditRingBuffer implements AutoCloseable {
+
+    public enum BackpressurePolicy { BLOCK, DROP, SPILL }
+
+    /** where drained records go; timestamp is epoch nanos */
+    public interface Sink {
+        void accept(long epochNanos, String action, String from, String to, long amountMinor, String note);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final BackpressurePolicy policy;
+    private final Sink sink;
+
+    // slot storage (struct-of-arrays)
+    private final AtomicLongArray published; // sequence stored in the slot once it is readable
+    private final long[] timestamps;
+    private final long[] amounts;
+    private final String[] actions, froms, tos, notes;
+
+    private final AtomicLong head = new AtomicLong();   // next sequence to claim
+    private volatile long tail;                          // next sequence to consume
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+
+    // spill tier (only for SPILL)
+    private final Path spillDir;
+    private static final String SPILL_GENERATION = "gen-";
+    private final Object spillLock = new Object();
+    private AuditJournal spill;                                 // active journal, guarded by spillLock
+    private long spillActive;                                   // records in spill, guarded by spillLock
+    private int spillGeneration;                                // guarded by spillLock
+    private final List<AuditJournal> retired = new ArrayList<>(); // closed, not replayed yet; guarded by spillLock
+    private long spillRetired;                                  // records in retired + being replayed; guarded by spillLock
+
+    // clock without allocation: wall-clock base + monotonic offset
+    private final long baseEpochNanos;
+    private final long baseNanoTime;
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    public AuditRingBuffer(int capacity, BackpressurePolicy policy, Path spillDir, Sink sink) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity>=2");
+        if (policy == BackpressurePolicy.SPILL && spillDir == null) throw new IllegalArgumentException("SPILL needs a spill directory");
+        int n = Integer.highestOneBit(capacity - 1) << 1;
+        this.capacity = n;
+        this.mask = n - 1;
+        this.policy = policy;
+        this.sink = sink;
+        this.spillDir = spillDir;
+        this.published = new AtomicLongArray(n);
+        for (int i = 0; i < n; i++) published.set(i, -1L);
+        this.timestamps = new long[n];
+        this.amounts = new long[n];
+        this.actions = new String[n];
+        this.froms = new String[n];
+        this.tos = new String[n];
+        this.notes = new String[n];
+
+        Instant now = Instant.now();
+        this.baseEpochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        this.baseNanoTime = System.nanoTime();
+
+        if (policy == BackpressurePolicy.SPILL) {
+            // leftovers from a previous run (any generation) are re-ingested first
+            for (Path dir : leftoverSpills()) {
+                AuditJournal old = new AuditJournal(dir, 65_536, 0);
+                old.close();
+                long[] records = {0};
+                old.replay(e -> records[0]++);
+                if (records[0] == 0) deleteSpill(old, dir);
+                else {
+                    retired.add(old);
+                    spillRetired += records[0];
+                }
+            }
+            this.spill = openSpill();
+        }
+
+        this.consumer = new Thread(this::consumeLoop, "audit-ring-consumer");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    // ------------------------ PRODUCERS -------------------------- //
+
+    /** Returns false if the record was dropped (DROP policy, ring full). */
+    public boolean publish(String action, String from, String to, long amountMinor, String note) {
+        long now = baseEpochNanos + (System.nanoTime() - baseNanoTime);
+        long seq;
+        if (policy == BackpressurePolicy.BLOCK) {
+            seq = head.getAndIncrement();
+            while (seq - tail >= capacity) {
+                if (!running) throw new IllegalStateException("Audit ring closed");
+                LockSupport.parkNanos(1_000);
+            }
+        } else {
+            while (true) {
+                seq = head.get();
+                if (seq - tail >= capacity) {
+                    if (policy == BackpressurePolicy.DROP) {
+                        dropped.increment();
+                        return false;
+                    }
+                    spillRecord(now, action, from, to, amountMinor, note);
+                    return true;
+                }
+                if (head.compareAndSet(seq, seq + 1)) break;
+            }
+        }
+        int i = (int) (seq & mask);
+        timestamps[i] = now;
+        amounts[i] = amountMinor;
+        actions[i] = action;
+        froms[i] = from;
+        tos[i] = to;
+        notes[i] = note;
+        published.lazySet(i, seq); // release: fields above become visible to the consumer
+        return true;
+    }
+
+    private void spillRecord(long epochNanos, String action, String from, String to, long amountMinor, String note) {
+        synchronized (spillLock) {
+            spill.append(toInstant(epochNanos), action, from, to, amountMinor, note);
+            spillActive++;
+        }
+        spilled.increment();
+    }
+
+    // ------------------------ CONSUMER --------------------------- //
+
+    private void consumeLoop() {
+        int idleSpins = 0;
+        while (true) {
+            int n = drainAvailable();
+            if (n > 0) {
+                idleSpins = 0;
+                continue;
+            }
+            if (drainSpill()) continue;
+            if (!running) return; // closed and nothing left to drain
+            // nothing ready: back off progressively
+            if (++idleSpins < 100) Thread.onSpinWait();
+            else LockSupport.parkNanos(50_000);
+        }
+    }
+
+    private int drainAvailable() {
+        int n = 0;
+        long seq = tail;
+        while (true) {
+            int i = (int) (seq & mask);
+            if (published.get(i) != seq) break; // acquire
+            try {
+                sink.accept(timestamps[i], actions[i], froms[i], tos[i], amounts[i], notes[i]);
+            } catch (RuntimeException e) {
+                System.err.println("[AuditRing] sink failed: " + e.getMessage());
+            }
+            actions[i] = froms[i] = tos[i] = notes[i] = null; // let strings be collected
+            seq++;
+            tail = seq; // frees the slot for producers
+            n++;
+        }
+        return n;
+    }
+
+    // re-ingest spilled records once the ring is empty; returns true if anything was drained
+    private boolean drainSpill() {
+        if (policy != BackpressurePolicy.SPILL) return false;
+        List<AuditJournal> replay;
+        long records;
+        synchronized (spillLock) {
+            if (spillActive == 0 && spillRetired == 0) return false;
+            if (spillActive > 0) {
+                // swap only: producers spill into the new generation while the old one is replayed
+                spill.close();
+                retired.add(spill);
+                spillRetired += spillActive;
+                spillActive = 0;
+                spill = openSpill();
+            }
+            replay = new ArrayList<>(retired);
+            retired.clear();
+            records = spillRetired;
+        }
+        for (AuditJournal old : replay) {
+            old.replay(e -> sink.accept(
+                    e.getTimestamp().getEpochSecond() * 1_000_000_000L + e.getTimestamp().getNano(),
+                    e.getAction(), e.getFrom(), e.getTo(), e.getAmountMinor(), e.getNote()));
+            deleteSpill(old, old.getDirectory());
+        }
+        synchronized (spillLock) {
+            spillRetired -= records; // flush() waits until the replay is done
+        }
+        return true;
+    }
+
+    // caller holds spillLock (or is the constructor)
+    private AuditJournal openSpill() {
+        return new AuditJournal(spillDir.resolve(SPILL_GENERATION + (++spillGeneration)), 65_536, 50);
+    }
+
+    // spill journals of a previous run: segments directly in spillDir (older layout) and every generation
+    private List<Path> leftoverSpills() {
+        List<Path> dirs = new ArrayList<>();
+        List<Path> generations = new ArrayList<>();
+        try {
+            Files.createDirectories(spillDir);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(spillDir)) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    if (Files.isDirectory(p) && name.startsWith(SPILL_GENERATION)) {
+                        generations.add(p);
+                        spillGeneration = Math.max(spillGeneration, Integer.parseInt(name.substring(SPILL_GENERATION.length())));
+                    } else if (name.endsWith(".seg")) {
+                        if (dirs.isEmpty()) dirs.add(spillDir);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Cannot read spill directory " + spillDir, e);
+        }
+        generations.sort((a, b) -> Integer.compare(generationOf(a), generationOf(b)));
+        dirs.addAll(generations);
+        return dirs;
+    }
+
+    private static int generationOf(Path dir) {
+        return Integer.parseInt(dir.getFileName().toString().substring(SPILL_GENERATION.length()));
+    }
+
+    private void deleteSpill(AuditJournal journal, Path dir) {
+        journal.deleteSegments();
+        if (dir.equals(spillDir)) return;
+        try {
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete spill generation " + dir, e);
+        }
+    }
+
+    private static Instant toInstant(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L), Math.floorMod(epochNanos, 1_000_000_000L));
+    }
+
+    // ------------------------ CONTROL ---------------------------- //
+
+    /** wait until everything published so far (and any spill) has reached the sink */
+    public void flush() {
+        long target = head.get();
+        while (tail < target || spillPendingNow() > 0) {
+            if (!consumer.isAlive()) return;
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private long spillPendingNow() {
+        if (policy != BackpressurePolicy.SPILL) return 0;
+        synchronized (spillLock) { return spillActive + spillRetired; }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (spill != null) spill.close();
+    }
+
+    public int capacity() { return capacity; }
+    public long size() { return head.get() - tail; }
+    public long droppedCount() { return dropped.sum(); }
+    public long spilledCount() { return spilled.sum(); }
+    public BackpressurePolicy getPolicy() { return policy; }
+}
@@ -1,5 +1,9 @@
 package transactions;
 
+import util.Money;
+
+import java.util.List;
+
 public class AutoApprovalHandler extends TransactionHandler {
     private final double limit;
 
@@ -21,4 +25,17 @@ public class AutoApprovalHandler extends TransactionHandler {
 
         return false;
     }
+
+    @Override
+    protected void handleBatch(List<Transaction> batch, int[] pending, int count, boolean[] approved) {
+        long limitMinor = Money.ofMajor(limit);
+        int escalated = 0;
+        for (int k = 0; k < count; k++) {
+            int i = pending[k];
+            if (batch.get(i).getAmountMinor() <= limitMinor) approved[i] = true;
+            else pending[escalated++] = i;
+        }
+        System.out.println("[AutoApproval] Batch: approved " + (count - escalated) + ", escalating " + escalated);
+        escalateBatch(batch, pending, escalated, approved, false);
+    }
 }
@@ -0,0 +1,36 @@
+package transactions;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** DecisionSink that only counts decisions per code (no I/O, no allocation per decision). */
+public class CountingDecisionSink implements DecisionSink {
+    private static final ApprovalDecision[] CODES = ApprovalDecision.values();
+    private final LongAdder[] counts = new LongAdder[CODES.length];
+
+    public CountingDecisionSink() {
+        for (int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+    }
+
+    @Override
+    public void onDecision(Transaction tx, ApprovalDecision decision) {
+        counts[decision.ordinal()].increment();
+    }
+
+    public long count(ApprovalDecision decision) {
+        return counts[decision.ordinal()].sum();
+    }
+
+    public long total() {
+        long t = 0;
+        for (LongAdder c : counts) t += c.sum();
+        return t;
+    }
+
+    /** one line per non-zero code, e.g. for the admin dashboard */
+    public void print() {
+        for (ApprovalDecision d : CODES) {
+            long c = counts[d.ordinal()].sum();
+            if (c > 0) System.out.println("  " + d + ": " + c);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package transactions;
+
+/**
+ * Receives every ApprovalPipeline decision (logging, metrics, audit...).
+ * Called on the deciding thread: implementations should be cheap and must not block.
+ */
+public interface DecisionSink {
+    DecisionSink NONE = (tx, decision) -> { };
+
+    void onDecision(Transaction tx, ApprovalDecision decision);
+}
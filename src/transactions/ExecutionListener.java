@@ -0,0 +1,10 @@
+package transactions;
+
+/**
+ * Receives every transaction TransactionService executes (aggregates, metrics, feeds...).
+ * Called on the executing thread while the transaction's account locks are held, so one account's
+ * transactions arrive in execution order: implementations should be cheap and must not block.
+ */
+public interface ExecutionListener {
+    void onExecuted(Transaction tx);
+}
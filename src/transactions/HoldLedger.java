@@ -0,0 +1,173 @@
+package transactions;
+
+import accounts.Account;
+import util.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Funds reservations for two-phase operations (external payments).
+ * - place(...) takes the amount out of the account's available balance (Account.holdMinor) under the
+ *   account's lock stripe, so it can never overdraw against a concurrent withdrawal
+ * - every hold is resolved exactly once: commit (money leaves), release (money comes back) or expiry
+ *   (released by the sweeper when nobody resolved it in time); the loser of a race just gets false
+ * - only unresolved holds are tracked: the sweeper walks the in-flight set, not the history
+ * - a hold whose payment may have gone out without an answer (timeout, cancel at the provider) is
+ *   marked for reconciliation: it never expires, only the provider's answer or an operator resolves it
+ * - no compensating deposit/withdraw: a released hold never shows up as a movement on the account
+ */
+public class HoldLedger implements AutoCloseable {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    public enum Status { HELD, COMMITTED, RELEASED, EXPIRED }
+
+    /** one reservation; resolve it with commit() / release() */
+    public static final class Hold {
+        private final long id;
+        private final HoldLedger ledger;
+        private final Account account;
+        private final long amountMinor;
+        private final long expiresAtMillis;
+        private final AtomicReference<Status> status = new AtomicReference<>(Status.HELD);
+        private volatile boolean reconciling;
+
+        private Hold(long id, HoldLedger ledger, Account account, long amountMinor, long expiresAtMillis) {
+            this.id = id;
+            this.ledger = ledger;
+            this.account = account;
+            this.amountMinor = amountMinor;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public long getId() { return id; }
+        public Account getAccount() { return account; }
+        public long getAmountMinor() { return amountMinor; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
+        public Status getStatus() { return status.get(); }
+        /** outcome of its payment unknown: exempt from expiry until committed or released */
+        public boolean isReconciling() { return reconciling; }
+
+        /** false if the hold was already released / expired / committed */
+        public boolean commit() { return ledger.resolve(this, Status.COMMITTED); }
+        public boolean release() { return ledger.resolve(this, Status.RELEASED); }
+
+        /** the payment may have been made: keep the funds until commit() / release(); false if already resolved */
+        public boolean keepForReconciliation() {
+            reconciling = true;
+            return status.get() == Status.HELD;
+        }
+
+        @Override
+        public String toString() {
+            return "hold#" + id + " " + Money.format(amountMinor) + " on " + account.getId() + " [" + status.get()
+                    + (reconciling && status.get() == Status.HELD ? ", reconciling" : "") + "]";
+        }
+    }
+
+    private final AccountLockStripes locks;
+    private final long defaultTtlMillis;
+    private final Map<Long, Hold> active = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+    // metrics
+    private final LongAdder heldMinor = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public HoldLedger(AccountLockStripes locks) {
+        this(locks, DEFAULT_TTL_MILLIS, 1_000);
+    }
+
+    /** sweepMillis <= 0: no sweeper thread, call expireDue(...) yourself */
+    public HoldLedger(AccountLockStripes locks, long defaultTtlMillis, long sweepMillis) {
+        if (defaultTtlMillis <= 0) throw new IllegalArgumentException("ttl>0");
+        this.locks = locks;
+        this.defaultTtlMillis = defaultTtlMillis;
+        if (sweepMillis > 0) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "hold-expiry");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(() -> expireDue(System.currentTimeMillis()), sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    public Hold place(Account account, double amount) {
+        return place(account, Money.ofMajor(amount), defaultTtlMillis);
+    }
+
+    /** reserve amountMinor on account; throws IllegalStateException if it cannot send or lacks the funds */
+    public Hold place(Account account, long amountMinor, long ttlMillis) {
+        if (account == null) throw new IllegalArgumentException("No account to hold funds on");
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount>0");
+        boolean ok = locks == null ? tryHold(account, amountMinor) : locks.withLocks(account, null, () -> tryHold(account, amountMinor));
+        if (!ok) throw new IllegalStateException("Insufficient funds to hold " + Money.format(amountMinor) + " on " + account.getId());
+        Hold h = new Hold(ids.incrementAndGet(), this, account, amountMinor, System.currentTimeMillis() + ttlMillis);
+        active.put(h.id, h);
+        heldMinor.add(amountMinor);
+        return h;
+    }
+
+    private static boolean tryHold(Account account, long amountMinor) {
+        if (!account.getStatus().canBeSource()) {
+            throw new IllegalStateException("Account " + account.getId() + " cannot send (" + account.getStatusName() + ")");
+        }
+        return account.holdMinor(amountMinor);
+    }
+
+    private boolean resolve(Hold h, Status to) {
+        if (!h.status.compareAndSet(Status.HELD, to)) return false;
+        active.remove(h.id);
+        heldMinor.add(-h.amountMinor);
+        if (to == Status.COMMITTED) {
+            h.account.commitHoldMinor(h.amountMinor);
+            committed.increment();
+        } else {
+            h.account.releaseHoldMinor(h.amountMinor);
+            (to == Status.EXPIRED ? expired : released).increment();
+        }
+        return true;
+    }
+
+    /** release every hold whose deadline has passed, except those kept for reconciliation; returns how many expired */
+    public int expireDue(long nowMillis) {
+        int n = 0;
+        for (Hold h : active.values()) {
+            if (h.expiresAtMillis <= nowMillis && !h.reconciling && resolve(h, Status.EXPIRED)) n++;
+        }
+        return n;
+    }
+
+    /** unresolved holds kept for reconciliation (payments whose outcome is unknown) */
+    public List<Hold> reconciling() {
+        List<Hold> out = new ArrayList<>();
+        for (Hold h : active.values()) if (h.reconciling) out.add(h);
+        return out;
+    }
+
+    public Hold get(long id) { return active.get(id); }
+    public int activeCount() { return active.size(); }
+    public long heldMinor() { return heldMinor.sum(); }
+    public long committedCount() { return committed.sum(); }
+    public long releasedCount() { return released.sum(); }
+    public long expiredCount() { return expired.sum(); }
+
+    @Override
+    public void close() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+}
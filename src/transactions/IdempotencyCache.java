@@ -0,0 +1,253 @@
+package transactions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedup cache for Transaction idempotency keys: a repeated request gets the first one's outcome
+ * instead of running again.
+ * - claim(key) is one ConcurrentHashMap putIfAbsent: the first caller owns the key and executes,
+ *   every later caller (while it runs or after) gets a replay handle on the same outcome
+ * - bounded and time-evicted: an outcome is kept ttlMillis after it was recorded and at most
+ *   maxEntries keys are kept; keys are evicted oldest first from an insertion-order queue, a few
+ *   per claim (a key still executing is never evicted but moved to the back of the queue, so the
+ *   keys recorded behind it keep expiring; the bound is soft while keys run)
+ * - optional disk tier: recorded outcomes are appended to a text log ("key TAB outcome TAB millis")
+ *   that is replayed on open, so keys survive a restart; the log is rewritten with the live keys
+ *   once it holds twice as many lines
+ */
+public class IdempotencyCache implements AutoCloseable {
+    public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int EVICT_PER_CLAIM = 8;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Path log;              // null: memory only
+    private BufferedWriter writer;       // guarded by this
+    private int logLines;                // guarded by this
+
+    // metrics
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final String key;
+        final CompletableFuture<TransactionOutcome> outcome = new CompletableFuture<>();
+        volatile long recordedAt; // 0 while the owner is still executing
+
+        Entry(String key) { this.key = key; }
+
+        boolean expired(long now, long ttl) {
+            long at = recordedAt;
+            return at != 0 && now - at >= ttl;
+        }
+    }
+
+    /** result of claim(...): either this caller owns the key, or it replays the owner's outcome */
+    public final class Claim {
+        private final Entry entry;
+        private final boolean replay;
+
+        private Claim(Entry entry, boolean replay) {
+            this.entry = entry;
+            this.replay = replay;
+        }
+
+        public boolean isReplay() { return replay; }
+        public String getKey() { return entry.key; }
+
+        /** the original outcome; for a replay it may still be running */
+        public CompletableFuture<TransactionOutcome> outcome() { return entry.outcome; }
+
+        /** owner only: store the outcome every replay of this key will get */
+        public void complete(TransactionOutcome outcome) {
+            if (replay) throw new IllegalStateException("Replay of " + entry.key + " cannot record an outcome");
+            record(entry, outcome, System.currentTimeMillis(), true);
+        }
+
+        /** owner only: nothing happened (e.g. the request failed before running); the key may be used again */
+        public void abandon(Throwable cause) {
+            if (replay) return;
+            entries.remove(entry.key, entry);
+            entry.recordedAt = 1; // evictable right away
+            entry.outcome.completeExceptionally(cause);
+        }
+    }
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, null);
+    }
+
+    /** log != null: outcomes also go to that file and are reloaded from it */
+    public IdempotencyCache(int maxEntries, long ttlMillis, Path log) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries>0");
+        if (ttlMillis <= 0) throw new IllegalArgumentException("ttl>0");
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.log = log;
+        if (log != null) load();
+    }
+
+    public Claim claim(String key) {
+        Transaction.checkIdempotencyKey(key);
+        long now = System.currentTimeMillis();
+        evict(now);
+        claims.increment();
+        for (;;) {
+            Entry mine = new Entry(key);
+            Entry prev = entries.putIfAbsent(key, mine);
+            if (prev == null) {
+                order.add(mine);
+                queued.incrementAndGet();
+                return new Claim(mine, false);
+            }
+            if (!prev.expired(now, ttlMillis)) {
+                replays.increment();
+                return new Claim(prev, true);
+            }
+            entries.remove(key, prev); // expired but not evicted yet: take over
+        }
+    }
+
+    /** the recorded or running outcome of key, null if unknown; does not claim */
+    public CompletableFuture<TransactionOutcome> lookup(String key) {
+        Entry e = entries.get(key);
+        return e == null || e.expired(System.currentTimeMillis(), ttlMillis) ? null : e.outcome;
+    }
+
+    private void record(Entry e, TransactionOutcome outcome, long at, boolean persist) {
+        e.recordedAt = at;
+        if (persist && log != null) append(e.key, outcome, at);
+        e.outcome.complete(outcome);
+    }
+
+    // drop expired keys and the oldest ones over maxEntries; a key still running goes to the back
+    private void evict(long now) {
+        for (int i = 0; i < EVICT_PER_CLAIM; i++) {
+            Entry head = order.peek();
+            if (head == null) return;
+            if (head.recordedAt == 0) {
+                if (order.remove(head)) order.add(head);
+                continue;
+            }
+            if (!head.expired(now, ttlMillis) && queued.get() <= maxEntries) return;
+            if (order.remove(head)) {
+                queued.decrementAndGet();
+                if (entries.remove(head.key, head)) evictions.increment();
+            }
+        }
+    }
+
+    // ------------------------ DISK ---------------------------- //
+
+    private void load() {
+        Map<String, String[]> live = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        if (Files.exists(log)) {
+            try (BufferedReader r = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    String[] f = line.split("\t");
+                    if (f.length != 3) continue; // torn last line
+                    try {
+                        if (now - Long.parseLong(f[2]) >= ttlMillis) continue;
+                        TransactionOutcome.valueOf(f[1]);
+                    } catch (IllegalArgumentException bad) {
+                        continue;
+                    }
+                    live.remove(f[0]); // keep file order = recording order
+                    live.put(f[0], f);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read idempotency log " + log, e);
+            }
+        }
+        int skip = Math.max(0, live.size() - maxEntries);
+        for (String[] f : live.values()) {
+            if (skip-- > 0) continue;
+            Entry e = new Entry(f[0]);
+            record(e, TransactionOutcome.valueOf(f[1]), Long.parseLong(f[2]), false);
+            entries.put(e.key, e);
+            order.add(e);
+            queued.incrementAndGet();
+        }
+        synchronized (this) {
+            rewrite();
+        }
+    }
+
+    private synchronized void append(String key, TransactionOutcome outcome, long at) {
+        if (writer == null) return; // closed
+        try {
+            if (logLines >= 2 * maxEntries) rewrite();
+            writer.write(key + '\t' + outcome.name() + '\t' + at + '\n');
+            writer.flush(); // into the OS: survives a process crash, not a power cut
+            logLines++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write idempotency log " + log, e);
+        }
+    }
+
+    // caller holds this: replace the log with the recorded keys still cached (temp file + atomic rename)
+    private void rewrite() {
+        try {
+            if (writer != null) writer.close();
+            Path tmp = log.resolveSibling(log.getFileName() + ".tmp");
+            if (log.getParent() != null) Files.createDirectories(log.getParent());
+            List<String> lines = new ArrayList<>(Math.min(queued.get(), maxEntries));
+            for (Entry e : order) {
+                long at = e.recordedAt;
+                if (at != 0 && e.outcome.isDone() && !e.outcome.isCompletedExceptionally()) {
+                    lines.add(e.key + '\t' + e.outcome.join().name() + '\t' + at);
+                }
+            }
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logLines = lines.size();
+            writer = Files.newBufferedWriter(log, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot rewrite idempotency log " + log, e);
+        }
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    public int size() { return entries.size(); }
+    public long claimCount() { return claims.sum(); }
+    public long replayCount() { return replays.sum(); }
+    public long evictionCount() { return evictions.sum(); }
+    public Path getLog() { return log; }
+
+    @Override
+    public synchronized void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close idempotency log " + log, e);
+        } finally {
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package transactions;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Double-entry ledger: every executed money movement is appended as an immutable entry that debits
+ * one account and credits another by the same amount; balances are a projection of that log.
+ * - entries are fixed 32-byte records in memory-mapped segment files (ledger-00000001.seg, ...), so
+ *   entry n sits at a known offset and a replay can start anywhere
+ * - account ids are interned to int codes; the dictionary (accounts.dict, one "id TAB type TAB owner"
+ *   line per code) is written before the first entry that uses a code; later changes to an account
+ *   (status, loan rate, ...) are appended as "=id TAB key TAB value" lines, the last one per key wins
+ * - balances: a long[] of minor units by code, updated on every post; the sum over all accounts,
+ *   control accounts included, is always 0 (trialBalance())
+ * - snapshots: the balances and the number of entries they cover go to snapshot.bin (temp file +
+ *   atomic rename) every snapshotEvery entries and on close; opening loads the snapshot and replays
+ *   only the entries after it
+ * - group commit like AuditJournal: a background thread forces the dictionary and the active segment
+ *   every flushIntervalMillis (0 = force on every post)
+ * - money entering or leaving the bank goes through control accounts: @cash (deposits, withdrawals),
+ *   @external (payments to other banks), @equity (opening balances)
+ *
+ * Entry layout (big-endian):
+ *   int magic | int debitCode | int creditCode | byte kind | 3 pad | long amountMinor | long epochMillis
+ */
+public class Ledger implements AutoCloseable {
+    public static final int RECORD_SIZE = 32;
+    public static final String CASH = "@cash", EXTERNAL = "@external", EQUITY = "@equity";
+    private static final int MAGIC = 0x4C444731;          // "LDG1"
+    private static final int SNAPSHOT_MAGIC = 0x4C445331; // "LDS1"
+    private static final int SNAPSHOT_HEADER = 4 + 8 + 4;
+    private static final int OFF_DEBIT = 4, OFF_CREDIT = 8, OFF_KIND = 12, OFF_AMOUNT = 16, OFF_TIME = 24;
+    private static final int SNAPSHOT_CHUNK = 8192;       // longs per write/read of the snapshot
+
+    public enum Kind { OPENING, DEPOSIT, WITHDRAW, TRANSFER, EXTERNAL }
+
+    /** a customer account known to the ledger, as needed to rebuild it on startup */
+    public static final class AccountInfo {
+        private final String id;
+        private final String type;
+        private final String owner;
+        private final long balanceMinor;
+        private final Map<String, String> attributes;
+
+        AccountInfo(String id, String type, String owner, long balanceMinor, Map<String, String> attributes) {
+            this.id = id;
+            this.type = type;
+            this.owner = owner;
+            this.balanceMinor = balanceMinor;
+            this.attributes = attributes == null ? Map.of() : Map.copyOf(attributes);
+        }
+
+        public String getId() { return id; }
+        /** as given to openAccount(...), e.g. "SavingsAccount" */
+        public String getType() { return type; }
+        public String getOwner() { return owner; }
+        public long getBalanceMinor() { return balanceMinor; }
+        /** latest value given to updateAccount(id, key, ...), null if never set */
+        public String getAttribute(String key) { return attributes.get(key); }
+    }
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final long flushIntervalMillis;
+    private final long snapshotEvery;
+    private final ScheduledExecutorService flusher;
+
+    // dictionary: code -> id / type / owner / attributes (null until the first update), id -> code
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<String> types = new ArrayList<>();
+    private final List<String> owners = new ArrayList<>();
+    private final List<Map<String, String>> attributes = new ArrayList<>();
+    private FileChannel dict;
+    private long[] balances = new long[64];
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private int slot;                 // next free slot in the active segment
+    private long entries;             // entries in the log = sequence number of the next one
+    private boolean dirty;
+    private boolean closed;
+
+    private final Object snapshotLock = new Object();
+    private volatile long snapshotEntries = -1; // entries covered by the newest snapshot, -1 = none
+
+    // metrics of the last open
+    private final long replayed;
+    private final long recoveryMillis;
+
+    public Ledger(Path dir) {
+        this(dir, 1 << 20, 50, 1_000_000);
+    }
+
+    public Ledger(Path dir, int segmentRecords, long flushIntervalMillis, long snapshotEvery) {
+        if (segmentRecords <= 0) throw new IllegalArgumentException("segmentRecords>0");
+        if (snapshotEvery <= 0) throw new IllegalArgumentException("snapshotEvery>0");
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.snapshotEvery = snapshotEvery;
+        long t0 = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            loadDictionary();
+            loadSnapshot();
+            long from = entries;
+            replayTail();
+            replayed = entries - from;
+            openSegment((int) (entries / segmentRecords) + 1, (int) (entries % segmentRecords));
+            for (String control : new String[]{CASH, EXTERNAL, EQUITY}) code(control, "", "");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open ledger in " + dir, e);
+        }
+        recoveryMillis = (System.nanoTime() - t0) / 1_000_000;
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ledger-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::background, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    // ------------------------ POSTING ---------------------------- //
+
+    /** entry for an executed transaction: deposits come from @cash, withdrawals go to it */
+    public long post(Transaction tx) {
+        switch (tx.getType()) {
+            case DEPOSIT: return post(CASH, tx.getTo().getId(), tx.getAmountMinor(), Kind.DEPOSIT);
+            case WITHDRAW: return post(tx.getFrom().getId(), CASH, tx.getAmountMinor(), Kind.WITHDRAW);
+            default: return post(tx.getFrom().getId(), tx.getTo().getId(), tx.getAmountMinor(), Kind.TRANSFER);
+        }
+    }
+
+    /** money leaves debitId and reaches creditId; returns the entry's sequence number */
+    public long post(String debitId, String creditId, long amountMinor, Kind kind) {
+        long n = append(debitId, creditId, amountMinor, kind);
+        if (flusher == null && snapshotDue(n + 1)) snapshot();
+        return n;
+    }
+
+    private synchronized long append(String debitId, String creditId, long amountMinor, Kind kind) {
+        if (closed) throw new IllegalStateException("Ledger closed");
+        if (amountMinor <= 0) throw new IllegalArgumentException("Ledger amount must be > 0: " + amountMinor);
+        if (debitId.equals(creditId)) throw new IllegalArgumentException("Debit and credit are the same account: " + debitId);
+        int debit = code(debitId, "", ""), credit = code(creditId, "", "");
+        if (slot >= segmentRecords) roll();
+        int base = slot * RECORD_SIZE;
+        segment.putInt(base + OFF_DEBIT, debit);
+        segment.putInt(base + OFF_CREDIT, credit);
+        segment.put(base + OFF_KIND, (byte) kind.ordinal());
+        segment.putLong(base + OFF_AMOUNT, amountMinor);
+        segment.putLong(base + OFF_TIME, System.currentTimeMillis());
+        // magic last: a torn entry (crash mid-write) is never replayed
+        segment.putInt(base, MAGIC);
+        balances[debit] -= amountMinor;
+        balances[credit] += amountMinor;
+        slot++;
+        dirty = true;
+        if (flushIntervalMillis <= 0) forceLocked();
+        return entries++;
+    }
+
+    /**
+     * Register a customer account and post its opening balance against @equity.
+     * An id the ledger already knows is rejected: its balance is restored from accounts() instead.
+     */
+    public synchronized void openAccount(String id, String type, String owner, long openingMinor) {
+        if (closed) throw new IllegalStateException("Ledger closed");
+        if (codes.containsKey(id)) throw new IllegalArgumentException("Account already in the ledger: " + id);
+        code(id, type == null ? "" : type, owner == null ? "" : owner);
+        if (openingMinor > 0) append(EQUITY, id, openingMinor, Kind.OPENING);
+        else if (openingMinor < 0) append(id, EQUITY, -openingMinor, Kind.OPENING);
+    }
+
+    /**
+     * Record a change to a customer account (e.g. "status" -> "FROZEN") so accounts() hands it back
+     * after a restart. Appended to the dictionary and forced with the next group commit.
+     */
+    public synchronized void updateAccount(String id, String key, String value) {
+        if (closed) throw new IllegalStateException("Ledger closed");
+        Integer c = codes.get(id);
+        if (c == null || types.get(c).isEmpty()) throw new IllegalArgumentException("Account not in the ledger: " + id);
+        String line = "=" + clean(id) + '\t' + clean(key) + '\t' + clean(value) + '\n';
+        try {
+            ByteBuffer b = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (b.hasRemaining()) dict.write(b);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write ledger dictionary " + dir, e);
+        }
+        putAttribute(c, clean(key), clean(value));
+        dirty = true;
+        if (flushIntervalMillis <= 0) forceLocked();
+    }
+
+    /** latest value recorded by updateAccount(id, key, ...), null if none */
+    public synchronized String attribute(String id, String key) {
+        Integer c = codes.get(id);
+        Map<String, String> m = c == null ? null : attributes.get(c);
+        return m == null ? null : m.get(key);
+    }
+
+    private void putAttribute(int code, String key, String value) {
+        Map<String, String> m = attributes.get(code);
+        if (m == null) attributes.set(code, m = new HashMap<>());
+        m.put(key, value);
+    }
+
+    // caller holds this: code of id, appending it to the dictionary when new
+    private int code(String id, String type, String owner) {
+        Integer c = codes.get(id);
+        if (c != null) return c;
+        int code = ids.size();
+        String line = clean(id) + '\t' + clean(type) + '\t' + clean(owner) + '\n';
+        try {
+            ByteBuffer b = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (b.hasRemaining()) dict.write(b);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write ledger dictionary " + dir, e);
+        }
+        remember(id, type, owner);
+        return code;
+    }
+
+    private void remember(String id, String type, String owner) {
+        int code = ids.size();
+        codes.put(id, code);
+        ids.add(id);
+        types.add(type);
+        owners.add(owner);
+        attributes.add(null);
+        if (code == balances.length) balances = Arrays.copyOf(balances, code * 2);
+    }
+
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private void roll() {
+        try {
+            segment.force();
+            channel.close();
+            openSegment(segmentIndex + 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot roll ledger segment", e);
+        }
+    }
+
+    // ------------------------ PROJECTION ---------------------------- //
+
+    public synchronized long balanceMinor(String id) {
+        Integer c = codes.get(id);
+        return c == null ? 0 : balances[c];
+    }
+
+    public synchronized boolean knows(String id) {
+        return codes.containsKey(id);
+    }
+
+    /** customer accounts registered through openAccount(...), dictionary order, with their balances */
+    public synchronized List<AccountInfo> accounts() {
+        List<AccountInfo> out = new ArrayList<>();
+        for (int c = 0; c < ids.size(); c++) {
+            if (types.get(c).isEmpty()) continue;
+            out.add(new AccountInfo(ids.get(c), types.get(c), owners.get(c), balances[c], attributes.get(c)));
+        }
+        return out;
+    }
+
+    /** sum of every balance, control accounts included: 0 unless the log is damaged */
+    public synchronized long trialBalance() {
+        long sum = 0;
+        for (int c = 0; c < ids.size(); c++) sum += balances[c];
+        return sum;
+    }
+
+    /** one entry of the log, as passed to forEachSince(...) */
+    public interface EntryVisitor {
+        void entry(String debitId, String creditId, Kind kind, long amountMinor, long epochMillis);
+    }
+
+    /**
+     * Entries posted at or after sinceMillis, oldest first (e.g. to rebuild a rolling window on startup).
+     * Segments are skipped whole while the next one starts before sinceMillis, so the cost is the
+     * entries of the window plus one segment. Runs under the ledger lock: posts wait until it returns.
+     */
+    public synchronized long forEachSince(long sinceMillis, EntryVisitor visitor) {
+        if (closed) throw new IllegalStateException("Ledger closed");
+        int first = segmentIndex;
+        while (first > 1 && firstTime(first) >= sinceMillis) first--;
+        long visited = 0;
+        Kind[] kinds = Kind.values();
+        for (int index = first; index <= segmentIndex; index++) {
+            ByteBuffer buf = read(index);
+            int records = index == segmentIndex ? slot : Math.min(segmentRecords, buf.capacity() / RECORD_SIZE);
+            for (int s = 0; s < records; s++) {
+                int base = s * RECORD_SIZE;
+                if (buf.getInt(base) != MAGIC) break;
+                long at = buf.getLong(base + OFF_TIME);
+                if (at < sinceMillis) continue;
+                visitor.entry(ids.get(buf.getInt(base + OFF_DEBIT)), ids.get(buf.getInt(base + OFF_CREDIT)),
+                        kinds[buf.get(base + OFF_KIND)], buf.getLong(base + OFF_AMOUNT), at);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    // caller holds this: time of the segment's first entry, Long.MAX_VALUE if it has none
+    private long firstTime(int index) {
+        ByteBuffer buf = read(index);
+        return buf.capacity() >= RECORD_SIZE && buf.getInt(0) == MAGIC ? buf.getLong(OFF_TIME) : Long.MAX_VALUE;
+    }
+
+    // caller holds this: the active segment, or an older one mapped read-only
+    private ByteBuffer read(int index) {
+        if (index == segmentIndex) return segment;
+        Path p = segmentFile(index);
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read ledger segment " + p, e);
+        }
+    }
+
+    // ------------------------ DURABILITY ---------------------------- //
+
+    private void background() {
+        try {
+            flush();
+            if (snapshotDue(entries())) snapshot();
+        } catch (RuntimeException e) {
+            System.err.println("[Ledger] background flush failed: " + e.getMessage());
+        }
+    }
+
+    /** group commit: force the dictionary and the active segment if anything was written since the last flush */
+    public synchronized void flush() {
+        if (closed || !dirty) return;
+        forceLocked();
+    }
+
+    private void forceLocked() {
+        try {
+            dict.force(false); // codes before the entries that use them
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot force ledger dictionary " + dir, e);
+        }
+        segment.force();
+        dirty = false;
+    }
+
+    private boolean snapshotDue(long entriesNow) {
+        return entriesNow - Math.max(0, snapshotEntries) >= snapshotEvery;
+    }
+
+    /**
+     * Write the current balances as the new snapshot (covering every entry so far). The copy is taken
+     * under the ledger lock, the file is written outside it.
+     */
+    public void snapshot() {
+        long covered;
+        long[] copy;
+        synchronized (this) {
+            if (closed || entries == snapshotEntries) return;
+            forceLocked(); // never snapshot entries that are not durable yet
+            covered = entries;
+            copy = Arrays.copyOf(balances, ids.size());
+        }
+        writeSnapshot(covered, copy);
+    }
+
+    private void writeSnapshot(long covered, long[] copy) {
+        synchronized (snapshotLock) {
+            if (covered <= snapshotEntries) return; // a newer one got there first
+            Path file = dir.resolve("snapshot.bin");
+            Path tmp = dir.resolve("snapshot.bin.tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer b = ByteBuffer.allocate(SNAPSHOT_HEADER + 8 * Math.min(copy.length, SNAPSHOT_CHUNK));
+                b.putInt(SNAPSHOT_MAGIC).putLong(covered).putInt(copy.length);
+                int i = 0;
+                do {
+                    while (i < copy.length && b.remaining() >= 8) b.putLong(copy[i++]);
+                    b.flip();
+                    while (b.hasRemaining()) ch.write(b);
+                    b.clear();
+                } while (i < copy.length);
+                ch.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write ledger snapshot " + tmp, e);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot install ledger snapshot " + file, e);
+            }
+            snapshotEntries = covered;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+        }
+        if (flusher != null) flusher.shutdown();
+        snapshot();
+        synchronized (this) {
+            if (closed) return;
+            try {
+                forceLocked();
+                channel.close();
+                dict.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                closed = true;
+            }
+        }
+    }
+
+    // ------------------------ RECOVERY ---------------------------- //
+
+    private void loadDictionary() throws IOException {
+        Path file = dir.resolve("accounts.dict");
+        dict = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = dict.size();
+        // a torn last line (crash mid-append) is dropped: no durable entry can use its code
+        long end = size;
+        ByteBuffer one = ByteBuffer.allocate(1);
+        while (end > 0) {
+            one.clear();
+            dict.read(one, end - 1);
+            if (one.get(0) == '\n') break;
+            end--;
+        }
+        if (end < size) dict.truncate(end);
+        dict.position(end);
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (line.startsWith("=")) {
+                    // account ids never start with '=': an update line for a code above
+                    Integer c = codes.get(f[0].substring(1));
+                    if (c != null && f.length > 2) putAttribute(c, f[1], f[2]);
+                    continue;
+                }
+                remember(f[0], f.length > 1 ? f[1] : "", f.length > 2 ? f[2] : "");
+            }
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        Path file = dir.resolve("snapshot.bin");
+        if (!Files.exists(file)) return;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(SNAPSHOT_HEADER);
+            while (head.hasRemaining() && ch.read(head) >= 0) { }
+            head.flip();
+            if (head.remaining() < SNAPSHOT_HEADER || head.getInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalStateException("Not a ledger snapshot: " + file);
+            }
+            long covered = head.getLong();
+            int count = head.getInt();
+            if (count > ids.size() || ch.size() != SNAPSHOT_HEADER + 8L * count) {
+                throw new IllegalStateException("Ledger snapshot does not match the dictionary: " + file);
+            }
+            ByteBuffer b = ByteBuffer.allocate(8 * Math.max(1, Math.min(count, SNAPSHOT_CHUNK)));
+            for (int i = 0; i < count; ) {
+                b.clear();
+                b.limit(8 * Math.min(count - i, SNAPSHOT_CHUNK));
+                while (b.hasRemaining() && ch.read(b) >= 0) { }
+                b.flip();
+                while (b.remaining() >= 8) balances[i++] = b.getLong();
+            }
+            entries = covered;
+            snapshotEntries = covered;
+        }
+    }
+
+    // apply every entry after the snapshot; stops at the first slot without magic (end of the log)
+    // or at an entry whose account code did not reach the dictionary
+    private void replayTail() throws IOException {
+        int known = ids.size();
+        long[] bal = balances;
+        for (int index = (int) (entries / segmentRecords) + 1; ; index++) {
+            Path p = segmentFile(index);
+            if (!Files.exists(p)) return;
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                int records = (int) Math.min(segmentRecords, ch.size() / RECORD_SIZE);
+                for (int s = (int) (entries % segmentRecords); s < records; s++) {
+                    int base = s * RECORD_SIZE;
+                    if (buf.getInt(base) != MAGIC) return;
+                    int debit = buf.getInt(base + OFF_DEBIT), credit = buf.getInt(base + OFF_CREDIT);
+                    if (debit < 0 || debit >= known || credit < 0 || credit >= known) return;
+                    long amount = buf.getLong(base + OFF_AMOUNT);
+                    bal[debit] -= amount;
+                    bal[credit] += amount;
+                    entries++;
+                }
+                if (records < segmentRecords) return;
+            }
+        }
+    }
+
+    private void openSegment(int index, int startSlot) throws IOException {
+        channel = FileChannel.open(segmentFile(index), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        segmentIndex = index;
+        slot = startSlot;
+        // whatever follows the replayed end (entries cut off by a lost dictionary line) is discarded,
+        // so it cannot come back under codes that are handed out again
+        for (int s = startSlot; s < segmentRecords && segment.getInt(s * RECORD_SIZE) == MAGIC; s++) {
+            segment.putInt(s * RECORD_SIZE, 0);
+        }
+        for (Path p : segments()) {
+            if (indexOf(p) > index) Files.delete(p);
+        }
+    }
+
+    private Path segmentFile(int index) {
+        return dir.resolve(String.format("ledger-%08d.seg", index));
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            s.filter(p -> p.getFileName().toString().matches("ledger-\\d{8}\\.seg")).sorted().forEach(out::add);
+        }
+        return out;
+    }
+
+    private static int indexOf(Path segmentFile) {
+        return Integer.parseInt(segmentFile.getFileName().toString().substring(7, 15));
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    public synchronized long entries() { return entries; }
+    public synchronized int accountCount() { return ids.size(); }
+    /** entries covered by the newest snapshot, -1 if there is none yet */
+    public long snapshotEntries() { return snapshotEntries; }
+    /** entries replayed from the log when this ledger was opened (the ones after the snapshot) */
+    public long replayedOnOpen() { return replayed; }
+    public long recoveryMillis() { return recoveryMillis; }
+    public Path getDirectory() { return dir; }
+}
@@ -1,5 +1,9 @@
 package transactions;
 
+import util.Money;
+
+import java.util.List;
+
 public class ManagerApprovalHandler extends TransactionHandler {
     private final double limit;
 
@@ -16,4 +20,17 @@ public class ManagerApprovalHandler extends TransactionHandler {
         }
         return false;
     }
+
+    @Override
+    protected void handleBatch(List<Transaction> batch, int[] pending, int count, boolean[] approved) {
+        long limitMinor = Money.ofMajor(limit);
+        int escalated = 0;
+        for (int k = 0; k < count; k++) {
+            int i = pending[k];
+            if (batch.get(i).getAmountMinor() <= limitMinor) approved[i] = true;
+            else pending[escalated++] = i;
+        }
+        System.out.println("[ManagerApproval] Batch: manager approved " + (count - escalated) + ", escalating " + escalated);
+        escalateBatch(batch, pending, escalated, approved, false);
+    }
 }
@@ -0,0 +1,66 @@
+package transactions;
+
+import util.Money;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle returned by TransactionService.submit(...).
+ * - transactions decided inline come back already completed (id 0)
+ * - escalated ones stay PENDING in the PendingApprovalQueue (funds held) until a manager
+ *   approves or rejects them; getResult() completes then, nobody blocks meanwhile
+ */
+public class PendingApproval {
+    public enum Status { PENDING, EXECUTED, REJECTED, FAILED }
+
+    private final long id;
+    private final Transaction transaction;
+    private final Instant createdAt;
+    private final boolean held;      // true if the source's funds were reserved when parked
+    private volatile Status status;
+    private final CompletableFuture<TransactionOutcome> result = new CompletableFuture<>();
+
+    PendingApproval(long id, Transaction transaction, boolean held) {
+        this.id = id;
+        this.transaction = transaction;
+        this.createdAt = Instant.now();
+        this.held = held;
+        this.status = Status.PENDING;
+    }
+
+    /** handle of a transaction that was decided right away */
+    public static PendingApproval completed(Transaction tx, TransactionOutcome outcome) {
+        PendingApproval p = new PendingApproval(0, tx, false);
+        p.complete(outcome);
+        return p;
+    }
+
+    void complete(TransactionOutcome outcome) {
+        switch (outcome) {
+            case EXECUTED: status = Status.EXECUTED; break;
+            case REJECTED: status = Status.REJECTED; break;
+            case FAILED: status = Status.FAILED; break;
+            default: return; // still pending
+        }
+        result.complete(outcome);
+    }
+
+    public long getId() { return id; }
+    public Transaction getTransaction() { return transaction; }
+    public Instant getCreatedAt() { return createdAt; }
+    public boolean isHeld() { return held; }
+    public Status getStatus() { return status; }
+    public boolean isPending() { return status == Status.PENDING; }
+    /** completes with EXECUTED / REJECTED / FAILED once decided */
+    public CompletableFuture<TransactionOutcome> getResult() { return result; }
+
+    @Override
+    public String toString() {
+        Transaction tx = transaction;
+        return "#" + id + " " + tx.getType() + " " + Money.format(tx.getAmountMinor())
+                + (tx.getFrom() != null ? " from " + tx.getFrom().getId() : "")
+                + (tx.getTo() != null ? " to " + tx.getTo().getId() : "")
+                + " [" + status + "]";
+    }
+}
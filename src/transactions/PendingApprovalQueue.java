@@ -0,0 +1,80 @@
+package transactions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Transactions waiting for a manager's decision (ApprovalDecision.PENDING_MANAGER).
+ * - insertion-ordered map by id: park / take by id are O(1), listing pages walk in arrival order
+ * - the queue only stores handles; holding funds, executing and auditing is TransactionService's job
+ * - take(...) / takeAll() remove under the queue lock, so two admins can never decide the same item
+ * - the lock is held for map operations only, never while accounts are touched
+ */
+public class PendingApprovalQueue {
+    private static final int INITIAL_CAPACITY = 1 << 17; // ~100k pending without rehashing
+
+    private final LinkedHashMap<Long, PendingApproval> pending = new LinkedHashMap<>(INITIAL_CAPACITY);
+    private long lastId;
+    private long heldMinor; // total reserved by parked items
+
+    synchronized PendingApproval park(Transaction tx, boolean held) {
+        PendingApproval p = new PendingApproval(++lastId, tx, held);
+        pending.put(p.getId(), p);
+        if (held) heldMinor += tx.getAmountMinor();
+        return p;
+    }
+
+    /** remove the given ids (unknown or already decided ids are ignored) */
+    synchronized List<PendingApproval> take(Collection<Long> idsToTake) {
+        List<PendingApproval> out = new ArrayList<>(idsToTake.size());
+        for (Long id : idsToTake) {
+            PendingApproval p = pending.remove(id);
+            if (p != null) {
+                unhold(p);
+                out.add(p);
+            }
+        }
+        return out;
+    }
+
+    /** remove everything (arrival order) */
+    synchronized List<PendingApproval> takeAll() {
+        List<PendingApproval> out = new ArrayList<>(pending.values());
+        pending.clear();
+        heldMinor = 0;
+        return out;
+    }
+
+    private void unhold(PendingApproval p) {
+        if (p.isHeld()) heldMinor -= p.getTransaction().getAmountMinor();
+    }
+
+    public synchronized PendingApproval get(long id) {
+        return pending.get(id);
+    }
+
+    /** one page in arrival order */
+    public synchronized List<PendingApproval> list(int offset, int limit) {
+        List<PendingApproval> out = new ArrayList<>(Math.max(0, Math.min(limit, pending.size() - offset)));
+        Iterator<PendingApproval> it = pending.values().iterator();
+        for (int i = 0; i < offset && it.hasNext(); i++) it.next();
+        while (it.hasNext() && out.size() < limit) out.add(it.next());
+        return out;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /** total amount (cents) currently reserved by pending items */
+    public synchronized long heldMinor() {
+        return heldMinor;
+    }
+}
@@ -0,0 +1,135 @@
+package transactions;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per recurring transaction skip cooldowns (avoid audit/notification spam).
+ * - keyed by RecurringTransaction.getId(); one small state per rtx: a bitset of the reasons
+ *   currently in cooldown + the time each was last logged
+ * - clear(id) after a successful run is O(1): the bitset is reset, nothing is scanned
+ * - save/load: compact binary file so cooldowns survive restarts
+ *   (per armed rtx: true, UTF id, int mask, one long per set bit in ordinal order; then false);
+ *   saveIfChanged(...) rewrites it only when something was armed, cleared or removed since the last save
+ */
+public class RecurringCooldowns {
+    private static final int MAGIC = 0x52434431; // "RCD1"
+    private static final SkipReason[] REASONS = SkipReason.values();
+
+    private static final class State {
+        int mask;
+        final long[] lastLoggedMillis = new long[REASONS.length];
+    }
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    /**
+     * True if this skip should be logged now (first time, or the reason's cooldown has passed);
+     * in that case the reason is (re)armed with nowMillis.
+     */
+    public boolean shouldLog(String rtxId, SkipReason reason, long nowMillis, long cooldownMillis) {
+        State s = states.computeIfAbsent(rtxId, k -> new State());
+        synchronized (s) {
+            int i = reason.ordinal();
+            if ((s.mask & reason.bit()) != 0 && nowMillis <= s.lastLoggedMillis[i] + cooldownMillis) return false;
+            s.mask |= reason.bit();
+            s.lastLoggedMillis[i] = nowMillis;
+            changed.set(true);
+            return true;
+        }
+    }
+
+    /** the rtx ran (or funds/state are ok again): every reason may be logged again */
+    public void clear(String rtxId) {
+        State s = states.get(rtxId);
+        if (s == null) return;
+        synchronized (s) {
+            if (s.mask == 0) return;
+            s.mask = 0;
+        }
+        changed.set(true);
+    }
+
+    /** rtx cancelled for good */
+    public void remove(String rtxId) {
+        if (states.remove(rtxId) != null) changed.set(true);
+    }
+
+    public boolean isCoolingDown(String rtxId, SkipReason reason) {
+        State s = states.get(rtxId);
+        if (s == null) return false;
+        synchronized (s) { return (s.mask & reason.bit()) != 0; }
+    }
+
+    /** epoch millis the reason was last logged for this rtx, or -1 */
+    public long lastLoggedMillis(String rtxId, SkipReason reason) {
+        State s = states.get(rtxId);
+        if (s == null) return -1;
+        synchronized (s) { return (s.mask & reason.bit()) != 0 ? s.lastLoggedMillis[reason.ordinal()] : -1; }
+    }
+
+    public int size() { return states.size(); }
+
+    // ------------------------ PERSISTENCE ------------------------ //
+
+    /** save(file) if anything changed since the last save; true if it wrote */
+    public boolean saveIfChanged(Path file) {
+        if (!changed.get()) return false;
+        save(file);
+        return true;
+    }
+
+    /** write every armed state (write to a temp file, then move into place) */
+    public synchronized void save(Path file) {
+        changed.set(false); // a change racing with the write is saved next time
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                for (Map.Entry<String, State> e : states.entrySet()) {
+                    State s = e.getValue();
+                    synchronized (s) {
+                        if (s.mask == 0) continue;
+                        out.writeBoolean(true);
+                        out.writeUTF(e.getKey());
+                        out.writeInt(s.mask);
+                        for (int i = 0; i < REASONS.length; i++) {
+                            if ((s.mask & (1 << i)) != 0) out.writeLong(s.lastLoggedMillis[i]);
+                        }
+                    }
+                }
+                out.writeBoolean(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            changed.set(true);
+            throw new UncheckedIOException("Cannot save recurring cooldowns to " + file, e);
+        }
+    }
+
+    /** merge a file written by save(...); a missing file is not an error */
+    public void load(Path file) {
+        if (!Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IllegalStateException("Not a cooldown file: " + file);
+            while (in.readBoolean()) {
+                String id = in.readUTF();
+                State s = new State();
+                s.mask = in.readInt();
+                for (int i = 0; i < REASONS.length; i++) {
+                    if ((s.mask & (1 << i)) != 0) s.lastLoggedMillis[i] = in.readLong();
+                }
+                states.put(id, s);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load recurring cooldowns from " + file, e);
+        }
+    }
+}
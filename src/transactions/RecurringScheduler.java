@@ -0,0 +1,263 @@
+package transactions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel for recurring work, sharded by key (account id).
+ * - each shard owns one thread and 4 wheels of 256 slots (tick, 256 ticks, 65536 ticks, 2^24 ticks);
+ *   a task sits in exactly one slot as an intrusive list node: scheduling is O(1), no delay-queue heap
+ * - when a higher wheel's slot comes up its tasks cascade down to finer wheels
+ * - all tasks due on a tick are handed to the BatchHandler as one list (shard thread)
+ * - fixed rate: the next deadline is previous + period; periods missed while the shard lagged are
+ *   coalesced into one run and counted in missedPeriods()
+ * - cancel() only flags the handle; it is unlinked when its slot is reached
+ * - lag metrics: how late tasks fired (max / average) and how far each shard's wheel is behind now
+ */
+public class RecurringScheduler<T> {
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    /** receives the tasks due on one tick of one shard (the list is reused: do not keep it) */
+    public interface BatchHandler<T> {
+        void onDue(List<Handle<T>> due);
+    }
+
+    /** returned by schedule(...); replaces ScheduledFuture for recurring tasks */
+    public static final class Handle<T> {
+        private final T task;
+        private final long periodTicks;
+        private final Shard<T> shard;
+        private long deadline;           // tick; only touched by the shard thread
+        private Handle<T> next;          // slot list link
+        private volatile boolean cancelled;
+
+        private Handle(T task, long deadline, long periodTicks, Shard<T> shard) {
+            this.task = task;
+            this.deadline = deadline;
+            this.periodTicks = periodTicks;
+            this.shard = shard;
+        }
+
+        public T getTask() { return task; }
+        public boolean cancel() {
+            if (cancelled) return false;
+            cancelled = true;
+            return true;
+        }
+        public boolean isCancelled() { return cancelled; }
+        public int getShard() { return shard.index; }
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final BatchHandler<T> handler;
+    private final Shard<T>[] shards;
+    private final int shardMask;
+    private volatile boolean running = true;
+
+    // metrics
+    private final AtomicLong scheduled = new AtomicLong();
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder lagTotalMillis = new LongAdder();
+    private final LongAccumulator lagMaxMillis = new LongAccumulator(Math::max, 0);
+    private final LongAdder missed = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public RecurringScheduler(int shardCount, long tickMillis, BatchHandler<T> handler) {
+        if (shardCount <= 0) throw new IllegalArgumentException("shardCount>0");
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis>0");
+        int n = 1;
+        while (n < shardCount) n <<= 1;
+        this.shardMask = n - 1;
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.handler = handler;
+        this.startNanos = System.nanoTime();
+        this.shards = (Shard<T>[]) new Shard<?>[n];
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard<>(this, i);
+            shards[i].thread.start();
+        }
+    }
+
+    /** schedule task on the shard of shardKey; first run after initialDelayMillis, then every periodMillis */
+    public Handle<T> schedule(T task, String shardKey, long initialDelayMillis, long periodMillis) {
+        if (!running) throw new IllegalStateException("Scheduler stopped");
+        if (periodMillis <= 0) throw new IllegalArgumentException("period>0");
+        long tickMillis = tickNanos / 1_000_000L;
+        long periodTicks = Math.max(1, periodMillis / tickMillis);
+        long delayTicks = Math.max(1, Math.max(0, initialDelayMillis) / tickMillis);
+        Shard<T> shard = shards[shardOf(shardKey)];
+        Handle<T> h = new Handle<>(task, nowTick() + delayTicks, periodTicks, shard);
+        scheduled.incrementAndGet();
+        shard.inbox.add(h);
+        return h;
+    }
+
+    private int shardOf(String key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return h & shardMask;
+    }
+
+    private long nowTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    private long tickToMillis(long tick) {
+        return tick * (tickNanos / 1_000_000L);
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Shard<T> s : shards) LockSupport.unpark(s.thread);
+        for (Shard<T> s : shards) {
+            try {
+                s.thread.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    /** live (not cancelled) scheduled tasks, approximately */
+    public long scheduledCount() { return scheduled.get(); }
+    public long firedCount() { return fired.sum(); }
+    public long missedPeriods() { return missed.sum(); }
+    public long maxLagMillis() { return lagMaxMillis.get(); }
+    public double averageLagMillis() {
+        long f = fired.sum();
+        return f == 0 ? 0 : lagTotalMillis.sum() / (double) f;
+    }
+    /** how far the slowest shard's wheel is behind the clock right now */
+    public long currentLagMillis() {
+        long now = nowTick();
+        long worst = 0;
+        for (Shard<T> s : shards) worst = Math.max(worst, now - s.currentTick);
+        return tickToMillis(Math.max(0, worst));
+    }
+    public int shardCount() { return shards.length; }
+
+    // ------------------------ SHARD ------------------------------ //
+
+    private static final class Shard<T> {
+        private final RecurringScheduler<T> owner;
+        private final int index;
+        private final Thread thread;
+        private final ConcurrentLinkedQueue<Handle<T>> inbox = new ConcurrentLinkedQueue<>();
+        @SuppressWarnings("unchecked")
+        private final Handle<T>[][] wheels = (Handle<T>[][]) new Handle<?>[LEVELS][WHEEL_SIZE];
+        private final List<Handle<T>> due = new ArrayList<>();
+        private volatile long currentTick; // last tick processed
+
+        Shard(RecurringScheduler<T> owner, int index) {
+            this.owner = owner;
+            this.index = index;
+            this.thread = new Thread(this::loop, "recurring-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void loop() {
+            while (owner.running) {
+                long now = owner.nowTick();
+                while (currentTick < now && owner.running) {
+                    long t = currentTick + 1;
+                    drainInbox(t);
+                    advance(t);
+                    currentTick = t;
+                }
+                drainInbox(currentTick + 1);
+                long nextTickAt = owner.startNanos + (currentTick + 1) * owner.tickNanos;
+                long wait = nextTickAt - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+        }
+
+        private void drainInbox(long current) {
+            Handle<T> h;
+            while ((h = inbox.poll()) != null) insert(h, current);
+        }
+
+        // place h by the highest bits in which its deadline differs from the current tick
+        private void insert(Handle<T> h, long current) {
+            long d = Math.max(h.deadline, current);
+            int level = 0;
+            while (level < LEVELS - 1 && (d >>> (WHEEL_BITS * (level + 1))) != (current >>> (WHEEL_BITS * (level + 1)))) level++;
+            int slot = (int) ((d >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            h.next = wheels[level][slot];
+            wheels[level][slot] = h;
+        }
+
+        private void advance(long t) {
+            // cascade coarser wheels whose slot boundary is reached (coarsest first)
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                long lowMask = (1L << (WHEEL_BITS * level)) - 1;
+                if ((t & lowMask) != 0) continue;
+                int slot = (int) ((t >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                Handle<T> h = wheels[level][slot];
+                wheels[level][slot] = null;
+                while (h != null) {
+                    Handle<T> next = h.next;
+                    if (h.cancelled) owner.scheduled.decrementAndGet();
+                    else insert(h, t);
+                    h = next;
+                }
+            }
+
+            int slot = (int) (t & WHEEL_MASK);
+            Handle<T> h = wheels[0][slot];
+            wheels[0][slot] = null;
+            long nowMillis = owner.tickToMillis(owner.nowTick());
+            while (h != null) {
+                Handle<T> next = h.next;
+                h.next = null;
+                if (h.cancelled) {
+                    owner.scheduled.decrementAndGet();
+                } else if (h.deadline > t) {
+                    insert(h, t); // not due yet (placed early by a clamped cascade)
+                } else {
+                    long lag = Math.max(0, nowMillis - owner.tickToMillis(h.deadline));
+                    owner.lagTotalMillis.add(lag);
+                    owner.lagMaxMillis.accumulate(lag);
+                    due.add(h);
+                }
+                h = next;
+            }
+            if (due.isEmpty()) return;
+
+            owner.fired.add(due.size());
+            try {
+                owner.handler.onDue(due);
+            } catch (RuntimeException e) {
+                System.err.println("[RecurringScheduler] batch failed: " + e.getMessage());
+            }
+            long nowTick = owner.nowTick();
+            for (Handle<T> d : due) {
+                if (d.cancelled) {
+                    owner.scheduled.decrementAndGet();
+                    continue;
+                }
+                long nextDeadline = d.deadline + d.periodTicks;
+                if (nextDeadline <= nowTick) {
+                    // fell behind: coalesce the missed periods into the next run
+                    long skipped = (nowTick - nextDeadline) / d.periodTicks + 1;
+                    owner.missed.add(skipped);
+                    nextDeadline += skipped * d.periodTicks;
+                }
+                d.deadline = nextDeadline;
+                insert(d, t);
+            }
+            due.clear();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package transactions;
+
+import util.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * On-disk store of recurring transaction definitions + their last-run watermark.
+ * - one memory-mapped file of fixed 192-byte records; a definition keeps its slot for life,
+ *   so markRun(...) is a single 8-byte write at a known offset
+ * - removed definitions free their slot for the next add (the file does not grow with churn)
+ * - the file is scanned once on open: definitions() is what TransactionService.restoreRecurring
+ *   uses for the catch-up pass
+ * - nothing is forced per call: flush() makes adds/removes/watermarks durable in one msync
+ *   (TransactionService flushes after each schedule/cancel and once per scheduler batch)
+ *
+ * Record layout (big-endian):
+ *   int magic | byte state | byte type | byte policy | byte pad |
+ *   long anchorMillis | long periodMillis | long amountMinor | long lastRunMillis |
+ *   id, from, to as (short length, UTF-8 bytes); length -1 = null
+ */
+public class RecurringStore implements AutoCloseable {
+    public static final int RECORD_SIZE = 192;
+    private static final int MAGIC = 0x52545831; // "RTX1"
+    private static final byte ACTIVE = 1, REMOVED = 2;
+    private static final int OFF_STATE = 4, OFF_TYPE = 5, OFF_POLICY = 6;
+    private static final int OFF_ANCHOR = 8, OFF_PERIOD = 16, OFF_AMOUNT = 24, OFF_LAST_RUN = 32, OFF_TEXT = 40;
+    private static final int ID_MAX = 40, FROM_MAX = 48, TO_MAX = 48;
+
+    /** one stored definition as read on open */
+    public static final class Definition {
+        private final String id;
+        private final Transaction.Type type;
+        private final String fromId;
+        private final String toId;
+        private final long amountMinor;
+        private final long anchorMillis;
+        private final long periodMillis;
+        private final long lastRunMillis;
+        private final RecurringTransaction.CatchUpPolicy policy;
+
+        Definition(String id, Transaction.Type type, String fromId, String toId, long amountMinor,
+                   long anchorMillis, long periodMillis, long lastRunMillis, RecurringTransaction.CatchUpPolicy policy) {
+            this.id = id;
+            this.type = type;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.amountMinor = amountMinor;
+            this.anchorMillis = anchorMillis;
+            this.periodMillis = periodMillis;
+            this.lastRunMillis = lastRunMillis;
+            this.policy = policy;
+        }
+
+        public String getId() { return id; }
+        public Transaction.Type getType() { return type; }
+        public String getFromId() { return fromId; }
+        public String getToId() { return toId; }
+        public long getAmountMinor() { return amountMinor; }
+        /** epoch millis of the first run; runs are due at anchor + k * period */
+        public long getAnchorMillis() { return anchorMillis; }
+        public long getPeriodMillis() { return periodMillis; }
+        /** epoch millis of the last evaluated run, 0 = never ran */
+        public long getLastRunMillis() { return lastRunMillis; }
+        public RecurringTransaction.CatchUpPolicy getPolicy() { return policy; }
+
+        /** number of due runs in (lastRun, now] */
+        public long missedRuns(long nowMillis) {
+            return runIndex(nowMillis) - runIndex(lastRunMillis);
+        }
+
+        /** epoch millis of the first run strictly after now */
+        public long nextRunAfter(long nowMillis) {
+            return anchorMillis + (runIndex(nowMillis) + 1) * periodMillis;
+        }
+
+        // index k of the last run due at or before t (-1 before the anchor)
+        private long runIndex(long t) {
+            return t < anchorMillis ? -1 : (t - anchorMillis) / periodMillis;
+        }
+
+        public RecurringTransaction toRecurring(accounts.Account from, accounts.Account to) {
+            return new RecurringTransaction(id, type, from, to, Money.toMajor(amountMinor), policy);
+        }
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;                  // records the current mapping can hold
+    private int highWater;                 // slots [0, highWater) have been written at least once
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final List<Definition> loaded = new ArrayList<>();
+    private boolean dirty;
+    private boolean closed;
+
+    public RecurringStore(Path file) {
+        this.file = file;
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int existing = (int) (channel.size() / RECORD_SIZE);
+            remap(Math.max(1024, existing));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open recurring store " + file, e);
+        }
+        load();
+    }
+
+    private void load() {
+        Transaction.Type[] types = Transaction.Type.values();
+        RecurringTransaction.CatchUpPolicy[] policies = RecurringTransaction.CatchUpPolicy.values();
+        int slot = 0;
+        for (; slot < capacity; slot++) {
+            int base = slot * RECORD_SIZE;
+            if (map.getInt(base) != MAGIC) break;
+            if (map.get(base + OFF_STATE) != ACTIVE) {
+                freeSlots.add(slot);
+                continue;
+            }
+            String[] text = new String[3];
+            int p = base + OFF_TEXT;
+            for (int f = 0; f < 3; f++) {
+                short len = map.getShort(p);
+                p += 2;
+                if (len < 0) continue;
+                byte[] b = new byte[len];
+                map.get(p, b, 0, len);
+                text[f] = new String(b, StandardCharsets.UTF_8);
+                p += len;
+            }
+            Definition d = new Definition(text[0], types[map.get(base + OFF_TYPE)], text[1], text[2],
+                    map.getLong(base + OFF_AMOUNT), map.getLong(base + OFF_ANCHOR), map.getLong(base + OFF_PERIOD),
+                    map.getLong(base + OFF_LAST_RUN), policies[map.get(base + OFF_POLICY)]);
+            slots.put(d.getId(), slot);
+            loaded.add(d);
+        }
+        highWater = slot;
+    }
+
+    /** active definitions found when the store was opened (file order) */
+    public List<Definition> definitions() {
+        return Collections.unmodifiableList(loaded);
+    }
+
+    public synchronized void add(RecurringTransaction rtx, long anchorMillis, long periodMillis) {
+        ensureOpen();
+        if (slots.containsKey(rtx.getId())) throw new IllegalArgumentException("Recurring transaction already stored: " + rtx.getId());
+        // encode first: a rejected id must not leave a hole in the file
+        byte[] id = utf8(rtx.getId(), ID_MAX);
+        byte[] from = utf8(rtx.getFrom() != null ? rtx.getFrom().getId() : null, FROM_MAX);
+        byte[] to = utf8(rtx.getTo() != null ? rtx.getTo().getId() : null, TO_MAX);
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.poll();
+        } else {
+            if (highWater == capacity) remap(capacity * 2);
+            slot = highWater++;
+        }
+        int base = slot * RECORD_SIZE;
+        map.put(base + OFF_TYPE, (byte) rtx.getType().ordinal());
+        map.put(base + OFF_POLICY, (byte) rtx.getCatchUpPolicy().ordinal());
+        map.putLong(base + OFF_ANCHOR, anchorMillis);
+        map.putLong(base + OFF_PERIOD, periodMillis);
+        map.putLong(base + OFF_AMOUNT, Money.ofMajor(rtx.getAmount()));
+        map.putLong(base + OFF_LAST_RUN, 0L);
+        int p = putText(base + OFF_TEXT, id);
+        p = putText(p, from);
+        putText(p, to);
+        // state + magic last: a half-written record (new or reused slot) is not loaded on the next open
+        map.put(base + OFF_STATE, ACTIVE);
+        map.putInt(base, MAGIC);
+        slots.put(rtx.getId(), slot);
+        dirty = true;
+    }
+
+    /** watermark: the run due at or before epochMillis has been evaluated */
+    public synchronized void markRun(String id, long epochMillis) {
+        if (closed) return;
+        Integer slot = slots.get(id);
+        if (slot == null) return;
+        map.putLong(slot * RECORD_SIZE + OFF_LAST_RUN, epochMillis);
+        dirty = true;
+    }
+
+    /** cancelled for good: drop the definition and reuse its slot */
+    public synchronized void remove(String id) {
+        if (closed) return;
+        Integer slot = slots.remove(id);
+        if (slot == null) return;
+        map.put(slot * RECORD_SIZE + OFF_STATE, REMOVED);
+        freeSlots.add(slot);
+        dirty = true;
+    }
+
+    public synchronized boolean contains(String id) {
+        return slots.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public synchronized void flush() {
+        if (closed || !dirty) return;
+        map.force();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        try {
+            map.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            closed = true;
+        }
+    }
+
+    public Path getFile() { return file; }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("Recurring store closed");
+    }
+
+    private void remap(int records) {
+        try {
+            if (map != null) map.force();
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_SIZE);
+            capacity = records;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot grow recurring store " + file, e);
+        }
+    }
+
+    private static byte[] utf8(String s, int max) {
+        if (s == null) return null;
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > max) throw new IllegalArgumentException("Id too long for recurring store: " + s);
+        return b;
+    }
+
+    private int putText(int p, byte[] b) {
+        if (b == null) {
+            map.putShort(p, (short) -1);
+            return p + 2;
+        }
+        map.putShort(p, (short) b.length);
+        map.put(p + 2, b, 0, b.length);
+        return p + 2 + b.length;
+    }
+}
@@ -5,17 +5,32 @@ import accounts.Account;
 import java.util.UUID;
 
 public class RecurringTransaction {
-    private final String id = UUID.randomUUID().toString();
+    /** what to do with the runs missed while the application was down (see RecurringStore) */
+    public enum CatchUpPolicy { RUN_ALL, RUN_LATEST, SKIP }
+
+    private final String id;
     private final Transaction.Type type;
     private final Account from;
     private final Account to;
     private final double amount;
+    private final CatchUpPolicy catchUpPolicy;
 
     public RecurringTransaction(Transaction.Type type, Account from, Account to, double amount){
+        this(type, from, to, amount, CatchUpPolicy.RUN_LATEST);
+    }
+
+    public RecurringTransaction(Transaction.Type type, Account from, Account to, double amount, CatchUpPolicy catchUpPolicy){
+        this(UUID.randomUUID().toString(), type, from, to, amount, catchUpPolicy);
+    }
+
+    // restored from RecurringStore: keeps the id it was stored under
+    public RecurringTransaction(String id, Transaction.Type type, Account from, Account to, double amount, CatchUpPolicy catchUpPolicy){
+        this.id = id;
         this.type = type;
         this.from = from;
         this.to = to;
         this.amount = amount;
+        this.catchUpPolicy = catchUpPolicy == null ? CatchUpPolicy.RUN_LATEST : catchUpPolicy;
     }
 
     /** --- getters added so the scheduler/task can inspect the recurring transaction --- */
@@ -39,8 +54,12 @@ public class RecurringTransaction {
         return amount;
     }
 
+    public CatchUpPolicy getCatchUpPolicy() {
+        return catchUpPolicy;
+    }
+
     public Transaction toTransaction(){
-        return new Transaction(type, from, to, amount);
+        return new Transaction(type, from, to, amount).asRecurring();
     }
 
     @Override
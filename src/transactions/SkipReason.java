@@ -0,0 +1,12 @@
+package transactions;
+
+/** Why a recurring run was skipped; audited as "SKIPPED_" + name(). */
+public enum SkipReason {
+    DEST_FROZEN,
+    SRC_SUSPENDED,
+    SRC_FROZEN,
+    INSUFFICIENT_FUNDS,
+    REJECTED_BY_CHAIN;
+
+    int bit() { return 1 << ordinal(); }
+}
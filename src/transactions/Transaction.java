@@ -1,20 +1,65 @@
 package transactions;
 
 import accounts.Account;
+import util.Money;
 
 public class Transaction {
     public enum Type { DEPOSIT, WITHDRAW, TRANSFER }
     private final Type type;
     private final Account from;
     private final Account to; // may be null
-    private final double amount;
+    private final long amountMinor; // fixed-point cents
+    private final String idempotencyKey; // caller's request id: a repeat with the same key is not executed again; may be null
+    private final boolean recurring; // run of a RecurringTransaction (standing order)
 
     public Transaction(Type type, Account from, Account to, double amount){
-        this.type = type; this.from = from; this.to = to; this.amount = amount;
+        this(type, from, to, Money.ofMajor(amount));
+    }
+
+    // private on purpose: a public long overload would silently capture int literals as cents
+    private Transaction(Type type, Account from, Account to, long amountMinor){
+        this(type, from, to, amountMinor, null);
+    }
+
+    private Transaction(Type type, Account from, Account to, long amountMinor, String idempotencyKey){
+        this(type, from, to, amountMinor, idempotencyKey, false);
+    }
+
+    private Transaction(Type type, Account from, Account to, long amountMinor, String idempotencyKey, boolean recurring){
+        this.type = type; this.from = from; this.to = to; this.amountMinor = amountMinor;
+        this.idempotencyKey = idempotencyKey;
+        this.recurring = recurring;
+    }
+
+    // build directly from minor units (no double round-trip)
+    public static Transaction ofMinor(Type type, Account from, Account to, long amountMinor){
+        return new Transaction(type, from, to, amountMinor);
+    }
+
+    /** same transaction carrying the caller's idempotency key (see IdempotencyCache) */
+    public Transaction withIdempotencyKey(String key){
+        checkIdempotencyKey(key);
+        return new Transaction(type, from, to, amountMinor, key, recurring);
+    }
+
+    /** same transaction marked as a run of a standing order (see RecurringTransaction) */
+    public Transaction asRecurring(){
+        return recurring ? this : new Transaction(type, from, to, amountMinor, idempotencyKey, true);
+    }
+
+    // keys are stored one per line in the idempotency log
+    static void checkIdempotencyKey(String key){
+        if (key == null || key.isEmpty() || key.length() > 128) throw new IllegalArgumentException("Idempotency key must be 1..128 chars");
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isISOControl(key.charAt(i))) throw new IllegalArgumentException("Idempotency key contains control characters");
+        }
     }
 
     public Type getType(){ return type; }
     public Account getFrom(){ return from; }
     public Account getTo(){ return to; }
-    public double getAmount(){ return amount; }
+    public double getAmount(){ return Money.toMajor(amountMinor); }
+    public long getAmountMinor(){ return amountMinor; }
+    public String getIdempotencyKey(){ return idempotencyKey; }
+    public boolean isRecurring(){ return recurring; }
 }
@@ -1,5 +1,7 @@
 package transactions;
 
+import java.util.List;
+
 public abstract class TransactionHandler {
     protected TransactionHandler successor;
 
@@ -8,4 +10,39 @@ public abstract class TransactionHandler {
     }
 
     public abstract boolean handle(Transaction tx);
+
+    /**
+     * Evaluate a whole batch through the chain in one pass.
+     * Returns approved[i] for batch.get(i).
+     */
+    public boolean[] handleBatch(List<Transaction> batch) {
+        boolean[] approved = new boolean[batch.size()];
+        int[] pending = new int[batch.size()];
+        for (int i = 0; i < pending.length; i++) pending[i] = i;
+        handleBatch(batch, pending, pending.length, approved);
+        return approved;
+    }
+
+    /**
+     * Decide the items whose indices are in pending[0..count).
+     * Handlers override this to evaluate the group at once and hand the still-undecided
+     * indices to their successor; the default falls back to handle(...) per item.
+     * pending may be reordered/compacted in place.
+     */
+    protected void handleBatch(List<Transaction> batch, int[] pending, int count, boolean[] approved) {
+        for (int k = 0; k < count; k++) {
+            int i = pending[k];
+            approved[i] = handle(batch.get(i));
+        }
+    }
+
+    // pass the undecided indices on, or reject them when this is the end of the chain
+    protected void escalateBatch(List<Transaction> batch, int[] pending, int count, boolean[] approved, boolean approveAtEnd) {
+        if (count == 0) return;
+        if (successor != null) {
+            successor.handleBatch(batch, pending, count, approved);
+        } else {
+            for (int k = 0; k < count; k++) approved[pending[k]] = approveAtEnd;
+        }
+    }
 }
@@ -0,0 +1,312 @@
+package transactions;
+
+import accounts.Account;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded store of executed transactions, kept in columnar chunks instead of a list of objects.
+ * - every entry gets a sequence number; a chunk holds chunkRecords consecutive entries as primitive
+ *   columns (time, amount in cents, from/to account codes, type + recurring flag), about 33 bytes
+ *   per entry
+ * - accounts are interned to int codes once; each entry also stores, per side, the distance to the
+ *   previous entry of the same account, so an account's history is a chain walked newest first
+ *   without scanning anyone else's entries
+ * - retention drops whole chunks, oldest first: when more than maxEntries are kept, or when a
+ *   chunk's newest entry is older than retentionMillis (checked whenever a chunk is started);
+ *   dropped chunks' arrays are reused
+ * - reads are pages (page / recent / byAccount) holding only the requested entries; a page's
+ *   Transaction objects are rebuilt from the columns and carry no idempotency key
+ * - one monitor guards appends and reads; a read holds it for one page, not for the whole history
+ */
+public class TransactionHistory {
+    public static final int DEFAULT_CHUNK_RECORDS = 4096;
+    public static final long DEFAULT_MAX_ENTRIES = 1_000_000;
+    public static final long DEFAULT_RETENTION_MILLIS = 90L * 24 * 60 * 60 * 1000;
+    private static final int NONE = -1; // account code of the external side
+    private static final int RECURRING = 0x80; // flag bit in the type column
+    private static final Transaction.Type[] TYPES = Transaction.Type.values();
+
+    private final int chunkRecords;
+    private final long retentionMillis;
+    private final Chunk[] ring; // chunk number n lives in ring[n % ring.length]
+    private long firstSeq; // oldest retained entry
+    private long nextSeq;
+    private long dropped;
+
+    // account dictionary: id -> code, code -> latest Account object seen, code -> newest entry (-1 = none)
+    private final Map<String, Integer> codes = new HashMap<>();
+    private Account[] accounts = new Account[64];
+    private long[] lastSeq = new long[64];
+
+    private static final class Chunk {
+        final long[] timeMillis;
+        final long[] amountMinor;
+        final int[] from;
+        final int[] to;
+        final byte[] type;
+        // distance back to the previous entry of the same from/to account; 0 = none
+        final int[] prevFrom;
+        final int[] prevTo;
+        long newestMillis;
+
+        Chunk(int n) {
+            timeMillis = new long[n];
+            amountMinor = new long[n];
+            from = new int[n];
+            to = new int[n];
+            type = new byte[n];
+            prevFrom = new int[n];
+            prevTo = new int[n];
+        }
+    }
+
+    /** A slice of the history; getNextCursor() is where the following page starts (-1 = no more). */
+    public static final class Page {
+        private final List<Transaction> items;
+        private final long[] seqs;
+        private final long[] times;
+        private final long nextCursor;
+
+        Page(List<Transaction> items, long[] seqs, long[] times, long nextCursor) {
+            this.items = Collections.unmodifiableList(items);
+            this.seqs = seqs;
+            this.times = times;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Transaction> getItems() { return items; }
+        public int size() { return items.size(); }
+        public boolean isEmpty() { return items.isEmpty(); }
+        public long getSeq(int i) { return seqs[i]; }
+        public long getTimeMillis(int i) { return times[i]; }
+        public long getNextCursor() { return nextCursor; }
+        public boolean hasMore() { return nextCursor >= 0; }
+    }
+
+    public TransactionHistory() {
+        this(DEFAULT_CHUNK_RECORDS, DEFAULT_MAX_ENTRIES, DEFAULT_RETENTION_MILLIS);
+    }
+
+    public TransactionHistory(int chunkRecords, long maxEntries, long retentionMillis) {
+        if (chunkRecords <= 0) throw new IllegalArgumentException("chunkRecords must be > 0");
+        if (maxEntries < chunkRecords) throw new IllegalArgumentException("maxEntries must be >= chunkRecords");
+        if (retentionMillis <= 0) throw new IllegalArgumentException("retentionMillis must be > 0");
+        this.chunkRecords = chunkRecords;
+        this.retentionMillis = retentionMillis;
+        // maxEntries rounded up to whole chunks, plus the one being filled
+        this.ring = new Chunk[(int) ((maxEntries + chunkRecords - 1) / chunkRecords) + 1];
+        Arrays.fill(lastSeq, -1);
+    }
+
+    public void append(Transaction tx) {
+        append(tx, System.currentTimeMillis());
+    }
+
+    /** append with an explicit time (restores, tests); times are expected to be non-decreasing */
+    public synchronized void append(Transaction tx, long epochMillis) {
+        add(tx, epochMillis);
+    }
+
+    /** a batch under one monitor acquisition, all stamped with the same time */
+    public synchronized void appendAll(List<Transaction> txs) {
+        long now = System.currentTimeMillis();
+        for (Transaction tx : txs) add(tx, now);
+    }
+
+    private void add(Transaction tx, long epochMillis) {
+        long seq = nextSeq;
+        int slot = (int) (seq % chunkRecords);
+        if (slot == 0) startChunk(seq / chunkRecords, epochMillis);
+        Chunk c = ring[(int) (seq / chunkRecords % ring.length)];
+        int f = code(tx.getFrom());
+        int t = code(tx.getTo());
+        c.timeMillis[slot] = epochMillis;
+        c.amountMinor[slot] = tx.getAmountMinor();
+        c.from[slot] = f;
+        c.to[slot] = t;
+        c.type[slot] = (byte) (tx.getType().ordinal() | (tx.isRecurring() ? RECURRING : 0));
+        c.prevFrom[slot] = link(f, seq);
+        c.prevTo[slot] = t == f ? c.prevFrom[slot] : link(t, seq);
+        c.newestMillis = Math.max(c.newestMillis, epochMillis);
+        nextSeq = seq + 1;
+    }
+
+    // moves the account's chain head to seq and returns the distance to the old head (0 = none)
+    private int link(int code, long seq) {
+        if (code == NONE) return 0;
+        long prev = lastSeq[code];
+        lastSeq[code] = seq;
+        return prev < 0 || seq - prev > Integer.MAX_VALUE ? 0 : (int) (seq - prev);
+    }
+
+    private void startChunk(long chunkNo, long now) {
+        // retention: full ring, then age (the chunk being filled is never dropped)
+        long oldest = firstSeq / chunkRecords;
+        while (chunkNo - oldest >= ring.length
+                || (oldest < chunkNo && ring[(int) (oldest % ring.length)].newestMillis < now - retentionMillis)) {
+            oldest++;
+            long newFirst = Math.min(oldest * chunkRecords, nextSeq);
+            dropped += newFirst - firstSeq;
+            firstSeq = newFirst;
+        }
+        int idx = (int) (chunkNo % ring.length);
+        if (ring[idx] == null) ring[idx] = new Chunk(chunkRecords);
+        ring[idx].newestMillis = Long.MIN_VALUE;
+    }
+
+    private int code(Account a) {
+        if (a == null) return NONE;
+        Integer c = codes.get(a.getId());
+        if (c == null) {
+            c = codes.size();
+            if (c == accounts.length) {
+                accounts = Arrays.copyOf(accounts, c * 2);
+                lastSeq = Arrays.copyOf(lastSeq, c * 2);
+                Arrays.fill(lastSeq, c, c * 2, -1);
+            }
+            codes.put(a.getId(), c);
+        }
+        accounts[c] = a; // latest object for the id (decorators replace the plain account)
+        return c;
+    }
+
+    // ------------------------ READS ---------------------------- //
+
+    /** oldest first, starting at seq fromSeq (clamped to the oldest retained entry) */
+    public synchronized Page page(long fromSeq, int limit) {
+        checkLimit(limit);
+        long start = Math.max(fromSeq, firstSeq);
+        int n = (int) Math.max(0, Math.min(limit, nextSeq - start));
+        PageBuilder b = new PageBuilder(n);
+        for (long s = start; s < start + n; s++) b.add(s);
+        return b.build(start + n < nextSeq ? start + n : -1);
+    }
+
+    /** newest first, entries with seq < beforeSeq; Long.MAX_VALUE starts at the newest */
+    public synchronized Page recent(long beforeSeq, int limit) {
+        checkLimit(limit);
+        long start = Math.min(beforeSeq, nextSeq) - 1;
+        int n = (int) Math.max(0, Math.min(limit, start - firstSeq + 1));
+        PageBuilder b = new PageBuilder(n);
+        for (long s = start; s > start - n; s--) b.add(s);
+        long next = start - n + 1;
+        return b.build(next > firstSeq ? next : -1);
+    }
+
+    /**
+     * One account's entries, newest first, following its chain. cursor is Long.MAX_VALUE for the
+     * first page, then the previous page's getNextCursor().
+     */
+    public synchronized Page byAccount(String accountId, long cursor, int limit) {
+        checkLimit(limit);
+        Integer c = codes.get(accountId);
+        long s = head(c);
+        if (s > cursor) {
+            // a cursor we handed out points at one of this account's entries: resume there
+            s = cursor >= firstSeq && touches(cursor, c) ? cursor : s;
+            while (s > cursor) s = previous(s, c);
+        }
+        PageBuilder b = new PageBuilder(Math.min(limit, 64));
+        for (; s >= 0 && b.size() < limit; s = previous(s, c)) b.add(s);
+        return b.build(s);
+    }
+
+    /** total sent by the account since sinceMillis (transfers and withdrawals), walking its chain only */
+    public synchronized long outgoingMinor(String accountId, long sinceMillis) {
+        Integer c = codes.get(accountId);
+        long sum = 0;
+        for (long s = head(c); s >= 0; s = previous(s, c)) {
+            Chunk ch = chunk(s);
+            int i = (int) (s % chunkRecords);
+            if (ch.timeMillis[i] < sinceMillis) break;
+            if (ch.from[i] == c) sum += ch.amountMinor[i];
+        }
+        return sum;
+    }
+
+    // newest retained entry of account code c; -1 = none
+    private long head(Integer c) {
+        long s = c == null ? -1 : lastSeq[c];
+        return s < firstSeq ? -1 : s;
+    }
+
+    // previous retained entry of account code c before seq s (which touches c); -1 = none
+    private long previous(long s, int c) {
+        Chunk ch = chunk(s);
+        int i = (int) (s % chunkRecords);
+        int d = ch.from[i] == c ? ch.prevFrom[i] : ch.prevTo[i];
+        long p = s - d;
+        return d == 0 || p < firstSeq ? -1 : p;
+    }
+
+    private boolean touches(long s, int c) {
+        Chunk ch = chunk(s);
+        int i = (int) (s % chunkRecords);
+        return ch.from[i] == c || ch.to[i] == c;
+    }
+
+    private Chunk chunk(long seq) {
+        return ring[(int) (seq / chunkRecords % ring.length)];
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be > 0");
+    }
+
+    // caller holds the monitor
+    private final class PageBuilder {
+        private final List<Transaction> items;
+        private long[] seqs;
+        private long[] times;
+
+        PageBuilder(int expected) {
+            items = new ArrayList<>(expected);
+            seqs = new long[expected];
+            times = new long[expected];
+        }
+
+        int size() { return items.size(); }
+
+        void add(long s) {
+            Chunk ch = chunk(s);
+            int i = (int) (s % chunkRecords);
+            int n = items.size();
+            if (n == seqs.length) {
+                seqs = Arrays.copyOf(seqs, Math.max(8, n * 2));
+                times = Arrays.copyOf(times, seqs.length);
+            }
+            seqs[n] = s;
+            times[n] = ch.timeMillis[i];
+            Transaction tx = Transaction.ofMinor(TYPES[ch.type[i] & (RECURRING - 1)],
+                    ch.from[i] == NONE ? null : accounts[ch.from[i]],
+                    ch.to[i] == NONE ? null : accounts[ch.to[i]],
+                    ch.amountMinor[i]);
+            items.add((ch.type[i] & RECURRING) != 0 ? tx.asRecurring() : tx);
+        }
+
+        Page build(long nextCursor) {
+            int n = items.size();
+            return new Page(items, Arrays.copyOf(seqs, n), Arrays.copyOf(times, n), nextCursor);
+        }
+    }
+
+    // ------------------------ METRICS ---------------------------- //
+
+    /** entries currently retained */
+    public synchronized long size() { return nextSeq - firstSeq; }
+    public synchronized boolean isEmpty() { return nextSeq == firstSeq; }
+    /** seq of the oldest retained entry */
+    public synchronized long firstSeq() { return firstSeq; }
+    /** seq the next append gets (= entries ever appended) */
+    public synchronized long nextSeq() { return nextSeq; }
+    /** entries dropped by retention */
+    public synchronized long dropped() { return dropped; }
+    public synchronized int accountCount() { return codes.size(); }
+    public int maxRetainedEntries() { return (ring.length - 1) * chunkRecords; }
+}
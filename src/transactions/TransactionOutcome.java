@@ -0,0 +1,11 @@
+package transactions;
+
+/**
+ * Per-item result of TransactionService.processBatch(...).
+ */
+public enum TransactionOutcome {
+    EXECUTED,   // approved and applied
+    REJECTED,   // refused by validation/approval chain
+    FAILED,     // approved but the account refused the operation (state/funds changed, etc.)
+    PENDING     // escalated: parked for a manager with the funds held (PendingApprovalQueue)
+}
@@ -1,10 +1,13 @@
 package transactions;
 
 import accounts.Account;
+import util.Metrics;
+import util.RateMeter;
+
 import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
 /**
  * TransactionService - updated scheduleRecurring behavior:
@@ -12,189 +15,817 @@ import java.util.concurrent.*;
  * - if insufficient funds or account-state problem: skip actual execution (do NOT call process)
  *   and avoid audit spam by logging/notifying only once per cooldown period per reason.
  * - when funds/state become ok, the normal process(...) is invoked and the task continues.
+ * - recurring transactions run on a sharded timing wheel (RecurringScheduler): the ones due on the
+ *   same tick are pre-checked one by one and the survivors go through processBatch together.
+ * - process(...) runs approval + execution under the striped locks of the involved accounts,
+ *   so concurrent transfers never interleave on the same balance.
+ * - with an ApprovalPipeline, PENDING_MANAGER transactions are parked in the PendingApprovalQueue with
+ *   the source's funds held; submit(...) returns their handle at once and a manager settles them later
+ *   in bulk (approvePending / rejectPending), so no request thread waits for a human.
+ * - with a Ledger (enableLedger), every executed transaction is appended as a double-entry posting
+ *   while its account locks are held; the ledger's balances survive a restart.
+ * - ExecutionListeners (addExecutionListener) see every executed transaction, e.g. SpendingAggregator.
+ * - executed transactions go to a bounded TransactionHistory (columnar chunks, retention by count
+ *   and age) that is read page by page.
+ * - with Metrics (enableMetrics), processing, approval decisions, manager waits, batches and recurring
+ *   ticks are timed and outcomes counted ("tx.*", "recurring.*"); the dashboard reads them without
+ *   touching the history.
  */
 public class TransactionService {
     private final TransactionHandler approvalChain;
-    private final List<Transaction> history = Collections.synchronizedList(new ArrayList<>());
-    private final AuditLog auditLog = new AuditLog();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final ApprovalPipeline pipeline; // approvalChain when it is a pipeline (escalation support), else null
+    private final PendingApprovalQueue pendingApprovals = new PendingApprovalQueue();
+    private static final int PENDING_BATCH = 256; // pending items settled per lock acquisition
+    private final TransactionHistory history = new TransactionHistory(); // bounded, paged
+    private final AuditLog auditLog;
+    // recurring transactions: sharded timing wheel, created on first scheduleRecurring
+    private static final int RECURRING_SHARDS = 4;
+    private static final long RECURRING_TICK_MILLIS = 100;
+    private static final int RECURRING_BATCH = 256; // max transactions per processBatch (bounds lock hold time)
+    private RecurringScheduler<RecurringTransaction> recurring;
+    // optional persistence of recurring definitions (restoreRecurring); null = memory only
+    private volatile RecurringStore recurringStore;
+    private Function<String, Account> accountLookup;
+    // stored definitions waiting for an account that is not registered yet (key = missing account id)
+    private final Map<String, List<RecurringStore.Definition>> parkedRecurring = new HashMap<>();
+    private static final int MAX_CATCH_UP_RUNS = 1000; // RUN_ALL cap per definition
+    private final AccountLockStripes locks;
+    // dedup of transactions carrying an idempotency key; null = every call executes
+    private volatile IdempotencyCache idempotency;
+    // keyed requests being decided or waiting for a manager: a replay gets the first request's handle
+    private final Map<String, CompletableFuture<PendingApproval>> keyedHandles = new ConcurrentHashMap<>();
+    // double-entry postings of every executed transaction; null = balances live on the accounts only
+    private volatile Ledger ledger;
+    private final List<ExecutionListener> executionListeners = new CopyOnWriteArrayList<>();
+    // timers and counters resolved once by enableMetrics; null = not measured
+    private volatile Meters meters;
 
-    // track last time we logged a "skipped ..." for a recurring tx keyed by rtx+reason
-    private final Map<String, Instant> lastFailureLog = new ConcurrentHashMap<>();
+    // last time we logged a "skipped ..." per recurring tx and reason (bitset per rtx id, O(1) clear)
+    private final RecurringCooldowns cooldowns = new RecurringCooldowns();
     // cooldown to avoid audit/notification spam: e.g. 1 day
     private final Duration failureLogCooldown = Duration.ofHours(24);
 
     public TransactionService(TransactionHandler approvalChain){
+        this(approvalChain, new AccountLockStripes());
+    }
+
+    public TransactionService(TransactionHandler approvalChain, AccountLockStripes locks){
+        this(approvalChain, locks, new AuditLog());
+    }
+
+    public TransactionService(TransactionHandler approvalChain, AccountLockStripes locks, AuditLog auditLog){
         this.approvalChain = approvalChain;
+        this.pipeline = approvalChain instanceof ApprovalPipeline ? (ApprovalPipeline) approvalChain : null;
+        this.locks = locks;
+        this.auditLog = auditLog;
     }
 
+    /**
+     * Approve and execute tx; true only if it executed. With an ApprovalPipeline an escalated transaction
+     * is parked (funds held) and also returns false although a manager may still execute it: callers that
+     * report the result to a user should use submit(...) instead.
+     */
     public boolean process(Transaction tx){
+        Meters m = meters;
+        if (m == null) return processKeyed(tx);
+        long start = System.nanoTime();
+        try {
+            return processKeyed(tx);
+        } finally {
+            m.process.stop(start);
+        }
+    }
+
+    private boolean processKeyed(Transaction tx){
+        IdempotencyCache cache = idempotency;
+        if (cache == null || tx.getIdempotencyKey() == null) return processOnce(tx) == TransactionOutcome.EXECUTED;
+        PendingApproval p = submitKeyed(cache, tx);
+        return !p.isPending() && p.getResult().join() == TransactionOutcome.EXECUTED;
+    }
+
+    private TransactionOutcome processOnce(Transaction tx){
+        // lock both sides (ordered by stripe) so the balance check in the chain and the execution are one atomic step
+        TransactionOutcome outcome = locks.withLocks(tx.getFrom(), tx.getTo(), () -> processLocked(tx));
+        Meters m = meters;
+        if (m != null) m.count(outcome);
+        return outcome;
+    }
+
+    // owner of the key: the claim records the final outcome, for a parked transaction once a manager decided
+    private PendingApproval submitKeyed(IdempotencyCache cache, Transaction tx){
+        String key = tx.getIdempotencyKey();
+        IdempotencyCache.Claim claim = cache.claim(key);
+        if (claim.isReplay()) return replay(tx, claim);
+        CompletableFuture<PendingApproval> handle = new CompletableFuture<>();
+        keyedHandles.put(key, handle);
+        PendingApproval p;
+        try {
+            p = submitOnce(tx);
+        } catch (RuntimeException e) {
+            claim.abandon(e);
+            keyedHandles.remove(key, handle);
+            handle.completeExceptionally(e);
+            throw e;
+        }
+        handle.complete(p);
+        p.getResult().whenComplete((o, ex) -> {
+            claim.complete(ex == null ? o : TransactionOutcome.FAILED);
+            keyedHandles.remove(key, handle);
+        });
+        return p;
+    }
+
+    // same key seen before: the first request's handle (waiting while it is decided inline, not while a
+    // manager looks at it), or its recorded outcome; audited
+    private PendingApproval replay(Transaction tx, IdempotencyCache.Claim claim){
+        CompletableFuture<TransactionOutcome> recorded = claim.outcome();
+        CompletableFuture<PendingApproval> handle;
+        // the owner registers its handle right after claiming
+        while ((handle = keyedHandles.get(claim.getKey())) == null && !recorded.isDone()) Thread.yield();
+        PendingApproval original;
+        if (handle != null) {
+            try {
+                original = handle.join();
+            } catch (RuntimeException e) {
+                original = PendingApproval.completed(tx, TransactionOutcome.FAILED);
+            }
+        } else {
+            TransactionOutcome o;
+            try {
+                o = recorded.join();
+            } catch (RuntimeException e) {
+                o = TransactionOutcome.FAILED;
+            }
+            original = PendingApproval.completed(tx, o);
+        }
+        auditLog.record(tx, "REPLAYED", claim.getKey() + " -> "
+                + (original.isPending() ? "PENDING #" + original.getId() : original.getResult().join()));
+        Meters m = meters;
+        if (m != null) m.replayed.mark();
+        return original;
+    }
+
+    /**
+     * Like process(...), but returns a handle instead of a boolean:
+     * - decided inline: the handle is already completed (EXECUTED / REJECTED / FAILED)
+     * - escalated (PENDING_MANAGER): funds are held, the transaction waits in getPendingApprovals()
+     *   and the handle completes when a manager approves or rejects it
+     * - a repeated idempotency key is not executed again: the first request's handle (or a completed
+     *   one with its recorded outcome) comes back
+     */
+    public PendingApproval submit(Transaction tx){
+        Meters m = meters;
+        if (m == null) return submitUntimed(tx);
+        long start = System.nanoTime();
+        try {
+            return submitUntimed(tx);
+        } finally {
+            m.process.stop(start); // up to the decision: a parked item's wait is tx.pending.wait
+        }
+    }
+
+    private PendingApproval submitUntimed(Transaction tx){
+        IdempotencyCache cache = idempotency;
+        if (cache == null || tx.getIdempotencyKey() == null) return submitOnce(tx);
+        return submitKeyed(cache, tx);
+    }
+
+    private PendingApproval submitOnce(Transaction tx){
+        PendingApproval p = locks.withLocks(tx.getFrom(), tx.getTo(), () -> {
+            if (pipeline != null) {
+                ApprovalDecision d = decide(tx);
+                if (d.isPending()) return park(tx);
+                return PendingApproval.completed(tx, d.isApproved() ? apply(tx) : reject(tx));
+            }
+            return PendingApproval.completed(tx, approve(tx) ? apply(tx) : reject(tx));
+        });
+        Meters m = meters;
+        if (m != null) m.count(p.isPending() ? TransactionOutcome.PENDING : p.getResult().join());
+        return p;
+    }
+
+    // one approval decision, timed as "tx.approve"
+    private ApprovalDecision decide(Transaction tx){
+        Meters m = meters;
+        if (m == null) return pipeline.decide(tx);
+        long start = System.nanoTime();
+        try {
+            return pipeline.decide(tx);
+        } finally {
+            m.approve.stop(start);
+        }
+    }
+
+    private boolean approve(Transaction tx){
+        Meters m = meters;
+        if (m == null) return approvalChain.handle(tx);
+        long start = System.nanoTime();
+        try {
+            return approvalChain.handle(tx);
+        } finally {
+            m.approve.stop(start);
+        }
+    }
+
+    private TransactionOutcome processLocked(Transaction tx){
         // validation + approval happens in chain
-        boolean approved = approvalChain.handle(tx);
+        boolean approved;
+        if (pipeline != null) {
+            ApprovalDecision d = decide(tx);
+            if (d.isPending()) {
+                PendingApproval p = park(tx);
+                return p.isPending() ? TransactionOutcome.PENDING : p.getResult().join();
+            }
+            approved = d.isApproved();
+        } else {
+            approved = approve(tx);
+        }
         if(!approved){
-            auditLog.record(tx, "REJECTED");
-            return false;
+            return reject(tx);
         }
+        return apply(tx);
+    }
+
+    // caller holds the account locks
+    private TransactionOutcome apply(Transaction tx){
         try{
-            // execute
-            if(tx.getType() == Transaction.Type.DEPOSIT && tx.getTo() != null){
-                tx.getTo().deposit(tx.getAmount());
-            } else if(tx.getType() == Transaction.Type.WITHDRAW && tx.getFrom() != null){
-                tx.getFrom().withdraw(tx.getAmount());
-            } else if(tx.getType() == Transaction.Type.TRANSFER && tx.getFrom() != null && tx.getTo() != null){
-                tx.getFrom().withdraw(tx.getAmount());
-                tx.getTo().deposit(tx.getAmount());
-            }
-            history.add(tx);
-            auditLog.record(tx, "EXECUTED");
-            return true;
+            execute(tx);
         }catch(Exception e){
             auditLog.record(tx, "FAILED: " + e.getMessage());
-            return false;
+            return TransactionOutcome.FAILED;
+        }
+        post(tx); // outside the catch: the money moved, a ledger error must not read as FAILED
+        history.append(tx);
+        auditLog.record(tx, "EXECUTED");
+        return TransactionOutcome.EXECUTED;
+    }
+
+    // caller holds the account locks, so postings and listener calls of one account are in execution order
+    private void post(Transaction tx){
+        Ledger l = ledger;
+        if (l != null) l.post(tx);
+        for (ExecutionListener listener : executionListeners) {
+            try {
+                listener.onExecuted(tx);
+            } catch (RuntimeException e) {
+                auditLog.record(tx, "LISTENER_ERROR", e.toString()); // the money moved: never turn it into FAILED
+            }
+        }
+    }
+
+    private TransactionOutcome reject(Transaction tx){
+        auditLog.record(tx, "REJECTED");
+        return TransactionOutcome.REJECTED;
+    }
+
+    /**
+     * Batch submission (payroll, bulk files):
+     * - every account touched by the batch is locked once (ordered stripes) for the whole batch
+     * - the batch goes through the approval chain in one pass (handleBatch)
+     * - approved items are applied in input order; history is appended once
+     * Returns one outcome per input transaction, same order.
+     */
+    public List<TransactionOutcome> processBatch(List<Transaction> batch){
+        if (batch == null || batch.isEmpty()) return Collections.emptyList();
+        Set<Account> involved = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Transaction tx : batch) {
+            if (tx.getFrom() != null) involved.add(tx.getFrom());
+            if (tx.getTo() != null) involved.add(tx.getTo());
+        }
+        Meters m = meters;
+        if (m == null) return locks.withLocks(involved, () -> processBatchLocked(batch));
+        long start = System.nanoTime();
+        List<TransactionOutcome> outcomes = locks.withLocks(involved, () -> processBatchLocked(batch));
+        m.batch.stop(start);
+        for (TransactionOutcome o : outcomes) m.count(o);
+        return outcomes;
+    }
+
+    private List<TransactionOutcome> processBatchLocked(List<Transaction> batch){
+        ApprovalDecision[] decisions = pipeline != null ? pipeline.decideBatch(batch) : null;
+        boolean[] approved = decisions == null ? approvalChain.handleBatch(batch) : null;
+        TransactionOutcome[] outcomes = new TransactionOutcome[batch.size()];
+        List<Transaction> executed = new ArrayList<>(batch.size());
+        for (int i = 0; i < outcomes.length; i++) {
+            Transaction tx = batch.get(i);
+            if (decisions != null && decisions[i].isPending()) {
+                outcomes[i] = park(tx).isPending() ? TransactionOutcome.PENDING : TransactionOutcome.REJECTED;
+                continue;
+            }
+            if (decisions != null ? !decisions[i].isApproved() : !approved[i]) {
+                auditLog.record(tx, "REJECTED");
+                outcomes[i] = TransactionOutcome.REJECTED;
+                continue;
+            }
+            try {
+                execute(tx);
+            } catch (Exception e) {
+                auditLog.record(tx, "FAILED: " + e.getMessage());
+                outcomes[i] = TransactionOutcome.FAILED;
+                continue;
+            }
+            post(tx);
+            executed.add(tx);
+            auditLog.record(tx, "EXECUTED");
+            outcomes[i] = TransactionOutcome.EXECUTED;
+        }
+        history.appendAll(executed);
+        return Arrays.asList(outcomes);
+    }
+
+    // apply an approved transaction in minor units (the amount the ledger posts); caller holds the account locks
+    private void execute(Transaction tx){
+        long amountMinor = tx.getAmountMinor();
+        if(tx.getType() == Transaction.Type.DEPOSIT && tx.getTo() != null){
+            tx.getTo().depositMinor(amountMinor);
+        } else if(tx.getType() == Transaction.Type.WITHDRAW && tx.getFrom() != null){
+            tx.getFrom().withdrawMinor(amountMinor);
+        } else if(tx.getType() == Transaction.Type.TRANSFER && tx.getFrom() != null && tx.getTo() != null){
+            tx.getFrom().withdrawMinor(amountMinor);
+            try {
+                tx.getTo().depositMinor(amountMinor);
+            } catch (RuntimeException depositEx) {
+                // destination refused: put the money back while we still hold both locks
+                tx.getFrom().depositInternalMinor(amountMinor);
+                throw depositEx;
+            }
         }
     }
 
     /**
      * Schedule recurring tx but skip execution while insufficient funds or blocked states.
      * Avoids audit spam: logs a skipped-event only once per cooldown window PER REASON.
+     * Runs on the sharded timing wheel (shard = source account, else destination); cancel via the handle.
      */
-    public ScheduledFuture<?> scheduleRecurring(RecurringTransaction rtx, long initialDelaySeconds, long periodSeconds){
-        RecurringTask task = new RecurringTask(rtx);
-        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(task, initialDelaySeconds, periodSeconds, TimeUnit.SECONDS);
-        task.setFuture(future);
-        return future;
+    public RecurringScheduler.Handle<RecurringTransaction> scheduleRecurring(RecurringTransaction rtx, long initialDelaySeconds, long periodSeconds){
+        long delayMillis = initialDelaySeconds * 1000L, periodMillis = periodSeconds * 1000L;
+        RecurringStore store = recurringStore;
+        if (store != null) {
+            store.add(rtx, System.currentTimeMillis() + delayMillis, periodMillis);
+            store.flush();
+        }
+        return scheduleRecurringMillis(rtx, delayMillis, periodMillis);
     }
 
-    public List<Transaction> getHistory(){ return new ArrayList<>(history); }
+    private RecurringScheduler.Handle<RecurringTransaction> scheduleRecurringMillis(RecurringTransaction rtx, long delayMillis, long periodMillis){
+        String shardKey = rtx.getFrom() != null ? rtx.getFrom().getId() : (rtx.getTo() != null ? rtx.getTo().getId() : rtx.getId());
+        return getRecurringScheduler().schedule(rtx, shardKey, delayMillis, periodMillis);
+    }
+
+    /**
+     * Attach a persistent store and resume what it holds (call once, on startup):
+     * - runs missed while the application was down are evaluated in bulk (processBatch in chunks)
+     *   following each definition's CatchUpPolicy: RUN_ALL (capped at MAX_CATCH_UP_RUNS), RUN_LATEST, SKIP
+     * - every definition is then put back on the scheduler at its next due time
+     * - definitions whose accounts are not registered yet are parked until onAccountRegistered(...)
+     * Returns the number of definitions resumed.
+     */
+    public int restoreRecurring(RecurringStore store, Function<String, Account> accounts){
+        synchronized (this) {
+            if (recurringStore != null) throw new IllegalStateException("Recurring store already attached");
+            recurringStore = store;
+            accountLookup = accounts;
+        }
+        cooldowns.load(cooldownFile(store));
+        return resumeStored(store.definitions());
+    }
+
+    /** resume parked recurring definitions that were waiting for this account */
+    public int onAccountRegistered(String accountId){
+        List<RecurringStore.Definition> waiting;
+        synchronized (this) {
+            if (recurringStore == null) return 0;
+            waiting = parkedRecurring.remove(accountId);
+        }
+        return waiting == null ? 0 : resumeStored(waiting);
+    }
+
+    private int resumeStored(List<RecurringStore.Definition> defs){
+        RecurringStore store = recurringStore;
+        long now = System.currentTimeMillis();
+        List<Transaction> catchUp = new ArrayList<>();
+        int resumed = 0;
+        for (RecurringStore.Definition d : defs) {
+            Account from = d.getFromId() == null ? null : accountLookup.apply(d.getFromId());
+            Account to = d.getToId() == null ? null : accountLookup.apply(d.getToId());
+            String missing = d.getFromId() != null && from == null ? d.getFromId()
+                    : (d.getToId() != null && to == null ? d.getToId() : null);
+            if (missing != null) {
+                synchronized (this) { parkedRecurring.computeIfAbsent(missing, k -> new ArrayList<>()).add(d); }
+                continue;
+            }
+            RecurringTransaction rtx = d.toRecurring(from, to);
+            // scheduled first so catch-up runs get the same pre-checks (cancel, SKIPPED_*) as a due run
+            RecurringScheduler.Handle<RecurringTransaction> h =
+                    scheduleRecurringMillis(rtx, Math.max(0, d.nextRunAfter(now) - now), d.getPeriodMillis());
+            long missed = d.missedRuns(now);
+            if (missed > 0) {
+                long runs;
+                switch (rtx.getCatchUpPolicy()) {
+                    case RUN_ALL: runs = Math.min(missed, MAX_CATCH_UP_RUNS); break;
+                    case RUN_LATEST: runs = 1; break;
+                    default: runs = 0;
+                }
+                for (long r = 0; r < runs; r++) {
+                    Transaction tx = preCheckRecurring(h);
+                    if (tx == null) break; // cancelled or skipped: the later runs would be too
+                    catchUp.add(tx);
+                    if (catchUp.size() >= RECURRING_BATCH) {
+                        processBatch(catchUp);
+                        catchUp.clear();
+                    }
+                }
+                if (h.isCancelled()) {
+                    store.remove(rtx.getId());
+                    cooldowns.remove(rtx.getId());
+                    continue;
+                }
+                if (runs < missed) {
+                    auditLog.record(rtx.toTransaction(), "SKIPPED_CATCH_UP", (missed - runs) + " missed run(s) not executed");
+                }
+                store.markRun(rtx.getId(), now);
+            }
+            resumed++;
+        }
+        if (!catchUp.isEmpty()) processBatch(catchUp);
+        flushRecurring(store);
+        return resumed;
+    }
+
+    /** stop a recurring transaction for good (also removes it from the store) */
+    public void cancelRecurring(RecurringScheduler.Handle<RecurringTransaction> handle){
+        handle.cancel();
+        cooldowns.remove(handle.getTask().getId());
+        RecurringStore store = recurringStore;
+        if (store != null) {
+            store.remove(handle.getTask().getId());
+            flushRecurring(store);
+        }
+    }
+
+    public RecurringStore getRecurringStore(){ return recurringStore; }
+    public RecurringCooldowns getRecurringCooldowns(){ return cooldowns; }
+
+    // skip cooldowns are saved next to the recurring store (recurring.dat -> recurring.dat.cooldowns)
+    private static java.nio.file.Path cooldownFile(RecurringStore store){
+        return store.getFile().resolveSibling(store.getFile().getFileName() + ".cooldowns");
+    }
+
+    // watermarks plus the cooldowns armed, cleared or removed since the last flush: a crash then does
+    // not re-log (and re-notify) skips that were already reported
+    private void flushRecurring(RecurringStore store){
+        store.flush();
+        cooldowns.saveIfChanged(cooldownFile(store));
+    }
+
+    /** the recurring scheduler (lag / fired metrics); started on first use */
+    public synchronized RecurringScheduler<RecurringTransaction> getRecurringScheduler(){
+        if (recurring == null) recurring = new RecurringScheduler<>(RECURRING_SHARDS, RECURRING_TICK_MILLIS, this::runDueRecurring);
+        return recurring;
+    }
+
+    /** executed transactions, read in pages (no copy of the whole history) */
+    public TransactionHistory getHistory(){ return history; }
     public AuditLog getAuditLog(){ return auditLog; }
+    public AccountLockStripes getLocks(){ return locks; }
 
-    public void shutdown(){ scheduler.shutdown(); }
+    /** from now on process(...) runs a keyed transaction once per key; repeats get the first outcome */
+    public void enableIdempotency(IdempotencyCache cache){ this.idempotency = cache; }
+    public IdempotencyCache getIdempotency(){ return idempotency; }
+
+    /** from now on every executed transaction is also posted to the ledger (under the account locks) */
+    public void enableLedger(Ledger ledger){ this.ledger = ledger; }
+    public Ledger getLedger(){ return ledger; }
+
+    /** from now on processing is timed and counted in metrics (see the class comment for the names) */
+    public void enableMetrics(Metrics metrics){ this.meters = new Meters(metrics); }
+    public Metrics getMetrics(){ Meters m = meters; return m == null ? null : m.metrics; }
+
+    /** listener called for every executed transaction (see ExecutionListener) */
+    public void addExecutionListener(ExecutionListener listener){ executionListeners.add(Objects.requireNonNull(listener)); }
+
+    public void shutdown(){
+        RecurringScheduler<RecurringTransaction> r;
+        synchronized (this) { r = recurring; }
+        if (r != null) r.shutdown();
+        RecurringStore store = recurringStore;
+        if (store != null) {
+            cooldowns.save(cooldownFile(store));
+            store.close();
+        }
+        auditLog.close();
+    }
 
     /* -----------------------
-       Inner recurring task
+       Pending manager approvals
        ----------------------- */
-    private class RecurringTask implements Runnable {
-        private final RecurringTransaction rtx;
-        private volatile ScheduledFuture<?> future;
-
-        RecurringTask(RecurringTransaction rtx){
-            this.rtx = rtx;
-        }
-
-        void setFuture(ScheduledFuture<?> f){ this.future = f; }
-
-        private String failureKey(String reason){
-            // use identityHashCode for stable per-object key
-            return System.identityHashCode(rtx) + "|" + reason;
-        }
-
-        private void skipWithCooldown(String reason, String userMessage) {
-            Instant now = Instant.now();
-            String key = failureKey(reason);
-            Instant lastLogged = lastFailureLog.get(key);
-            if (lastLogged == null || now.isAfter(lastLogged.plus(failureLogCooldown))) {
-                // Log once per cooldown window
-                Transaction tx = rtx.toTransaction();
-                auditLog.record(tx, "SKIPPED_" + reason);
-                // notify owner (observers) once per cooldown
-                try {
-                    Account from = rtx.getFrom();
-                    if (from != null) {
-                        from.notifyObservers("recurring", userMessage);
-                    }
-                } catch (Exception ignored) {}
-                lastFailureLog.put(key, now);
+
+    // escalated transaction: hold the source's funds and park it; caller holds the account locks
+    private PendingApproval park(Transaction tx){
+        Account from = tx.getFrom();
+        boolean hold = from != null && tx.getType() != Transaction.Type.DEPOSIT;
+        if (hold) {
+            boolean held;
+            try {
+                held = from.holdMinor(tx.getAmountMinor());
+            } catch (RuntimeException e) {
+                held = false; // account type without holds
+            }
+            if (!held) {
+                auditLog.record(tx, "REJECTED", "funds could not be held for manager approval");
+                return PendingApproval.completed(tx, TransactionOutcome.REJECTED);
             }
         }
+        PendingApproval p = pendingApprovals.park(tx, hold);
+        auditLog.record(tx, "PENDING_APPROVAL", "#" + p.getId());
+        return p;
+    }
+
+    public PendingApprovalQueue getPendingApprovals(){ return pendingApprovals; }
+
+    /** approve the given pending ids (unknown / already decided ids are ignored); returns how many executed */
+    public int approvePending(Collection<Long> ids){
+        return settlePending(pendingApprovals.take(ids), true, null);
+    }
+
+    public int approveAllPending(){
+        return settlePending(pendingApprovals.takeAll(), true, null);
+    }
+
+    /** reject the given pending ids and release their holds; returns how many were rejected */
+    public int rejectPending(Collection<Long> ids, String reason){
+        return settlePending(pendingApprovals.take(ids), false, reason);
+    }
 
-        private void clearFailureRecordsForThisRtx() {
-            String prefix = String.valueOf(System.identityHashCode(rtx)) + "|";
-            for (String k : new ArrayList<>(lastFailureLog.keySet())) {
-                if (k.startsWith(prefix)) lastFailureLog.remove(k);
+    public int rejectAllPending(String reason){
+        return settlePending(pendingApprovals.takeAll(), false, reason);
+    }
+
+    // items were already removed from the queue; settle them in chunks, one lock acquisition per chunk
+    private int settlePending(List<PendingApproval> items, boolean approve, String reason){
+        int done = 0;
+        for (int start = 0; start < items.size(); start += PENDING_BATCH) {
+            List<PendingApproval> chunk = items.subList(start, Math.min(items.size(), start + PENDING_BATCH));
+            Set<Account> involved = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (PendingApproval p : chunk) {
+                if (p.getTransaction().getFrom() != null) involved.add(p.getTransaction().getFrom());
+                if (p.getTransaction().getTo() != null) involved.add(p.getTransaction().getTo());
+            }
+            TransactionOutcome[] outcomes = locks.withLocks(involved, () -> {
+                TransactionOutcome[] out = new TransactionOutcome[chunk.size()];
+                List<Transaction> executed = new ArrayList<>(chunk.size());
+                for (int i = 0; i < out.length; i++) {
+                    PendingApproval p = chunk.get(i);
+                    out[i] = approve ? settleApproved(p) : settleRejected(p, reason);
+                    if (out[i] == TransactionOutcome.EXECUTED) executed.add(p.getTransaction());
+                }
+                history.appendAll(executed);
+                return out;
+            });
+            Meters m = meters;
+            if (m != null) m.settled(chunk, outcomes);
+            // complete handles outside the locks: their callbacks may submit new transactions
+            for (int i = 0; i < outcomes.length; i++) {
+                chunk.get(i).complete(outcomes[i]);
+                if (outcomes[i] == (approve ? TransactionOutcome.EXECUTED : TransactionOutcome.REJECTED)) done++;
+            }
+        }
+        return done;
+    }
+
+    // manager said yes: credit the destination, then let the held funds go
+    private TransactionOutcome settleApproved(PendingApproval p){
+        Transaction tx = p.getTransaction();
+        Account from = tx.getFrom();
+        try {
+            if (p.isHeld() && !from.getStatus().canBeSource()) {
+                throw new IllegalStateException("source account " + from.getStatusName() + " since escalation");
             }
+            if (tx.getTo() != null && tx.getType() != Transaction.Type.WITHDRAW) tx.getTo().depositMinor(tx.getAmountMinor());
+        } catch (RuntimeException e) {
+            if (p.isHeld()) from.releaseHoldMinor(tx.getAmountMinor());
+            auditLog.record(tx, "FAILED: " + e.getMessage(), "#" + p.getId());
+            return TransactionOutcome.FAILED;
         }
+        if (p.isHeld()) from.commitHoldMinor(tx.getAmountMinor());
+        post(tx);
+        auditLog.record(tx, "EXECUTED", "approved by manager #" + p.getId());
+        return TransactionOutcome.EXECUTED;
+    }
 
-        @Override
-        public void run() {
+    private TransactionOutcome settleRejected(PendingApproval p, String reason){
+        Transaction tx = p.getTransaction();
+        if (p.isHeld()) tx.getFrom().releaseHoldMinor(tx.getAmountMinor());
+        auditLog.record(tx, "REJECTED_BY_MANAGER", reason == null || reason.isBlank() ? "#" + p.getId() : "#" + p.getId() + " " + reason);
+        return TransactionOutcome.REJECTED;
+    }
+
+    /* -----------------------
+       Recurring execution
+       ----------------------- */
+
+    // all recurring transactions due on one tick of one shard: pre-check each, then one processBatch per chunk
+    private void runDueRecurring(List<RecurringScheduler.Handle<RecurringTransaction>> due){
+        Meters m = meters;
+        long start = System.nanoTime();
+        runDue(due);
+        if (m != null) m.recurringTick.stop(start);
+    }
+
+    private void runDue(List<RecurringScheduler.Handle<RecurringTransaction>> due){
+        List<RecurringScheduler.Handle<RecurringTransaction>> runnable = new ArrayList<>();
+        List<Transaction> batch = new ArrayList<>();
+        for (RecurringScheduler.Handle<RecurringTransaction> h : due) {
             try {
-                Transaction tx = rtx.toTransaction();
-
-                Account from = rtx.getFrom();
-                Account to = rtx.getTo();
-
-                // ---------- Check destination status (applies to incoming deposits/transfers) ----------
-                if (to != null) {
-                    String statusTo = to.getStatusName();
-                    if ("CLOSED".equalsIgnoreCase(statusTo)) {
-                        // destination closed -> cancel recurring permanently (can't deposit)
-                        auditLog.record(tx, "CANCELLED: destination account closed");
-                        if (future != null) future.cancel(false);
-                        return;
-                    }
-                    if ("FROZEN".equalsIgnoreCase(statusTo)) {
-                        // destination frozen -> skip (notify once per cooldown)
-                        skipWithCooldown("DEST_FROZEN", "Recurring payment skipped: destination account frozen.");
-                        return;
-                    }
-                    // SUSPENDED destination: allow incoming deposits/transfers (per SUSPENDED rules)
+                Transaction tx = preCheckRecurring(h);
+                if (tx != null) {
+                    runnable.add(h);
+                    batch.add(tx);
                 }
+            } catch (Throwable t) {
+                recordRecurringError(h.getTask(), t);
+            }
+            if (batch.size() == RECURRING_BATCH) {
+                executeRecurring(runnable, batch);
+                runnable.clear();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) executeRecurring(runnable, batch);
 
-                // ---------- Pre-checks for TRANSFER/WITHDRAW: source account existence & state & balance ----------
-                if (rtx.getType() == Transaction.Type.TRANSFER || rtx.getType() == Transaction.Type.WITHDRAW) {
-                    if (from == null) {
-                        // malformed recurring transaction; record and cancel permanently
-                        auditLog.record(tx, "CANCELLED: no source account");
-                        if (future != null) future.cancel(false);
-                        return;
-                    }
+        // watermark: these periods are evaluated (ran, skipped or cancelled)
+        RecurringStore store = recurringStore;
+        if (store != null) {
+            long now = System.currentTimeMillis();
+            for (RecurringScheduler.Handle<RecurringTransaction> h : due) {
+                if (h.isCancelled()) {
+                    store.remove(h.getTask().getId());
+                    cooldowns.remove(h.getTask().getId());
+                }
+                else store.markRun(h.getTask().getId(), now);
+            }
+            flushRecurring(store);
+        }
+    }
 
-                    String statusFrom = from.getStatusName();
-                    if ("CLOSED".equalsIgnoreCase(statusFrom)) {
-                        // account closed -> cancel recurring permanently
-                        auditLog.record(tx, "CANCELLED: source account closed");
-                        if (future != null) future.cancel(false);
-                        return;
-                    }
+    private void executeRecurring(List<RecurringScheduler.Handle<RecurringTransaction>> runnable, List<Transaction> batch){
+        List<TransactionOutcome> outcomes;
+        try {
+            outcomes = processBatch(batch);
+        } catch (Throwable t) {
+            for (RecurringScheduler.Handle<RecurringTransaction> h : runnable) recordRecurringError(h.getTask(), t);
+            return;
+        }
+        for (int i = 0; i < outcomes.size(); i++) {
+            RecurringTransaction rtx = runnable.get(i).getTask();
+            if (outcomes.get(i) == TransactionOutcome.PENDING) {
+                // escalated to a manager: not a skip, the handle settles it later
+                continue;
+            }
+            if (outcomes.get(i) == TransactionOutcome.EXECUTED) {
+                // successful -> clear any failure records so future skips may re-log later if needed
+                cooldowns.clear(rtx.getId());
+                Meters m = meters;
+                if (m != null) m.recurringRuns.mark();
+            } else {
+                // If process returned false, the chain rejected it (other reasons).
+                // Avoid spamming by logging/notify once per cooldown under a general key.
+                skipWithCooldown(rtx, SkipReason.REJECTED_BY_CHAIN, "Recurring payment skipped: rejected by validation/approval chain.");
+            }
+        }
+    }
 
-                    if ("SUSPENDED".equalsIgnoreCase(statusFrom)) {
-                        // Source suspended -> skip (allow deposits to source? depends on policy; here skip outgoing)
-                        skipWithCooldown("SRC_SUSPENDED", "Recurring payment skipped: source account suspended.");
-                        return; // skip run
-                    }
+    private void recordRecurringError(RecurringTransaction rtx, Throwable t){
+        // unexpected error; record and continue (do not cancel the scheduled task)
+        try {
+            auditLog.record(rtx.toTransaction(), "ERROR in recurring task: " + t.getMessage());
+        } catch (Exception ignored){}
+    }
 
-                    if ("FROZEN".equalsIgnoreCase(statusFrom)) {
-                        // Source frozen -> skip
-                        skipWithCooldown("SRC_FROZEN", "Recurring payment skipped: source account frozen.");
-                        return; // skip run
-                    }
+    private void skipWithCooldown(RecurringTransaction rtx, SkipReason reason, String userMessage) {
+        Meters m = meters;
+        if (m != null) m.recurringSkipped.mark(); // every skip, not only the ones logged
+        // Log once per cooldown window
+        if (!cooldowns.shouldLog(rtx.getId(), reason, System.currentTimeMillis(), failureLogCooldown.toMillis())) return;
+        Transaction tx = rtx.toTransaction();
+        auditLog.record(tx, "SKIPPED_" + reason.name());
+        // notify owner (observers) once per cooldown
+        try {
+            Account from = rtx.getFrom();
+            if (from != null) {
+                from.notifyObservers("recurring", userMessage);
+            }
+        } catch (Exception ignored) {}
+    }
 
-                    // balance check
-                    double available = from.getBalance();
-                    double required = rtx.getAmount();
-                    if (available < required) {
-                        skipWithCooldown("INSUFFICIENT_FUNDS", String.format("Recurring payment of %.2f skipped due to insufficient funds. Available: %.2f", required, available));
-                        return;
-                    } else {
-                        // if sufficient now, clear previous failure records for this recurring tx
-                        clearFailureRecordsForThisRtx();
-                    }
-                }
+    /**
+     * Status / balance checks of one due recurring transaction.
+     * Returns the transaction to run, or null when this run is skipped (or the task was cancelled).
+     */
+    private Transaction preCheckRecurring(RecurringScheduler.Handle<RecurringTransaction> handle) {
+        RecurringTransaction rtx = handle.getTask();
+        Transaction tx = rtx.toTransaction();
 
-                // For deposits or when all pre-checks passed: perform the transaction
-                boolean ok = process(tx);
-                if (ok) {
-                    // successful -> clear any failure records so future skips may re-log later if needed
-                    clearFailureRecordsForThisRtx();
-                } else {
-                    // If process returned false, the chain rejected it (other reasons).
-                    // Avoid spamming by logging/notify once per cooldown under a general key.
-                    skipWithCooldown("REJECTED_BY_CHAIN", "Recurring payment skipped: rejected by validation/approval chain.");
-                }
-            } catch (Throwable t) {
-                // unexpected error; record and continue (do not cancel the scheduled task)
-                try {
-                    auditLog.record(rtx.toTransaction(), "ERROR in recurring task: " + t.getMessage());
-                } catch (Exception ignored){}
+        Account from = rtx.getFrom();
+        Account to = rtx.getTo();
+
+        // ---------- Check destination status (applies to incoming deposits/transfers) ----------
+        if (to != null) {
+            String statusTo = to.getStatusName();
+            if ("CLOSED".equalsIgnoreCase(statusTo)) {
+                // destination closed -> cancel recurring permanently (can't deposit)
+                auditLog.record(tx, "CANCELLED: destination account closed");
+                handle.cancel();
+                return null;
+            }
+            if ("FROZEN".equalsIgnoreCase(statusTo)) {
+                // destination frozen -> skip (notify once per cooldown)
+                skipWithCooldown(rtx, SkipReason.DEST_FROZEN, "Recurring payment skipped: destination account frozen.");
+                return null;
+            }
+            // SUSPENDED destination: allow incoming deposits/transfers (per SUSPENDED rules)
+        }
+
+        // ---------- Pre-checks for TRANSFER/WITHDRAW: source account existence & state & balance ----------
+        if (rtx.getType() == Transaction.Type.TRANSFER || rtx.getType() == Transaction.Type.WITHDRAW) {
+            if (from == null) {
+                // malformed recurring transaction; record and cancel permanently
+                auditLog.record(tx, "CANCELLED: no source account");
+                handle.cancel();
+                return null;
+            }
+
+            String statusFrom = from.getStatusName();
+            if ("CLOSED".equalsIgnoreCase(statusFrom)) {
+                // account closed -> cancel recurring permanently
+                auditLog.record(tx, "CANCELLED: source account closed");
+                handle.cancel();
+                return null;
+            }
+
+            if ("SUSPENDED".equalsIgnoreCase(statusFrom)) {
+                // Source suspended -> skip (allow deposits to source? depends on policy; here skip outgoing)
+                skipWithCooldown(rtx, SkipReason.SRC_SUSPENDED, "Recurring payment skipped: source account suspended.");
+                return null; // skip run
+            }
+
+            if ("FROZEN".equalsIgnoreCase(statusFrom)) {
+                // Source frozen -> skip
+                skipWithCooldown(rtx, SkipReason.SRC_FROZEN, "Recurring payment skipped: source account frozen.");
+                return null; // skip run
+            }
+
+            // balance check
+            double available = from.getBalance();
+            double required = rtx.getAmount();
+            if (available < required) {
+                skipWithCooldown(rtx, SkipReason.INSUFFICIENT_FUNDS, String.format("Recurring payment of %.2f skipped due to insufficient funds. Available: %.2f", required, available));
+                return null;
+            } else {
+                // if sufficient now, clear previous failure records for this recurring tx
+                cooldowns.clear(rtx.getId());
+            }
+        }
+
+        // For deposits or when all pre-checks passed: perform the transaction (batched by the caller)
+        return tx;
+    }
+
+    /* -----------------------
+       Metrics
+       ----------------------- */
+
+    // looked up once so the hot path only touches adders and histograms
+    private static final class Meters {
+        final Metrics metrics;
+        final Metrics.Timer process, approve, batch, pendingWait, recurringTick;
+        final RateMeter[] outcomes = new RateMeter[TransactionOutcome.values().length];
+        final RateMeter replayed, recurringRuns, recurringSkipped;
+
+        Meters(Metrics metrics){
+            this.metrics = Objects.requireNonNull(metrics);
+            process = metrics.timer("tx.process");
+            approve = metrics.timer("tx.approve");
+            batch = metrics.timer("tx.batch");
+            pendingWait = metrics.timer("tx.pending.wait");
+            recurringTick = metrics.timer("recurring.tick");
+            for (TransactionOutcome o : TransactionOutcome.values()) {
+                outcomes[o.ordinal()] = metrics.counter("tx." + o.name().toLowerCase());
+            }
+            replayed = metrics.counter("tx.replayed");
+            recurringRuns = metrics.counter("recurring.runs");
+            recurringSkipped = metrics.counter("recurring.skipped");
+        }
+
+        void count(TransactionOutcome o){ outcomes[o.ordinal()].mark(); }
+
+        // manager decisions: the outcome plus how long each item waited in the queue
+        void settled(List<PendingApproval> chunk, TransactionOutcome[] out){
+            long nowMillis = System.currentTimeMillis();
+            for (int i = 0; i < out.length; i++) {
+                count(out[i]);
+                long waitedMillis = nowMillis - chunk.get(i).getCreatedAt().toEpochMilli();
+                pendingWait.record(Math.max(0, waitedMillis) * 1_000_000L);
             }
         }
     }
@@ -2,6 +2,12 @@
 package transactions;
 
 import accounts.Account;
+import util.Money;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Validation handler in the approval chain.
@@ -65,4 +71,60 @@ public class TransactionValidationHandler extends TransactionHandler {
 
         return true; // no successor => approved
     }
+
+    /**
+     * Batch validation: each source account's available balance is read once. Items are first checked
+     * against it alone, the successors decide the survivors, and then the approved debits are charged
+     * to the projection in batch order: one that no longer fits is rejected. So only approved items use
+     * up funds, as if the batch went through handle(...) one by one.
+     * Credits earlier in the batch are not counted (conservative: never approves an overdraw).
+     */
+    @Override
+    protected void handleBatch(List<Transaction> batch, int[] pending, int count, boolean[] approved) {
+        Map<Account, long[]> projected = new IdentityHashMap<>();
+        int passed = 0;
+        for (int k = 0; k < count; k++) {
+            int i = pending[k];
+            Transaction tx = batch.get(i);
+            if (validateProjected(tx, projected)) pending[passed++] = i;
+            else approved[i] = false;
+        }
+        System.out.println("[Validation] Batch: " + passed + "/" + count + " passed");
+        int[] validated = Arrays.copyOf(pending, passed); // successors may reorder pending
+        escalateBatch(batch, pending, passed, approved, true);
+        for (int i : validated) {
+            Transaction tx = batch.get(i);
+            if (!approved[i] || !isDebit(tx)) continue;
+            long[] available = projected.get(tx.getFrom());
+            if (available[0] < tx.getAmountMinor()) approved[i] = false;
+            else available[0] -= tx.getAmountMinor();
+        }
+    }
+
+    // checks against the projected balance without charging it (see handleBatch)
+    private boolean validateProjected(Transaction tx, Map<Account, long[]> projected) {
+        if (tx == null || tx.getAmountMinor() <= 0) return false;
+        Account from = tx.getFrom();
+        Account to = tx.getTo();
+        if (from != null && !from.getStatus().canBeSource()) return false;
+        if (to != null && !to.getStatus().canReceive()) return false;
+        if (isDebit(tx)) {
+            if (from == null) return false;
+            long[] available = projected.get(from);
+            if (available == null) {
+                try {
+                    available = new long[]{ Money.ofMajor(from.getAvailableBalance()) };
+                } catch (Exception e) {
+                    return false;
+                }
+                projected.put(from, available);
+            }
+            return available[0] >= tx.getAmountMinor();
+        }
+        return true;
+    }
+
+    private static boolean isDebit(Transaction tx) {
+        return tx.getType() == Transaction.Type.WITHDRAW || tx.getType() == Transaction.Type.TRANSFER;
+    }
 }
@@ -0,0 +1,57 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints (no boxing).
+ * Single writer (callers serialize add), many readers: a reader sees a consistent
+ * prefix [0, size()) without locking.
+ */
+public final class IntList {
+    private volatile int[] data;
+    private volatile int size;
+
+    public IntList() { this(8); }
+
+    public IntList(int initialCapacity) {
+        this.data = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void add(int v) {
+        int n = size;
+        int[] d = data;
+        if (n == d.length) {
+            d = Arrays.copyOf(d, n + (n >> 1) + 1);
+            data = d;
+        }
+        d[n] = v;
+        size = n + 1; // publish after the value is written
+    }
+
+    public int get(int i) {
+        return data[i];
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    /** last value (list must not be empty) */
+    public int last() { return data[size - 1]; }
+
+    /** first index whose value is >= key in [0, size) (values must be ascending) */
+    public int lowerBound(int key, int size) {
+        int[] d = data;
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (d[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    public int[] toArray() {
+        int n = size;
+        return Arrays.copyOf(data, n);
+    }
+}
@@ -0,0 +1,100 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named metrics for the admin dashboard: counters (RateMeter), timers (LatencyHistogram + RateMeter),
+ * histograms kept by other components and gauges (a LongSupplier read when rendered).
+ * - counter(name) / timer(name) return the same instance for the same name: components look theirs
+ *   up once and keep the reference, so the hot path never touches the name map
+ * - render() is one line per metric, each O(1) in the traffic (fixed-size rate ring, fixed-size
+ *   histogram); nothing is scanned or copied
+ */
+public final class Metrics {
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<>(); // sorted by name
+
+    /** latency histogram plus rate of the timed calls */
+    public static final class Timer {
+        private final LatencyHistogram latency;
+        private final RateMeter rate = new RateMeter();
+
+        Timer(LatencyHistogram latency) { this.latency = latency; }
+
+        public void record(long nanos) {
+            latency.record(nanos);
+            rate.mark();
+        }
+
+        /** records System.nanoTime() - startNanos */
+        public void stop(long startNanos) { record(System.nanoTime() - startNanos); }
+
+        public LatencyHistogram getLatency() { return latency; }
+        public RateMeter getRate() { return rate; }
+    }
+
+    public RateMeter counter(String name) {
+        return get(name, RateMeter.class, RateMeter::new);
+    }
+
+    public Timer timer(String name) {
+        return get(name, Timer.class, () -> new Timer(new LatencyHistogram()));
+    }
+
+    private <T> T get(String name, Class<T> type, Supplier<T> create) {
+        Object m = metrics.computeIfAbsent(name, k -> create.get());
+        if (!type.isInstance(m)) {
+            throw new IllegalArgumentException(name + " is a " + m.getClass().getSimpleName() + ", not a " + type.getSimpleName());
+        }
+        return type.cast(m);
+    }
+
+    /** a histogram a component already records into (e.g. a payment route's latency); shown without a rate */
+    public void histogram(String name, LatencyHistogram existing) {
+        metrics.put(name, existing);
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        metrics.put(name, value);
+    }
+
+    public boolean contains(String name) { return metrics.containsKey(name); }
+
+    /**
+     * One line per metric, sorted by name:
+     * - counter: "name  total  rate/s"
+     * - timer:   "name  n  rate/s  p50 p95 p99 max (ms)"
+     * - histogram: as a timer, without the rate
+     * - gauge:   "name  value"
+     */
+    public List<String> render() {
+        List<String> out = new ArrayList<>(metrics.size());
+        for (Map.Entry<String, Object> e : metrics.entrySet()) {
+            Object m = e.getValue();
+            if (m instanceof RateMeter) {
+                RateMeter r = (RateMeter) m;
+                out.add(String.format("%-28s %,12d  %9.1f/s", e.getKey(), r.count(), r.ratePerSecond()));
+            } else if (m instanceof Timer) {
+                Timer t = (Timer) m;
+                out.add(String.format("%-28s %,12d  %9.1f/s  %s", e.getKey(), t.getLatency().count(),
+                        t.getRate().ratePerSecond(), percentiles(t.getLatency())));
+            } else if (m instanceof LatencyHistogram) {
+                LatencyHistogram h = (LatencyHistogram) m;
+                out.add(String.format("%-28s %,12d  %11s  %s", e.getKey(), h.count(), "", percentiles(h)));
+            } else {
+                out.add(String.format("%-28s %,12d", e.getKey(), ((LongSupplier) m).getAsLong()));
+            }
+        }
+        return out;
+    }
+
+    // a percentile is a walk over the histogram's fixed bucket array
+    private static String percentiles(LatencyHistogram h) {
+        return String.format("p50=%.2f p95=%.2f p99=%.2f max=%.2f ms", h.percentile(0.50) / 1e6,
+                h.percentile(0.95) / 1e6, h.percentile(0.99) / 1e6, h.maxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,102 @@
+package util;
+
+/**
+ * Fixed-point money helpers.
+ * Amounts are plain {@code long} minor units (cents, 2 decimal places), so passing them around
+ * never allocates or boxes. This class only holds the arithmetic/formatting rules:
+ * - ofMajor/toMajor convert at the double edges (console input, legacy APIs)
+ * - share(...) splits a total into N parts whose sum is exact
+ * - percentOf(...) rounds once, half-up, per application (no compounding drift)
+ * - appendTo(...) formats without String.format
+ */
+public final class Money {
+    public static final int SCALE = 100;
+
+    private Money(){}
+
+    public static long ofMajor(double major) {
+        return Math.round(major * SCALE);
+    }
+
+    public static double toMajor(long minor) {
+        return minor / (double) SCALE;
+    }
+
+    /**
+     * Parse a decimal string ("12", "12.3", "-12.34") exactly, without going through double.
+     * More than 2 decimals is rejected.
+     */
+    public static long parse(String s) {
+        if (s == null) throw new NumberFormatException("null");
+        String t = s.trim();
+        if (t.isEmpty()) throw new NumberFormatException("empty");
+        boolean neg = t.charAt(0) == '-';
+        int i = (neg || t.charAt(0) == '+') ? 1 : 0;
+        long units = 0;
+        int decimals = -1;
+        long fraction = 0;
+        boolean digits = false;
+        for (; i < t.length(); i++) {
+            char c = t.charAt(i);
+            if (c == '.') {
+                if (decimals >= 0) throw new NumberFormatException("Invalid amount: " + s);
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (decimals < 0) {
+                    units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+                } else {
+                    if (++decimals > 2) throw new NumberFormatException("Too many decimals: " + s);
+                    fraction = fraction * 10 + (c - '0');
+                }
+            } else {
+                throw new NumberFormatException("Invalid amount: " + s);
+            }
+        }
+        if (!digits) throw new NumberFormatException("Invalid amount: " + s);
+        if (decimals == 1) fraction *= 10;
+        long minor = Math.addExact(Math.multiplyExact(units, SCALE), fraction);
+        return neg ? -minor : minor;
+    }
+
+    /**
+     * Share of part {@code index} when {@code total} is split into {@code parts} pieces.
+     * The remainder cents go to the first parts, so the shares always add up to total.
+     */
+    public static long share(long total, int parts, int index) {
+        if (parts <= 0) throw new IllegalArgumentException("parts>0");
+        long base = total / parts;
+        long rem = total % parts; // same sign as total
+        if (rem >= 0) return index < rem ? base + 1 : base;
+        return index < -rem ? base - 1 : base;
+    }
+
+    /** percent of an amount, rounded half-up to the nearest minor unit (e.g. percentOf(1000, 1.5) = 15) */
+    public static long percentOf(long minor, double percent) {
+        return Math.round(minor * (percent / 100.0));
+    }
+
+    /** append "-1234.50" style text for a minor amount */
+    public static StringBuilder appendTo(StringBuilder sb, long minor) {
+        if (minor < 0) {
+            sb.append('-');
+            minor = -minor;
+        }
+        long cents = minor % SCALE;
+        sb.append(minor / SCALE).append('.');
+        if (cents < 10) sb.append('0');
+        return sb.append(cents);
+    }
+
+    public static String format(long minor) {
+        return appendTo(new StringBuilder(24), minor).toString();
+    }
+
+    /** "Deposit 10.00 (old: 5.00 -> new: 15.00)" — the account notification text */
+    public static String movement(String verb, long amount, long oldBalance, long newBalance) {
+        StringBuilder sb = new StringBuilder(64).append(verb).append(' ');
+        appendTo(sb, amount).append(" (old: ");
+        appendTo(sb, oldBalance).append(" -> new: ");
+        return appendTo(sb, newBalance).append(')').toString();
+    }
+}
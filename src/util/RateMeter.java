@@ -0,0 +1,78 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Event counter with a rate over the last minute.
+ * - mark() is a LongAdder add (striped, no shared CAS) plus one volatile read
+ * - the first mark of each second also samples the running total into a ring of 64 (second, total)
+ *   pairs; ratePerSecond() compares the total now with the newest sample at least 60 s old, so a read
+ *   is a fixed 64-slot search whatever the traffic
+ * - after a quiet spell the rate is averaged over the time since the last busy second (>= 60 s)
+ */
+public final class RateMeter {
+    private static final int SAMPLES = 64;
+    private static final long WINDOW_SECONDS = 60;
+
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong lastSampled;
+    private final AtomicLongArray sampleSecond = new AtomicLongArray(SAMPLES);
+    private final AtomicLongArray sampleTotal = new AtomicLongArray(SAMPLES);
+    private final long createdSecond;
+
+    public RateMeter() {
+        createdSecond = nowSecond();
+        lastSampled = new AtomicLong(createdSecond);
+        for (int i = 0; i < SAMPLES; i++) sampleSecond.set(i, Long.MIN_VALUE);
+        sampleSecond.set(slot(createdSecond), createdSecond);
+    }
+
+    public void mark() { mark(1); }
+
+    public void mark(long n) {
+        long sec = nowSecond();
+        long last = lastSampled.get();
+        if (sec != last && lastSampled.compareAndSet(last, sec)) {
+            // total before this event: the sample is the count at the start of second sec
+            int i = slot(sec);
+            sampleSecond.set(i, Long.MIN_VALUE); // readers skip the slot while it is rewritten
+            sampleTotal.set(i, total.sum());
+            sampleSecond.set(i, sec);
+        }
+        total.add(n);
+    }
+
+    public long count() { return total.sum(); }
+
+    /** events per second over (about) the last minute; since creation while younger than that */
+    public double ratePerSecond() {
+        long now = nowSecond();
+        long target = now - WINDOW_SECONDS;
+        long bestSec = createdSecond, bestTotal = 0;
+        boolean found = false;
+        for (int i = 0; i < SAMPLES; i++) {
+            long s = sampleSecond.get(i);
+            if (s == Long.MIN_VALUE || s > target) continue;
+            long t = sampleTotal.get(i);
+            if (sampleSecond.get(i) != s) continue; // rewritten meanwhile
+            if (!found || s > bestSec) {
+                bestSec = s;
+                bestTotal = t;
+                found = true;
+            }
+        }
+        if (!found) { bestSec = createdSecond; bestTotal = 0; }
+        long seconds = Math.max(1, now - bestSec);
+        return (total.sum() - bestTotal) / (double) seconds;
+    }
+
+    private static int slot(long sec) {
+        return (int) Math.floorMod(sec, (long) SAMPLES);
+    }
+
+    private static long nowSecond() {
+        return System.nanoTime() / 1_000_000_000L;
+    }
+}
@@ -0,0 +1,51 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual-thread executor when the running JDK has one, else a thread-per-task platform executor.
+ * - looked up reflectively (Executors.newVirtualThreadPerTaskExecutor): the code still compiles and
+ *   runs on JDK 17; on 19/20 it needs --enable-preview, on 21+ it is always there
+ * - the fallback is a cached pool of daemon platform threads: it grows with the number of concurrent
+ *   tasks like the virtual executor does, so callers behave the same, just heavier
+ */
+public final class VirtualThreads {
+    private static final Method FACTORY = lookup();
+
+    private VirtualThreads(){}
+
+    private static Method lookup() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // preview builds throw UnsupportedOperationException until preview features are enabled
+            ((ExecutorService) m.invoke(null)).shutdown();
+            return m;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /** one new (virtual if possible) thread per submitted task */
+    public static ExecutorService newPerTaskExecutor(String namePrefix) {
+        if (FACTORY != null) {
+            try {
+                return (ExecutorService) FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall through to platform threads
+            }
+        }
+        AtomicInteger n = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, namePrefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}